@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Creates {@link Metrics} instances for samples replayed after their period
+ * has ended. Instances created from a {@link TsdMetricsFactory} report the
+ * open and close times of the original period instead of the times of the
+ * replay; this class lives in the package of the client since only it can
+ * construct a {@link TsdMetrics} on another {@link Clock}. Instances created
+ * from any other factory report the times of the replay.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public final class ReplayedMetrics {
+
+    /**
+     * Create a {@link Metrics} instance for a period that has already ended.
+     *
+     * @param metricsFactory the factory of the sinks and identity of the instance
+     * @param openTime the time the period opened
+     * @param closeTime the time the period closed
+     * @return a new open {@link Metrics} instance
+     */
+    public static Metrics create(final MetricsFactory metricsFactory, final Instant openTime, final Instant closeTime) {
+        if (!(metricsFactory instanceof TsdMetricsFactory)) {
+            return metricsFactory.create();
+        }
+        final TsdMetricsFactory factory = (TsdMetricsFactory) metricsFactory;
+        final String host;
+        // CHECKSTYLE.OFF: IllegalCatch - The factory handles a failing host resolver with its warning sink
+        try {
+            host = factory.getHostResolver().get();
+        } catch (final RuntimeException e) {
+            return factory.create();
+        }
+        // CHECKSTYLE.ON: IllegalCatch
+        return new TsdMetrics(
+                factory.getUuidFactory().get(),
+                factory.getServiceName(),
+                factory.getClusterName(),
+                host,
+                factory.getSinks(),
+                new ReplayClock(openTime, closeTime),
+                LOGGER);
+    }
+
+    private ReplayedMetrics() { }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TsdMetrics.class);
+
+    /**
+     * Clock that reads the open time of the period when the instance is
+     * constructed and the close time of the period when it is closed.
+     */
+    /* package private */ static final class ReplayClock extends Clock {
+        /* package private */ ReplayClock(final Instant openTime, final Instant closeTime) {
+            _openTime = openTime;
+            _closeTime = closeTime;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            throw new UnsupportedOperationException("Replayed periods are only reported in UTC");
+        }
+
+        @Override
+        public Instant instant() {
+            if (_opened) {
+                return _closeTime;
+            }
+            _opened = true;
+            return _openTime;
+        }
+
+        private final Instant _openTime;
+        private final Instant _closeTime;
+        private boolean _opened;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.util.Map;
+
+/**
+ * An immutable set of dimensions, the tags that identify a series of
+ * samples. Instances are interned, so equal sets of dimensions are the same
+ * instance, and cache their hash code, so they are cheap to look up. Samples
+ * recorded with dimensions are written to a {@link com.arpnetworking.metrics.Metrics}
+ * instance annotated with the dimensions. Create instances once and reuse
+ * them since creating an instance looks it up in the intern pool.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public final class Dimensions {
+
+    /**
+     * Get the empty set of dimensions.
+     *
+     * @return The empty set of dimensions.
+     */
+    public static Dimensions none() {
+        return NONE;
+    }
+
+    /**
+     * Get the set of dimensions with the specified tags.
+     *
+     * @param tags The tags. Neither keys nor values can be null.
+     * @return The interned set of dimensions.
+     */
+    public static Dimensions of(final Map<String, String> tags) {
+        Preconditions.checkNotNull(tags, "Tags cannot be null");
+        return INTERNER.intern(new Dimensions(ImmutableMap.copyOf(tags)));
+    }
+
+    /**
+     * The tags of the dimensions.
+     *
+     * @return The tags.
+     */
+    public Map<String, String> getTags() {
+        return _tags;
+    }
+
+    /**
+     * Determines whether there are no dimensions.
+     *
+     * @return True if there are no tags.
+     */
+    public boolean isEmpty() {
+        return _tags.isEmpty();
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Dimensions)) {
+            return false;
+        }
+        final Dimensions otherDimensions = (Dimensions) other;
+        return _tags.equals(otherDimensions._tags);
+    }
+
+    @Override
+    public int hashCode() {
+        return _hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Dimensions{Tags=%s}", _tags);
+    }
+
+    private Dimensions(final ImmutableMap<String, String> tags) {
+        _tags = tags;
+        _hashCode = tags.hashCode();
+    }
+
+    private final ImmutableMap<String, String> _tags;
+    private final int _hashCode;
+
+    private static final Interner<Dimensions> INTERNER = Interners.newWeakInterner();
+    private static final Dimensions NONE = INTERNER.intern(new Dimensions(ImmutableMap.of()));
+}
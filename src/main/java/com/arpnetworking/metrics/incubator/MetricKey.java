@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.util.Map;
+
+/**
+ * An immutable key identifying a metric by name and {@link Dimensions}.
+ * Instances are interned and cache their hash code, so recording with a key
+ * neither builds strings nor rehashes the name and tags. Create keys once,
+ * for example as constants, and reuse them since creating a key looks it up
+ * in the intern pool.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public final class MetricKey {
+
+    /**
+     * Get the key of a metric without dimensions.
+     *
+     * @param name The name of the metric.
+     * @return The interned key.
+     */
+    public static MetricKey of(final String name) {
+        return of(name, Dimensions.none());
+    }
+
+    /**
+     * Get the key of a metric with the specified tags.
+     *
+     * @param name The name of the metric.
+     * @param tags The tags of the metric. Neither keys nor values can be null.
+     * @return The interned key.
+     */
+    public static MetricKey of(final String name, final Map<String, String> tags) {
+        return of(name, Dimensions.of(tags));
+    }
+
+    /**
+     * Get the key of a metric with the specified dimensions.
+     *
+     * @param name The name of the metric.
+     * @param dimensions The dimensions of the metric.
+     * @return The interned key.
+     */
+    public static MetricKey of(final String name, final Dimensions dimensions) {
+        Preconditions.checkNotNull(name, "Name cannot be null");
+        Preconditions.checkNotNull(dimensions, "Dimensions cannot be null");
+        return INTERNER.intern(new MetricKey(name, dimensions));
+    }
+
+    /**
+     * The name of the metric.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * The dimensions of the metric.
+     *
+     * @return The dimensions.
+     */
+    public Dimensions getDimensions() {
+        return _dimensions;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof MetricKey)) {
+            return false;
+        }
+        final MetricKey otherKey = (MetricKey) other;
+        return _name.equals(otherKey._name) && _dimensions.equals(otherKey._dimensions);
+    }
+
+    @Override
+    public int hashCode() {
+        return _hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MetricKey{Name=%s, Dimensions=%s}", _name, _dimensions);
+    }
+
+    private MetricKey(final String name, final Dimensions dimensions) {
+        _name = name;
+        _dimensions = dimensions;
+        _hashCode = 31 * name.hashCode() + dimensions.hashCode();
+    }
+
+    private final String _name;
+    private final Dimensions _dimensions;
+    private final int _hashCode;
+
+    private static final Interner<MetricKey> INTERNER = Interners.newWeakInterner();
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * A {@link PeriodicTimer} measured with {@link System#nanoTime()} that records
+ * each duration through {@link PeriodicMetrics#recordTimer(String, long, Optional)}
+ * or {@link PeriodicMetrics#recordTimer(MetricKey, long, Optional)}.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class NanoTimer implements PeriodicTimer {
+
+    /**
+     * Package private constructor.
+     *
+     * @param metrics the instance to record into
+     * @param name the name of the timer
+     */
+    NanoTimer(final PeriodicMetrics metrics, final String name) {
+        this(duration -> metrics.recordTimer(name, duration, NANOSECONDS));
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param metrics the instance to record into
+     * @param key the key of the timer
+     */
+    NanoTimer(final PeriodicMetrics metrics, final MetricKey key) {
+        this(duration -> metrics.recordTimer(key, duration, NANOSECONDS));
+    }
+
+    private NanoTimer(final LongConsumer recorder) {
+        _recorder = recorder;
+    }
+
+    @Override
+    public long start() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public long stop(final long start) {
+        final long duration = System.nanoTime() - start;
+        _recorder.accept(duration);
+        return duration;
+    }
+
+    private final LongConsumer _recorder;
+
+    private static final Optional<TimeUnit> NANOSECONDS = Optional.of(TimeUnit.NANOSECONDS);
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A reusable batch of samples of any number of metrics of a
+ * {@link PeriodicMetrics} instance. Samples are buffered in primitive storage
+ * and recorded together by {@link #record()}, which acquires the current
+ * period once for the whole batch. Adding a sample does not allocate once the
+ * batch has grown to its working size. Instances are not thread safe.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public interface PeriodicBatch {
+    /**
+     * Add a counter sample to the batch.
+     *
+     * @param name The name of the counter.
+     * @param value The value of the counter.
+     * @return This batch.
+     */
+    PeriodicBatch counter(String name, long value);
+
+    /**
+     * Add a timer sample to the batch.
+     *
+     * @param name The name of the timer.
+     * @param duration The duration of the timer.
+     * @param unit The time unit of the timer.
+     * @return This batch.
+     */
+    PeriodicBatch timer(String name, long duration, Optional<TimeUnit> unit);
+
+    /**
+     * Add a gauge reading to the batch.
+     *
+     * @param name The name of the gauge.
+     * @param value The reading on the gauge.
+     * @return This batch.
+     */
+    PeriodicBatch gauge(String name, double value);
+
+    /**
+     * Add a gauge reading to the batch.
+     *
+     * @param name The name of the gauge.
+     * @param value The reading on the gauge.
+     * @return This batch.
+     */
+    PeriodicBatch gauge(String name, long value);
+
+    /**
+     * Add a counter sample with the dimensions of the key to the batch.
+     *
+     * @param key The key of the counter.
+     * @param value The value of the counter.
+     * @return This batch.
+     */
+    PeriodicBatch counter(MetricKey key, long value);
+
+    /**
+     * Add a timer sample with the dimensions of the key to the batch.
+     *
+     * @param key The key of the timer.
+     * @param duration The duration of the timer.
+     * @param unit The time unit of the timer.
+     * @return This batch.
+     */
+    PeriodicBatch timer(MetricKey key, long duration, Optional<TimeUnit> unit);
+
+    /**
+     * Add a gauge reading with the dimensions of the key to the batch.
+     *
+     * @param key The key of the gauge.
+     * @param value The reading on the gauge.
+     * @return This batch.
+     */
+    PeriodicBatch gauge(MetricKey key, double value);
+
+    /**
+     * Add a gauge reading with the dimensions of the key to the batch.
+     *
+     * @param key The key of the gauge.
+     * @param value The reading on the gauge.
+     * @return This batch.
+     */
+    PeriodicBatch gauge(MetricKey key, long value);
+
+    /**
+     * Record the samples of the batch in the current period and empty the
+     * batch so that it can be reused.
+     */
+    void record();
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator;
+
+/**
+ * A reusable handle to a gauge of a {@link PeriodicMetrics} instance. The
+ * handle resolves the gauge once when it is created and holds the latest
+ * reading in primitive storage. Recording does not allocate and the latest
+ * reading is recorded once each period in which the gauge was set.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public interface PeriodicGauge {
+    /**
+     * Set the reading of the gauge for the current period.
+     *
+     * @param value The reading on the gauge.
+     */
+    void set(double value);
+}
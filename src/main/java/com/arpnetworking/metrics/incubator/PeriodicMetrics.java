@@ -22,26 +22,154 @@ import com.arpnetworking.metrics.Timer;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.ToDoubleFunction;
 
 /**
  * A type of Metrics that is for use in a periodic context.  Unlike the {@link Metrics} class,
  * there is no close method as the {@link PeriodicMetrics} is flushed regularly on a schedule.  Similar to the
- * {@link Metrics} class, there are createTimer and createCounter methods that return an object that can be used
- * to record timers and counters respectively.  However, unlike the {@link Timer} and {@link Counter} instances from
- * {@link Metrics}, a {@link Timer} and {@link Counter} will not be bound to the time interval that they were created
- * in; the timers and counters will be recorded in the interval that is open when the timer or counter is closed.
+ * {@link Metrics} class, there are {@link #timer(String)} and {@link #counter(String)} methods that return an object
+ * that can be used to record timers and counters respectively.  However, unlike the {@link Timer} and {@link Counter}
+ * instances from {@link Metrics}, a {@link PeriodicTimer} and {@link PeriodicCounter} will not be bound to the time
+ * interval that they were created in; the timers and counters will be recorded in the interval that is open when the
+ * timer is stopped or the counter is added to.
  *
  * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
  */
 public interface PeriodicMetrics {
+    /**
+     * Get a view of this instance for a component, such as a library, that
+     * prefixes the name of every metric recorded through it and adds the
+     * dimensions to every sample. The view records into this instance, so
+     * any number of views share its storage and period and add no cost per
+     * period. Scoped names are resolved once per name and when handles are
+     * created rather than per sample. Dimensions of a {@link MetricKey}
+     * recorded through the view take precedence over those of the view.
+     * Registered gauges and monotonic counters are read outside of any
+     * scope, so they are prefixed but not dimensioned.
+     *
+     * @param prefix The prefix of the name of every metric, including any separator.
+     * @param dimensions The dimensions added to every sample.
+     * @return The scoped view.
+     */
+    default PeriodicMetrics scoped(final String prefix, final Dimensions dimensions) {
+        return new ScopedPeriodicMetrics(this, prefix, dimensions);
+    }
+
     /**
      * Register a consumer to be polled periodically.  This callback will be executed on a periodic basis
      * once registered.  The instance provided should only be used inside the {@link Consumer} and should not be
      * closed.  Closing and flushing of the {@link Metrics} object will be handled for you.
      *
      * @param consumer A consumer to call to get metrics
+     * @return The registration, which stops the polling when closed
+     */
+    PolledMetricRegistration registerPolledMetric(Consumer<PeriodicMetrics> consumer);
+
+    /**
+     * Register a consumer to be polled periodically with the specified
+     * options, which control how often it is polled and how its cost is
+     * reported. Registering a consumer again replaces its options.
+     *
+     * @param consumer A consumer to call to get metrics
+     * @param options The polling options
+     * @return The registration, which stops the polling when closed
+     */
+    PolledMetricRegistration registerPolledMetric(Consumer<PeriodicMetrics> consumer, PollingOptions options);
+
+    /**
+     * Register a gauge read from a supplier when each period closes. Reading
+     * registered gauges is cheaper than polling them with
+     * {@link #registerPolledMetric(Consumer)} since every registered gauge is
+     * read in a single loop without scheduling any task. Registering a name
+     * again replaces its gauge. The supplier must be fast and must not block.
+     *
+     * @param name The name of the gauge.
+     * @param supplier The supplier of the reading on the gauge.
+     */
+    void registerGauge(String name, LongSupplier supplier);
+
+    /**
+     * Register a gauge read from a supplier when each period closes. Reading
+     * registered gauges is cheaper than polling them with
+     * {@link #registerPolledMetric(Consumer)} since every registered gauge is
+     * read in a single loop without scheduling any task. Registering a name
+     * again replaces its gauge. The supplier must be fast and must not block.
+     *
+     * @param name The name of the gauge.
+     * @param supplier The supplier of the reading on the gauge.
+     */
+    void registerGauge(String name, DoubleSupplier supplier);
+
+    /**
+     * Register a gauge read from an object when each period closes. The object
+     * is only weakly referenced and the gauge is removed once the object has
+     * been garbage collected, so the reader must not itself reference the
+     * object. Registering a name again replaces its gauge.
+     *
+     * @param name The name of the gauge.
+     * @param owner The object the gauge is read from.
+     * @param reader Reads the gauge from the object.
+     * @param <T> The type of the object.
+     */
+    <T> void registerGauge(String name, T owner, ToDoubleFunction<? super T> reader);
+
+    /**
+     * Register a cumulative counter read from a supplier when each period
+     * closes, such as a total of bytes sent or of garbage collections. The
+     * change since the previous reading is recorded as a counter with the
+     * name and its rate per second as a gauge with the name suffixed by
+     * {@code /rate}. The first reading only establishes the baseline and a
+     * reading below the previous one is taken to be a reset of the source, so
+     * the reading itself is recorded as the change. Registering a name again
+     * replaces its counter and establishes a new baseline. The supplier must
+     * be fast and must not block.
+     *
+     * @param name The name of the counter.
+     * @param supplier The supplier of the cumulative value of the counter.
      */
-    void registerPolledMetric(Consumer<PeriodicMetrics> consumer);
+    void registerMonotonicCounter(String name, LongSupplier supplier);
+
+    /**
+     * Get a reusable handle to a counter. Repeated calls with the same name
+     * return handles backed by the same counter. Recording through the handle
+     * is cheaper than {@link #recordCounter(String, long)} since the name is
+     * resolved only once and no objects are allocated per sample. The sum of
+     * the samples is recorded once per period in which the counter was added
+     * to, even if the sum is zero, so an idle counter records nothing.
+     *
+     * @param name The name of the counter.
+     * @return The {@link PeriodicCounter} handle.
+     */
+    PeriodicCounter counter(String name);
+
+    /**
+     * Get a reusable handle to a timer. Each measurement is started and
+     * stopped with a primitive token held by the caller, so timing through
+     * the handle does not allocate, and its duration is recorded in the
+     * period that is open when it is stopped. The handle may be shared by
+     * any number of threads and concurrent measurements. The default
+     * implementation records each duration through
+     * {@link #recordTimer(String, long, Optional)}; implementations should
+     * return handles that are cached by name and resolve the timer once.
+     *
+     * @param name The name of the timer.
+     * @return The {@link PeriodicTimer} handle.
+     */
+    default PeriodicTimer timer(final String name) {
+        return new NanoTimer(this, name);
+    }
+
+    /**
+     * Get a reusable handle to a gauge. Repeated calls with the same name
+     * return handles backed by the same gauge. The latest reading is recorded
+     * once per period in which the gauge was set.
+     *
+     * @param name The name of the gauge.
+     * @return The {@link PeriodicGauge} handle.
+     */
+    PeriodicGauge gauge(String name);
 
     /**
      * Create a new sample for the counter.
@@ -62,6 +190,27 @@ public interface PeriodicMetrics {
      */
     void recordTimer(String name, long duration, Optional<TimeUnit> unit);
 
+    /**
+     * Set the timer to each of the specified values. The samples are recorded
+     * in the current period together, which costs little more than recording
+     * a single sample plus a few instructions per sample, and no objects are
+     * allocated per sample.
+     *
+     * @param name The name of the timer.
+     * @param durations The durations of the timer.
+     * @param unit The time unit of the timer.
+     */
+    void recordTimers(String name, long[] durations, Optional<TimeUnit> unit);
+
+    /**
+     * Create a batch of samples of any number of metrics. The samples of the
+     * batch are recorded together when {@link PeriodicBatch#record()} is
+     * called and the batch can then be reused.
+     *
+     * @return A new empty {@link PeriodicBatch}.
+     */
+    PeriodicBatch batch();
+
     /**
      * Set the specified gauge reading.
      *
@@ -77,4 +226,88 @@ public interface PeriodicMetrics {
      * @param value The reading on the gauge
      */
     void recordGauge(String name, long value);
+
+    /**
+     * Create a new sample for the counter identified by the key. The sample
+     * is recorded with the dimensions of the key.
+     *
+     * @param key The key of the counter.
+     * @param value The value of the counter.
+     */
+    void recordCounter(MetricKey key, long value);
+
+    /**
+     * Set the timer identified by the key to the specified value. The sample
+     * is recorded with the dimensions of the key.
+     *
+     * @param key The key of the timer.
+     * @param duration The duration of the timer.
+     * @param unit The time unit of the timer.
+     */
+    void recordTimer(MetricKey key, long duration, Optional<TimeUnit> unit);
+
+    /**
+     * Set the specified reading of the gauge identified by the key. The
+     * sample is recorded with the dimensions of the key.
+     *
+     * @param key The key of the gauge.
+     * @param value The reading on the gauge
+     */
+    void recordGauge(MetricKey key, double value);
+
+    /**
+     * Set the specified reading of the gauge identified by the key. The
+     * sample is recorded with the dimensions of the key.
+     *
+     * @param key The key of the gauge.
+     * @param value The reading on the gauge
+     */
+    void recordGauge(MetricKey key, long value);
+
+    /**
+     * Get a reusable handle to the counter identified by the key. Samples
+     * are recorded with the dimensions of the key. Repeated calls with the
+     * same key return handles backed by the same counter, and a key without
+     * dimensions returns the handle of its name.
+     *
+     * @param key The key of the counter.
+     * @return The {@link PeriodicCounter} handle.
+     */
+    PeriodicCounter counter(MetricKey key);
+
+    /**
+     * Get a reusable handle to the timer identified by the key. Samples are
+     * recorded with the dimensions of the key. The default implementation
+     * records each duration through
+     * {@link #recordTimer(MetricKey, long, Optional)}; implementations should
+     * return handles that are cached by key and resolve the timer once.
+     *
+     * @param key The key of the timer.
+     * @return The {@link PeriodicTimer} handle.
+     */
+    default PeriodicTimer timer(final MetricKey key) {
+        return new NanoTimer(this, key);
+    }
+
+    /**
+     * Get a reusable handle to the gauge identified by the key. Samples are
+     * recorded with the dimensions of the key. Repeated calls with the same
+     * key return handles backed by the same gauge, and a key without
+     * dimensions returns the handle of its name.
+     *
+     * @param key The key of the gauge.
+     * @return The {@link PeriodicGauge} handle.
+     */
+    PeriodicGauge gauge(MetricKey key);
+
+    /**
+     * Set the timer identified by the key to each of the specified values.
+     * The samples are recorded with the dimensions of the key in the current
+     * period together, and no objects are allocated per sample.
+     *
+     * @param key The key of the timer.
+     * @param durations The durations of the timer.
+     * @param unit The time unit of the timer.
+     */
+    void recordTimers(MetricKey key, long[] durations, Optional<TimeUnit> unit);
 }
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator;
+
+/**
+ * A reusable handle to a timer of a {@link PeriodicMetrics} instance. The
+ * start of each measurement is a primitive token returned by {@link #start()}
+ * and held by the caller, so any number of measurements may be in flight on
+ * one handle and timing does not allocate. The duration is recorded in the
+ * period that is open when the measurement is stopped, regardless of the
+ * period it was started in.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public interface PeriodicTimer {
+    /**
+     * Start a measurement.
+     *
+     * @return The token of the measurement, to pass to {@link #stop(long)}.
+     */
+    long start();
+
+    /**
+     * Stop a measurement and record its duration in the current period.
+     *
+     * @param start The token returned by {@link #start()}.
+     * @return The duration of the measurement in nanoseconds.
+     */
+    long stop(long start);
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator;
+
+/**
+ * The registration of a polled metric with a {@link PeriodicMetrics}
+ * instance. Closing the registration stops the metric from being polled in
+ * later periods; a poll that has already started is allowed to complete.
+ * Closing is cheap, so that pollers can be registered and closed at a high
+ * rate, and subsequent calls have no effect.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+@FunctionalInterface
+public interface PolledMetricRegistration extends AutoCloseable {
+    /**
+     * Stop polling the metric.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator;
+
+import com.google.common.base.Preconditions;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+
+/**
+ * Options for a polled metric registered with
+ * {@link PeriodicMetrics#registerPolledMetric(Consumer, PollingOptions)}. A
+ * poller runs once every interval periods. When a budget is set and a run of
+ * the poller takes longer than the budget the interval is doubled, up to the
+ * maximum interval; once runs fit the budget again the interval is halved
+ * back towards the configured interval. The cost of each run is recorded as
+ * the timer {@code periodic_metrics/poller/<name>/duration} and the interval
+ * in effect as the gauge {@code periodic_metrics/poller/<name>/interval}.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public final class PollingOptions {
+
+    /**
+     * The name the cost of the poller is recorded under.
+     *
+     * @return The name of the poller.
+     */
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * The number of periods between runs of the poller.
+     *
+     * @return The interval in periods.
+     */
+    public int getInterval() {
+        return _interval;
+    }
+
+    /**
+     * The run time above which the interval of the poller is backed off.
+     *
+     * @return The run time budget, if any.
+     */
+    public Optional<Duration> getBudget() {
+        return Optional.ofNullable(_budget);
+    }
+
+    /**
+     * The largest number of periods between runs of the poller when backing off.
+     *
+     * @return The maximum interval in periods.
+     */
+    public int getMaximumInterval() {
+        return _maximumInterval;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "PollingOptions{Name=%s, Interval=%d, Budget=%s, MaximumInterval=%d}",
+                _name,
+                _interval,
+                _budget,
+                _maximumInterval);
+    }
+
+    private PollingOptions(final Builder builder) {
+        _name = builder._name;
+        _interval = builder._interval;
+        _budget = builder._budget;
+        _maximumInterval = builder._maximumInterval;
+    }
+
+    private final String _name;
+    private final int _interval;
+    @Nullable
+    private final Duration _budget;
+    private final int _maximumInterval;
+
+    /**
+     * Implementation of the Builder pattern for the {@link PollingOptions} class.
+     *
+     * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+     */
+    public static final class Builder implements com.arpnetworking.commons.builder.Builder<PollingOptions> {
+        /**
+         * Sets the name the cost of the poller is recorded under. Required. Cannot be null or empty.
+         *
+         * @param value The name of the poller.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setName(final String value) {
+            _name = value;
+            return this;
+        }
+
+        /**
+         * Sets the number of periods between runs of the poller. Optional. Cannot be null. Must be at least
+         * one. Defaults to one.
+         *
+         * @param value The interval in periods.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setInterval(final Integer value) {
+            _interval = value;
+            return this;
+        }
+
+        /**
+         * Sets the run time above which the interval of the poller is backed off. Optional. Cannot be
+         * negative. Defaults to null, in which case the interval is never backed off.
+         *
+         * @param value The run time budget.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setBudget(@Nullable final Duration value) {
+            _budget = value;
+            return this;
+        }
+
+        /**
+         * Sets the largest number of periods between runs of the poller when backing off. Optional. Must not
+         * be less than the interval. Defaults to 32 times the interval.
+         *
+         * @param value The maximum interval in periods.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setMaximumInterval(@Nullable final Integer value) {
+            _maximumInterval = value;
+            return this;
+        }
+
+        @Override
+        public PollingOptions build() {
+            Preconditions.checkArgument(_name != null && !_name.isEmpty(), "Name cannot be null or empty; name=%s", _name);
+            Preconditions.checkArgument(_interval != null && _interval >= 1, "Interval must be at least one; interval=%s", _interval);
+            Preconditions.checkArgument(
+                    _budget == null || !_budget.isNegative(),
+                    "Budget cannot be negative; budget=%s",
+                    _budget);
+            if (_maximumInterval == null) {
+                _maximumInterval = (int) Math.min(Integer.MAX_VALUE, (long) _interval * DEFAULT_BACKOFF_LIMIT);
+            }
+            Preconditions.checkArgument(
+                    _maximumInterval >= _interval,
+                    "Maximum interval cannot be less than interval; maximumInterval=%s, interval=%s",
+                    _maximumInterval,
+                    _interval);
+            return new PollingOptions(this);
+        }
+
+        private String _name;
+        private Integer _interval = 1;
+        private Duration _budget;
+        private Integer _maximumInterval;
+
+        private static final int DEFAULT_BACKOFF_LIMIT = 32;
+    }
+}
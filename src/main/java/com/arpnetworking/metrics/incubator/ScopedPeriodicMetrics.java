@@ -0,0 +1,380 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator;
+
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.ToDoubleFunction;
+import javax.annotation.Nullable;
+
+/**
+ * A view of a {@link PeriodicMetrics} instance that prefixes the name of
+ * every metric and adds its dimensions to every sample, returned by
+ * {@link PeriodicMetrics#scoped(String, Dimensions)}. The view records
+ * straight into its parent, so every scope shares the storage and period of
+ * the parent and costs nothing per period. The scoped name or key of each
+ * metric is resolved once and cached, up to {@link #MAXIMUM_CACHED_NAMES}
+ * names and keys of each kind; the names and keys of metrics beyond that are
+ * built on every call so that metrics named after unbounded values cannot
+ * grow the scope without limit. Handles and batches are those of the
+ * parent, obtained and written under the scoped name or key, so recording
+ * through them costs the same as recording through the parent.
+ *
+ * Registered gauges and monotonic counters are read when the period closes
+ * outside of any scope, so they take the prefix of the scope but not its
+ * dimensions.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class ScopedPeriodicMetrics implements PeriodicMetrics {
+
+    /**
+     * Package private constructor.
+     *
+     * @param parent the instance recording the samples
+     * @param prefix the prefix of the name of every metric
+     * @param dimensions the dimensions added to every sample
+     */
+    ScopedPeriodicMetrics(final PeriodicMetrics parent, final String prefix, final Dimensions dimensions) {
+        _parent = parent;
+        _prefix = prefix;
+        _dimensions = dimensions;
+        _createName = _prefix::concat;
+        _createKey = name -> MetricKey.of(_prefix.concat(name), _dimensions);
+        _createScopedKey = this::createScopedKey;
+    }
+
+    @Override
+    public PeriodicMetrics scoped(final String prefix, final Dimensions dimensions) {
+        // NOTE: Nested scopes record straight into the root parent
+        return new ScopedPeriodicMetrics(_parent, _prefix.concat(prefix), merge(_dimensions, dimensions));
+    }
+
+    @Override
+    public PolledMetricRegistration registerPolledMetric(final Consumer<PeriodicMetrics> consumer) {
+        return register(consumer, null);
+    }
+
+    @Override
+    public PolledMetricRegistration registerPolledMetric(final Consumer<PeriodicMetrics> consumer, final PollingOptions options) {
+        return register(consumer, options);
+    }
+
+    @Override
+    public void registerGauge(final String name, final LongSupplier supplier) {
+        _parent.registerGauge(name(name), supplier);
+    }
+
+    @Override
+    public void registerGauge(final String name, final DoubleSupplier supplier) {
+        _parent.registerGauge(name(name), supplier);
+    }
+
+    @Override
+    public <T> void registerGauge(final String name, final T owner, final ToDoubleFunction<? super T> reader) {
+        _parent.registerGauge(name(name), owner, reader);
+    }
+
+    @Override
+    public void registerMonotonicCounter(final String name, final LongSupplier supplier) {
+        _parent.registerMonotonicCounter(name(name), supplier);
+    }
+
+    @Override
+    public PeriodicCounter counter(final String name) {
+        if (_dimensions.isEmpty()) {
+            return _parent.counter(name(name));
+        }
+        return _parent.counter(key(name));
+    }
+
+    @Override
+    public PeriodicTimer timer(final String name) {
+        if (_dimensions.isEmpty()) {
+            return _parent.timer(name(name));
+        }
+        return _parent.timer(key(name));
+    }
+
+    @Override
+    public PeriodicGauge gauge(final String name) {
+        if (_dimensions.isEmpty()) {
+            return _parent.gauge(name(name));
+        }
+        return _parent.gauge(key(name));
+    }
+
+    @Override
+    public void recordCounter(final String name, final long value) {
+        if (_dimensions.isEmpty()) {
+            _parent.recordCounter(name(name), value);
+        } else {
+            _parent.recordCounter(key(name), value);
+        }
+    }
+
+    @Override
+    public void recordTimer(final String name, final long duration, final Optional<TimeUnit> unit) {
+        if (_dimensions.isEmpty()) {
+            _parent.recordTimer(name(name), duration, unit);
+        } else {
+            _parent.recordTimer(key(name), duration, unit);
+        }
+    }
+
+    @Override
+    public void recordTimers(final String name, final long[] durations, final Optional<TimeUnit> unit) {
+        if (_dimensions.isEmpty()) {
+            _parent.recordTimers(name(name), durations, unit);
+        } else {
+            _parent.recordTimers(key(name), durations, unit);
+        }
+    }
+
+    @Override
+    public PeriodicBatch batch() {
+        return new ScopedBatch(_parent.batch());
+    }
+
+    @Override
+    public void recordGauge(final String name, final double value) {
+        if (_dimensions.isEmpty()) {
+            _parent.recordGauge(name(name), value);
+        } else {
+            _parent.recordGauge(key(name), value);
+        }
+    }
+
+    @Override
+    public void recordGauge(final String name, final long value) {
+        if (_dimensions.isEmpty()) {
+            _parent.recordGauge(name(name), value);
+        } else {
+            _parent.recordGauge(key(name), value);
+        }
+    }
+
+    @Override
+    public void recordCounter(final MetricKey key, final long value) {
+        _parent.recordCounter(scopedKey(key), value);
+    }
+
+    @Override
+    public void recordTimer(final MetricKey key, final long duration, final Optional<TimeUnit> unit) {
+        _parent.recordTimer(scopedKey(key), duration, unit);
+    }
+
+    @Override
+    public void recordGauge(final MetricKey key, final double value) {
+        _parent.recordGauge(scopedKey(key), value);
+    }
+
+    @Override
+    public void recordGauge(final MetricKey key, final long value) {
+        _parent.recordGauge(scopedKey(key), value);
+    }
+
+    @Override
+    public PeriodicCounter counter(final MetricKey key) {
+        return _parent.counter(scopedKey(key));
+    }
+
+    @Override
+    public PeriodicTimer timer(final MetricKey key) {
+        return _parent.timer(scopedKey(key));
+    }
+
+    @Override
+    public PeriodicGauge gauge(final MetricKey key) {
+        return _parent.gauge(scopedKey(key));
+    }
+
+    @Override
+    public void recordTimers(final MetricKey key, final long[] durations, final Optional<TimeUnit> unit) {
+        _parent.recordTimers(scopedKey(key), durations, unit);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ScopedPeriodicMetrics{Prefix=%s, Dimensions=%s, Parent=%s}", _prefix, _dimensions, _parent);
+    }
+
+    private PolledMetricRegistration register(final Consumer<PeriodicMetrics> consumer, @Nullable final PollingOptions options) {
+        // NOTE: The wrapper is kept so that registering the consumer again replaces its registration
+        final Consumer<PeriodicMetrics> wrapper = _polled.computeIfAbsent(consumer, key -> target -> key.accept(this));
+        final PolledMetricRegistration registration;
+        if (options == null) {
+            registration = _parent.registerPolledMetric(wrapper);
+        } else {
+            registration = _parent.registerPolledMetric(wrapper, options);
+        }
+        return () -> {
+            registration.close();
+            _polled.remove(consumer, wrapper);
+        };
+    }
+
+    private String name(final String name) {
+        return getOrCreate(_names, name, _createName);
+    }
+
+    private MetricKey key(final String name) {
+        return getOrCreate(_keys, name, _createKey);
+    }
+
+    private MetricKey scopedKey(final MetricKey key) {
+        return getOrCreate(_scopedKeys, key, _createScopedKey);
+    }
+
+    private MetricKey createScopedKey(final MetricKey key) {
+        return MetricKey.of(_prefix.concat(key.getName()), merge(_dimensions, key.getDimensions()));
+    }
+
+    private static Dimensions merge(final Dimensions outer, final Dimensions inner) {
+        if (inner.isEmpty()) {
+            return outer;
+        }
+        if (outer.isEmpty()) {
+            return inner;
+        }
+        // NOTE: The inner dimensions take precedence over those of the same name in the outer ones
+        final Map<String, String> tags = Maps.newHashMap(outer.getTags());
+        tags.putAll(inner.getTags());
+        return Dimensions.of(tags);
+    }
+
+    /* package private */ int cachedNames() {
+        return _names.size() + _keys.size() + _scopedKeys.size();
+    }
+
+    private static <K, V> V getOrCreate(final ConcurrentMap<K, V> map, final K key, final Function<K, V> factory) {
+        // NOTE: Plain get avoids locking the bin in the common case where the metric was already resolved
+        final V value = map.get(key);
+        if (value != null) {
+            return value;
+        }
+        if (map.size() >= MAXIMUM_CACHED_NAMES) {
+            return factory.apply(key);
+        }
+        return map.computeIfAbsent(key, factory);
+    }
+
+    private final PeriodicMetrics _parent;
+    private final String _prefix;
+    private final Dimensions _dimensions;
+    private final Function<String, String> _createName;
+    private final Function<String, MetricKey> _createKey;
+    private final Function<MetricKey, MetricKey> _createScopedKey;
+    private final ConcurrentMap<String, String> _names = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, MetricKey> _keys = new ConcurrentHashMap<>();
+    private final ConcurrentMap<MetricKey, MetricKey> _scopedKeys = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Consumer<PeriodicMetrics>, Consumer<PeriodicMetrics>> _polled = new ConcurrentHashMap<>();
+
+    /**
+     * The most scoped names, keys of names and scoped keys each cached by a scope.
+     */
+    static final int MAXIMUM_CACHED_NAMES = 1024;
+
+    /**
+     * A batch of the parent with scoped names, or scoped keys if the scope
+     * has dimensions.
+     */
+    private final class ScopedBatch implements PeriodicBatch {
+        private ScopedBatch(final PeriodicBatch batch) {
+            _batch = batch;
+        }
+
+        @Override
+        public PeriodicBatch counter(final String name, final long value) {
+            if (_dimensions.isEmpty()) {
+                _batch.counter(name(name), value);
+            } else {
+                _batch.counter(key(name), value);
+            }
+            return this;
+        }
+
+        @Override
+        public PeriodicBatch timer(final String name, final long duration, final Optional<TimeUnit> unit) {
+            if (_dimensions.isEmpty()) {
+                _batch.timer(name(name), duration, unit);
+            } else {
+                _batch.timer(key(name), duration, unit);
+            }
+            return this;
+        }
+
+        @Override
+        public PeriodicBatch gauge(final String name, final double value) {
+            if (_dimensions.isEmpty()) {
+                _batch.gauge(name(name), value);
+            } else {
+                _batch.gauge(key(name), value);
+            }
+            return this;
+        }
+
+        @Override
+        public PeriodicBatch gauge(final String name, final long value) {
+            if (_dimensions.isEmpty()) {
+                _batch.gauge(name(name), value);
+            } else {
+                _batch.gauge(key(name), value);
+            }
+            return this;
+        }
+
+        @Override
+        public PeriodicBatch counter(final MetricKey key, final long value) {
+            _batch.counter(scopedKey(key), value);
+            return this;
+        }
+
+        @Override
+        public PeriodicBatch timer(final MetricKey key, final long duration, final Optional<TimeUnit> unit) {
+            _batch.timer(scopedKey(key), duration, unit);
+            return this;
+        }
+
+        @Override
+        public PeriodicBatch gauge(final MetricKey key, final double value) {
+            _batch.gauge(scopedKey(key), value);
+            return this;
+        }
+
+        @Override
+        public PeriodicBatch gauge(final MetricKey key, final long value) {
+            _batch.gauge(scopedKey(key), value);
+            return this;
+        }
+
+        @Override
+        public void record() {
+            _batch.record();
+        }
+
+        private final PeriodicBatch _batch;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import javax.annotation.Nullable;
+
+/**
+ * Settings shared by every {@link PeriodAccumulator} of a
+ * {@link TsdPeriodicMetrics} instance.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class AccumulatorSettings {
+
+    /**
+     * Package private constructor.
+     *
+     * @param histogramTimers whether timer samples are aggregated into histograms
+     * @param histogramGauges whether gauge samples are aggregated into histograms
+     * @param histogramPrecision the number of mantissa bits kept per histogram bucket
+     */
+    AccumulatorSettings(final boolean histogramTimers, final boolean histogramGauges, final int histogramPrecision) {
+        this(histogramTimers, histogramGauges, histogramPrecision, null);
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param histogramTimers whether timer samples are aggregated into histograms
+     * @param histogramGauges whether gauge samples are aggregated into histograms
+     * @param histogramPrecision the number of mantissa bits kept per histogram bucket
+     * @param sampleArena the arena raw samples are stored in; null to store them on the heap
+     */
+    AccumulatorSettings(
+            final boolean histogramTimers,
+            final boolean histogramGauges,
+            final int histogramPrecision,
+            @Nullable final SampleArena sampleArena) {
+        _histogramTimers = histogramTimers;
+        _histogramGauges = histogramGauges;
+        _histogramPrecision = histogramPrecision;
+        _sampleArena = sampleArena;
+    }
+
+    boolean isHistogramTimers() {
+        return _histogramTimers;
+    }
+
+    boolean isHistogramGauges() {
+        return _histogramGauges;
+    }
+
+    int getHistogramPrecision() {
+        return _histogramPrecision;
+    }
+
+    @Nullable
+    SampleArena getSampleArena() {
+        return _sampleArena;
+    }
+
+    private final boolean _histogramTimers;
+    private final boolean _histogramGauges;
+    private final int _histogramPrecision;
+    @Nullable
+    private final SampleArena _sampleArena;
+
+    static final AccumulatorSettings DEFAULT = new AccumulatorSettings(false, false, LogLinearHistogram.DEFAULT_PRECISION);
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+/**
+ * A {@link RateSampler} that adapts its rate once per period to keep about a
+ * target number of samples per period. The number of samples offered in a
+ * period is estimated from the number kept, so that rejected samples are
+ * never counted. A period in which no samples were kept doubles the rate, up
+ * to keeping every sample.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class AdaptiveRateSampler extends RateSampler {
+
+    /**
+     * Package private constructor.
+     *
+     * @param targetSamples the number of samples to keep per period
+     */
+    AdaptiveRateSampler(final int targetSamples) {
+        super(1.0);
+        _targetSamples = targetSamples;
+    }
+
+    @Override
+    double nextRate(final double rate, final long kept) {
+        if (kept == 0) {
+            return Math.min(1.0, rate * 2);
+        }
+        // NOTE: The offered samples are estimated as kept / rate
+        return Math.min(1.0, rate * _targetSamples / kept);
+    }
+
+    private final int _targetSamples;
+}
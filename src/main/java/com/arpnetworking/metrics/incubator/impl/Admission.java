@@ -0,0 +1,140 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.incubator.MetricKey;
+
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Admits samples into the current period of a {@link TsdPeriodicMetrics}
+ * instance. Each sample is counted for the {@link SelfInstrumentation}, if
+ * enabled, and the name of its metric is admitted by the
+ * {@link CardinalityLimiter}, if enabled. Samples released by a
+ * {@link Sampler} are recorded through the same path as the sink of its
+ * flips.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class Admission implements SampleSink {
+
+    /**
+     * Package private constructor.
+     *
+     * @param recorder the recorder of the current period
+     * @param cardinalityLimiter the cardinality limiter; null if the number of metrics is not limited
+     * @param instrumentation the self instrumentation; null if disabled
+     */
+    Admission(
+            final PeriodRecorder recorder,
+            @Nullable final CardinalityLimiter cardinalityLimiter,
+            @Nullable final SelfInstrumentation instrumentation) {
+        _recorder = recorder;
+        _cardinalityLimiter = cardinalityLimiter;
+        _instrumentation = instrumentation;
+    }
+
+    /**
+     * Admit a sample of a metric.
+     *
+     * @param name the name of the metric
+     * @return the name to record the sample under
+     */
+    String admit(final String name) {
+        return admit(name, 1);
+    }
+
+    /**
+     * Admit samples of a metric.
+     *
+     * @param name the name of the metric
+     * @param samples the number of samples
+     * @return the name to record the samples under
+     */
+    String admit(final String name, final int samples) {
+        countSamples(samples);
+        if (_cardinalityLimiter == null) {
+            return name;
+        }
+        return _cardinalityLimiter.admit(name);
+    }
+
+    /**
+     * Admit a sample of a metric with dimensions.
+     *
+     * @param key the key of the metric
+     * @return the key to record the sample under
+     */
+    MetricKey admit(final MetricKey key) {
+        return admit(key, 1);
+    }
+
+    /**
+     * Admit samples of a metric with dimensions.
+     *
+     * @param key the key of the metric
+     * @param samples the number of samples
+     * @return the key to record the samples under
+     */
+    MetricKey admit(final MetricKey key, final int samples) {
+        countSamples(samples);
+        if (_cardinalityLimiter == null) {
+            return key;
+        }
+        return _cardinalityLimiter.admit(key);
+    }
+
+    /**
+     * Admit the samples of a batch and record them.
+     *
+     * @param batch the batch
+     */
+    void record(final SampleBatch batch) {
+        countSamples(batch.size());
+        if (_cardinalityLimiter != null) {
+            batch.rename(_cardinalityLimiter::admit, _cardinalityLimiter::admit);
+        }
+        _recorder.record(batch);
+    }
+
+    @Override
+    public void recordTimer(final String name, final long duration, @Nullable final TimeUnit unit) {
+        _recorder.recordTimer(admit(name), duration, unit);
+    }
+
+    @Override
+    public void recordGauge(final String name, final double value) {
+        _recorder.recordGauge(admit(name), value);
+    }
+
+    @Override
+    public void recordGauge(final String name, final long value) {
+        _recorder.recordGauge(admit(name), value);
+    }
+
+    private void countSamples(final int samples) {
+        if (_instrumentation != null) {
+            _instrumentation.sample(samples);
+        }
+    }
+
+    private final PeriodRecorder _recorder;
+    @Nullable
+    private final CardinalityLimiter _cardinalityLimiter;
+    @Nullable
+    private final SelfInstrumentation _instrumentation;
+}
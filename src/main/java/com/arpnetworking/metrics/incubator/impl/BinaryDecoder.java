@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Reads the primitives written by {@link BinaryEncoder} from the position of
+ * a {@link ByteBuffer}, advancing it. Malformed input fails with an
+ * {@link IllegalArgumentException} or a {@link java.nio.BufferUnderflowException}.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class BinaryDecoder {
+
+    static int getByte(final ByteBuffer buffer) {
+        return buffer.get() & 0xff;
+    }
+
+    static long getVarLong(final ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            final int next = buffer.get();
+            value |= (long) (next & SEVEN_BITS) << shift;
+            if ((next & CONTINUATION) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable length integer");
+    }
+
+    static int getVarInt(final ByteBuffer buffer) {
+        final long value = getVarLong(buffer);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("Length out of range; length=%d", value));
+        }
+        return (int) value;
+    }
+
+    static long getZigZag(final ByteBuffer buffer) {
+        final long value = getVarLong(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static int getInt(final ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += Byte.SIZE) {
+            value |= (buffer.get() & 0xff) << shift;
+        }
+        return value;
+    }
+
+    static long getLong(final ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += Byte.SIZE) {
+            value |= (buffer.get() & 0xffL) << shift;
+        }
+        return value;
+    }
+
+    static double getDouble(final ByteBuffer buffer) {
+        return Double.longBitsToDouble(getLong(buffer));
+    }
+
+    static Instant getInstant(final ByteBuffer buffer) {
+        return Instant.ofEpochSecond(getZigZag(buffer), getVarLong(buffer));
+    }
+
+    static String getString(final ByteBuffer buffer) {
+        final int length = getVarInt(buffer);
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException(String.format("String exceeds buffer; length=%d", length));
+        }
+        final ByteBuffer bytes = buffer.slice();
+        bytes.limit(length);
+        buffer.position(buffer.position() + length);
+        return StandardCharsets.UTF_8.decode(bytes).toString();
+    }
+
+    private BinaryDecoder() { }
+
+    private static final int SEVEN_BITS = 0x7f;
+    private static final int CONTINUATION = 0x80;
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * A growable buffer that encodes primitives compactly: integers as unsigned
+ * LEB128 variable length quantities, optionally zig-zag encoded so that small
+ * negative values stay small, floating point values as eight little endian
+ * bytes, strings as their UTF-8 length followed by their bytes and instants
+ * as their zig-zag epoch second followed by their nanosecond. The buffer is
+ * reused between encodings with {@link #reset()}. Values are read back with
+ * {@link BinaryDecoder}. Not thread safe.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class BinaryEncoder {
+
+    BinaryEncoder() {
+        this(INITIAL_CAPACITY);
+    }
+
+    BinaryEncoder(final int initialCapacity) {
+        _bytes = new byte[initialCapacity];
+    }
+
+    void putByte(final int value) {
+        ensure(1);
+        _bytes[_size++] = (byte) value;
+    }
+
+    void putVarLong(final long value) {
+        ensure(MAXIMUM_VARLONG_BYTES);
+        long remaining = value;
+        while ((remaining & ~SEVEN_BITS) != 0) {
+            _bytes[_size++] = (byte) ((remaining & SEVEN_BITS) | CONTINUATION);
+            remaining >>>= 7;
+        }
+        _bytes[_size++] = (byte) remaining;
+    }
+
+    void putZigZag(final long value) {
+        putVarLong((value << 1) ^ (value >> 63));
+    }
+
+    void putInt(final int value) {
+        ensure(Integer.BYTES);
+        for (int shift = 0; shift < Integer.SIZE; shift += Byte.SIZE) {
+            _bytes[_size++] = (byte) (value >> shift);
+        }
+    }
+
+    void putLong(final long value) {
+        ensure(Long.BYTES);
+        for (int shift = 0; shift < Long.SIZE; shift += Byte.SIZE) {
+            _bytes[_size++] = (byte) (value >>> shift);
+        }
+    }
+
+    void putDouble(final double value) {
+        putLong(Double.doubleToRawLongBits(value));
+    }
+
+    void putInstant(final Instant value) {
+        putZigZag(value.getEpochSecond());
+        putVarLong(value.getNano());
+    }
+
+    void putString(final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarLong(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, _bytes, _size, bytes.length);
+        _size += bytes.length;
+    }
+
+    void append(final BinaryEncoder other) {
+        ensure(other._size);
+        System.arraycopy(other._bytes, 0, _bytes, _size, other._size);
+        _size += other._size;
+    }
+
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Get the encoded bytes. The view is invalidated by further encoding.
+     *
+     * @return a little endian view of the encoded bytes, positioned at the first
+     */
+    ByteBuffer view() {
+        return ByteBuffer.wrap(_bytes, 0, _size).slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    void reset() {
+        _size = 0;
+    }
+
+    private void ensure(final int bytes) {
+        if (_size + bytes > _bytes.length) {
+            _bytes = Arrays.copyOf(_bytes, Math.max(_bytes.length * 2, _size + bytes));
+        }
+    }
+
+    private byte[] _bytes;
+    private int _size;
+
+    private static final int INITIAL_CAPACITY = 4096;
+    private static final int MAXIMUM_VARLONG_BYTES = 10;
+    private static final long SEVEN_BITS = 0x7f;
+    private static final int CONTINUATION = 0x80;
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.incubator.MetricKey;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the number of distinct metrics recorded in a period. The first
+ * metrics recorded in a period up to the limit are admitted; samples of
+ * further metrics are recorded under the overflow metric instead. The number
+ * of samples diverted is recorded as the counter
+ * {@code periodic_metrics/cardinality/dropped} and the number of distinct
+ * metrics diverted, estimated with a {@link HyperLogLog} so that they are
+ * never stored, as the gauge {@code periodic_metrics/cardinality/dropped_metrics}.
+ *
+ * NOTE: The limit may be exceeded by metrics first recorded concurrently
+ * while the limit is reached, or while the period is rotated, since such
+ * metrics may be counted against either period.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class CardinalityLimiter {
+
+    /**
+     * Package private constructor.
+     *
+     * @param limit the maximum number of distinct metrics per period
+     */
+    CardinalityLimiter(final int limit) {
+        _limit = limit;
+    }
+
+    /**
+     * Admit a metric into the current period.
+     *
+     * @param name the name of the metric
+     * @return the name if admitted; otherwise the name of the overflow metric
+     */
+    String admit(final String name) {
+        if (_window.get().admit(name, _limit)) {
+            return name;
+        }
+        return OVERFLOW_METRIC;
+    }
+
+    /**
+     * Admit a metric into the current period.
+     *
+     * @param key the key of the metric
+     * @return the key if admitted; otherwise the key of the overflow metric
+     */
+    MetricKey admit(final MetricKey key) {
+        if (_window.get().admit(key, _limit)) {
+            return key;
+        }
+        return OVERFLOW_KEY;
+    }
+
+    /**
+     * Start counting metrics against the next period and record how many
+     * samples and metrics were diverted in the completed one.
+     *
+     * @param completed the completed period
+     */
+    void rotate(final CompletedPeriod completed) {
+        final Window window = _window.getAndSet(new Window());
+        completed.recordCounter(DROPPED_METRIC, window._dropped.sum());
+        completed.recordGauge(DROPPED_METRICS_METRIC, (double) window._droppedMetrics.estimate());
+    }
+
+    private final int _limit;
+    private final AtomicReference<Window> _window = new AtomicReference<>(new Window());
+
+    static final String OVERFLOW_METRIC = "periodic_metrics/cardinality/overflow";
+    static final String DROPPED_METRIC = "periodic_metrics/cardinality/dropped";
+    static final String DROPPED_METRICS_METRIC = "periodic_metrics/cardinality/dropped_metrics";
+    private static final MetricKey OVERFLOW_KEY = MetricKey.of(OVERFLOW_METRIC);
+
+    private static final class Window {
+        private boolean admit(final Object metric, final int limit) {
+            if (_admitted.contains(metric)) {
+                return true;
+            }
+            if (_admitted.size() < limit) {
+                _admitted.add(metric);
+                return true;
+            }
+            _dropped.increment();
+            _droppedMetrics.offer(metric.hashCode());
+            return false;
+        }
+
+        private final Set<Object> _admitted = ConcurrentHashMap.newKeySet();
+        private final LongAdder _dropped = new LongAdder();
+        private final HyperLogLog _droppedMetrics = new HyperLogLog();
+    }
+}
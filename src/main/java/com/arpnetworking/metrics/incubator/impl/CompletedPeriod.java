@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.incubator.Dimensions;
+
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * A period that has been rotated out and no longer receives samples from
+ * recording threads. The samples of the period may still be held outside its
+ * {@link Metrics} instance until it is flushed, which allows flushing to be
+ * deferred to another thread and pending periods to be merged.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+interface CompletedPeriod {
+
+    /**
+     * Record a counter sample in the period.
+     *
+     * @param name The name of the counter.
+     * @param value The value of the counter.
+     */
+    void recordCounter(String name, long value);
+
+    /**
+     * Record timer samples in the period. The samples are copied out of the
+     * buffer, which the caller may reset and refill afterwards.
+     *
+     * @param name The name of the timer.
+     * @param durations The durations of the timer; must not be written to concurrently.
+     * @param unit The time unit of the timer; null if unitless.
+     */
+    void recordTimers(String name, SampleBuffer durations, @Nullable TimeUnit unit);
+
+    /**
+     * Record a gauge sample in the period.
+     *
+     * @param name The name of the gauge.
+     * @param value The reading on the gauge
+     */
+    void recordGauge(String name, double value);
+
+    /**
+     * Record a gauge sample in the period.
+     *
+     * @param name The name of the gauge.
+     * @param value The reading on the gauge
+     */
+    void recordGauge(String name, long value);
+
+    /**
+     * Get the period holding the samples with the specified dimensions. The
+     * returned period is flushed, merged and discarded with this one and must
+     * only be used to record samples.
+     *
+     * @param dimensions The dimensions; must not be empty.
+     * @return The period of the dimensions.
+     */
+    CompletedPeriod dimension(Dimensions dimensions);
+
+    /**
+     * Merge the samples of a later period into this one. The later period
+     * must then be discarded instead of flushed.
+     *
+     * @param later The later period.
+     * @return True if the samples were merged; false if this period does not support merging.
+     */
+    boolean mergeFrom(CompletedPeriod later);
+
+    /**
+     * Write the samples of the period into its {@link Metrics} instance and
+     * close it.
+     */
+    void flush();
+
+    /**
+     * Drop the samples of the period without writing them to the sinks and
+     * release what the period holds. The period must not be flushed after.
+     */
+    void discard();
+}
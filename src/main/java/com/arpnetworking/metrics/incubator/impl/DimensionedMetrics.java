@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.incubator.Dimensions;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * The {@link Metrics} instances of a single period: one for samples without
+ * dimensions and one per set of {@link Dimensions}, annotated with the
+ * dimensions and created on first use.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class DimensionedMetrics {
+
+    /**
+     * Package private constructor.
+     *
+     * @param metrics the {@link Metrics} instance of samples without dimensions
+     * @param metricsFactory the factory of the {@link Metrics} instances of dimensioned samples
+     */
+    DimensionedMetrics(final Metrics metrics, final MetricsFactory metricsFactory) {
+        _metrics = metrics;
+        _metricsFactory = metricsFactory;
+        _createDimension = this::createDimension;
+    }
+
+    /**
+     * Get the {@link Metrics} instance of samples without dimensions.
+     *
+     * @return the {@link Metrics} instance
+     */
+    Metrics get() {
+        return _metrics;
+    }
+
+    /**
+     * Get the {@link Metrics} instance of samples with the specified dimensions.
+     *
+     * @param dimensions the dimensions
+     * @return the {@link Metrics} instance
+     */
+    Metrics get(final Dimensions dimensions) {
+        if (dimensions.isEmpty()) {
+            return _metrics;
+        }
+        // NOTE: Plain get avoids locking the bin in the common case where the dimensions were already used
+        final Metrics metrics = _dimensions.get(dimensions);
+        if (metrics != null) {
+            return metrics;
+        }
+        return _dimensions.computeIfAbsent(dimensions, _createDimension);
+    }
+
+    /**
+     * Close every {@link Metrics} instance.
+     */
+    void close() {
+        _metrics.close();
+        _dimensions.values().forEach(Metrics::close);
+    }
+
+    private Metrics createDimension(final Dimensions dimensions) {
+        final Metrics metrics = _metricsFactory.create();
+        metrics.addAnnotations(dimensions.getTags());
+        return metrics;
+    }
+
+    private final Metrics _metrics;
+    private final MetricsFactory _metricsFactory;
+    private final Function<Dimensions, Metrics> _createDimension;
+    private final ConcurrentMap<Dimensions, Metrics> _dimensions = new ConcurrentHashMap<>();
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link LockedReference} in the style of read-copy-update. Each value is
+ * published in its own epoch and readers only increment and decrement their
+ * thread's stripe of the epoch's {@link InFlightCounter}, so concurrent
+ * readers never write to a shared memory location. Writers are serialized;
+ * replacing the reference publishes a new epoch and then waits for the
+ * readers of the old epoch to leave. For exclusive access a writer publishes
+ * a gate that makes new readers wait for the writer to finish.
+ *
+ * NOTE: Readers wait for writers by acquiring the writer lock, so an action
+ * performed with exclusive access must not perform a shared access of the same
+ * reference.
+ *
+ * @param <T> The type of object protected by the reference.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public final class EpochLockedReference<T> implements LockedReference<T> {
+    /**
+     * Public constructor.
+     *
+     * @param initialValue the initial value of the held reference
+     */
+    public EpochLockedReference(final T initialValue) {
+        this(new AtomicReference<>(new Epoch<>(initialValue, new InFlightCounter())));
+    }
+
+    // NOTE: Package private for testing
+    /* package private */ EpochLockedReference(final AtomicReference<Epoch<T>> current) {
+        _current = current;
+    }
+
+    @Override
+    public void readLocked(final Consumer<T> method) {
+        final int stripe = ThreadStripes.index();
+        final Epoch<T> epoch = enter(stripe);
+        try {
+            method.accept(epoch._value);
+        } finally {
+            epoch._inFlight.exit(stripe);
+        }
+    }
+
+    @Override
+    public void writeLocked(final Consumer<T> method) {
+        _writer.lock();
+        try {
+            final Epoch<T> epoch = _current.getAndSet(_gate);
+            epoch._inFlight.awaitQuiescence();
+            try {
+                method.accept(epoch._value);
+            } finally {
+                _current.set(new Epoch<>(epoch._value, new InFlightCounter()));
+            }
+        } finally {
+            _writer.unlock();
+        }
+    }
+
+    @Override
+    public T getAndSetReference(final T newValue) {
+        _writer.lock();
+        try {
+            final Epoch<T> epoch = _current.getAndSet(new Epoch<>(newValue, new InFlightCounter()));
+            epoch._inFlight.awaitQuiescence();
+            return epoch._value;
+        } finally {
+            _writer.unlock();
+        }
+    }
+
+    private Epoch<T> enter(final int stripe) {
+        while (true) {
+            final Epoch<T> epoch = _current.get();
+            if (epoch == _gate) {
+                // NOTE: A writer holds exclusive access; wait for it to publish the next epoch
+                _writer.lock();
+                _writer.unlock();
+                continue;
+            }
+            epoch._inFlight.enter(stripe);
+            // NOTE: Entering and then re-reading the current epoch guarantees that either this reader
+            // observes the new epoch and moves on, or the writer observes this reader as in flight.
+            if (_current.get() == epoch) {
+                return epoch;
+            }
+            epoch._inFlight.exit(stripe);
+        }
+    }
+
+    private final AtomicReference<Epoch<T>> _current;
+    private final Lock _writer = new ReentrantLock();
+    // NOTE: Readers never enter the gate so its in-flight counter is never used
+    private final Epoch<T> _gate = new Epoch<>(null, new InFlightCounter());
+
+    // NOTE: Package private for testing
+    /* package private */ static final class Epoch<T> {
+        /* package private */ Epoch(@Nullable final T value, final InFlightCounter inFlight) {
+            _value = value;
+            _inFlight = inFlight;
+        }
+
+        @Nullable
+        private final T _value;
+        private final InFlightCounter _inFlight;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+/**
+ * A {@link RateSampler} that keeps samples at a fixed rate.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class FixedRateSampler extends RateSampler {
+
+    /**
+     * Package private constructor.
+     *
+     * @param rate the rate, greater than zero and at most one
+     */
+    FixedRateSampler(final double rate) {
+        super(rate);
+    }
+
+    @Override
+    double nextRate(final double rate, final long kept) {
+        return rate;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.incubator.PeriodicCounter;
+
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Flushes completed periods on a dedicated thread so that slow sinks do not
+ * delay the rotation of periods. Completed periods wait in a bounded queue;
+ * when the queue is full the {@link TsdPeriodicMetrics.FlushOverflowPolicy}
+ * decides whether to discard the oldest pending period, to merge the
+ * completed period into the newest pending one or to wait for space. Base
+ * and rollup periods share the queue and a period is only merged into a
+ * pending period of the same resolution. Discarded periods release their
+ * memory and are counted.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class FlushStage implements AutoCloseable {
+
+    /**
+     * Package private constructor.
+     *
+     * @param capacity the number of completed periods that may wait to be flushed
+     * @param policy the policy applied when the queue is full
+     * @param overflows the counter of submissions that found the queue full
+     * @param drops the counter of periods discarded without being flushed
+     * @param flush flushes a completed period of a resolution
+     * @param executor the single threaded executor to flush on; owned by this stage
+     */
+    FlushStage(
+            final int capacity,
+            final TsdPeriodicMetrics.FlushOverflowPolicy policy,
+            final PeriodicCounter overflows,
+            final PeriodicCounter drops,
+            final ObjIntConsumer<CompletedPeriod> flush,
+            final ExecutorService executor) {
+        this(new LinkedBlockingDeque<>(capacity), policy, overflows, drops, flush, executor);
+    }
+
+    // NOTE: Package private for testing
+    /* package private */ FlushStage(
+            final BlockingDeque<Pending> queue,
+            final TsdPeriodicMetrics.FlushOverflowPolicy policy,
+            final PeriodicCounter overflows,
+            final PeriodicCounter drops,
+            final ObjIntConsumer<CompletedPeriod> flush,
+            final ExecutorService executor) {
+        _queue = queue;
+        _policy = policy;
+        _overflows = overflows;
+        _drops = drops;
+        _flush = flush;
+        _executor = executor;
+    }
+
+    /**
+     * Hand a completed period to the flush thread. Must only be called by one
+     * thread at a time.
+     *
+     * @param period the completed period
+     * @param periods the resolution of the period as its number of base periods
+     */
+    void submit(final CompletedPeriod period, final int periods) {
+        final Pending pending = new Pending(period, periods);
+        if (!_queue.offerLast(pending)) {
+            _overflows.add(1);
+            overflow(pending);
+        }
+        _executor.execute(_flushNext);
+    }
+
+    /**
+     * Flush every pending period and stop the flush thread.
+     */
+    @Override
+    public void close() {
+        _executor.shutdown();
+        try {
+            _executor.awaitTermination(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Pending pending = _queue.pollFirst(); pending != null; pending = _queue.pollFirst()) {
+            _flush.accept(pending._period, pending._periods);
+        }
+    }
+
+    private void overflow(final Pending pending) {
+        if (_policy == TsdPeriodicMetrics.FlushOverflowPolicy.DROP_OLDEST) {
+            // NOTE: The oldest period is discarded without being written to the sinks
+            final Pending oldest = _queue.pollFirst();
+            if (oldest != null) {
+                oldest._period.discard();
+                _drops.add(1);
+            }
+        } else if (_policy == TsdPeriodicMetrics.FlushOverflowPolicy.MERGE) {
+            // NOTE: Removing the newest period keeps the flush thread from taking it while merging
+            final Pending newest = _queue.pollLast();
+            if (newest != null) {
+                final boolean merged = newest._periods == pending._periods && newest._period.mergeFrom(pending._period);
+                put(newest);
+                if (merged) {
+                    return;
+                }
+            }
+        }
+        put(pending);
+    }
+
+    private void put(final Pending pending) {
+        try {
+            _queue.putLast(pending);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            _flush.accept(pending._period, pending._periods);
+        }
+    }
+
+    private void flushNext() {
+        final Pending pending = _queue.pollFirst();
+        if (pending != null) {
+            _flush.accept(pending._period, pending._periods);
+        }
+    }
+
+    private final BlockingDeque<Pending> _queue;
+    private final TsdPeriodicMetrics.FlushOverflowPolicy _policy;
+    private final PeriodicCounter _overflows;
+    private final PeriodicCounter _drops;
+    private final ObjIntConsumer<CompletedPeriod> _flush;
+    private final ExecutorService _executor;
+    private final Runnable _flushNext = this::flushNext;
+
+    private static final long TERMINATION_TIMEOUT_SECONDS = 60;
+
+    /**
+     * A completed period waiting to be flushed and its resolution.
+     */
+    static final class Pending {
+        private Pending(final CompletedPeriod period, final int periods) {
+            _period = period;
+            _periods = periods;
+        }
+
+        private final CompletedPeriod _period;
+        private final int _periods;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A lock-free HyperLogLog estimator of the number of distinct values
+ * offered to it. The memory used is fixed at {@link #REGISTERS} registers
+ * regardless of the number of values and the typical relative error of the
+ * estimate is about three percent.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class HyperLogLog {
+
+    /**
+     * Offer a value by its hash code.
+     *
+     * @param hashCode the hash code of the value
+     */
+    void offer(final int hashCode) {
+        final long hash = mix(hashCode);
+        final int register = (int) (hash >>> (Long.SIZE - PRECISION));
+        // NOTE: The sentinel bit bounds the rank when the remaining bits are all zero
+        final int rank = Long.numberOfLeadingZeros((hash << PRECISION) | SENTINEL) + 1;
+        if (rank > _registers.get(register)) {
+            _registers.accumulateAndGet(register, rank, Math::max);
+        }
+    }
+
+    /**
+     * Estimate the number of distinct values offered.
+     *
+     * @return the estimated number of distinct values
+     */
+    long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (int register = 0; register < REGISTERS; ++register) {
+            final int rank = _registers.get(register);
+            sum += Math.scalb(1.0, -rank);
+            if (rank == 0) {
+                ++zeros;
+            }
+        }
+        final double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= SMALL_RANGE_LIMIT && zeros > 0) {
+            // NOTE: Linear counting is more accurate while many registers are still empty
+            return Math.round(REGISTERS * Math.log((double) REGISTERS / zeros));
+        }
+        return Math.round(estimate);
+    }
+
+    // NOTE: Package private for testing
+    /* package private */ static long mix(final int hashCode) {
+        // NOTE: The finalizer of MurmurHash3 spreads the bits of the hash code over the whole long
+        long hash = hashCode * 0x9e3779b97f4a7c15L;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private final AtomicIntegerArray _registers = new AtomicIntegerArray(REGISTERS);
+
+    static final int PRECISION = 10;
+    static final int REGISTERS = 1 << PRECISION;
+    private static final long SENTINEL = 1L << (PRECISION - 1);
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+    private static final double SMALL_RANGE_LIMIT = 2.5 * REGISTERS;
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks the number of threads currently operating on a shared structure.
+ * Each thread increments and decrements its own cache-line padded stripe so
+ * that entering and exiting never contend on a single memory location and
+ * never block. A single retiring thread may wait for all stripes to drain.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class InFlightCounter {
+
+    /**
+     * Marks the calling thread as in flight.
+     *
+     * @param stripe the stripe of the calling thread from {@link ThreadStripes#index()}
+     */
+    void enter(final int stripe) {
+        _counts.getAndIncrement(offset(stripe));
+    }
+
+    /**
+     * Marks the calling thread as no longer in flight.
+     *
+     * @param stripe the stripe passed to {@link #enter(int)}
+     */
+    void exit(final int stripe) {
+        _counts.getAndDecrement(offset(stripe));
+    }
+
+    /**
+     * Determines whether any thread is in flight.
+     *
+     * @return true if no thread is in flight
+     */
+    boolean isQuiescent() {
+        for (int stripe = 0; stripe < ThreadStripes.COUNT; ++stripe) {
+            if (_counts.get(offset(stripe)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Waits until no thread is in flight. Spins briefly before yielding.
+     */
+    void awaitQuiescence() {
+        int spins = 0;
+        while (!isQuiescent()) {
+            if (spins < SPIN_LIMIT) {
+                ++spins;
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    private static int offset(final int stripe) {
+        return (stripe + 1) * PADDING;
+    }
+
+    private final AtomicLongArray _counts = new AtomicLongArray((ThreadStripes.COUNT + 2) * PADDING);
+
+    // NOTE: Sixteen longs keeps each stripe on its own 128 byte region to avoid false sharing
+    private static final int PADDING = 16;
+    private static final int SPIN_LIMIT = 1000;
+}
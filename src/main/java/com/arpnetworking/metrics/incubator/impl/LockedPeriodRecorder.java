@@ -0,0 +1,191 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.incubator.Dimensions;
+import com.arpnetworking.metrics.incubator.MetricKey;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link PeriodRecorder} that writes every sample directly into the
+ * current {@link Metrics} instance, or the instance of its dimensions, while
+ * holding shared access to a {@link LockedReference}.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class LockedPeriodRecorder implements PeriodRecorder {
+
+    /**
+     * Package private constructor.
+     *
+     * @param currentPeriodicMetrics the reference holding the {@link Metrics} instances for the first period
+     * @param metricsFactory the factory of the {@link Metrics} instances of dimensioned samples
+     * @param lockWait receives the nanoseconds each recording waited for shared access, if measured
+     */
+    LockedPeriodRecorder(
+            final LockedReference<DimensionedMetrics> currentPeriodicMetrics,
+            final MetricsFactory metricsFactory,
+            @Nullable final LongConsumer lockWait) {
+        _currentPeriodicMetrics = currentPeriodicMetrics;
+        _metricsFactory = metricsFactory;
+        _lockWait = lockWait;
+    }
+
+    @Override
+    public void recordCounter(final String name, final long value) {
+        readLocked(m -> m.get().createCounter(name).increment(value));
+    }
+
+    @Override
+    public void recordTimer(final String name, final long duration, @Nullable final TimeUnit unit) {
+        readLocked(m -> m.get().setTimer(name, duration, unit));
+    }
+
+    @Override
+    public void recordTimers(final String name, final long[] durations, @Nullable final TimeUnit unit) {
+        readLocked(m -> {
+            final Metrics metrics = m.get();
+            for (final long duration : durations) {
+                metrics.setTimer(name, duration, unit);
+            }
+        });
+    }
+
+    @Override
+    public void recordTimers(final MetricKey key, final long[] durations, @Nullable final TimeUnit unit) {
+        readLocked(m -> {
+            final Metrics metrics = m.get(key.getDimensions());
+            for (final long duration : durations) {
+                metrics.setTimer(key.getName(), duration, unit);
+            }
+        });
+    }
+
+    @Override
+    public void record(final SampleBatch batch) {
+        readLocked(batch::writeTo);
+    }
+
+    @Override
+    public void recordGauge(final String name, final double value) {
+        readLocked(m -> m.get().setGauge(name, value));
+    }
+
+    @Override
+    public void recordGauge(final String name, final long value) {
+        readLocked(m -> m.get().setGauge(name, value));
+    }
+
+    @Override
+    public void recordCounter(final MetricKey key, final long value) {
+        readLocked(m -> m.get(key.getDimensions()).createCounter(key.getName()).increment(value));
+    }
+
+    @Override
+    public void recordTimer(final MetricKey key, final long duration, @Nullable final TimeUnit unit) {
+        readLocked(m -> m.get(key.getDimensions()).setTimer(key.getName(), duration, unit));
+    }
+
+    @Override
+    public void recordGauge(final MetricKey key, final double value) {
+        readLocked(m -> m.get(key.getDimensions()).setGauge(key.getName(), value));
+    }
+
+    @Override
+    public void recordGauge(final MetricKey key, final long value) {
+        readLocked(m -> m.get(key.getDimensions()).setGauge(key.getName(), value));
+    }
+
+    @Override
+    public CompletedPeriod rotate(final Metrics next) {
+        final DimensionedMetrics completed = _currentPeriodicMetrics.getAndSetReference(new DimensionedMetrics(next, _metricsFactory));
+        return new CompletedMetrics(completed, completed.get());
+    }
+
+    private void readLocked(final Consumer<DimensionedMetrics> action) {
+        if (_lockWait == null) {
+            _currentPeriodicMetrics.readLocked(action);
+            return;
+        }
+        final long start = System.nanoTime();
+        _currentPeriodicMetrics.readLocked(m -> {
+            _lockWait.accept(System.nanoTime() - start);
+            action.accept(m);
+        });
+    }
+
+    private final LockedReference<DimensionedMetrics> _currentPeriodicMetrics;
+    private final MetricsFactory _metricsFactory;
+    @Nullable
+    private final LongConsumer _lockWait;
+
+    private static final class CompletedMetrics implements CompletedPeriod {
+        private CompletedMetrics(final DimensionedMetrics metrics, final Metrics target) {
+            _metrics = metrics;
+            _target = target;
+        }
+
+        @Override
+        public void recordCounter(final String name, final long value) {
+            _target.createCounter(name).increment(value);
+        }
+
+        @Override
+        public void recordTimers(final String name, final SampleBuffer durations, @Nullable final TimeUnit unit) {
+            durations.forEach(duration -> _target.setTimer(name, duration, unit));
+        }
+
+        @Override
+        public void recordGauge(final String name, final double value) {
+            _target.setGauge(name, value);
+        }
+
+        @Override
+        public void recordGauge(final String name, final long value) {
+            _target.setGauge(name, value);
+        }
+
+        @Override
+        public CompletedPeriod dimension(final Dimensions dimensions) {
+            return new CompletedMetrics(_metrics, _metrics.get(dimensions));
+        }
+
+        @Override
+        public boolean mergeFrom(final CompletedPeriod later) {
+            // NOTE: Samples are already written into the Metrics instance, which cannot be merged
+            return false;
+        }
+
+        @Override
+        public void flush() {
+            _metrics.close();
+        }
+
+        @Override
+        public void discard() {
+            // NOTE: Samples are already written into the Metrics instance, so closing it would record them
+        }
+
+        private final DimensionedMetrics _metrics;
+        private final Metrics _target;
+    }
+}
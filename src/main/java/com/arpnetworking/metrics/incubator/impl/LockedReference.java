@@ -0,0 +1,52 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import java.util.function.Consumer;
+
+/**
+ * A reference whose holder may be used by many readers at once and is
+ * replaced by writers once no reader is still using the previous holder.
+ * Implementations trade the cost of reading against the cost of writing.
+ *
+ * @param <T> The type of object protected by the reference.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public interface LockedReference<T> {
+    /**
+     * Perform an action with shared access to the held reference.
+     *
+     * @param method The action to perform
+     */
+    void readLocked(Consumer<T> method);
+
+    /**
+     * Perform an action with exclusive access to the held reference.
+     *
+     * @param method The action to perform
+     */
+    void writeLocked(Consumer<T> method);
+
+    /**
+     * Replaces the held reference. Once this returns no reader is using the
+     * old reference.
+     *
+     * @param newValue the new reference
+     * @return the old reference
+     */
+    T getAndSetReference(T newValue);
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.AggregatedData;
+import com.arpnetworking.metrics.impl.AugmentedHistogram;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * A lock-free, bounded and mergeable log-linear histogram. Each sample is
+ * assigned to the bucket obtained by truncating its IEEE 754 representation
+ * to the configured number of mantissa bits; this is the same bucketing used
+ * by {@link AugmentedHistogram}. Buckets sharing a sign and exponent are
+ * stored together in a group of primitive counters and at most
+ * {@link #MAXIMUM_GROUPS} groups are kept, bounding the memory of the
+ * histogram regardless of the number of samples. Samples that would require
+ * another group are counted as dropped.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class LogLinearHistogram {
+
+    /**
+     * Package private constructor.
+     *
+     * @param precision the number of mantissa bits kept per bucket
+     */
+    LogLinearHistogram(final int precision) {
+        Preconditions.checkArgument(
+                precision >= MINIMUM_PRECISION && precision <= MAXIMUM_PRECISION,
+                "Precision must be between %s and %s; precision=%s",
+                MINIMUM_PRECISION,
+                MAXIMUM_PRECISION,
+                precision);
+        _precision = precision;
+        _shift = MANTISSA_BITS - precision;
+        _bucketMask = (1 << precision) - 1;
+    }
+
+    /**
+     * Record a sample.
+     *
+     * @param value the sample
+     */
+    void record(final double value) {
+        record(value, 1);
+    }
+
+    /**
+     * Record a sample that represents a number of occurrences.
+     *
+     * @param value the sample
+     * @param count the number of occurrences
+     */
+    void record(final double value, final long count) {
+        if (Double.isNaN(value)) {
+            _dropped.add(count);
+            return;
+        }
+        final long bits = Double.doubleToLongBits(value);
+        if (add((int) (bits >>> MANTISSA_BITS), (int) (bits >>> _shift) & _bucketMask, count)) {
+            _count.add(count);
+            _sum.add(value * count);
+            _min.accumulateAndGet(bits, MIN);
+            _max.accumulateAndGet(bits, MAX);
+        }
+    }
+
+    /**
+     * Add every sample of another histogram to this one.
+     *
+     * @param other the histogram to merge; must have the same precision
+     */
+    void merge(final LogLinearHistogram other) {
+        Preconditions.checkArgument(
+                other._precision == _precision,
+                "Cannot merge histograms of different precision; precision=%s, other=%s",
+                _precision,
+                other._precision);
+        final long[] merged = new long[1];
+        other.forEachBucket((bucket, count) -> {
+            final long bits = Double.doubleToLongBits(bucket);
+            if (add((int) (bits >>> MANTISSA_BITS), (int) (bits >>> _shift) & _bucketMask, count)) {
+                merged[0] += count;
+            }
+        });
+        _count.add(merged[0]);
+        _dropped.add(other.getDropped());
+        _sum.add(other.getSum());
+        _min.accumulateAndGet(other._min.get(), MIN);
+        _max.accumulateAndGet(other._max.get(), MAX);
+    }
+
+    /**
+     * Add samples to a bucket without updating the sum, minimum and maximum,
+     * which are restored with {@link #restoreStatistics(long, double, double, double)}.
+     * Used to rebuild a histogram visited with {@link #forEachBucket(BucketConsumer)}.
+     *
+     * @param bucket the truncated value of the samples in the bucket
+     * @param count the number of samples in the bucket
+     */
+    void restoreBucket(final double bucket, final long count) {
+        final long bits = Double.doubleToLongBits(bucket);
+        if (add((int) (bits >>> MANTISSA_BITS), (int) (bits >>> _shift) & _bucketMask, count)) {
+            _count.add(count);
+        }
+    }
+
+    /**
+     * Restore the statistics of a histogram rebuilt with {@link #restoreBucket(double, long)}.
+     *
+     * @param dropped the number of dropped samples
+     * @param sum the sum of the samples
+     * @param min the minimum sample
+     * @param max the maximum sample
+     */
+    void restoreStatistics(final long dropped, final double sum, final double min, final double max) {
+        _dropped.add(dropped);
+        _sum.add(sum);
+        _min.accumulateAndGet(Double.doubleToLongBits(min), MIN);
+        _max.accumulateAndGet(Double.doubleToLongBits(max), MAX);
+    }
+
+    /**
+     * Visit every non-empty bucket. The bucket is identified by its lower bound
+     * in magnitude, which is the truncated value of the samples in it.
+     *
+     * @param consumer the bucket visitor
+     */
+    void forEachBucket(final BucketConsumer consumer) {
+        for (int slot = 0; slot < MAXIMUM_GROUPS; ++slot) {
+            final Group group = _groups.get(slot);
+            if (group != null) {
+                for (int bucket = 0; bucket <= _bucketMask; ++bucket) {
+                    final long count = group._counts.get(bucket);
+                    if (count != 0) {
+                        consumer.accept(
+                                Double.longBitsToDouble(((long) group._key << MANTISSA_BITS) | ((long) bucket << _shift)),
+                                count);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Convert the histogram to {@link AggregatedData} for recording with the
+     * metrics client. The client only accepts histograms with a precision of
+     * {@link #MAXIMUM_PRECISION}; buckets of coarser histograms are exact at
+     * that precision and are exported unchanged.
+     *
+     * @return the histogram as an {@link AugmentedHistogram}
+     */
+    AggregatedData toAggregatedData() {
+        final Map<Double, Long> buckets = Maps.newHashMap();
+        forEachBucket(buckets::put);
+        return new AugmentedHistogram.Builder()
+                .setHistogram(buckets)
+                .setPrecision(MAXIMUM_PRECISION)
+                .setMinimum(getMin())
+                .setMaximum(getMax())
+                .setSum(getSum())
+                .build();
+    }
+
+    int getPrecision() {
+        return _precision;
+    }
+
+    long getCount() {
+        return _count.sum();
+    }
+
+    long getDropped() {
+        return _dropped.sum();
+    }
+
+    double getSum() {
+        return _sum.sum();
+    }
+
+    double getMin() {
+        return Double.longBitsToDouble(_min.get());
+    }
+
+    double getMax() {
+        return Double.longBitsToDouble(_max.get());
+    }
+
+    private boolean add(final int key, final int bucket, final long count) {
+        // NOTE: Groups are placed by key so that neighbouring exponents occupy neighbouring slots and
+        // negative values are offset by half the table from positive values of the same magnitude.
+        final int home = (key + (key >>> EXPONENT_BITS) * (MAXIMUM_GROUPS / 2)) & (MAXIMUM_GROUPS - 1);
+        for (int probe = 0; probe < MAXIMUM_GROUPS; ++probe) {
+            final int slot = (home + probe) & (MAXIMUM_GROUPS - 1);
+            Group group = _groups.get(slot);
+            if (group == null) {
+                _groups.compareAndSet(slot, null, new Group(key, _bucketMask + 1));
+                group = _groups.get(slot);
+            }
+            if (group._key == key) {
+                group._counts.getAndAdd(bucket, count);
+                return true;
+            }
+        }
+        _dropped.add(count);
+        return false;
+    }
+
+    private final int _precision;
+    private final int _shift;
+    private final int _bucketMask;
+    private final AtomicReferenceArray<Group> _groups = new AtomicReferenceArray<>(MAXIMUM_GROUPS);
+    private final LongAdder _count = new LongAdder();
+    private final LongAdder _dropped = new LongAdder();
+    private final DoubleAdder _sum = new DoubleAdder();
+    private final AtomicLong _min = new AtomicLong(Double.doubleToLongBits(Double.POSITIVE_INFINITY));
+    private final AtomicLong _max = new AtomicLong(Double.doubleToLongBits(Double.NEGATIVE_INFINITY));
+
+    static final int DEFAULT_PRECISION = 7;
+    static final int MINIMUM_PRECISION = 1;
+    static final int MAXIMUM_PRECISION = 7;
+    static final int MAXIMUM_GROUPS = 128;
+
+    private static final int MANTISSA_BITS = 52;
+    private static final int EXPONENT_BITS = 11;
+    private static final LongBinaryOperator MIN = (a, b) ->
+            Double.doubleToLongBits(Math.min(Double.longBitsToDouble(a), Double.longBitsToDouble(b)));
+    private static final LongBinaryOperator MAX = (a, b) ->
+            Double.doubleToLongBits(Math.max(Double.longBitsToDouble(a), Double.longBitsToDouble(b)));
+
+    /**
+     * Visitor of histogram buckets.
+     */
+    interface BucketConsumer {
+        /**
+         * Visit a bucket.
+         *
+         * @param bucket the truncated value of the samples in the bucket
+         * @param count the number of samples in the bucket
+         */
+        void accept(double bucket, long count);
+    }
+
+    private static final class Group {
+        private Group(final int key, final int buckets) {
+            _key = key;
+            _counts = new AtomicLongArray(buckets);
+        }
+
+        private final int _key;
+        private final AtomicLongArray _counts;
+    }
+}
@@ -0,0 +1,564 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.impl.TsdMetrics;
+import com.arpnetworking.metrics.incubator.Dimensions;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.Function;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+
+/**
+ * The lock-free accumulated samples of a single period. Counters are summed
+ * in {@link LongAdder} instances and timer and gauge samples are appended to
+ * {@link SampleBuffer} instances, or aggregated into {@link LogLinearHistogram}
+ * instances when enabled by the {@link AccumulatorSettings}. Timer histograms
+ * hold seconds, the unit the metrics client reports timers in, and timers
+ * recorded without a unit are always buffered. Histograms of both kinds are
+ * recorded as aggregated data keyed by name alone, so the kind recorded first
+ * under a name owns it for the period and histogram samples of the other kind
+ * with that name are discarded. The buffers store samples in the
+ * {@link SampleArena} of the settings, if any, and return its memory once the
+ * period has been flushed or merged. Writers bracket their updates with
+ * {@link #enter(int)} and {@link #exit(int)} so that the period can be drained
+ * into its {@link Metrics} instance only once every writer has left. Samples
+ * recorded with {@link Dimensions} are accumulated in a child accumulator per
+ * set of dimensions that shares the in-flight counter of its parent and drains
+ * into its own {@link Metrics} instance annotated with the dimensions.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class PeriodAccumulator implements CompletedPeriod {
+
+    /**
+     * Package private constructor.
+     *
+     * @param metrics the {@link Metrics} instance this period drains into
+     * @param metricsFactory the factory of the {@link Metrics} instances of dimensioned samples
+     * @param settings the accumulation settings
+     */
+    PeriodAccumulator(final Metrics metrics, final MetricsFactory metricsFactory, final AccumulatorSettings settings) {
+        this(metrics, metricsFactory, settings, new InFlightCounter());
+    }
+
+    private PeriodAccumulator(
+            final Metrics metrics,
+            final MetricsFactory metricsFactory,
+            final AccumulatorSettings settings,
+            final InFlightCounter inFlight) {
+        _metrics = metrics;
+        _metricsFactory = metricsFactory;
+        _settings = settings;
+        _inFlight = inFlight;
+        _createHistogram = this::createHistogram;
+        _createBuffer = name -> new SampleBuffer(settings.getSampleArena());
+        _createDimension = this::createDimension;
+    }
+
+    void enter(final int stripe) {
+        _inFlight.enter(stripe);
+    }
+
+    void exit(final int stripe) {
+        _inFlight.exit(stripe);
+    }
+
+    void awaitQuiescence() {
+        _inFlight.awaitQuiescence();
+    }
+
+    /**
+     * Get the time the {@link Metrics} instance of this period was opened.
+     *
+     * @return the open time; null if the instance does not report one
+     */
+    @Nullable
+    Instant getOpenTime() {
+        return _metrics.getOpenTime();
+    }
+
+    /**
+     * Get the accumulator of samples with the specified dimensions. Writers
+     * must have entered this accumulator.
+     *
+     * @param dimensions the dimensions
+     * @return this accumulator if there are no dimensions; otherwise the child accumulator of the dimensions
+     */
+    @Override
+    public PeriodAccumulator dimension(final Dimensions dimensions) {
+        if (dimensions.isEmpty()) {
+            return this;
+        }
+        return getOrCreate(_dimensions, dimensions, _createDimension);
+    }
+
+    @Override
+    public void recordCounter(final String name, final long value) {
+        getOrCreate(_counters, name, CREATE_ADDER).add(value);
+    }
+
+    void recordTimer(final String name, final long duration, @Nullable final TimeUnit unit) {
+        if (unit == null) {
+            // NOTE: Unitless samples are never aggregated since timer histograms hold seconds
+            getOrCreate(_unitlessTimers, name, _createBuffer).add(duration);
+        } else if (_settings.isHistogramTimers()) {
+            final LogLinearHistogram histogram = getOrCreate(_timerHistograms, name, _createHistogram);
+            if (histogram != null) {
+                histogram.record(toSeconds(duration, unit));
+            }
+        } else {
+            getOrCreate(_timers, name, _createBuffer).add(unit.toNanos(duration));
+        }
+    }
+
+    void recordTimers(final String name, final long[] durations, @Nullable final TimeUnit unit) {
+        if (durations.length == 0) {
+            return;
+        }
+        // NOTE: The histogram or buffer is resolved once for all of the samples
+        if (unit == null) {
+            final SampleBuffer buffer = getOrCreate(_unitlessTimers, name, _createBuffer);
+            for (final long duration : durations) {
+                buffer.add(duration);
+            }
+        } else if (_settings.isHistogramTimers()) {
+            final LogLinearHistogram histogram = getOrCreate(_timerHistograms, name, _createHistogram);
+            if (histogram != null) {
+                for (final long duration : durations) {
+                    histogram.record(toSeconds(duration, unit));
+                }
+            }
+        } else {
+            final SampleBuffer buffer = getOrCreate(_timers, name, _createBuffer);
+            for (final long duration : durations) {
+                buffer.add(unit.toNanos(duration));
+            }
+        }
+    }
+
+    @Override
+    public void recordTimers(final String name, final SampleBuffer durations, @Nullable final TimeUnit unit) {
+        if (durations.size() == 0) {
+            return;
+        }
+        if (unit == null) {
+            durations.forEach(getOrCreate(_unitlessTimers, name, _createBuffer)::add);
+        } else if (_settings.isHistogramTimers()) {
+            final LogLinearHistogram histogram = getOrCreate(_timerHistograms, name, _createHistogram);
+            if (histogram != null) {
+                durations.forEach(duration -> histogram.record(toSeconds(duration, unit)));
+            }
+        } else {
+            final SampleBuffer buffer = getOrCreate(_timers, name, _createBuffer);
+            durations.forEach(duration -> buffer.add(unit.toNanos(duration)));
+        }
+    }
+
+    @Override
+    public void recordGauge(final String name, final double value) {
+        if (_settings.isHistogramGauges()) {
+            recordGaugeHistogram(name, value);
+        } else {
+            getOrCreate(_doubleGauges, name, _createBuffer).add(Double.doubleToRawLongBits(value));
+        }
+    }
+
+    @Override
+    public void recordGauge(final String name, final long value) {
+        if (_settings.isHistogramGauges()) {
+            recordGaugeHistogram(name, value);
+        } else {
+            getOrCreate(_longGauges, name, _createBuffer).add(value);
+        }
+    }
+
+    /**
+     * Merge the samples of a later accumulator into this one. Both must be
+     * quiescent.
+     *
+     * @param later the later period
+     * @return true if the later period is an accumulator and was merged
+     */
+    @Override
+    public boolean mergeFrom(final CompletedPeriod later) {
+        if (!(later instanceof PeriodAccumulator)) {
+            return false;
+        }
+        final PeriodAccumulator other = (PeriodAccumulator) later;
+        other._counters.forEach((name, adder) -> getOrCreate(_counters, name, CREATE_ADDER).add(adder.sum()));
+        mergeBuffers(_timers, other._timers);
+        mergeBuffers(_unitlessTimers, other._unitlessTimers);
+        mergeBuffers(_doubleGauges, other._doubleGauges);
+        mergeBuffers(_longGauges, other._longGauges);
+        mergeHistograms(_timerHistograms, other._timerHistograms, ALL);
+        mergeHistograms(_gaugeHistograms, other._gaugeHistograms, ALL);
+        other._dimensions.forEach((dimensions, accumulator) -> dimension(dimensions).mergeFrom(accumulator));
+        return true;
+    }
+
+    /**
+     * Copy the samples of the metrics with matching names from another
+     * accumulator into this one, including those recorded with dimensions.
+     * Both must be quiescent.
+     *
+     * @param from the accumulator to copy from
+     * @param names selects the names of the metrics to copy
+     */
+    void mergeMatching(final PeriodAccumulator from, final Predicate<String> names) {
+        from._counters.forEach((name, adder) -> {
+            if (names.test(name)) {
+                getOrCreate(_counters, name, CREATE_ADDER).add(adder.sum());
+            }
+        });
+        copyBuffers(_timers, from._timers, names);
+        copyBuffers(_unitlessTimers, from._unitlessTimers, names);
+        copyBuffers(_doubleGauges, from._doubleGauges, names);
+        copyBuffers(_longGauges, from._longGauges, names);
+        mergeHistograms(_timerHistograms, from._timerHistograms, names);
+        mergeHistograms(_gaugeHistograms, from._gaugeHistograms, names);
+        from._dimensions.forEach((dimensions, accumulator) -> dimension(dimensions).mergeMatching(accumulator, names));
+    }
+
+    /**
+     * Discard the samples of the metrics with matching names, including those
+     * recorded with dimensions. Must be quiescent.
+     *
+     * @param names selects the names of the metrics to discard
+     */
+    void removeMatching(final Predicate<String> names) {
+        _counters.keySet().removeIf(names);
+        removeBuffers(_timers, names);
+        removeBuffers(_unitlessTimers, names);
+        removeBuffers(_doubleGauges, names);
+        removeBuffers(_longGauges, names);
+        _timerHistograms.keySet().removeIf(names);
+        _gaugeHistograms.keySet().removeIf(names);
+        _histogramNames.removeIf(names);
+        _dimensions.values().forEach(accumulator -> accumulator.removeMatching(names));
+    }
+
+    /**
+     * Replace the samples of each gauge with a single sample combining them,
+     * including those recorded with dimensions. Gauges aggregated into
+     * histograms are not affected. Must be quiescent.
+     *
+     * @param longs combines two integral samples
+     * @param doubles combines two floating point samples
+     */
+    void reduceGauges(final LongBinaryOperator longs, final DoubleBinaryOperator doubles) {
+        _longGauges.replaceAll((name, buffer) -> reduce(buffer, longs));
+        _doubleGauges.replaceAll((name, buffer) -> reduce(
+                buffer,
+                (a, b) -> Double.doubleToRawLongBits(doubles.applyAsDouble(Double.longBitsToDouble(a), Double.longBitsToDouble(b)))));
+        _dimensions.values().forEach(accumulator -> accumulator.reduceGauges(longs, doubles));
+    }
+
+    /**
+     * Visit the accumulated samples, excluding those recorded with
+     * dimensions, which are visited through {@link #forEachDimension(BiConsumer)}.
+     * Must be quiescent.
+     *
+     * @param visitor the visitor
+     */
+    void accept(final Visitor visitor) {
+        _counters.forEach((name, adder) -> visitor.counter(name, adder.sum()));
+        _timers.forEach((name, buffer) -> visitor.timers(name, buffer, TimeUnit.NANOSECONDS));
+        _unitlessTimers.forEach((name, buffer) -> visitor.timers(name, buffer, null));
+        _doubleGauges.forEach(visitor::doubleGauges);
+        _longGauges.forEach(visitor::longGauges);
+        _timerHistograms.forEach(visitor::histogram);
+        _gaugeHistograms.forEach(visitor::histogram);
+    }
+
+    /**
+     * Visit the child accumulators of the samples recorded with dimensions.
+     *
+     * @param consumer the visitor of each set of dimensions and its accumulator
+     */
+    void forEachDimension(final BiConsumer<Dimensions, PeriodAccumulator> consumer) {
+        _dimensions.forEach(consumer);
+    }
+
+    /**
+     * Return the memory of the samples of this accumulator and its children
+     * without writing them into the {@link Metrics} instances, once they have
+     * been copied elsewhere. Must be quiescent.
+     */
+    void release() {
+        releaseBuffers();
+        _dimensions.values().forEach(PeriodAccumulator::release);
+    }
+
+    /**
+     * Return the memory of the samples of this accumulator and its children
+     * and close their {@link Metrics} instances without writing the samples
+     * into them. Must be quiescent.
+     */
+    @Override
+    public void discard() {
+        releaseBuffers();
+        _metrics.close();
+        _dimensions.values().forEach(PeriodAccumulator::discard);
+    }
+
+    /**
+     * Drain the accumulated samples and close the {@link Metrics} instance.
+     * Must only be called once all writers have left.
+     */
+    @Override
+    public void flush() {
+        drain();
+        _metrics.close();
+        releaseBuffers();
+        _dimensions.values().forEach(PeriodAccumulator::flush);
+    }
+
+    /**
+     * Write the accumulated samples into the {@link Metrics} instance. Must
+     * only be called once all writers have left.
+     */
+    void drain() {
+        _counters.forEach((name, adder) -> _metrics.createCounter(name).increment(adder.sum()));
+        _timers.forEach((name, buffer) -> buffer.forEach(value -> _metrics.setTimer(name, value, TimeUnit.NANOSECONDS)));
+        _unitlessTimers.forEach((name, buffer) -> buffer.forEach(value -> _metrics.setTimer(name, value, null)));
+        _doubleGauges.forEach((name, buffer) -> buffer.forEach(value -> _metrics.setGauge(name, Double.longBitsToDouble(value))));
+        _longGauges.forEach((name, buffer) -> buffer.forEach(value -> _metrics.setGauge(name, value)));
+        _timerHistograms.forEach((name, histogram) -> writeHistogram(_metrics, name, histogram));
+        _gaugeHistograms.forEach((name, histogram) -> writeHistogram(_metrics, name, histogram));
+    }
+
+    private void releaseBuffers() {
+        _timers.values().forEach(SampleBuffer::release);
+        _unitlessTimers.values().forEach(SampleBuffer::release);
+        _doubleGauges.values().forEach(SampleBuffer::release);
+        _longGauges.values().forEach(SampleBuffer::release);
+    }
+
+    /**
+     * Write a histogram into a {@link Metrics} instance.
+     *
+     * @param metrics the metrics instance
+     * @param name the name of the histogram
+     * @param histogram the histogram
+     */
+    static void writeHistogram(final Metrics metrics, final String name, final LogLinearHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return;
+        }
+        if (metrics instanceof TsdMetrics) {
+            ((TsdMetrics) metrics).recordAggregatedData(name, histogram.toAggregatedData());
+        } else {
+            // NOTE: Other implementations cannot accept aggregated data so only derived statistics are recorded
+            metrics.createCounter(name + "/count").increment(histogram.getCount());
+            metrics.setGauge(name + "/min", histogram.getMin());
+            metrics.setGauge(name + "/max", histogram.getMax());
+            metrics.setGauge(name + "/sum", histogram.getSum());
+        }
+    }
+
+    private void recordGaugeHistogram(final String name, final double value) {
+        final LogLinearHistogram histogram = getOrCreate(_gaugeHistograms, name, _createHistogram);
+        if (histogram != null) {
+            histogram.record(value);
+        }
+    }
+
+    private PeriodAccumulator createDimension(final Dimensions dimensions) {
+        final Metrics metrics = _metricsFactory.create();
+        metrics.addAnnotations(dimensions.getTags());
+        return new PeriodAccumulator(metrics, _metricsFactory, _settings, _inFlight);
+    }
+
+    private void mergeBuffers(final ConcurrentMap<String, SampleBuffer> into, final ConcurrentMap<String, SampleBuffer> from) {
+        from.forEach((name, buffer) -> {
+            buffer.forEach(getOrCreate(into, name, _createBuffer)::add);
+            buffer.release();
+        });
+    }
+
+    private void copyBuffers(
+            final ConcurrentMap<String, SampleBuffer> into,
+            final ConcurrentMap<String, SampleBuffer> from,
+            final Predicate<String> names) {
+        from.forEach((name, buffer) -> {
+            if (names.test(name)) {
+                buffer.forEach(getOrCreate(into, name, _createBuffer)::add);
+            }
+        });
+    }
+
+    private void mergeHistograms(
+            final ConcurrentMap<String, LogLinearHistogram> into,
+            final ConcurrentMap<String, LogLinearHistogram> from,
+            final Predicate<String> names) {
+        from.forEach((name, histogram) -> {
+            if (names.test(name)) {
+                final LogLinearHistogram merged = getOrCreate(into, name, _createHistogram);
+                if (merged != null) {
+                    merged.merge(histogram);
+                }
+            }
+        });
+    }
+
+    @Nullable
+    private LogLinearHistogram createHistogram(final String name) {
+        // NOTE: The client keeps the first aggregated data recorded under a name so only one kind may claim it
+        if (!_histogramNames.add(name)) {
+            return null;
+        }
+        return new LogLinearHistogram(_settings.getHistogramPrecision());
+    }
+
+    private static double toSeconds(final long duration, final TimeUnit unit) {
+        return (double) unit.toNanos(duration) / NANOS_PER_SECOND;
+    }
+
+    private SampleBuffer reduce(final SampleBuffer buffer, final LongBinaryOperator operator) {
+        if (buffer.size() <= 1) {
+            return buffer;
+        }
+        final Reduction reduction = new Reduction(operator);
+        buffer.forEach(reduction);
+        buffer.release();
+        final SampleBuffer reduced = new SampleBuffer(_settings.getSampleArena());
+        reduced.add(reduction._value);
+        return reduced;
+    }
+
+    private static void removeBuffers(final ConcurrentMap<String, SampleBuffer> buffers, final Predicate<String> names) {
+        final Iterator<Map.Entry<String, SampleBuffer>> iterator = buffers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, SampleBuffer> entry = iterator.next();
+            if (names.test(entry.getKey())) {
+                iterator.remove();
+                entry.getValue().release();
+            }
+        }
+    }
+
+    private static <K, V> V getOrCreate(final ConcurrentMap<K, V> map, final K key, final Function<K, V> factory) {
+        // NOTE: Plain get avoids locking the bin in the common case where the metric already exists
+        final V value = map.get(key);
+        if (value != null) {
+            return value;
+        }
+        return map.computeIfAbsent(key, factory);
+    }
+
+    private final Metrics _metrics;
+    private final MetricsFactory _metricsFactory;
+    private final AccumulatorSettings _settings;
+    private final InFlightCounter _inFlight;
+    private final Function<String, LogLinearHistogram> _createHistogram;
+    private final Function<String, SampleBuffer> _createBuffer;
+    private final Function<Dimensions, PeriodAccumulator> _createDimension;
+    private final ConcurrentMap<String, LongAdder> _counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, SampleBuffer> _timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, SampleBuffer> _unitlessTimers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, SampleBuffer> _doubleGauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, SampleBuffer> _longGauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LogLinearHistogram> _timerHistograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LogLinearHistogram> _gaugeHistograms = new ConcurrentHashMap<>();
+    private final Set<String> _histogramNames = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<Dimensions, PeriodAccumulator> _dimensions = new ConcurrentHashMap<>();
+
+    private static final Function<String, LongAdder> CREATE_ADDER = name -> new LongAdder();
+    private static final Predicate<String> ALL = name -> true;
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static final class Reduction implements LongConsumer {
+        private Reduction(final LongBinaryOperator operator) {
+            _operator = operator;
+        }
+
+        @Override
+        public void accept(final long value) {
+            if (_empty) {
+                _value = value;
+                _empty = false;
+            } else {
+                _value = _operator.applyAsLong(_value, value);
+            }
+        }
+
+        private final LongBinaryOperator _operator;
+        private long _value;
+        private boolean _empty = true;
+    }
+
+    /**
+     * Visitor of the accumulated samples of a period.
+     */
+    interface Visitor {
+        /**
+         * Visit a counter.
+         *
+         * @param name the name of the counter
+         * @param value the sum of the samples
+         */
+        void counter(String name, long value);
+
+        /**
+         * Visit the samples of a timer.
+         *
+         * @param name the name of the timer
+         * @param samples the samples
+         * @param unit the unit of the samples; null if recorded without a unit
+         */
+        void timers(String name, SampleBuffer samples, @Nullable TimeUnit unit);
+
+        /**
+         * Visit the samples of a floating point gauge.
+         *
+         * @param name the name of the gauge
+         * @param samples the raw long bits of the samples
+         */
+        void doubleGauges(String name, SampleBuffer samples);
+
+        /**
+         * Visit the samples of an integral gauge.
+         *
+         * @param name the name of the gauge
+         * @param samples the samples
+         */
+        void longGauges(String name, SampleBuffer samples);
+
+        /**
+         * Visit the aggregated samples of a timer in seconds or of a gauge.
+         * Timer histograms are visited before gauge histograms.
+         *
+         * @param name the name of the timer or gauge
+         * @param histogram the histogram of the samples
+         */
+        void histogram(String name, LogLinearHistogram histogram);
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Merges the completed periods of several {@link TsdPeriodicMetrics}
+ * instances, such as one per worker shard, into a single period so that each
+ * metric is written to the sinks once per period instead of once per
+ * instance. Instances join with {@link TsdPeriodicMetrics.Builder#setPeriodMerger(PeriodMerger)}.
+ * Counters are summed, histograms and timer samples are combined and gauge
+ * samples of base periods are combined by the {@link GaugePolicy}. Periods
+ * are only merged with periods of the same resolution, so the base periods
+ * of the members are merged together and the periods of each resolution of
+ * their {@link Rollup} instances are merged together.
+ *
+ * Each run rotates the period of every member instance and merges the
+ * completed periods pairwise as a tree of tasks in a {@link ForkJoinPool}, so
+ * the time to merge grows with the logarithm of the number of members given
+ * enough parallelism. The merged period is written into the {@link com.arpnetworking.metrics.Metrics}
+ * instance of the period of one of the members and the instances of the
+ * other periods are closed without samples. Like a {@link TsdPeriodicMetrics}
+ * instance without a period, the merger must be scheduled with an executor.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public final class PeriodMerger implements Runnable, AutoCloseable {
+
+    /**
+     * Rotate the period of every member and write the merged periods to the sinks.
+     */
+    @Override
+    public void run() {
+        for (final Runnable member : _members) {
+            member.run();
+        }
+        mergeAndFlush();
+    }
+
+    /**
+     * Write the merged periods completed since the last run to the sinks.
+     * Periods completed afterwards, such as those of members closed later,
+     * are written to the sinks without being merged. Subsequent calls have no
+     * effect.
+     */
+    @Override
+    public void close() {
+        if (_closed.compareAndSet(false, true)) {
+            mergeAndFlush();
+        }
+    }
+
+    /**
+     * Add a member that is rotated by every run.
+     *
+     * @param member rotates the period of the member
+     */
+    void join(final Runnable member) {
+        _members.add(member);
+    }
+
+    /**
+     * Remove a member.
+     *
+     * @param member rotates the period of the member
+     */
+    void leave(final Runnable member) {
+        _members.remove(member);
+    }
+
+    /**
+     * Accept a completed period of a member.
+     *
+     * @param period the completed period; must be quiescent
+     * @param periods the resolution of the period as its number of base periods
+     */
+    void offer(final PeriodAccumulator period, final int periods) {
+        getOrCreate(periods).add(period);
+        if (_closed.get()) {
+            mergeAndFlush();
+        }
+    }
+
+    private ConcurrentLinkedQueue<PeriodAccumulator> getOrCreate(final int periods) {
+        // NOTE: Plain get avoids locking the bin in the common case where the lane already exists
+        final ConcurrentLinkedQueue<PeriodAccumulator> lane = _pending.get(periods);
+        if (lane != null) {
+            return lane;
+        }
+        return _pending.computeIfAbsent(periods, CREATE_LANE);
+    }
+
+    private synchronized void mergeAndFlush() {
+        for (final Map.Entry<Integer, ConcurrentLinkedQueue<PeriodAccumulator>> entry : _pending.entrySet()) {
+            final ConcurrentLinkedQueue<PeriodAccumulator> lane = entry.getValue();
+            final List<PeriodAccumulator> periods = Lists.newArrayList();
+            for (PeriodAccumulator period = lane.poll(); period != null; period = lane.poll()) {
+                periods.add(period);
+            }
+            if (!periods.isEmpty()) {
+                final PeriodAccumulator merged = _forkJoinPool.invoke(ForkJoinTask.adapt(() -> merge(periods, 0, periods.size())));
+                // NOTE: A rollup period holds the samples of several base periods, so combining them would also combine over time
+                if (entry.getKey() == 1) {
+                    _gaugePolicy.combine(merged);
+                }
+                merged.flush();
+            }
+        }
+    }
+
+    private static PeriodAccumulator merge(final List<PeriodAccumulator> periods, final int from, final int to) {
+        if (to - from <= SEQUENTIAL_THRESHOLD) {
+            final PeriodAccumulator merged = periods.get(from);
+            for (int i = from + 1; i < to; ++i) {
+                mergeInto(merged, periods.get(i));
+            }
+            return merged;
+        }
+        // NOTE: The halves are merged in parallel and then into each other
+        final int middle = (from + to) >>> 1;
+        final ForkJoinTask<PeriodAccumulator> right = ForkJoinTask.adapt(() -> merge(periods, middle, to)).fork();
+        final PeriodAccumulator merged = merge(periods, from, middle);
+        mergeInto(merged, right.join());
+        return merged;
+    }
+
+    private static void mergeInto(final PeriodAccumulator merged, final PeriodAccumulator period) {
+        merged.mergeFrom(period);
+        period.discard();
+    }
+
+    private PeriodMerger(final Builder builder) {
+        _gaugePolicy = builder._gaugePolicy;
+        _forkJoinPool = builder._forkJoinPool;
+    }
+
+    private final GaugePolicy _gaugePolicy;
+    private final ForkJoinPool _forkJoinPool;
+    private final List<Runnable> _members = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<Integer, ConcurrentLinkedQueue<PeriodAccumulator>> _pending = new ConcurrentSkipListMap<>();
+    private final AtomicBoolean _closed = new AtomicBoolean(false);
+
+    private static final int SEQUENTIAL_THRESHOLD = 4;
+    private static final Function<Integer, ConcurrentLinkedQueue<PeriodAccumulator>> CREATE_LANE = periods -> new ConcurrentLinkedQueue<>();
+
+    /**
+     * Policies for combining the samples of a gauge across the merged base
+     * periods. The policy does not apply to the periods of {@link Rollup}
+     * instances, which keep every sample of every member as with {@link #ALL}
+     * since their samples span several base periods. Gauges aggregated into
+     * histograms are always merged as histograms.
+     */
+    public enum GaugePolicy {
+        /**
+         * Every sample of every member is kept, as if recorded by a single instance.
+         */
+        ALL {
+            @Override
+            void combine(final PeriodAccumulator merged) {
+                // NOTE: Merging already keeps every sample
+            }
+        },
+        /**
+         * The samples are replaced by their sum, which suits gauges that each member samples once per period,
+         * such as the depth of a queue per shard.
+         */
+        SUM {
+            @Override
+            void combine(final PeriodAccumulator merged) {
+                merged.reduceGauges(Long::sum, Double::sum);
+            }
+        },
+        /**
+         * The samples are replaced by the smallest sample.
+         */
+        MIN {
+            @Override
+            void combine(final PeriodAccumulator merged) {
+                merged.reduceGauges(Math::min, Math::min);
+            }
+        },
+        /**
+         * The samples are replaced by the largest sample.
+         */
+        MAX {
+            @Override
+            void combine(final PeriodAccumulator merged) {
+                merged.reduceGauges(Math::max, Math::max);
+            }
+        };
+
+        abstract void combine(PeriodAccumulator merged);
+    }
+
+    /**
+     * Implementation of the Builder pattern for the {@link PeriodMerger} class.
+     *
+     * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+     */
+    public static final class Builder implements com.arpnetworking.commons.builder.Builder<PeriodMerger> {
+        /**
+         * Sets the policy for combining the samples of a gauge. Optional. Cannot be null. Defaults to
+         * {@link GaugePolicy#ALL}.
+         *
+         * @param value The gauge policy.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setGaugePolicy(final GaugePolicy value) {
+            _gaugePolicy = value;
+            return this;
+        }
+
+        /**
+         * Sets the pool running the merge tasks. Optional. Cannot be null. Defaults to the common pool.
+         *
+         * @param value The fork join pool.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setForkJoinPool(final ForkJoinPool value) {
+            _forkJoinPool = value;
+            return this;
+        }
+
+        @Override
+        public PeriodMerger build() {
+            Preconditions.checkArgument(_gaugePolicy != null, "Gauge policy cannot be null");
+            Preconditions.checkArgument(_forkJoinPool != null, "Fork join pool cannot be null");
+            return new PeriodMerger(this);
+        }
+
+        private GaugePolicy _gaugePolicy = GaugePolicy.ALL;
+        private ForkJoinPool _forkJoinPool = ForkJoinPool.commonPool();
+    }
+}
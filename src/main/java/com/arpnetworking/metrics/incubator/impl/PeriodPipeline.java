@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.MetricsFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import javax.annotation.Nullable;
+
+/**
+ * The stages a completed period passes through after it is rotated out of a
+ * {@link TsdPeriodicMetrics} instance. The period is first merged into the
+ * open periods of the rollups, if any, and is then delivered: encoded into a
+ * {@link PeriodSnapshot} for the snapshot listener, if any, and then either
+ * offered to the {@link PeriodMerger}, spooled or flushed, in that order of
+ * precedence. Rollup periods are handed off by the rotating thread like base
+ * periods, through the {@link FlushStage} if any, and are then delivered the
+ * same way. Rollups, snapshots, merging and spooling all require completed
+ * periods to be {@link PeriodAccumulator} instances.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class PeriodPipeline {
+
+    PeriodPipeline(
+            final List<Rollup> rollups,
+            final MetricsFactory metricsFactory,
+            final AccumulatorSettings settings,
+            @Nullable final PeriodMerger merger,
+            @Nullable final SpoolStage spool,
+            @Nullable final Consumer<PeriodSnapshot> snapshotListener,
+            final Consumer<CompletedPeriod> flush) {
+        if (rollups.isEmpty()) {
+            _rollups = null;
+        } else {
+            _rollups = new Rollups(rollups, metricsFactory, settings);
+        }
+        _merger = merger;
+        _spool = spool;
+        _snapshotListener = snapshotListener;
+        if (snapshotListener == null) {
+            _snapshot = null;
+        } else {
+            _snapshot = new PeriodSnapshot();
+        }
+        _flush = flush;
+    }
+
+    /**
+     * Get the hand-off of the completed base and rollup periods, which
+     * submits them to the flush stage, if any, and otherwise delivers them on
+     * the rotating thread.
+     *
+     * @param flushStage the flush stage, which delivers to this pipeline
+     * @return the hand-off of completed periods and their resolution
+     */
+    ObjIntConsumer<CompletedPeriod> handOff(@Nullable final FlushStage flushStage) {
+        if (flushStage == null) {
+            return this::deliver;
+        }
+        return flushStage::submit;
+    }
+
+    /**
+     * Merge a completed base period into the open rollup periods, if any.
+     * Only called by the thread rotating the periods.
+     *
+     * @param completed the completed base period
+     * @param handOff accepts the completed rollup periods and their resolution
+     */
+    void rollUp(final CompletedPeriod completed, final ObjIntConsumer<CompletedPeriod> handOff) {
+        if (_rollups != null) {
+            _rollups.rollUp((PeriodAccumulator) completed, handOff);
+        }
+    }
+
+    /**
+     * Export, then merge, spool or flush a completed base period.
+     *
+     * @param completed the completed period
+     */
+    void deliver(final CompletedPeriod completed) {
+        deliver(completed, 1);
+    }
+
+    /**
+     * Export, then merge, spool or flush a completed period.
+     *
+     * @param completed the completed period
+     * @param periods the resolution of the period as its number of base periods
+     */
+    void deliver(final CompletedPeriod completed, final int periods) {
+        if (_snapshot != null) {
+            export((PeriodAccumulator) completed, periods);
+        }
+        if (_merger != null) {
+            _merger.offer((PeriodAccumulator) completed, periods);
+        } else if (_spool != null) {
+            _spool.submit((PeriodAccumulator) completed);
+        } else {
+            _flush.accept(completed);
+        }
+    }
+
+    /**
+     * Hand off the open rollup periods, if any, and stop the spool, if any.
+     * Must be called before the flush stage, if any, is closed so that it
+     * delivers the open rollup periods.
+     *
+     * @param handOff accepts the open rollup periods and their resolution
+     */
+    void close(final ObjIntConsumer<CompletedPeriod> handOff) {
+        if (_rollups != null) {
+            _rollups.close(handOff);
+        }
+        if (_spool != null) {
+            _spool.close();
+        }
+    }
+
+    private void export(final PeriodAccumulator completed, final int periods) {
+        // NOTE: Base periods may be delivered by the flush thread while rollup periods are delivered by the rotating thread
+        synchronized (_snapshot) {
+            _snapshot.encode(completed, periods, Instant.now());
+            // CHECKSTYLE.OFF: IllegalCatch - A failing listener must not prevent the period from being recorded
+            try {
+                _snapshotListener.accept(_snapshot);
+            } catch (final RuntimeException e) {
+                LOGGER.warn("Snapshot listener failed", e);
+            }
+            // CHECKSTYLE.ON: IllegalCatch
+        }
+    }
+
+    @Nullable
+    private final Rollups _rollups;
+    @Nullable
+    private final PeriodMerger _merger;
+    @Nullable
+    private final SpoolStage _spool;
+    @Nullable
+    private final Consumer<PeriodSnapshot> _snapshotListener;
+    @Nullable
+    private final PeriodSnapshot _snapshot;
+    private final Consumer<CompletedPeriod> _flush;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PeriodPipeline.class);
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.incubator.MetricKey;
+
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Strategy for recording samples into the currently open period and for
+ * rotating to the next period. Timer and gauge samples are recorded through
+ * the methods of {@link SampleSink}.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+interface PeriodRecorder extends SampleSink {
+
+    /**
+     * Record a counter sample in the current period.
+     *
+     * @param name The name of the counter.
+     * @param value The value of the counter.
+     */
+    void recordCounter(String name, long value);
+
+    /**
+     * Record timer samples in the current period under a single acquisition.
+     *
+     * @param name The name of the timer.
+     * @param durations The durations of the timer.
+     * @param unit The time unit of the timer, if any.
+     */
+    void recordTimers(String name, long[] durations, @Nullable TimeUnit unit);
+
+    /**
+     * Record the samples of a batch in the current period under a single acquisition.
+     *
+     * @param batch The batch of samples.
+     */
+    void record(SampleBatch batch);
+
+    /**
+     * Record a counter sample with the dimensions of the key in the current period.
+     *
+     * @param key The key of the counter.
+     * @param value The value of the counter.
+     */
+    void recordCounter(MetricKey key, long value);
+
+    /**
+     * Record a timer sample with the dimensions of the key in the current period.
+     *
+     * @param key The key of the timer.
+     * @param duration The duration of the timer.
+     * @param unit The time unit of the timer, if any.
+     */
+    void recordTimer(MetricKey key, long duration, @Nullable TimeUnit unit);
+
+    /**
+     * Record timer samples with the dimensions of the key in the current period under a single acquisition.
+     *
+     * @param key The key of the timer.
+     * @param durations The durations of the timer.
+     * @param unit The time unit of the timer, if any.
+     */
+    void recordTimers(MetricKey key, long[] durations, @Nullable TimeUnit unit);
+
+    /**
+     * Record a gauge sample with the dimensions of the key in the current period.
+     *
+     * @param key The key of the gauge.
+     * @param value The reading on the gauge
+     */
+    void recordGauge(MetricKey key, double value);
+
+    /**
+     * Record a gauge sample with the dimensions of the key in the current period.
+     *
+     * @param key The key of the gauge.
+     * @param value The reading on the gauge
+     */
+    void recordGauge(MetricKey key, long value);
+
+    /**
+     * Open the next period and complete the current one. Once this returns
+     * no recording thread writes to the completed period.
+     *
+     * @param next The {@link Metrics} instance for the next period.
+     * @return The completed period.
+     */
+    CompletedPeriod rotate(Metrics next);
+}
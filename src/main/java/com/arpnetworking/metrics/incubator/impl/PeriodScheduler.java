@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Runs a task at the end of each period, aligned to wall-clock period
+ * boundaries. Boundaries are multiples of the period since the epoch so that
+ * instances on different hosts close their periods at the same instants. Each
+ * run is scheduled against the absolute time of the next boundary, so delays
+ * in running the task do not accumulate as drift. Boundaries missed while the
+ * task was running are skipped. A run that fails is logged and the next
+ * boundary is still scheduled.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class PeriodScheduler implements AutoCloseable {
+
+    /**
+     * Package private constructor.
+     *
+     * @param task the task to run at each boundary
+     * @param period the period length
+     * @param clock the wall clock
+     * @param executor the executor to run the task on; owned by this scheduler
+     */
+    PeriodScheduler(
+            final Runnable task,
+            final Duration period,
+            final Clock clock,
+            final ScheduledExecutorService executor) {
+        _task = task;
+        _periodMillis = period.toMillis();
+        _clock = clock;
+        _executor = executor;
+    }
+
+    /**
+     * Schedule the first run at the next period boundary.
+     */
+    synchronized void start() {
+        final long now = _clock.millis();
+        _boundary = nextBoundary(now);
+        schedule(now);
+    }
+
+    /**
+     * Stop scheduling runs and wait for a run in progress to complete. The
+     * wait is not bounded and survives interruption so that no run can
+     * overlap with work the caller does once this returns, such as running
+     * the task a final time.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            _closed = true;
+            if (_future != null) {
+                _future.cancel(false);
+            }
+        }
+        _executor.shutdown();
+        boolean interrupted = false;
+        boolean terminated = false;
+        while (!terminated) {
+            try {
+                terminated = _executor.awaitTermination(_periodMillis, TimeUnit.MILLISECONDS);
+                if (!terminated) {
+                    LOGGER.warn("Waiting for the running period to complete");
+                }
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void tick() {
+        // CHECKSTYLE.OFF: IllegalCatch - A failing run must not stop the schedule and its failure is otherwise unobserved
+        try {
+            _task.run();
+        } catch (final RuntimeException e) {
+            LOGGER.error("Periodic task failed", e);
+        }
+        // CHECKSTYLE.ON: IllegalCatch
+        synchronized (this) {
+            final long now = _clock.millis();
+            // NOTE: The executor may wake slightly before the wall clock reaches the boundary
+            _boundary = Math.max(nextBoundary(now), _boundary + _periodMillis);
+            schedule(now);
+        }
+    }
+
+    private void schedule(final long now) {
+        if (!_closed) {
+            _future = _executor.schedule(this::tick, Math.max(0, _boundary - now), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private long nextBoundary(final long now) {
+        return (Math.floorDiv(now, _periodMillis) + 1) * _periodMillis;
+    }
+
+    private final Runnable _task;
+    private final long _periodMillis;
+    private final Clock _clock;
+    private final ScheduledExecutorService _executor;
+    private long _boundary;
+    private boolean _closed;
+    @Nullable
+    private ScheduledFuture<?> _future;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PeriodScheduler.class);
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.incubator.Dimensions;
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * The compact binary form of a completed period, handed to the snapshot
+ * listener of a {@link TsdPeriodicMetrics} instance. The snapshot starts with
+ * a header holding the start and end of the period and its resolution as a
+ * number of base periods, so that rollup periods can be told apart from base
+ * periods. The header is followed by a table of every metric name, dimension
+ * key and dimension value in the period, which are then referred to by index. It holds a group for the
+ * samples of the period followed by a group for the samples of each set of
+ * dimensions. A group holds a section per kind of metric, each a column of
+ * entries followed by a column of their samples. Integral values and
+ * histogram buckets are variable length quantities so that small counts,
+ * durations and buckets take a byte or two.
+ *
+ * A snapshot is encoded into a buffer reused from period to period and is
+ * only valid for the duration of the call to the listener, which copies it
+ * out with {@link #writeTo(ByteBuffer)} or {@link #writeTo(WritableByteChannel)}.
+ * Snapshots are read back with {@link #read(ByteBuffer, Visitor)}.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public final class PeriodSnapshot {
+
+    /**
+     * Get the number of bytes in the snapshot.
+     *
+     * @return the number of bytes in the snapshot
+     */
+    public int size() {
+        return _output.size();
+    }
+
+    /**
+     * Copy the snapshot into a buffer, advancing its position.
+     *
+     * @param target the buffer; must have {@link #size()} bytes remaining
+     * @throws java.nio.BufferOverflowException if the buffer does not have enough space
+     */
+    public void writeTo(final ByteBuffer target) {
+        target.put(_output.view());
+    }
+
+    /**
+     * Write the snapshot to a channel, such as a {@link java.nio.channels.FileChannel}.
+     *
+     * @param channel the channel
+     * @throws IOException if the channel fails
+     */
+    public void writeTo(final WritableByteChannel channel) throws IOException {
+        final ByteBuffer view = _output.view();
+        while (view.hasRemaining()) {
+            channel.write(view);
+        }
+    }
+
+    /**
+     * Read a snapshot from the position of a buffer, advancing it past the
+     * snapshot. Malformed input fails with an {@link IllegalArgumentException}
+     * or a {@link java.nio.BufferUnderflowException}.
+     *
+     * @param source the buffer
+     * @param visitor the visitor of the groups and samples of the snapshot
+     */
+    public static void read(final ByteBuffer source, final Visitor visitor) {
+        final int magic = BinaryDecoder.getInt(source);
+        final int version = BinaryDecoder.getByte(source);
+        if (magic != MAGIC || version != VERSION) {
+            throw new IllegalArgumentException(String.format("Not a period snapshot; magic=%x, version=%d", magic, version));
+        }
+        final int periods = BinaryDecoder.getVarInt(source);
+        final Instant start = BinaryDecoder.getInstant(source);
+        visitor.period(start, BinaryDecoder.getInstant(source), periods);
+        final String[] names = new String[BinaryDecoder.getVarInt(source)];
+        for (int i = 0; i < names.length; ++i) {
+            names[i] = BinaryDecoder.getString(source);
+        }
+        final ByteBuffer values = source.duplicate();
+        for (int group = BinaryDecoder.getVarInt(source); group > 0; --group) {
+            readDimensions(source, names, visitor);
+            for (int kind = COUNTER; kind <= HISTOGRAM; ++kind) {
+                final int entries = BinaryDecoder.getVarInt(source);
+                final int entriesBytes = BinaryDecoder.getVarInt(source);
+                values.position(source.position() + entriesBytes);
+                for (int entry = 0; entry < entries; ++entry) {
+                    readEntry(kind, names[BinaryDecoder.getVarInt(source)], source, values, visitor);
+                }
+                source.position(values.position());
+            }
+        }
+    }
+
+    /**
+     * Package private constructor.
+     */
+    PeriodSnapshot() { }
+
+    /**
+     * Encode a completed period, replacing the previous contents of the
+     * snapshot. The period starts when its {@link com.arpnetworking.metrics.Metrics}
+     * instance opened, or at its end if the instance does not report it.
+     *
+     * @param period the period; must be quiescent
+     * @param periods the resolution of the period as its number of base periods
+     * @param end the time the period ended
+     */
+    void encode(final PeriodAccumulator period, final int periods, final Instant end) {
+        _names.clear();
+        _nameTable.reset();
+        _groups.reset();
+        _groupCount = 0;
+        encode(Dimensions.none(), period);
+        _output.reset();
+        _output.putInt(MAGIC);
+        _output.putByte(VERSION);
+        _output.putVarLong(periods);
+        Instant start = period.getOpenTime();
+        if (start == null) {
+            start = end;
+        }
+        _output.putInstant(start);
+        _output.putInstant(end);
+        _output.putVarLong(_names.size());
+        _output.append(_nameTable);
+        _output.putVarLong(_groupCount);
+        _output.append(_groups);
+    }
+
+    private void encode(final Dimensions dimensions, final PeriodAccumulator period) {
+        final Map<String, String> tags = dimensions.getTags();
+        _groups.putVarLong(tags.size());
+        tags.forEach((key, value) -> {
+            _groups.putVarLong(intern(key));
+            _groups.putVarLong(intern(value));
+        });
+        period.accept(_encoder);
+        for (final Section section : _sections) {
+            _groups.putVarLong(section._count);
+            _groups.putVarLong(section._entries.size());
+            _groups.append(section._entries);
+            _groups.append(section._values);
+            section.reset();
+        }
+        ++_groupCount;
+        period.forEachDimension(this::encode);
+    }
+
+    private int intern(final String name) {
+        final Integer index = _names.get(name);
+        if (index != null) {
+            return index;
+        }
+        final int next = _names.size();
+        _names.put(name, next);
+        _nameTable.putString(name);
+        return next;
+    }
+
+    private static void readDimensions(final ByteBuffer source, final String[] names, final Visitor visitor) {
+        final int tagCount = BinaryDecoder.getVarInt(source);
+        if (tagCount == 0) {
+            visitor.dimensions(Dimensions.none());
+            return;
+        }
+        final Map<String, String> tags = Maps.newHashMapWithExpectedSize(tagCount);
+        for (int i = 0; i < tagCount; ++i) {
+            tags.put(names[BinaryDecoder.getVarInt(source)], names[BinaryDecoder.getVarInt(source)]);
+        }
+        visitor.dimensions(Dimensions.of(tags));
+    }
+
+    private static void readEntry(
+            final int kind,
+            final String name,
+            final ByteBuffer entries,
+            final ByteBuffer values,
+            final Visitor visitor) {
+        if (kind == COUNTER) {
+            visitor.counter(name, BinaryDecoder.getZigZag(values));
+        } else if (kind == TIMER || kind == UNITLESS_TIMER) {
+            TimeUnit unit = null;
+            if (kind == TIMER) {
+                unit = TimeUnit.NANOSECONDS;
+            }
+            for (int i = BinaryDecoder.getVarInt(entries); i > 0; --i) {
+                visitor.timer(name, BinaryDecoder.getZigZag(values), unit);
+            }
+        } else if (kind == DOUBLE_GAUGE) {
+            for (int i = BinaryDecoder.getVarInt(entries); i > 0; --i) {
+                visitor.gauge(name, BinaryDecoder.getDouble(values));
+            }
+        } else if (kind == LONG_GAUGE) {
+            for (int i = BinaryDecoder.getVarInt(entries); i > 0; --i) {
+                visitor.gauge(name, BinaryDecoder.getZigZag(values));
+            }
+        } else {
+            readHistogram(name, entries, values, visitor);
+        }
+    }
+
+    private static void readHistogram(final String name, final ByteBuffer entries, final ByteBuffer values, final Visitor visitor) {
+        final int shift = MANTISSA_BITS - BinaryDecoder.getVarInt(entries);
+        final int buckets = BinaryDecoder.getVarInt(entries);
+        visitor.histogram(
+                name,
+                BinaryDecoder.getVarLong(entries),
+                BinaryDecoder.getDouble(values),
+                BinaryDecoder.getDouble(values),
+                BinaryDecoder.getDouble(values));
+        for (int i = 0; i < buckets; ++i) {
+            visitor.bucket(name, Double.longBitsToDouble(BinaryDecoder.getVarLong(values) << shift), BinaryDecoder.getVarLong(values));
+        }
+    }
+
+    private final Map<String, Integer> _names = Maps.newHashMap();
+    private final BinaryEncoder _nameTable = new BinaryEncoder();
+    private final BinaryEncoder _groups = new BinaryEncoder();
+    private final BinaryEncoder _output = new BinaryEncoder();
+    private final Section[] _sections = {new Section(), new Section(), new Section(), new Section(), new Section(), new Section()};
+    private final SectionEncoder _encoder = new SectionEncoder();
+    private int _groupCount;
+
+    private static final int MAGIC = 0x534d5050;
+    private static final int VERSION = 2;
+    private static final int COUNTER = 0;
+    private static final int TIMER = 1;
+    private static final int UNITLESS_TIMER = 2;
+    private static final int DOUBLE_GAUGE = 3;
+    private static final int LONG_GAUGE = 4;
+    private static final int HISTOGRAM = 5;
+    private static final int MANTISSA_BITS = 52;
+
+    /**
+     * Visitor of the groups and samples of a snapshot. The period is visited
+     * first. Each group is then introduced by its dimensions and every sample
+     * that follows belongs to it until the next group.
+     */
+    public interface Visitor {
+        /**
+         * Visit the bounds and resolution of the period.
+         *
+         * @param start the time the period started
+         * @param end the time the period ended
+         * @param periods the resolution of the period as its number of base
+         * periods; one for base periods and the multiple of a rollup for its periods
+         */
+        void period(Instant start, Instant end, int periods);
+
+        /**
+         * Visit the start of a group.
+         *
+         * @param dimensions the dimensions of the samples in the group
+         */
+        void dimensions(Dimensions dimensions);
+
+        /**
+         * Visit a counter.
+         *
+         * @param name the name of the counter
+         * @param value the sum of the samples
+         */
+        void counter(String name, long value);
+
+        /**
+         * Visit a timer sample.
+         *
+         * @param name the name of the timer
+         * @param value the sample
+         * @param unit {@link TimeUnit#NANOSECONDS}; null if recorded without a unit
+         */
+        void timer(String name, long value, @Nullable TimeUnit unit);
+
+        /**
+         * Visit a floating point gauge sample.
+         *
+         * @param name the name of the gauge
+         * @param value the sample
+         */
+        void gauge(String name, double value);
+
+        /**
+         * Visit an integral gauge sample.
+         *
+         * @param name the name of the gauge
+         * @param value the sample
+         */
+        void gauge(String name, long value);
+
+        /**
+         * Visit the statistics of a histogram, which are followed by its buckets.
+         *
+         * @param name the name of the timer or gauge
+         * @param dropped the number of samples that were not assigned to a bucket
+         * @param sum the sum of the samples
+         * @param min the minimum sample
+         * @param max the maximum sample
+         */
+        void histogram(String name, long dropped, double sum, double min, double max);
+
+        /**
+         * Visit a bucket of a histogram.
+         *
+         * @param name the name of the timer or gauge
+         * @param bucket the truncated value of the samples in the bucket
+         * @param count the number of samples in the bucket
+         */
+        void bucket(String name, double bucket, long count);
+    }
+
+    private static final class Section {
+        private void reset() {
+            _count = 0;
+            _entries.reset();
+            _values.reset();
+        }
+
+        private int _count;
+        private final BinaryEncoder _entries = new BinaryEncoder();
+        private final BinaryEncoder _values = new BinaryEncoder();
+    }
+
+    private final class SectionEncoder implements PeriodAccumulator.Visitor {
+        @Override
+        public void counter(final String name, final long value) {
+            final Section section = entry(COUNTER, name);
+            section._values.putZigZag(value);
+        }
+
+        @Override
+        public void timers(final String name, final SampleBuffer samples, @Nullable final TimeUnit unit) {
+            final Section section;
+            if (unit == null) {
+                section = entry(UNITLESS_TIMER, name);
+            } else {
+                section = entry(TIMER, name);
+            }
+            section._entries.putVarLong(samples.size());
+            samples.forEach(section._values::putZigZag);
+        }
+
+        @Override
+        public void doubleGauges(final String name, final SampleBuffer samples) {
+            final Section section = entry(DOUBLE_GAUGE, name);
+            section._entries.putVarLong(samples.size());
+            samples.forEach(section._values::putLong);
+        }
+
+        @Override
+        public void longGauges(final String name, final SampleBuffer samples) {
+            final Section section = entry(LONG_GAUGE, name);
+            section._entries.putVarLong(samples.size());
+            samples.forEach(section._values::putZigZag);
+        }
+
+        @Override
+        public void histogram(final String name, final LogLinearHistogram histogram) {
+            final Section section = entry(HISTOGRAM, name);
+            final int shift = MANTISSA_BITS - histogram.getPrecision();
+            final int[] buckets = new int[1];
+            section._values.putDouble(histogram.getSum());
+            section._values.putDouble(histogram.getMin());
+            section._values.putDouble(histogram.getMax());
+            // NOTE: A bucket is identified by the bits of its lower bound that the precision keeps
+            histogram.forEachBucket((bucket, count) -> {
+                section._values.putVarLong(Double.doubleToRawLongBits(bucket) >>> shift);
+                section._values.putVarLong(count);
+                ++buckets[0];
+            });
+            section._entries.putVarLong(histogram.getPrecision());
+            section._entries.putVarLong(buckets[0]);
+            section._entries.putVarLong(histogram.getDropped());
+        }
+
+        private Section entry(final int kind, final String name) {
+            final Section section = _sections[kind];
+            ++section._count;
+            section._entries.putVarLong(intern(name));
+            return section;
+        }
+    }
+}
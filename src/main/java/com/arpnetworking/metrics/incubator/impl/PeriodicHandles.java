@@ -0,0 +1,272 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.incubator.Dimensions;
+import com.arpnetworking.metrics.incubator.MetricKey;
+import com.arpnetworking.metrics.incubator.PeriodicCounter;
+import com.arpnetworking.metrics.incubator.PeriodicGauge;
+import com.arpnetworking.metrics.incubator.PeriodicTimer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Registry of the {@link PeriodicCounter}, {@link PeriodicGauge} and
+ * {@link PeriodicTimer} handles of a {@link TsdPeriodicMetrics} instance.
+ * Handles accumulate into primitive storage that is drained into the
+ * {@link CompletedPeriod} when the period is rotated. Handles are cached
+ * by name or, for handles with dimensions, by {@link MetricKey}; a key
+ * without dimensions shares the handle of its name. Timer handles append
+ * to one of two {@link SampleBuffer} instances chosen by the parity of the
+ * epoch of the registry; draining advances the epoch and waits for the
+ * writers of the previous one with an {@link InFlightCounter} before reading
+ * its buffers, which are then reset and refilled two epochs later.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class PeriodicHandles {
+
+    /**
+     * Package private constructor.
+     */
+    PeriodicHandles() {
+        this(new AtomicInteger());
+    }
+
+    // NOTE: Package private for testing
+    /* package private */ PeriodicHandles(final AtomicInteger epoch) {
+        _epoch = epoch;
+    }
+
+    PeriodicCounter counter(final String name) {
+        return _counters.computeIfAbsent(name, CREATE_COUNTER);
+    }
+
+    PeriodicCounter counter(final MetricKey key) {
+        if (key.getDimensions().isEmpty()) {
+            return counter(key.getName());
+        }
+        return _dimensionedCounters.computeIfAbsent(key, CREATE_DIMENSIONED_COUNTER);
+    }
+
+    PeriodicGauge gauge(final String name) {
+        return _gauges.computeIfAbsent(name, CREATE_GAUGE);
+    }
+
+    PeriodicGauge gauge(final MetricKey key) {
+        if (key.getDimensions().isEmpty()) {
+            return gauge(key.getName());
+        }
+        return _dimensionedGauges.computeIfAbsent(key, CREATE_DIMENSIONED_GAUGE);
+    }
+
+    PeriodicTimer timer(final String name) {
+        return _timers.computeIfAbsent(name, _createTimer);
+    }
+
+    PeriodicTimer timer(final MetricKey key) {
+        if (key.getDimensions().isEmpty()) {
+            return timer(key.getName());
+        }
+        return _dimensionedTimers.computeIfAbsent(key, _createDimensionedTimer);
+    }
+
+    /**
+     * Record the accumulated value of every handle that was recorded through
+     * since the last drain and reset it. The values of handles with
+     * dimensions are recorded in the period of their dimensions.
+     *
+     * @param period the completed period
+     */
+    void drainTo(final CompletedPeriod period) {
+        for (final Counter counter : _counters.values()) {
+            counter.drainTo(period);
+        }
+        for (final Counter counter : _dimensionedCounters.values()) {
+            counter.drainTo(period);
+        }
+        for (final Gauge gauge : _gauges.values()) {
+            gauge.drainTo(period);
+        }
+        for (final Gauge gauge : _dimensionedGauges.values()) {
+            gauge.drainTo(period);
+        }
+        final int slot = _epoch.getAndIncrement() & 1;
+        _inFlight[slot].awaitQuiescence();
+        for (final Timer timer : _timers.values()) {
+            timer.drainTo(period, slot);
+        }
+        for (final Timer timer : _dimensionedTimers.values()) {
+            timer.drainTo(period, slot);
+        }
+    }
+
+    private int enter(final int stripe) {
+        int epoch = _epoch.get();
+        _inFlight[epoch & 1].enter(stripe);
+        // NOTE: Entering and then re-reading the epoch guarantees that either this writer
+        // observes the drain and moves on, or the draining thread observes this writer as in flight.
+        int current = _epoch.get();
+        while (epoch != current) {
+            _inFlight[epoch & 1].exit(stripe);
+            epoch = current;
+            _inFlight[epoch & 1].enter(stripe);
+            current = _epoch.get();
+        }
+        return epoch & 1;
+    }
+
+    private void exit(final int slot, final int stripe) {
+        _inFlight[slot].exit(stripe);
+    }
+
+    private static CompletedPeriod target(final CompletedPeriod period, final Dimensions dimensions) {
+        // NOTE: The period of the dimensions is only resolved once there is a value to record in it
+        if (dimensions.isEmpty()) {
+            return period;
+        }
+        return period.dimension(dimensions);
+    }
+
+    private final ConcurrentMap<String, Counter> _counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<MetricKey, Counter> _dimensionedCounters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Gauge> _gauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<MetricKey, Gauge> _dimensionedGauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timer> _timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<MetricKey, Timer> _dimensionedTimers = new ConcurrentHashMap<>();
+    private final Function<String, Timer> _createTimer = name -> new Timer(name, Dimensions.none(), this);
+    private final Function<MetricKey, Timer> _createDimensionedTimer = key -> new Timer(key.getName(), key.getDimensions(), this);
+    private final AtomicInteger _epoch;
+    private final InFlightCounter[] _inFlight = {new InFlightCounter(), new InFlightCounter()};
+
+    // NOTE: A NaN payload that Double.doubleToLongBits never produces since it collapses every NaN to one value
+    private static final long UNSET = 0x7ff0_dead_beef_0001L;
+    private static final Function<String, Counter> CREATE_COUNTER = name -> new Counter(name, Dimensions.none());
+    private static final Function<MetricKey, Counter> CREATE_DIMENSIONED_COUNTER = key -> new Counter(key.getName(), key.getDimensions());
+    private static final Function<String, Gauge> CREATE_GAUGE = name -> new Gauge(name, Dimensions.none());
+    private static final Function<MetricKey, Gauge> CREATE_DIMENSIONED_GAUGE = key -> new Gauge(key.getName(), key.getDimensions());
+
+    private static final class Counter implements PeriodicCounter {
+        private Counter(final String name, final Dimensions dimensions) {
+            _name = name;
+            _dimensions = dimensions;
+        }
+
+        @Override
+        public void add(final long value) {
+            _sum.add(value);
+            // NOTE: Reading first avoids contending on the flag after the first sample of the period
+            if (!_touched.get()) {
+                _touched.set(true);
+            }
+        }
+
+        private void drainTo(final CompletedPeriod period) {
+            // NOTE: The flag is cleared before the sum is reset since adding sets it after the sum
+            final boolean touched = _touched.getAndSet(false);
+            final long sum = _sum.sumThenReset();
+            if (sum != 0 || touched) {
+                target(period, _dimensions).recordCounter(_name, sum);
+            }
+        }
+
+        private final String _name;
+        private final Dimensions _dimensions;
+        private final LongAdder _sum = new LongAdder();
+        private final AtomicBoolean _touched = new AtomicBoolean();
+    }
+
+    private static final class Gauge implements PeriodicGauge {
+        private Gauge(final String name, final Dimensions dimensions) {
+            _name = name;
+            _dimensions = dimensions;
+        }
+
+        @Override
+        public void set(final double value) {
+            _bits.set(Double.doubleToLongBits(value));
+        }
+
+        private void drainTo(final CompletedPeriod period) {
+            final long bits = _bits.getAndSet(UNSET);
+            if (bits != UNSET) {
+                target(period, _dimensions).recordGauge(_name, Double.longBitsToDouble(bits));
+            }
+        }
+
+        private final String _name;
+        private final Dimensions _dimensions;
+        private final AtomicLong _bits = new AtomicLong(UNSET);
+    }
+
+    private static final class Timer implements PeriodicTimer {
+        private Timer(final String name, final Dimensions dimensions, final PeriodicHandles handles) {
+            _name = name;
+            _dimensions = dimensions;
+            _handles = handles;
+        }
+
+        @Override
+        public long start() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public long stop(final long start) {
+            final long duration = System.nanoTime() - start;
+            final int stripe = ThreadStripes.index();
+            final int slot = _handles.enter(stripe);
+            try {
+                buffer(slot).add(duration);
+            } finally {
+                _handles.exit(slot, stripe);
+            }
+            return duration;
+        }
+
+        private SampleBuffer buffer(final int slot) {
+            final SampleBuffer buffer = _buffers.get(slot);
+            if (buffer != null) {
+                return buffer;
+            }
+            // NOTE: Heap buffers need no release when another writer installs its buffer first
+            _buffers.compareAndSet(slot, null, new SampleBuffer());
+            return _buffers.get(slot);
+        }
+
+        private void drainTo(final CompletedPeriod period, final int slot) {
+            final SampleBuffer buffer = _buffers.get(slot);
+            if (buffer != null && buffer.size() > 0) {
+                target(period, _dimensions).recordTimers(_name, buffer, TimeUnit.NANOSECONDS);
+                // NOTE: The buffer is refilled once the epoch returns to its slot, reusing its chunks
+                buffer.reset();
+            }
+        }
+
+        private final String _name;
+        private final Dimensions _dimensions;
+        private final PeriodicHandles _handles;
+        private final AtomicReferenceArray<SampleBuffer> _buffers = new AtomicReferenceArray<>(2);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import java.time.Duration;
+
+/**
+ * The latest measurements of the cost of a {@link TsdPeriodicMetrics}
+ * instance, as returned by {@link TsdPeriodicMetrics#getStats()}. The
+ * durations are zero until first measured.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public final class PeriodicMetricsStats {
+
+    /**
+     * The time taken by the latest run, which polls and records a period.
+     *
+     * @return The duration of the latest run.
+     */
+    public Duration getRunDuration() {
+        return _runDuration;
+    }
+
+    /**
+     * The time taken by the latest flush, which writes a completed period to
+     * the sinks and closes its {@link com.arpnetworking.metrics.Metrics} instances.
+     *
+     * @return The duration of the latest flush.
+     */
+    public Duration getFlushDuration() {
+        return _flushDuration;
+    }
+
+    /**
+     * The total time recording threads waited for shared access to the
+     * latest completed period. Always zero with
+     * {@link TsdPeriodicMetrics.RecordingMode#STRIPED} recording.
+     *
+     * @return The total lock wait.
+     */
+    public Duration getLockWait() {
+        return _lockWait;
+    }
+
+    /**
+     * The longest time a recording thread waited for shared access to the
+     * latest completed period.
+     *
+     * @return The maximum lock wait.
+     */
+    public Duration getMaximumLockWait() {
+        return _maximumLockWait;
+    }
+
+    /**
+     * The number of samples recorded in the latest completed period.
+     *
+     * @return The number of samples.
+     */
+    public long getSamples() {
+        return _samples;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "PeriodicMetricsStats{RunDuration=%s, FlushDuration=%s, LockWait=%s, MaximumLockWait=%s, Samples=%d}",
+                _runDuration,
+                _flushDuration,
+                _lockWait,
+                _maximumLockWait,
+                _samples);
+    }
+
+    /* package private */ PeriodicMetricsStats(
+            final Duration runDuration,
+            final Duration flushDuration,
+            final Duration lockWait,
+            final Duration maximumLockWait,
+            final long samples) {
+        _runDuration = runDuration;
+        _flushDuration = flushDuration;
+        _lockWait = lockWait;
+        _maximumLockWait = maximumLockWait;
+        _samples = samples;
+    }
+
+    private final Duration _runDuration;
+    private final Duration _flushDuration;
+    private final Duration _lockWait;
+    private final Duration _maximumLockWait;
+    private final long _samples;
+}
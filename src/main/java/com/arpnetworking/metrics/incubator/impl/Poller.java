@@ -0,0 +1,342 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.incubator.PeriodicMetrics;
+import com.arpnetworking.metrics.incubator.PolledMetricRegistration;
+import com.arpnetworking.metrics.incubator.PollingOptions;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+
+/**
+ * Runs the polled metric registrations at the end of each period. Pollers are
+ * dispatched to either a caller supplied {@link Executor} or a bounded pool
+ * owned by the poller. When waiting is enabled the period is only completed
+ * once every poller has finished or timed out; a poller times out when the
+ * period deadline passes or when it has been running for longer than the
+ * per-poller timeout, whichever comes first. Timed out pollers are cancelled
+ * and, when running on the owned pool, interrupted. Registrations with
+ * {@link PollingOptions} only run once every interval periods, back off when
+ * over budget and report their cost.
+ *
+ * Registrations are polled from an array that is rebuilt by the polling
+ * thread only when registrations were added or closed since the last poll,
+ * so that registering and closing are constant time and polling does not
+ * allocate to walk the registrations.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class Poller implements AutoCloseable {
+
+    /**
+     * Package private constructor.
+     *
+     * @param executor the executor to dispatch pollers to
+     * @param ownedPool the pool to dispatch pollers to instead of the executor; shut down on close
+     * @param pollingTimeout the deadline for all pollers from the start of polling, if any
+     * @param pollerTimeout the deadline for each poller from the time it starts running, if any
+     */
+    Poller(
+            final Executor executor,
+            @Nullable final ExecutorService ownedPool,
+            @Nullable final Duration pollingTimeout,
+            @Nullable final Duration pollerTimeout) {
+        _executor = executor;
+        _ownedPool = ownedPool;
+        _pollingTimeout = pollingTimeout;
+        _pollerTimeout = pollerTimeout;
+    }
+
+    PolledMetricRegistration register(final Consumer<PeriodicMetrics> consumer) {
+        return register(new Registration(consumer, null));
+    }
+
+    PolledMetricRegistration register(final Consumer<PeriodicMetrics> consumer, final PollingOptions options) {
+        return register(new Registration(consumer, options));
+    }
+
+    int size() {
+        return _byConsumer.size();
+    }
+
+    /**
+     * Run every registration against the target. When waiting is enabled the
+     * polling duration and the number of timed out pollers are recorded into
+     * the target once polling completes.
+     *
+     * @param target the metrics the pollers record into
+     */
+    void poll(final PeriodicMetrics target) {
+        final long start = System.nanoTime();
+        final Registration[] registrations = registrations();
+        if (_ownedPool == null && _pollingTimeout == null && _pollerTimeout == null) {
+            // NOTE: Without waiting the pollers are handed to the executor without tracking their completion
+            for (final Registration registration : registrations) {
+                if (registration.isDue()) {
+                    _executor.execute(new Task(registration, target));
+                }
+            }
+            return;
+        }
+        final List<Task> tasks = Lists.newArrayListWithCapacity(registrations.length);
+        for (final Registration registration : registrations) {
+            if (registration.isDue()) {
+                tasks.add(dispatch(registration, target));
+            }
+        }
+        long timeouts = 0;
+        for (final Task task : tasks) {
+            // NOTE: Pollers that have not started never run; running pollers record into the next period
+            if (!await(task, start)) {
+                task._future.cancel(true);
+                ++timeouts;
+            }
+        }
+        target.recordTimer(POLLING_DURATION_METRIC, System.nanoTime() - start, NANOSECONDS);
+        target.recordCounter(POLLING_TIMEOUTS_METRIC, timeouts);
+    }
+
+    /**
+     * Shut down the owned pool, if any, interrupting running pollers.
+     */
+    @Override
+    public void close() {
+        if (_ownedPool != null) {
+            _ownedPool.shutdownNow();
+        }
+    }
+
+    private PolledMetricRegistration register(final Registration registration) {
+        final Registration replaced = _byConsumer.put(registration._consumer, registration);
+        if (replaced != null) {
+            replaced._closed = true;
+        }
+        _added.add(registration);
+        _changed.set(true);
+        return () -> deregister(registration);
+    }
+
+    private void deregister(final Registration registration) {
+        _byConsumer.remove(registration._consumer, registration);
+        registration._closed = true;
+        _changed.set(true);
+    }
+
+    private synchronized Registration[] registrations() {
+        if (!_changed.getAndSet(false)) {
+            return _registrations;
+        }
+        final List<Registration> registrations = Lists.newArrayListWithCapacity(_byConsumer.size());
+        for (final Registration registration : _registrations) {
+            if (!registration._closed) {
+                registrations.add(registration);
+            }
+        }
+        Registration added = _added.poll();
+        while (added != null) {
+            if (!added._closed) {
+                registrations.add(added);
+            }
+            added = _added.poll();
+        }
+        _registrations = registrations.toArray(new Registration[0]);
+        return _registrations;
+    }
+
+    private Task dispatch(final Registration registration, final PeriodicMetrics target) {
+        final Task task = new Task(registration, target);
+        if (_ownedPool != null) {
+            task._future = _ownedPool.submit(task);
+        } else {
+            task._future = CompletableFuture.runAsync(task, _executor);
+        }
+        return task;
+    }
+
+    private boolean await(final Task task, final long start) {
+        while (true) {
+            final long now = System.nanoTime();
+            long remaining = Long.MAX_VALUE;
+            if (_pollingTimeout != null) {
+                remaining = start + _pollingTimeout.toNanos() - now;
+            }
+            long wait = remaining;
+            if (_pollerTimeout != null) {
+                if (task._started) {
+                    remaining = Math.min(remaining, task._startNanos + _pollerTimeout.toNanos() - now);
+                    wait = remaining;
+                } else {
+                    // NOTE: The poller may be queued behind others; check again once it could have timed out
+                    wait = Math.min(remaining, _pollerTimeout.toNanos());
+                }
+            }
+            if (remaining <= 0) {
+                return task._future.isDone();
+            }
+            try {
+                task._future.get(wait, TimeUnit.NANOSECONDS);
+                return true;
+            } catch (final ExecutionException | CancellationException e) {
+                LOGGER.debug("Polled metric failed", e);
+                return true;
+            } catch (final TimeoutException e) {
+                LOGGER.trace("Polled metric still running", e);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    private final Executor _executor;
+    @Nullable
+    private final ExecutorService _ownedPool;
+    @Nullable
+    private final Duration _pollingTimeout;
+    @Nullable
+    private final Duration _pollerTimeout;
+    private final ConcurrentMap<Consumer<PeriodicMetrics>, Registration> _byConsumer = new ConcurrentHashMap<>();
+    private final Queue<Registration> _added = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean _changed = new AtomicBoolean(false);
+    private Registration[] _registrations = new Registration[0];
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Poller.class);
+    private static final Optional<TimeUnit> NANOSECONDS = Optional.of(TimeUnit.NANOSECONDS);
+    private static final String POLLING_DURATION_METRIC = "periodic_metrics/polling/duration";
+    private static final String POLLING_TIMEOUTS_METRIC = "periodic_metrics/polling/timeouts";
+
+    // NOTE: Package private for testing
+    /* package private */ static final class Registration {
+        /* package private */ Registration(final Consumer<PeriodicMetrics> consumer, @Nullable final PollingOptions options) {
+            _consumer = consumer;
+            _options = options;
+            if (options == null) {
+                _durationName = null;
+                _intervalName = null;
+                _budgetNanos = Long.MAX_VALUE;
+                _interval = new AtomicInteger(1);
+            } else {
+                _durationName = "periodic_metrics/poller/" + options.getName() + "/duration";
+                _intervalName = "periodic_metrics/poller/" + options.getName() + "/interval";
+                _budgetNanos = options.getBudget().map(Duration::toNanos).orElse(Long.MAX_VALUE);
+                _interval = new AtomicInteger(options.getInterval());
+            }
+            // NOTE: A new registration runs at the end of the first period
+            _elapsed = _interval.get() - 1;
+        }
+
+        /**
+         * Determine whether the poller runs this period. Only called by the
+         * polling thread.
+         *
+         * @return true if the poller runs this period
+         */
+        /* package private */ boolean isDue() {
+            if (++_elapsed < _interval.get()) {
+                return false;
+            }
+            _elapsed = 0;
+            return true;
+        }
+
+        /**
+         * Record the cost of a run and adjust the interval.
+         *
+         * @param target the metrics the poller recorded into
+         * @param nanoseconds the duration of the run
+         */
+        /* package private */ void completed(final PeriodicMetrics target, final long nanoseconds) {
+            if (_options == null) {
+                return;
+            }
+            final int maximum = _options.getMaximumInterval();
+            final int minimum = _options.getInterval();
+            final int interval;
+            if (nanoseconds > _budgetNanos) {
+                interval = _interval.updateAndGet(current -> (int) Math.min(current * 2L, maximum));
+            } else {
+                interval = _interval.updateAndGet(current -> Math.max(current / 2, minimum));
+            }
+            target.recordTimer(_durationName, nanoseconds, NANOSECONDS);
+            target.recordGauge(_intervalName, (long) interval);
+        }
+
+        /* package private */ int getInterval() {
+            return _interval.get();
+        }
+
+        private final Consumer<PeriodicMetrics> _consumer;
+        @Nullable
+        private final PollingOptions _options;
+        @Nullable
+        private final String _durationName;
+        @Nullable
+        private final String _intervalName;
+        private final long _budgetNanos;
+        private final AtomicInteger _interval;
+        private int _elapsed;
+        private volatile boolean _closed;
+    }
+
+    private static final class Task implements Runnable {
+        private Task(final Registration registration, final PeriodicMetrics target) {
+            _registration = registration;
+            _target = target;
+        }
+
+        @Override
+        public void run() {
+            _startNanos = System.nanoTime();
+            _started = true;
+            // CHECKSTYLE.OFF: IllegalCatch - A failing poller must not prevent the others or the period from being recorded
+            try {
+                _registration._consumer.accept(_target);
+            } catch (final RuntimeException e) {
+                LOGGER.debug("Polled metric failed", e);
+            } finally {
+                _registration.completed(_target, System.nanoTime() - _startNanos);
+            }
+            // CHECKSTYLE.ON: IllegalCatch
+        }
+
+        private final Registration _registration;
+        private final PeriodicMetrics _target;
+        private volatile long _startNanos;
+        private volatile boolean _started;
+        private Future<?> _future;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Sampler} that keeps each sample independently with the current
+ * rate. Rejecting a sample costs a single draw from {@link ThreadLocalRandom};
+ * only kept samples are counted, by metric, to record the sampling weights.
+ * The rate may be changed once per period by subclasses.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+abstract class RateSampler implements Sampler {
+
+    /**
+     * Package private constructor.
+     *
+     * @param rate the initial rate, greater than zero and at most one
+     */
+    RateSampler(final double rate) {
+        _rate = rate;
+    }
+
+    @Override
+    public boolean offerTimer(final String name, final long duration, @Nullable final TimeUnit unit) {
+        return accept(name);
+    }
+
+    @Override
+    public boolean offerGauge(final String name, final double value) {
+        return accept(name);
+    }
+
+    @Override
+    public boolean offerGauge(final String name, final long value) {
+        return accept(name);
+    }
+
+    @Override
+    public void flip(final SampleSink sink) {
+        final double rate = _rate;
+        final double weight = 1.0 / rate;
+        long kept = 0;
+        for (final Map.Entry<String, LongAdder> entry : _kept.entrySet()) {
+            final long samples = entry.getValue().sumThenReset();
+            if (samples > 0) {
+                sink.recordGauge(entry.getKey() + WEIGHT_SUFFIX, weight);
+                kept += samples;
+            }
+        }
+        _rate = nextRate(rate, kept);
+    }
+
+    double getRate() {
+        return _rate;
+    }
+
+    /**
+     * Compute the rate of the next period.
+     *
+     * @param rate the rate of the period
+     * @param kept the number of samples kept in the period
+     * @return the rate of the next period
+     */
+    abstract double nextRate(double rate, long kept);
+
+    private boolean accept(final String name) {
+        if (ThreadLocalRandom.current().nextDouble() >= _rate) {
+            return false;
+        }
+        // NOTE: Only kept samples pay for counting; the metric is resolved with a plain get in the common case
+        LongAdder kept = _kept.get(name);
+        if (kept == null) {
+            kept = _kept.computeIfAbsent(name, CREATE_ADDER);
+        }
+        kept.increment();
+        return true;
+    }
+
+    private volatile double _rate;
+    private final ConcurrentMap<String, LongAdder> _kept = new ConcurrentHashMap<>();
+
+    private static final Function<String, LongAdder> CREATE_ADDER = name -> new LongAdder();
+}
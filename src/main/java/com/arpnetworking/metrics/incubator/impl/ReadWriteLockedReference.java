@@ -30,7 +30,7 @@ import java.util.function.Consumer;
  *
  * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
  */
-public final class ReadWriteLockedReference<T> {
+public final class ReadWriteLockedReference<T> implements LockedReference<T> {
     /**
      * Public constructor.
      *
@@ -46,6 +46,7 @@ public final class ReadWriteLockedReference<T> {
      *
      * @param method The action to perform
      */
+    @Override
     public void readLocked(final Consumer<T> method) {
         locking(method, _lock.readLock());
     }
@@ -55,6 +56,7 @@ public final class ReadWriteLockedReference<T> {
      *
      * @param method The action to perform
      */
+    @Override
     public void writeLocked(final Consumer<T> method) {
         locking(method, _lock.writeLock());
     }
@@ -65,11 +67,14 @@ public final class ReadWriteLockedReference<T> {
      * @param newValue the new reference
      * @return the old reference
      */
+    @Override
     public T getAndSetReference(final T newValue) {
         _lock.writeLock().lock();
-        final T oldReference = _reference.getAndSet(newValue);
-        _lock.writeLock().unlock();
-        return oldReference;
+        try {
+            return _reference.getAndSet(newValue);
+        } finally {
+            _lock.writeLock().unlock();
+        }
     }
 
     private void locking(final Consumer<T> method, final Lock lock) {
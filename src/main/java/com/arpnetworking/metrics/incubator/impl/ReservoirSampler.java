@@ -0,0 +1,251 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.google.common.collect.Sets;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntSupplier;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Sampler} that keeps a uniform random sample of bounded size of
+ * the samples offered in each period, across every metric it samples. Each
+ * thread stripe keeps its own reservoir of up to the size of the sample so
+ * that offering a sample only touches memory of the stripe of the calling
+ * thread. When the period is flipped the reservoirs are combined into a
+ * single uniform sample of at most that size, which is recorded; each kept
+ * sample stands for the number of samples offered divided by the number
+ * kept. Samples are only written into a reservoir under its lock. Once the
+ * reservoir is full, rejecting a sample costs an atomic update of the count
+ * of the stripe and a single draw from {@link ThreadLocalRandom}, without
+ * taking the lock.
+ *
+ * NOTE: A sample offered while the period is flipped may be kept in either
+ * period.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class ReservoirSampler implements Sampler {
+
+    /**
+     * Package private constructor.
+     *
+     * @param size the maximum number of samples kept per period
+     */
+    ReservoirSampler(final int size) {
+        this(size, ThreadStripes::index, AtomicLong::new);
+    }
+
+    // NOTE: Package private for testing
+    /* package private */ ReservoirSampler(final int size, final IntSupplier stripe, final Supplier<AtomicLong> counts) {
+        _size = size;
+        _stripe = stripe;
+        _counts = counts;
+    }
+
+    @Override
+    public boolean offerTimer(final String name, final long duration, @Nullable final TimeUnit unit) {
+        reservoir().offer(TIMER, name, duration, unit);
+        return false;
+    }
+
+    @Override
+    public boolean offerGauge(final String name, final double value) {
+        reservoir().offer(DOUBLE_GAUGE, name, Double.doubleToRawLongBits(value), null);
+        return false;
+    }
+
+    @Override
+    public boolean offerGauge(final String name, final long value) {
+        reservoir().offer(LONG_GAUGE, name, value, null);
+        return false;
+    }
+
+    @Override
+    public synchronized void flip(final SampleSink sink) {
+        final Reservoir[] drained = new Reservoir[ThreadStripes.COUNT];
+        long offered = 0;
+        for (int i = 0; i < ThreadStripes.COUNT; ++i) {
+            final Reservoir reservoir = _reservoirs.get(i);
+            if (reservoir != null) {
+                drained[i] = reservoir.drain();
+                offered += drained[i]._offered.get();
+            }
+        }
+        // NOTE: Each draw picks a stripe in proportion to its samples not yet drawn and then one of its kept samples
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final Set<String> names = Sets.newHashSet();
+        final long kept = Math.min(offered, _size);
+        long remaining = offered;
+        for (long draw = 0; draw < kept; ++draw) {
+            long position = random.nextLong(remaining);
+            int stripe = 0;
+            while (drained[stripe] == null || position >= drained[stripe]._offered.get()) {
+                if (drained[stripe] != null) {
+                    position -= drained[stripe]._offered.get();
+                }
+                ++stripe;
+            }
+            drained[stripe].take(random.nextInt(drained[stripe]._kept), sink, names);
+            --remaining;
+        }
+        final double weight = (double) offered / Math.max(1, kept);
+        for (final String name : names) {
+            sink.recordGauge(name + WEIGHT_SUFFIX, weight);
+        }
+    }
+
+    private Reservoir reservoir() {
+        final int index = _stripe.getAsInt();
+        Reservoir reservoir = _reservoirs.get(index);
+        if (reservoir == null) {
+            _reservoirs.compareAndSet(index, null, new Reservoir(_size, _counts.get()));
+            reservoir = _reservoirs.get(index);
+        }
+        return reservoir;
+    }
+
+    private final int _size;
+    private final IntSupplier _stripe;
+    private final Supplier<AtomicLong> _counts;
+    private final AtomicReferenceArray<Reservoir> _reservoirs = new AtomicReferenceArray<>(ThreadStripes.COUNT);
+
+    private static final byte TIMER = 0;
+    private static final byte DOUBLE_GAUGE = 1;
+    private static final byte LONG_GAUGE = 2;
+
+    private static final class Reservoir {
+        private Reservoir(final int size, final AtomicLong offered) {
+            _kinds = new byte[size];
+            _names = new String[size];
+            _values = new long[size];
+            _units = new TimeUnit[size];
+            _offered = offered;
+        }
+
+        private void offer(final byte kind, final String name, final long value, @Nullable final TimeUnit unit) {
+            // NOTE: The count is only advanced here once full; until then it is advanced with the sample written under the lock
+            final long offered = _offered.getAndUpdate(_countWhenFull);
+            if (offered < _names.length) {
+                fill(kind, name, value, unit);
+            } else {
+                replace(offered + 1, kind, name, value, unit);
+            }
+        }
+
+        private synchronized void fill(final byte kind, final String name, final long value, @Nullable final TimeUnit unit) {
+            final long offered = _offered.incrementAndGet();
+            if (offered > _names.length) {
+                // NOTE: Other threads of the stripe filled the reservoir since it was found not full
+                replace(offered, kind, name, value, unit);
+            } else {
+                store((int) offered - 1, kind, name, value, unit);
+            }
+        }
+
+        private void replace(final long offered, final byte kind, final String name, final long value, @Nullable final TimeUnit unit) {
+            final long slot = ThreadLocalRandom.current().nextLong(offered);
+            if (slot < _names.length) {
+                store((int) slot, kind, name, value, unit);
+            }
+        }
+
+        private synchronized void store(
+                final int index,
+                final byte kind,
+                final String name,
+                final long value,
+                @Nullable final TimeUnit unit) {
+            _kinds[index] = kind;
+            _names[index] = name;
+            _values[index] = value;
+            _units[index] = unit;
+        }
+
+        private long countWhenFull(final long offered) {
+            if (offered >= _names.length) {
+                return offered + 1;
+            }
+            return offered;
+        }
+
+        /**
+         * Copy the kept samples and the count of offered samples and start
+         * the next period. Every slot below the count was written since the
+         * count only advances without the lock once the reservoir is full.
+         *
+         * @return the copy
+         */
+        private synchronized Reservoir drain() {
+            final long offered = _offered.getAndSet(0);
+            final int kept = (int) Math.min(offered, _names.length);
+            final Reservoir drained = new Reservoir(kept, new AtomicLong(offered));
+            System.arraycopy(_kinds, 0, drained._kinds, 0, kept);
+            System.arraycopy(_names, 0, drained._names, 0, kept);
+            System.arraycopy(_values, 0, drained._values, 0, kept);
+            System.arraycopy(_units, 0, drained._units, 0, kept);
+            drained._kept = kept;
+            Arrays.fill(_names, 0, kept, null);
+            Arrays.fill(_units, 0, kept, null);
+            return drained;
+        }
+
+        /**
+         * Record a kept sample of a drained copy and remove it from the
+         * samples that may still be drawn.
+         *
+         * @param index the index of the sample
+         * @param sink the sink to record into
+         * @param names the names of the metrics recorded
+         */
+        private void take(final int index, final SampleSink sink, final Set<String> names) {
+            final String name = _names[index];
+            names.add(name);
+            switch (_kinds[index]) {
+                case TIMER:
+                    sink.recordTimer(name, _values[index], _units[index]);
+                    break;
+                case DOUBLE_GAUGE:
+                    sink.recordGauge(name, Double.longBitsToDouble(_values[index]));
+                    break;
+                default:
+                    sink.recordGauge(name, _values[index]);
+            }
+            final int last = --_kept;
+            _kinds[index] = _kinds[last];
+            _names[index] = _names[last];
+            _values[index] = _values[last];
+            _units[index] = _units[last];
+            _offered.decrementAndGet();
+        }
+
+        private final byte[] _kinds;
+        private final String[] _names;
+        private final long[] _values;
+        private final TimeUnit[] _units;
+        private final AtomicLong _offered;
+        private final LongUnaryOperator _countWhenFull = this::countWhenFull;
+        private int _kept;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.google.common.base.Preconditions;
+
+import java.util.regex.Pattern;
+
+/**
+ * A coarser resolution of the metrics recorded with a {@link TsdPeriodicMetrics}
+ * instance, set with {@link TsdPeriodicMetrics.Builder#setRollups(java.util.List)}.
+ * Samples are only recorded once, into the base period of the instance. When
+ * each base period ends, the samples of the metrics whose names match the
+ * pattern of the rollup are merged into the open rollup period, which is
+ * flushed into its own {@link com.arpnetworking.metrics.Metrics} instance
+ * once it spans the configured number of base periods. Counters are emitted
+ * as a single sample holding the sum for the rollup period. Rollups are
+ * immutable.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public final class Rollup {
+
+    /**
+     * Emit the matching metrics only at the resolution of the rollup. Their
+     * samples are removed from the base period once merged.
+     *
+     * @param periods The number of base periods each rollup period spans; at least two.
+     * @param names The pattern the whole name of a metric must match to be rolled up.
+     * @return The {@link Rollup}.
+     */
+    public static Rollup replacing(final int periods, final Pattern names) {
+        return new Rollup(periods, names, false);
+    }
+
+    /**
+     * Emit the matching metrics at the resolution of the rollup in addition
+     * to the base resolution.
+     *
+     * @param periods The number of base periods each rollup period spans; at least two.
+     * @param names The pattern the whole name of a metric must match to be rolled up.
+     * @return The {@link Rollup}.
+     */
+    public static Rollup adding(final int periods, final Pattern names) {
+        return new Rollup(periods, names, true);
+    }
+
+    int getPeriods() {
+        return _periods;
+    }
+
+    boolean matches(final String name) {
+        return _names.matcher(name).matches();
+    }
+
+    boolean isRetainingBasePeriod() {
+        return _retainingBasePeriod;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Rollup{Periods=%d, Names=%s, RetainingBasePeriod=%s}", _periods, _names, _retainingBasePeriod);
+    }
+
+    private Rollup(final int periods, final Pattern names, final boolean retainingBasePeriod) {
+        Preconditions.checkArgument(periods >= 2, "Periods must be at least two; periods=%s", periods);
+        _periods = periods;
+        _names = names;
+        _retainingBasePeriod = retainingBasePeriod;
+    }
+
+    private final int _periods;
+    private final Pattern _names;
+    private final boolean _retainingBasePeriod;
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.MetricsFactory;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The open periods of the {@link Rollup} instances of a
+ * {@link TsdPeriodicMetrics} instance. Each completed base period is merged
+ * into the open period of every rollup and the samples of metrics rolled up
+ * by a replacing rollup are then removed from it. Completed rollup periods
+ * are handed off with their resolution as the number of base periods they
+ * span, in the same way as the base periods, so that they are flushed on the
+ * same thread. Only called by the thread rotating the periods.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class Rollups {
+
+    Rollups(
+            final List<Rollup> rollups,
+            final MetricsFactory metricsFactory,
+            final AccumulatorSettings settings) {
+        _metricsFactory = metricsFactory;
+        _settings = settings;
+        final ImmutableList.Builder<OpenRollup> open = ImmutableList.builder();
+        for (final Rollup rollup : rollups) {
+            open.add(new OpenRollup(rollup, createPeriod()));
+        }
+        _rollups = open.build();
+    }
+
+    /**
+     * Merge a completed base period into the open rollup periods and hand off
+     * those that span their number of base periods.
+     *
+     * @param completed the completed base period; must be quiescent
+     * @param handOff accepts the completed rollup periods and their resolution
+     */
+    void rollUp(final PeriodAccumulator completed, final ObjIntConsumer<CompletedPeriod> handOff) {
+        for (final OpenRollup open : _rollups) {
+            open._period.mergeMatching(completed, open._rollup::matches);
+            if (++open._elapsed == open._rollup.getPeriods()) {
+                final PeriodAccumulator period = open._period;
+                open._period = createPeriod();
+                open._elapsed = 0;
+                handOff.accept(period, open._rollup.getPeriods());
+            }
+        }
+        completed.removeMatching(this::isReplaced);
+    }
+
+    /**
+     * Hand off the open rollup periods, which span fewer base periods than
+     * configured. Periods that have not merged any base period since they
+     * opened are discarded.
+     *
+     * @param handOff accepts the open rollup periods and their resolution
+     */
+    void close(final ObjIntConsumer<CompletedPeriod> handOff) {
+        for (final OpenRollup open : _rollups) {
+            if (open._elapsed == 0) {
+                open._period.discard();
+            } else {
+                handOff.accept(open._period, open._rollup.getPeriods());
+            }
+        }
+    }
+
+    private boolean isReplaced(final String name) {
+        for (final OpenRollup open : _rollups) {
+            if (!open._rollup.isRetainingBasePeriod() && open._rollup.matches(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private PeriodAccumulator createPeriod() {
+        return new PeriodAccumulator(_metricsFactory.create(), _metricsFactory, _settings);
+    }
+
+    private final ImmutableList<OpenRollup> _rollups;
+    private final MetricsFactory _metricsFactory;
+    private final AccumulatorSettings _settings;
+
+    private static final class OpenRollup {
+        private OpenRollup(final Rollup rollup, final PeriodAccumulator period) {
+            _rollup = rollup;
+            _period = period;
+        }
+
+        private final Rollup _rollup;
+        private PeriodAccumulator _period;
+        private int _elapsed;
+    }
+}
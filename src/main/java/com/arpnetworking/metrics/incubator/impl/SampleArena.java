@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.google.common.collect.Lists;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of direct memory for the chunks of {@link SampleBuffer} instances,
+ * so that raw samples are kept off the heap. Chunks released once their
+ * period has been flushed are kept for reuse by later periods, up to a limit
+ * on the retained memory; direct memory beyond the limit is left for the
+ * garbage collector to free.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class SampleArena {
+
+    /**
+     * Package private constructor.
+     *
+     * @param retainedBytesLimit the most memory in bytes kept for reuse
+     */
+    SampleArena(final long retainedBytesLimit) {
+        _retainedBytesLimit = retainedBytesLimit;
+        _pools = Lists.newArrayListWithCapacity(SIZE_CLASSES);
+        for (int i = 0; i < SIZE_CLASSES; ++i) {
+            _pools.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * Borrow memory for a chunk of samples.
+     *
+     * @param capacity the number of samples; a power of two from {@link SampleBuffer#INITIAL_CHUNK_SIZE}
+     *                 to {@link SampleBuffer#MAXIMUM_CHUNK_SIZE}
+     * @return the memory, in native byte order
+     */
+    ByteBuffer acquire(final int capacity) {
+        final ByteBuffer buffer = pool(capacity).poll();
+        if (buffer != null) {
+            _retainedBytes.addAndGet(-buffer.capacity());
+            return buffer;
+        }
+        return ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Return memory borrowed with {@link #acquire(int)}.
+     *
+     * @param buffer the memory
+     */
+    void release(final ByteBuffer buffer) {
+        final int bytes = buffer.capacity();
+        if (_retainedBytes.addAndGet(bytes) > _retainedBytesLimit) {
+            _retainedBytes.addAndGet(-bytes);
+            return;
+        }
+        pool(bytes / Long.BYTES).add(buffer);
+    }
+
+    /**
+     * The memory in bytes currently kept for reuse.
+     *
+     * @return the retained memory in bytes
+     */
+    long getRetainedBytes() {
+        return _retainedBytes.get();
+    }
+
+    private Queue<ByteBuffer> pool(final int capacity) {
+        return _pools.get(Integer.numberOfTrailingZeros(capacity) - Integer.numberOfTrailingZeros(SampleBuffer.INITIAL_CHUNK_SIZE));
+    }
+
+    private final long _retainedBytesLimit;
+    private final List<Queue<ByteBuffer>> _pools;
+    private final AtomicLong _retainedBytes = new AtomicLong();
+
+    static final long DEFAULT_RETAINED_BYTES_LIMIT = 64L * 1024 * 1024;
+    private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(SampleBuffer.MAXIMUM_CHUNK_SIZE)
+            - Integer.numberOfTrailingZeros(SampleBuffer.INITIAL_CHUNK_SIZE)
+            + 1;
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.incubator.MetricKey;
+import com.arpnetworking.metrics.incubator.PeriodicBatch;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link PeriodicBatch} that buffers its samples in parallel arrays which
+ * grow by doubling and are kept when the batch is emptied, so that a reused
+ * batch does not allocate. Samples added by {@link MetricKey} are written
+ * with the dimensions of the key. Recording hands the whole batch to a
+ * {@link PeriodRecorder}, which writes it into the current period under a
+ * single acquisition.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class SampleBatch implements PeriodicBatch {
+
+    /**
+     * Package private constructor.
+     *
+     * @param recorder records a batch in the current period
+     */
+    SampleBatch(final Consumer<SampleBatch> recorder) {
+        _recorder = recorder;
+    }
+
+    @Override
+    public PeriodicBatch counter(final String name, final long value) {
+        add(COUNTER, name, value, null);
+        return this;
+    }
+
+    @Override
+    public PeriodicBatch timer(final String name, final long duration, final Optional<TimeUnit> unit) {
+        add(TIMER, name, duration, unit.orElse(null));
+        return this;
+    }
+
+    @Override
+    public PeriodicBatch gauge(final String name, final double value) {
+        add(DOUBLE_GAUGE, name, Double.doubleToRawLongBits(value), null);
+        return this;
+    }
+
+    @Override
+    public PeriodicBatch gauge(final String name, final long value) {
+        add(LONG_GAUGE, name, value, null);
+        return this;
+    }
+
+    @Override
+    public PeriodicBatch counter(final MetricKey key, final long value) {
+        add(COUNTER, key, value, null);
+        return this;
+    }
+
+    @Override
+    public PeriodicBatch timer(final MetricKey key, final long duration, final Optional<TimeUnit> unit) {
+        add(TIMER, key, duration, unit.orElse(null));
+        return this;
+    }
+
+    @Override
+    public PeriodicBatch gauge(final MetricKey key, final double value) {
+        add(DOUBLE_GAUGE, key, Double.doubleToRawLongBits(value), null);
+        return this;
+    }
+
+    @Override
+    public PeriodicBatch gauge(final MetricKey key, final long value) {
+        add(LONG_GAUGE, key, value, null);
+        return this;
+    }
+
+    @Override
+    public void record() {
+        if (_size == 0) {
+            return;
+        }
+        try {
+            _recorder.accept(this);
+        } finally {
+            // NOTE: The arrays are kept for reuse but must not retain the names, keys and units
+            Arrays.fill(_names, 0, _size, null);
+            Arrays.fill(_keys, 0, _size, null);
+            Arrays.fill(_units, 0, _size, null);
+            _size = 0;
+        }
+    }
+
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Replace the name or key of each sample.
+     *
+     * @param names maps the name of each sample added by name to the name it is recorded under
+     * @param keys maps the key of each sample added by key to the key it is recorded under
+     */
+    void rename(final UnaryOperator<String> names, final UnaryOperator<MetricKey> keys) {
+        for (int i = 0; i < _size; ++i) {
+            final MetricKey key = _keys[i];
+            if (key == null) {
+                _names[i] = names.apply(_names[i]);
+            } else {
+                _keys[i] = keys.apply(key);
+            }
+        }
+    }
+
+    /**
+     * Write the samples into the {@link Metrics} instances of a period.
+     *
+     * @param metrics the {@link Metrics} instances of the period
+     */
+    void writeTo(final DimensionedMetrics metrics) {
+        for (int i = 0; i < _size; ++i) {
+            final MetricKey key = _keys[i];
+            if (key == null) {
+                write(i, metrics.get(), _names[i]);
+            } else {
+                write(i, metrics.get(key.getDimensions()), key.getName());
+            }
+        }
+    }
+
+    /**
+     * Write the samples into a {@link PeriodAccumulator}.
+     *
+     * @param accumulator the accumulator, which the writer must have entered
+     */
+    void writeTo(final PeriodAccumulator accumulator) {
+        for (int i = 0; i < _size; ++i) {
+            final MetricKey key = _keys[i];
+            if (key == null) {
+                write(i, accumulator, _names[i]);
+            } else {
+                write(i, accumulator.dimension(key.getDimensions()), key.getName());
+            }
+        }
+    }
+
+    private void write(final int index, final Metrics metrics, final String name) {
+        switch (_kinds[index]) {
+            case COUNTER:
+                metrics.createCounter(name).increment(_values[index]);
+                break;
+            case TIMER:
+                metrics.setTimer(name, _values[index], _units[index]);
+                break;
+            case DOUBLE_GAUGE:
+                metrics.setGauge(name, Double.longBitsToDouble(_values[index]));
+                break;
+            default:
+                metrics.setGauge(name, _values[index]);
+        }
+    }
+
+    private void write(final int index, final PeriodAccumulator accumulator, final String name) {
+        switch (_kinds[index]) {
+            case COUNTER:
+                accumulator.recordCounter(name, _values[index]);
+                break;
+            case TIMER:
+                accumulator.recordTimer(name, _values[index], _units[index]);
+                break;
+            case DOUBLE_GAUGE:
+                accumulator.recordGauge(name, Double.longBitsToDouble(_values[index]));
+                break;
+            default:
+                accumulator.recordGauge(name, _values[index]);
+        }
+    }
+
+    private void add(final byte kind, final String name, final long value, @Nullable final TimeUnit unit) {
+        grow();
+        _names[_size] = name;
+        set(kind, value, unit);
+    }
+
+    private void add(final byte kind, final MetricKey key, final long value, @Nullable final TimeUnit unit) {
+        grow();
+        _keys[_size] = key;
+        set(kind, value, unit);
+    }
+
+    private void grow() {
+        if (_size == _kinds.length) {
+            final int capacity = _size * 2;
+            _kinds = Arrays.copyOf(_kinds, capacity);
+            _names = Arrays.copyOf(_names, capacity);
+            _keys = Arrays.copyOf(_keys, capacity);
+            _values = Arrays.copyOf(_values, capacity);
+            _units = Arrays.copyOf(_units, capacity);
+        }
+    }
+
+    private void set(final byte kind, final long value, @Nullable final TimeUnit unit) {
+        _kinds[_size] = kind;
+        _values[_size] = value;
+        _units[_size] = unit;
+        ++_size;
+    }
+
+    private final Consumer<SampleBatch> _recorder;
+    private byte[] _kinds = new byte[INITIAL_CAPACITY];
+    private String[] _names = new String[INITIAL_CAPACITY];
+    private MetricKey[] _keys = new MetricKey[INITIAL_CAPACITY];
+    private long[] _values = new long[INITIAL_CAPACITY];
+    private TimeUnit[] _units = new TimeUnit[INITIAL_CAPACITY];
+    private int _size;
+
+    static final int INITIAL_CAPACITY = 16;
+    private static final byte COUNTER = 0;
+    private static final byte TIMER = 1;
+    private static final byte DOUBLE_GAUGE = 2;
+    private static final byte LONG_GAUGE = 3;
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongConsumer;
+import javax.annotation.Nullable;
+
+/**
+ * An append-only, lock-free buffer of primitive samples. Writers append to
+ * the stripe of the calling thread; each stripe is a chain of chunks that
+ * double in size up to a limit. Chunks are held on the heap or, when the
+ * buffer is created with a {@link SampleArena}, in direct memory borrowed
+ * from the arena. Reading and releasing are only safe once all writers have
+ * finished, which callers establish with an {@link InFlightCounter}.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class SampleBuffer {
+
+    /**
+     * Package private constructor for a buffer on the heap.
+     */
+    SampleBuffer() {
+        this(null);
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param arena the arena to borrow direct memory from; null to keep samples on the heap
+     */
+    SampleBuffer(@Nullable final SampleArena arena) {
+        _arena = arena;
+    }
+
+    /**
+     * Append a sample.
+     *
+     * @param value the sample
+     */
+    void add(final long value) {
+        final int index = ThreadStripes.index();
+        Stripe stripe = _stripes.get(index);
+        if (stripe == null) {
+            final Chunk head = createChunk(_arena, INITIAL_CHUNK_SIZE);
+            if (!_stripes.compareAndSet(index, null, new Stripe(head))) {
+                // NOTE: Another writer on the same stripe created it first
+                head.release();
+            }
+            stripe = _stripes.get(index);
+        }
+        stripe.add(value);
+    }
+
+    /**
+     * Visit every sample in the buffer.
+     *
+     * @param consumer the sample visitor
+     */
+    void forEach(final LongConsumer consumer) {
+        for (int i = 0; i < _stripes.length(); ++i) {
+            final Stripe stripe = _stripes.get(i);
+            if (stripe != null) {
+                for (Chunk chunk = stripe._head; chunk != null; chunk = chunk._next.get()) {
+                    final int size = chunk.size();
+                    for (int j = 0; j < size; ++j) {
+                        consumer.accept(chunk.get(j));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The number of samples in the buffer.
+     *
+     * @return the number of samples
+     */
+    int size() {
+        int size = 0;
+        for (int i = 0; i < _stripes.length(); ++i) {
+            final Stripe stripe = _stripes.get(i);
+            if (stripe != null) {
+                for (Chunk chunk = stripe._head; chunk != null; chunk = chunk._next.get()) {
+                    size += chunk.size();
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Empty the buffer while keeping its chunks for the samples appended
+     * next, so that a buffer refilled every period stops allocating once
+     * its chunks fit the period. Only safe once all writers have finished.
+     */
+    void reset() {
+        for (int i = 0; i < _stripes.length(); ++i) {
+            final Stripe stripe = _stripes.get(i);
+            if (stripe != null) {
+                stripe.reset();
+            }
+        }
+    }
+
+    /**
+     * Return any direct memory to the arena. The buffer must not be used
+     * afterwards.
+     */
+    void release() {
+        for (int i = 0; i < _stripes.length(); ++i) {
+            final Stripe stripe = _stripes.getAndSet(i, null);
+            if (stripe != null) {
+                for (Chunk chunk = stripe._head; chunk != null; chunk = chunk._next.get()) {
+                    chunk.release();
+                }
+            }
+        }
+    }
+
+    private static Chunk createChunk(@Nullable final SampleArena arena, final int capacity) {
+        if (arena == null) {
+            return new HeapChunk(capacity);
+        }
+        return new DirectChunk(arena, capacity);
+    }
+
+    @Nullable
+    private final SampleArena _arena;
+    private final AtomicReferenceArray<Stripe> _stripes = new AtomicReferenceArray<>(ThreadStripes.COUNT);
+
+    static final int INITIAL_CHUNK_SIZE = 16;
+    static final int MAXIMUM_CHUNK_SIZE = 4096;
+
+    private static final class Stripe {
+        private Stripe(final Chunk head) {
+            _head = head;
+            _tail = head;
+        }
+
+        private void reset() {
+            for (Chunk chunk = _head; chunk != null; chunk = chunk._next.get()) {
+                chunk._cursor.set(0);
+            }
+            _tail = _head;
+        }
+
+        private void add(final long value) {
+            Chunk tail = _tail;
+            while (!tail.tryAdd(value)) {
+                tail = tail.next();
+                // NOTE: A racing writer may briefly move the tail backwards; appends still walk forward
+                _tail = tail;
+            }
+        }
+
+        private final Chunk _head;
+        private volatile Chunk _tail;
+    }
+
+    // NOTE: Package private for testing
+    /* package private */ abstract static class Chunk {
+        /* package private */ Chunk(final int capacity) {
+            _capacity = capacity;
+        }
+
+        /* package private */ boolean tryAdd(final long value) {
+            final int index = _cursor.getAndIncrement();
+            if (index < _capacity) {
+                set(index, value);
+                return true;
+            }
+            return false;
+        }
+
+        /* package private */ Chunk next() {
+            final Chunk next = _next.get();
+            if (next != null) {
+                return next;
+            }
+            final Chunk created = create(Math.min(_capacity * 2, MAXIMUM_CHUNK_SIZE));
+            if (!_next.compareAndSet(null, created)) {
+                // NOTE: Another writer linked its chunk first
+                created.release();
+            }
+            return _next.get();
+        }
+
+        /* package private */ int size() {
+            return Math.min(_cursor.get(), _capacity);
+        }
+
+        /* package private */ abstract long get(int index);
+
+        /* package private */ abstract void set(int index, long value);
+
+        /* package private */ abstract Chunk create(int capacity);
+
+        /* package private */ abstract void release();
+
+        private final int _capacity;
+        private final AtomicInteger _cursor = new AtomicInteger();
+        private final AtomicReference<Chunk> _next = new AtomicReference<>();
+    }
+
+    // NOTE: Package private for testing
+    /* package private */ static final class HeapChunk extends Chunk {
+        /* package private */ HeapChunk(final int capacity) {
+            super(capacity);
+            _values = new long[capacity];
+        }
+
+        @Override
+        long get(final int index) {
+            return _values[index];
+        }
+
+        @Override
+        void set(final int index, final long value) {
+            _values[index] = value;
+        }
+
+        @Override
+        Chunk create(final int capacity) {
+            return new HeapChunk(capacity);
+        }
+
+        @Override
+        void release() {
+            // NOTE: Heap chunks are reclaimed by the garbage collector
+        }
+
+        private final long[] _values;
+    }
+
+    // NOTE: Package private for testing
+    /* package private */ static final class DirectChunk extends Chunk {
+        /* package private */ DirectChunk(final SampleArena arena, final int capacity) {
+            super(capacity);
+            _arena = arena;
+            _buffer = arena.acquire(capacity);
+            _values = _buffer.asLongBuffer();
+        }
+
+        @Override
+        long get(final int index) {
+            return _values.get(index);
+        }
+
+        @Override
+        void set(final int index, final long value) {
+            _values.put(index, value);
+        }
+
+        @Override
+        Chunk create(final int capacity) {
+            return new DirectChunk(_arena, capacity);
+        }
+
+        @Override
+        void release() {
+            _arena.release(_buffer);
+        }
+
+        private final SampleArena _arena;
+        private final ByteBuffer _buffer;
+        private final LongBuffer _values;
+    }
+}
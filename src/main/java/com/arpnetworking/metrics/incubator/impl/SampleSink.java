@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Receives the timer and gauge samples a {@link Sampler} releases into the
+ * current period.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+interface SampleSink {
+
+    /**
+     * Record a timer sample in the current period.
+     *
+     * @param name The name of the timer.
+     * @param duration The duration of the timer.
+     * @param unit The time unit of the timer, if any.
+     */
+    void recordTimer(String name, long duration, @Nullable TimeUnit unit);
+
+    /**
+     * Record a gauge sample in the current period.
+     *
+     * @param name The name of the gauge.
+     * @param value The reading on the gauge
+     */
+    void recordGauge(String name, double value);
+
+    /**
+     * Record a gauge sample in the current period.
+     *
+     * @param name The name of the gauge.
+     * @param value The reading on the gauge
+     */
+    void recordGauge(String name, long value);
+}
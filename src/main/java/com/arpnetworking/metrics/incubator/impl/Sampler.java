@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Decides which timer and gauge samples are recorded when sampling is
+ * enabled by a {@link SamplingPolicy}. Each sampler records, once per period
+ * and for every metric it kept samples of, the gauge named after the metric
+ * with the suffix {@link #WEIGHT_SUFFIX} holding the number of samples each
+ * kept sample stands for, so that counts derived downstream can be scaled
+ * back up.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+interface Sampler {
+
+    /**
+     * Offer a timer sample.
+     *
+     * @param name The name of the timer.
+     * @param duration The duration of the timer.
+     * @param unit The time unit of the timer, if any.
+     * @return True if the caller should record the sample now.
+     */
+    boolean offerTimer(String name, long duration, @Nullable TimeUnit unit);
+
+    /**
+     * Offer a gauge sample.
+     *
+     * @param name The name of the gauge.
+     * @param value The reading on the gauge.
+     * @return True if the caller should record the sample now.
+     */
+    boolean offerGauge(String name, double value);
+
+    /**
+     * Offer a gauge sample.
+     *
+     * @param name The name of the gauge.
+     * @param value The reading on the gauge.
+     * @return True if the caller should record the sample now.
+     */
+    boolean offerGauge(String name, long value);
+
+    /**
+     * Record the samples held by the sampler and the sampling weights into
+     * the current period, which is about to be rotated, and start sampling
+     * the next period.
+     *
+     * @param sink The sink of the samples of the current period.
+     */
+    void flip(SampleSink sink);
+
+    /**
+     * The suffix of the name of the gauge holding the sampling weight of a metric.
+     */
+    String WEIGHT_SUFFIX = "/sampling_weight";
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.google.common.base.Preconditions;
+
+import java.util.function.Supplier;
+
+/**
+ * A policy for sampling the timer and gauge samples recorded by name with a
+ * {@link TsdPeriodicMetrics} instance, set with
+ * {@link TsdPeriodicMetrics.Builder#setSamplingPolicy(SamplingPolicy)} or per
+ * metric with {@link TsdPeriodicMetrics.Builder#setSamplingPolicies(java.util.Map)}.
+ * Each period, the number of samples each kept sample stands for is recorded
+ * for every sampled metric as the gauge named after the metric with the
+ * suffix {@code /sampling_weight}, so that counts derived downstream can be
+ * scaled back up. Samples recorded through handles, such as those returned
+ * by {@link TsdPeriodicMetrics#timer(String)}, are not sampled. Policies are
+ * immutable; every instance they are set on samples independently.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public final class SamplingPolicy {
+
+    /**
+     * Keep each sample independently with a fixed probability. Rejecting a
+     * sample costs a single thread local random draw.
+     *
+     * @param rate The probability of keeping a sample; greater than zero and at most one.
+     * @return The {@link SamplingPolicy}.
+     */
+    public static SamplingPolicy fixedRate(final double rate) {
+        Preconditions.checkArgument(rate > 0 && rate <= 1, "Rate must be greater than zero and at most one; rate=%s", rate);
+        return new SamplingPolicy(String.format("FixedRate{rate=%s}", rate), () -> new FixedRateSampler(rate));
+    }
+
+    /**
+     * Keep a uniform random sample of at most the specified number of samples
+     * each period, across every metric the policy applies to. Kept samples are
+     * recorded when the period ends. Rejecting a sample costs an increment of
+     * a counter striped by thread and a single thread local random draw. Each
+     * thread stripe that offers samples holds up to the specified number of
+     * samples.
+     *
+     * @param size The maximum number of samples kept per period; at least one.
+     * @return The {@link SamplingPolicy}.
+     */
+    public static SamplingPolicy reservoir(final int size) {
+        Preconditions.checkArgument(size >= 1, "Size must be at least one; size=%s", size);
+        return new SamplingPolicy(String.format("Reservoir{size=%s}", size), () -> new ReservoirSampler(size));
+    }
+
+    /**
+     * Keep each sample independently with a probability adapted each period to
+     * keep about the specified number of samples per period, across every
+     * metric the policy applies to. Every sample is kept in the first period.
+     * Rejecting a sample costs a single thread local random draw.
+     *
+     * @param targetSamples The number of samples to keep per period; at least one.
+     * @return The {@link SamplingPolicy}.
+     */
+    public static SamplingPolicy adaptive(final int targetSamples) {
+        Preconditions.checkArgument(targetSamples >= 1, "Target samples must be at least one; targetSamples=%s", targetSamples);
+        return new SamplingPolicy(
+                String.format("Adaptive{targetSamples=%s}", targetSamples),
+                () -> new AdaptiveRateSampler(targetSamples));
+    }
+
+    Sampler createSampler() {
+        return _factory.get();
+    }
+
+    @Override
+    public String toString() {
+        return _description;
+    }
+
+    private SamplingPolicy(final String description, final Supplier<Sampler> factory) {
+        _description = description;
+        _factory = factory;
+    }
+
+    private final String _description;
+    private final Supplier<Sampler> _factory;
+}
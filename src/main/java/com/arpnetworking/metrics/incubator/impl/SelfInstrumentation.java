@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the cost of a {@link TsdPeriodicMetrics} instance. The
+ * measurements of a period are recorded into the following period through
+ * the {@link PeriodRecorder} of the instance and the latest are kept for
+ * {@link #getStats()}.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class SelfInstrumentation {
+
+    /**
+     * Count samples recorded in the current period.
+     *
+     * @param count the number of samples
+     */
+    void sample(final int count) {
+        _samples.add(count);
+    }
+
+    /**
+     * Add the time a recording thread waited for shared access to the current period.
+     *
+     * @param nanoseconds the time waited in nanoseconds
+     */
+    void lockWait(final long nanoseconds) {
+        _lockWait.add(nanoseconds);
+        _maximumLockWait.accumulate(nanoseconds);
+    }
+
+    /**
+     * Record the samples counted and the lock waits of the period that was just rotated out.
+     *
+     * @param recorder the recorder of the current period
+     */
+    void rotated(final PeriodRecorder recorder) {
+        // NOTE: Samples counted while the period is rotated may be attributed to either period
+        _lastSamples = _samples.sumThenReset();
+        _lastLockWait = _lockWait.sumThenReset();
+        _lastMaximumLockWait = _maximumLockWait.getThenReset();
+        recorder.recordCounter(SAMPLES_METRIC, _lastSamples);
+        recorder.recordTimer(LOCK_WAIT_METRIC, _lastLockWait, TimeUnit.NANOSECONDS);
+        recorder.recordTimer(MAXIMUM_LOCK_WAIT_METRIC, _lastMaximumLockWait, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record the time taken to record a period.
+     *
+     * @param nanoseconds the time taken in nanoseconds
+     * @param recorder the recorder of the current period
+     */
+    void runCompleted(final long nanoseconds, final PeriodRecorder recorder) {
+        _lastRunDuration = nanoseconds;
+        recorder.recordTimer(RUN_DURATION_METRIC, nanoseconds, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record the time taken to flush a period.
+     *
+     * @param nanoseconds the time taken in nanoseconds
+     * @param recorder the recorder of the current period
+     */
+    void flushCompleted(final long nanoseconds, final PeriodRecorder recorder) {
+        _lastFlushDuration = nanoseconds;
+        recorder.recordTimer(FLUSH_DURATION_METRIC, nanoseconds, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the latest measurements.
+     *
+     * @return the latest measurements
+     */
+    PeriodicMetricsStats getStats() {
+        return new PeriodicMetricsStats(
+                Duration.ofNanos(_lastRunDuration),
+                Duration.ofNanos(_lastFlushDuration),
+                Duration.ofNanos(_lastLockWait),
+                Duration.ofNanos(_lastMaximumLockWait),
+                _lastSamples);
+    }
+
+    private final LongAdder _samples = new LongAdder();
+    private final LongAdder _lockWait = new LongAdder();
+    private final LongAccumulator _maximumLockWait = new LongAccumulator(Math::max, 0);
+    private volatile long _lastSamples;
+    private volatile long _lastLockWait;
+    private volatile long _lastMaximumLockWait;
+    private volatile long _lastRunDuration;
+    private volatile long _lastFlushDuration;
+
+    static final String SAMPLES_METRIC = "periodic_metrics/self/samples";
+    static final String LOCK_WAIT_METRIC = "periodic_metrics/self/lock_wait";
+    static final String MAXIMUM_LOCK_WAIT_METRIC = "periodic_metrics/self/maximum_lock_wait";
+    static final String RUN_DURATION_METRIC = "periodic_metrics/self/run_duration";
+    static final String FLUSH_DURATION_METRIC = "periodic_metrics/self/flush_duration";
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.impl.ReplayedMetrics;
+import com.arpnetworking.metrics.incubator.Dimensions;
+import com.google.common.collect.Maps;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * The binary form of a completed period in the spool. A period is encoded as
+ * its open and close times, then a group for its own samples followed by a
+ * group for the samples of each set of dimensions. A group starts with its dimensions and holds one entry
+ * per metric, tagged with the kind of the metric and holding every sample of
+ * it, and ends with an end tag. Integral values are variable length
+ * quantities so that small counts and durations take a byte or two.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class SpoolCodec {
+
+    /**
+     * Encode a completed period. The open time is that of the {@link Metrics}
+     * instance of the period, or the close time if it does not report one.
+     *
+     * @param period the period; must be quiescent
+     * @param closeTime the time the period closed
+     * @param encoder the encoder to append the period to
+     */
+    static void encode(final PeriodAccumulator period, final Instant closeTime, final BinaryEncoder encoder) {
+        Instant openTime = period.getOpenTime();
+        if (openTime == null) {
+            openTime = closeTime;
+        }
+        encoder.putInstant(openTime);
+        encoder.putInstant(closeTime);
+        encode(Dimensions.none(), period, new GroupEncoder(encoder));
+    }
+
+    /**
+     * Write an encoded period into new {@link Metrics} instances, one per
+     * group, and close them. The instances report the open and close times
+     * of the period where the factory supports it; see {@link ReplayedMetrics}.
+     *
+     * @param record the encoded period; consumed entirely
+     * @param metricsFactory the factory of the {@link Metrics} instances
+     */
+    static void decode(final ByteBuffer record, final MetricsFactory metricsFactory) {
+        if (!record.hasRemaining()) {
+            return;
+        }
+        final Instant openTime = BinaryDecoder.getInstant(record);
+        final Instant closeTime = BinaryDecoder.getInstant(record);
+        while (record.hasRemaining()) {
+            final Metrics metrics = ReplayedMetrics.create(metricsFactory, openTime, closeTime);
+            decodeGroup(record, metrics);
+            metrics.close();
+        }
+    }
+
+    private static void encode(final Dimensions dimensions, final PeriodAccumulator period, final GroupEncoder encoder) {
+        final Map<String, String> tags = dimensions.getTags();
+        encoder._encoder.putVarLong(tags.size());
+        tags.forEach((key, value) -> {
+            encoder._encoder.putString(key);
+            encoder._encoder.putString(value);
+        });
+        period.accept(encoder);
+        encoder._encoder.putByte(END);
+        period.forEachDimension((childDimensions, child) -> encode(childDimensions, child, encoder));
+    }
+
+    private static void decodeGroup(final ByteBuffer record, final Metrics metrics) {
+        final int tagCount = BinaryDecoder.getVarInt(record);
+        if (tagCount > 0) {
+            final Map<String, String> tags = Maps.newHashMapWithExpectedSize(tagCount);
+            for (int i = 0; i < tagCount; ++i) {
+                tags.put(BinaryDecoder.getString(record), BinaryDecoder.getString(record));
+            }
+            metrics.addAnnotations(tags);
+        }
+        for (int kind = BinaryDecoder.getByte(record); kind != END; kind = BinaryDecoder.getByte(record)) {
+            decodeEntry(kind, BinaryDecoder.getString(record), record, metrics);
+        }
+    }
+
+    private static void decodeEntry(final int kind, final String name, final ByteBuffer record, final Metrics metrics) {
+        if (kind == COUNTER) {
+            metrics.createCounter(name).increment(BinaryDecoder.getZigZag(record));
+        } else if (kind == TIMER || kind == UNITLESS_TIMER) {
+            TimeUnit unit = null;
+            if (kind == TIMER) {
+                unit = TimeUnit.NANOSECONDS;
+            }
+            for (int i = BinaryDecoder.getVarInt(record); i > 0; --i) {
+                metrics.setTimer(name, BinaryDecoder.getZigZag(record), unit);
+            }
+        } else if (kind == DOUBLE_GAUGE) {
+            for (int i = BinaryDecoder.getVarInt(record); i > 0; --i) {
+                metrics.setGauge(name, BinaryDecoder.getDouble(record));
+            }
+        } else if (kind == LONG_GAUGE) {
+            for (int i = BinaryDecoder.getVarInt(record); i > 0; --i) {
+                metrics.setGauge(name, BinaryDecoder.getZigZag(record));
+            }
+        } else if (kind == HISTOGRAM) {
+            PeriodAccumulator.writeHistogram(metrics, name, decodeHistogram(record));
+        } else {
+            throw new IllegalArgumentException(String.format("Unknown entry kind; kind=%d", kind));
+        }
+    }
+
+    private static LogLinearHistogram decodeHistogram(final ByteBuffer record) {
+        final LogLinearHistogram histogram = new LogLinearHistogram(BinaryDecoder.getVarInt(record));
+        final long dropped = BinaryDecoder.getVarLong(record);
+        final double sum = BinaryDecoder.getDouble(record);
+        final double min = BinaryDecoder.getDouble(record);
+        final double max = BinaryDecoder.getDouble(record);
+        for (int i = BinaryDecoder.getVarInt(record); i > 0; --i) {
+            histogram.restoreBucket(BinaryDecoder.getDouble(record), BinaryDecoder.getVarLong(record));
+        }
+        histogram.restoreStatistics(dropped, sum, min, max);
+        return histogram;
+    }
+
+    private SpoolCodec() { }
+
+    private static final int END = 0;
+    private static final int COUNTER = 1;
+    private static final int TIMER = 2;
+    private static final int UNITLESS_TIMER = 3;
+    private static final int DOUBLE_GAUGE = 4;
+    private static final int LONG_GAUGE = 5;
+    private static final int HISTOGRAM = 6;
+
+    private static final class GroupEncoder implements PeriodAccumulator.Visitor {
+        private GroupEncoder(final BinaryEncoder encoder) {
+            _encoder = encoder;
+        }
+
+        @Override
+        public void counter(final String name, final long value) {
+            _encoder.putByte(COUNTER);
+            _encoder.putString(name);
+            _encoder.putZigZag(value);
+        }
+
+        @Override
+        public void timers(final String name, final SampleBuffer samples, @Nullable final TimeUnit unit) {
+            if (unit == null) {
+                _encoder.putByte(UNITLESS_TIMER);
+            } else {
+                _encoder.putByte(TIMER);
+            }
+            _encoder.putString(name);
+            _encoder.putVarLong(samples.size());
+            samples.forEach(_encoder::putZigZag);
+        }
+
+        @Override
+        public void doubleGauges(final String name, final SampleBuffer samples) {
+            _encoder.putByte(DOUBLE_GAUGE);
+            _encoder.putString(name);
+            _encoder.putVarLong(samples.size());
+            samples.forEach(_encoder::putLong);
+        }
+
+        @Override
+        public void longGauges(final String name, final SampleBuffer samples) {
+            _encoder.putByte(LONG_GAUGE);
+            _encoder.putString(name);
+            _encoder.putVarLong(samples.size());
+            samples.forEach(_encoder::putZigZag);
+        }
+
+        @Override
+        public void histogram(final String name, final LogLinearHistogram histogram) {
+            _encoder.putByte(HISTOGRAM);
+            _encoder.putString(name);
+            _encoder.putVarLong(histogram.getPrecision());
+            _encoder.putVarLong(histogram.getDropped());
+            _encoder.putDouble(histogram.getSum());
+            _encoder.putDouble(histogram.getMin());
+            _encoder.putDouble(histogram.getMax());
+            final int[] buckets = new int[1];
+            histogram.forEachBucket((bucket, count) -> ++buckets[0]);
+            _encoder.putVarLong(buckets[0]);
+            histogram.forEachBucket((bucket, count) -> {
+                _encoder.putDouble(bucket);
+                _encoder.putVarLong(count);
+            });
+        }
+
+        private final BinaryEncoder _encoder;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.file.Path;
+
+/**
+ * Options for spooling the completed periods of a {@link TsdPeriodicMetrics}
+ * instance to local disk, set with
+ * {@link TsdPeriodicMetrics.Builder#setSpoolOptions(SpoolOptions)}. The spool
+ * holds at most the maximum number of segments of the segment size each;
+ * periods completed while it is full are discarded and counted as
+ * {@code periodic_metrics/spool/overflows}.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public final class SpoolOptions {
+
+    /**
+     * The directory holding the segment files of the spool.
+     *
+     * @return The spool directory.
+     */
+    public Path getDirectory() {
+        return _directory;
+    }
+
+    /**
+     * The size of each segment file in bytes. Periods larger than a segment
+     * are written to a segment of their own.
+     *
+     * @return The segment size in bytes.
+     */
+    public int getSegmentSize() {
+        return _segmentSize;
+    }
+
+    /**
+     * The largest number of segment files kept in the spool.
+     *
+     * @return The maximum number of segments.
+     */
+    public int getMaximumSegments() {
+        return _maximumSegments;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "SpoolOptions{Directory=%s, SegmentSize=%d, MaximumSegments=%d}",
+                _directory,
+                _segmentSize,
+                _maximumSegments);
+    }
+
+    private SpoolOptions(final Builder builder) {
+        _directory = builder._directory;
+        _segmentSize = builder._segmentSize;
+        _maximumSegments = builder._maximumSegments;
+    }
+
+    private final Path _directory;
+    private final int _segmentSize;
+    private final int _maximumSegments;
+
+    /**
+     * Implementation of the Builder pattern for the {@link SpoolOptions} class.
+     *
+     * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+     */
+    public static final class Builder implements com.arpnetworking.commons.builder.Builder<SpoolOptions> {
+        /**
+         * Sets the directory holding the segment files of the spool. It is created if it does not exist and must
+         * not be shared with another instance. Required. Cannot be null.
+         *
+         * @param value The spool directory.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setDirectory(final Path value) {
+            _directory = value;
+            return this;
+        }
+
+        /**
+         * Sets the size of each segment file in bytes. Optional. Cannot be null. Must be at least 4096. Defaults
+         * to 16 MiB.
+         *
+         * @param value The segment size in bytes.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setSegmentSize(final Integer value) {
+            _segmentSize = value;
+            return this;
+        }
+
+        /**
+         * Sets the largest number of segment files kept in the spool. Optional. Cannot be null. Must be at least
+         * two. Defaults to 64.
+         *
+         * @param value The maximum number of segments.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setMaximumSegments(final Integer value) {
+            _maximumSegments = value;
+            return this;
+        }
+
+        @Override
+        public SpoolOptions build() {
+            Preconditions.checkArgument(_directory != null, "Directory cannot be null");
+            Preconditions.checkArgument(
+                    _segmentSize != null && _segmentSize >= MINIMUM_SEGMENT_SIZE,
+                    "Segment size must be at least %s; segmentSize=%s",
+                    MINIMUM_SEGMENT_SIZE,
+                    _segmentSize);
+            Preconditions.checkArgument(
+                    _maximumSegments != null && _maximumSegments >= 2,
+                    "Maximum segments must be at least two; maximumSegments=%s",
+                    _maximumSegments);
+            return new SpoolOptions(this);
+        }
+
+        private Path _directory;
+        private Integer _segmentSize = DEFAULT_SEGMENT_SIZE;
+        private Integer _maximumSegments = DEFAULT_MAXIMUM_SEGMENTS;
+
+        private static final int MINIMUM_SEGMENT_SIZE = 4096;
+        private static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+        private static final int DEFAULT_MAXIMUM_SEGMENTS = 64;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An append-only segment file of the spool, mapped into memory. The segment
+ * starts with a header holding the offset up to which records have been
+ * forwarded, followed by the records, each prefixed by its length. The length
+ * is written after the record so that a record torn by a crash reads as the
+ * end of the segment. A segment is sealed by writing a marker after its last
+ * record once the writer moves on to the next segment.
+ *
+ * Records are appended by a single writer thread and read by a single
+ * forwarder thread. The offset up to which records have been appended is
+ * published through a volatile field, which orders the writes to the mapped
+ * memory before the reads of the forwarder.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class SpoolSegment {
+
+    /**
+     * Create an empty segment.
+     *
+     * @param file the segment file; must not exist
+     * @param capacity the size of the segment file in bytes
+     * @return the segment
+     * @throws IOException if the segment file cannot be created
+     */
+    static SpoolSegment create(final Path file, final int capacity) throws IOException {
+        final SpoolSegment segment = new SpoolSegment(file, map(file, capacity, StandardOpenOption.CREATE_NEW));
+        segment._buffer.putInt(0, MAGIC);
+        segment._buffer.putInt(Integer.BYTES, VERSION);
+        segment._buffer.putInt(READ_OFFSET_POSITION, HEADER_BYTES);
+        segment._readOffset = HEADER_BYTES;
+        segment._published = HEADER_BYTES;
+        return segment;
+    }
+
+    /**
+     * Open an existing segment, left behind by a previous process, and seal
+     * it. Records after a torn record are discarded.
+     *
+     * @param file the segment file
+     * @return the segment
+     * @throws IOException if the segment file cannot be read or is not a segment
+     */
+    static SpoolSegment open(final Path file) throws IOException {
+        final long size = Files.size(file);
+        if (size < HEADER_BYTES + RECORD_HEADER_BYTES || size > Integer.MAX_VALUE) {
+            throw new IOException(String.format("Invalid spool segment size; file=%s, size=%d", file, size));
+        }
+        final SpoolSegment segment = new SpoolSegment(file, map(file, (int) size, StandardOpenOption.READ));
+        final ByteBuffer buffer = segment._buffer;
+        final int readOffset = buffer.getInt(READ_OFFSET_POSITION);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != VERSION || readOffset < HEADER_BYTES) {
+            throw new IOException(String.format("Not a spool segment; file=%s", file));
+        }
+        int offset = HEADER_BYTES;
+        int length = buffer.getInt(offset);
+        while (length > 0 && length <= buffer.capacity() - offset - RECORD_HEADER_BYTES * 2) {
+            offset += RECORD_HEADER_BYTES + length;
+            length = buffer.getInt(offset);
+        }
+        segment._published = offset;
+        segment._readOffset = Math.min(readOffset, offset);
+        segment.seal();
+        return segment;
+    }
+
+    /**
+     * Append a record. Only called by the writer.
+     *
+     * @param record the record, from its position to its limit
+     * @return false if the record does not fit in the segment
+     */
+    boolean append(final ByteBuffer record) {
+        final int offset = _published;
+        final int length = record.remaining();
+        if (length > _buffer.capacity() - offset - RECORD_HEADER_BYTES * 2) {
+            return false;
+        }
+        final ByteBuffer target = _buffer.duplicate();
+        target.position(offset + RECORD_HEADER_BYTES);
+        target.put(record);
+        // NOTE: A reserved marker keeps the end of the segment readable until the next record is appended
+        _buffer.putInt(offset + RECORD_HEADER_BYTES + length, 0);
+        _buffer.putInt(offset, length);
+        _published = offset + RECORD_HEADER_BYTES + length;
+        return true;
+    }
+
+    /**
+     * Mark the segment as complete. Only called by the writer, or before the
+     * segment is shared.
+     */
+    void seal() {
+        _buffer.putInt(_published, SEALED);
+        _sealed = true;
+    }
+
+    boolean isSealed() {
+        return _sealed;
+    }
+
+    int getPublished() {
+        return _published;
+    }
+
+    int getReadOffset() {
+        return _readOffset;
+    }
+
+    /**
+     * Get the record at an offset. Only called by the forwarder.
+     *
+     * @param offset the offset of the record; less than the published offset
+     * @return the record
+     */
+    ByteBuffer read(final int offset) {
+        final ByteBuffer record = _buffer.duplicate();
+        record.position(offset + RECORD_HEADER_BYTES);
+        record.limit(offset + RECORD_HEADER_BYTES + _buffer.getInt(offset));
+        return record.slice();
+    }
+
+    /**
+     * Record the offset up to which records have been forwarded. Only called
+     * by the forwarder.
+     *
+     * @param readOffset the offset of the first record not forwarded
+     */
+    void commit(final int readOffset) {
+        _readOffset = readOffset;
+        _buffer.putInt(READ_OFFSET_POSITION, readOffset);
+    }
+
+    /**
+     * Delete the segment file once every record has been forwarded. The
+     * mapping is released once the segment is garbage collected.
+     *
+     * @throws IOException if the segment file cannot be deleted
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(_file);
+    }
+
+    Path getFile() {
+        return _file;
+    }
+
+    static int capacityFor(final int recordLength) {
+        return HEADER_BYTES + RECORD_HEADER_BYTES * 2 + recordLength;
+    }
+
+    private static MappedByteBuffer map(final Path file, final int capacity, final StandardOpenOption option) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, option, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+    }
+
+    private SpoolSegment(final Path file, final MappedByteBuffer buffer) {
+        _file = file;
+        _buffer = buffer;
+    }
+
+    private final Path _file;
+    private final MappedByteBuffer _buffer;
+    private volatile int _published;
+    private volatile boolean _sealed;
+    private volatile int _readOffset;
+
+    static final int HEADER_BYTES = 3 * Integer.BYTES;
+    static final int RECORD_HEADER_BYTES = Integer.BYTES;
+
+    private static final int MAGIC = 0x504d5350;
+    private static final int VERSION = 1;
+    private static final int READ_OFFSET_POSITION = 2 * Integer.BYTES;
+    private static final int SEALED = -1;
+}
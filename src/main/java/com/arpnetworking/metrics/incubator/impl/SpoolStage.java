@@ -0,0 +1,224 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.incubator.PeriodicCounter;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Spools completed periods to memory mapped segment files on local disk and
+ * forwards them to the sinks on a dedicated thread, so that slow or
+ * unavailable sinks neither delay the rotation of periods nor lose the
+ * periods spooled before a restart. Each completed period is encoded with
+ * {@link SpoolCodec} and appended to the newest segment; the forwarder
+ * decodes every record appended since its last pass into new
+ * {@link com.arpnetworking.metrics.Metrics} instances and records its
+ * progress in the segment once per pass. Forwarded segments are deleted.
+ * When the maximum number of segments is reached, further periods are
+ * discarded until the forwarder catches up.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class SpoolStage implements AutoCloseable {
+
+    /**
+     * Package private constructor. Segments left behind by a previous
+     * process in the directory are forwarded first.
+     *
+     * @param options the spool options
+     * @param metricsFactory the factory of the {@link com.arpnetworking.metrics.Metrics} instances forwarded into
+     * @param overflows the counter of periods discarded because the spool is full
+     * @param executor the single threaded executor to forward on; owned by this stage
+     */
+    SpoolStage(
+            final SpoolOptions options,
+            final MetricsFactory metricsFactory,
+            final PeriodicCounter overflows,
+            final ExecutorService executor) {
+        _directory = options.getDirectory();
+        _segmentSize = options.getSegmentSize();
+        _maximumSegments = options.getMaximumSegments();
+        _metricsFactory = metricsFactory;
+        _overflows = overflows;
+        _executor = executor;
+        recover();
+        if (!_segments.isEmpty()) {
+            _executor.execute(_forward);
+        }
+    }
+
+    /**
+     * Spool a completed period and hand it to the forwarder. The period is
+     * recorded as closing now so that it is forwarded with the times it was
+     * open rather than the time it is forwarded. The memory of the samples of
+     * the period is returned. Must only be called by one
+     * thread at a time.
+     *
+     * @param period the completed period; must be quiescent
+     */
+    void submit(final PeriodAccumulator period) {
+        _encoder.reset();
+        SpoolCodec.encode(period, Instant.now(), _encoder);
+        period.release();
+        if (!append(_encoder.view())) {
+            _overflows.add(1);
+        }
+        _executor.execute(_forward);
+    }
+
+    /**
+     * Forward the spooled periods and stop the forwarder. Periods that could
+     * not be forwarded in time remain in the spool.
+     */
+    @Override
+    public void close() {
+        _executor.shutdown();
+        try {
+            _executor.awaitTermination(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // NOTE: Package private for testing
+    /* package private */ int getSegmentCount() {
+        return _segments.size();
+    }
+
+    private boolean append(final ByteBuffer record) {
+        if (_current != null) {
+            if (_current.append(record)) {
+                return true;
+            }
+            _current.seal();
+            _current = null;
+        }
+        if (_segments.size() >= _maximumSegments) {
+            return false;
+        }
+        final Path file = _directory.resolve(String.format(SEGMENT_FORMAT, ++_sequence));
+        try {
+            _current = SpoolSegment.create(file, Math.max(_segmentSize, SpoolSegment.capacityFor(record.remaining())));
+        } catch (final IOException e) {
+            LOGGER.warn(String.format("Unable to create spool segment; file=%s", file), e);
+            return false;
+        }
+        _segments.addLast(_current);
+        return _current.append(record);
+    }
+
+    private void forward() {
+        for (SpoolSegment segment = _segments.peekFirst(); segment != null; segment = _segments.peekFirst()) {
+            // NOTE: Reading the seal first guarantees that the published offset read after it is final
+            final boolean sealed = segment.isSealed();
+            final int published = segment.getPublished();
+            int offset = segment.getReadOffset();
+            while (offset < published) {
+                final ByteBuffer record = segment.read(offset);
+                offset += SpoolSegment.RECORD_HEADER_BYTES + record.remaining();
+                forward(segment, record);
+            }
+            segment.commit(offset);
+            if (!sealed) {
+                return;
+            }
+            _segments.pollFirst();
+            try {
+                segment.delete();
+            } catch (final IOException e) {
+                LOGGER.warn(String.format("Unable to delete spool segment; file=%s", segment.getFile()), e);
+            }
+        }
+    }
+
+    private void forward(final SpoolSegment segment, final ByteBuffer record) {
+        // CHECKSTYLE.OFF: IllegalCatch - A malformed record or failing sink must not stop the forwarder
+        try {
+            SpoolCodec.decode(record, _metricsFactory);
+        } catch (final RuntimeException e) {
+            LOGGER.warn(String.format("Unable to forward spooled period; file=%s", segment.getFile()), e);
+        }
+        // CHECKSTYLE.ON: IllegalCatch
+    }
+
+    private void recover() {
+        final List<Path> files = Lists.newArrayList();
+        try {
+            Files.createDirectories(_directory);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(_directory, SEGMENT_GLOB)) {
+                stream.forEach(files::add);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(String.format("Unable to open spool directory; directory=%s", _directory), e);
+        }
+        // NOTE: The zero padded sequence numbers order the segment files by name
+        Collections.sort(files);
+        for (final Path file : files) {
+            _sequence = Math.max(_sequence, parseSequence(file));
+            try {
+                _segments.addLast(SpoolSegment.open(file));
+            } catch (final IOException e) {
+                LOGGER.warn(String.format("Skipping unreadable spool segment; file=%s", file), e);
+            }
+        }
+    }
+
+    private static long parseSequence(final Path file) {
+        final String name = String.valueOf(file.getFileName());
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private final Path _directory;
+    private final int _segmentSize;
+    private final int _maximumSegments;
+    private final MetricsFactory _metricsFactory;
+    private final PeriodicCounter _overflows;
+    private final ExecutorService _executor;
+    private final Deque<SpoolSegment> _segments = new ConcurrentLinkedDeque<>();
+    private final BinaryEncoder _encoder = new BinaryEncoder();
+    private final Runnable _forward = this::forward;
+    @Nullable
+    private SpoolSegment _current;
+    private long _sequence;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpoolStage.class);
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String SEGMENT_FORMAT = "%020d" + SEGMENT_SUFFIX;
+    private static final String SEGMENT_GLOB = "*" + SEGMENT_SUFFIX;
+    private static final long TERMINATION_TIMEOUT_SECONDS = 60;
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * A {@link LockedReference} protected by a {@link StampedLock}. Acquiring
+ * the non-reentrant read lock of a {@link StampedLock} is cheaper than that
+ * of a {@code ReentrantReadWriteLock} since it does not track the holding
+ * threads. Optimistic reads are not used because actions may modify the held
+ * object and so cannot be retried.
+ *
+ * NOTE: The locks are not reentrant; an action must not acquire the write lock
+ * of the same reference.
+ *
+ * @param <T> The type of object protected by the lock.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public final class StampedLockedReference<T> implements LockedReference<T> {
+    /**
+     * Public constructor.
+     *
+     * @param initialValue the initial value of the held reference
+     */
+    public StampedLockedReference(final T initialValue) {
+        _reference = initialValue;
+    }
+
+    @Override
+    public void readLocked(final Consumer<T> method) {
+        final long stamp = _lock.readLock();
+        try {
+            method.accept(_reference);
+        } finally {
+            _lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void writeLocked(final Consumer<T> method) {
+        final long stamp = _lock.writeLock();
+        try {
+            method.accept(_reference);
+        } finally {
+            _lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public T getAndSetReference(final T newValue) {
+        final long stamp = _lock.writeLock();
+        try {
+            final T oldReference = _reference;
+            _reference = newValue;
+            return oldReference;
+        } finally {
+            _lock.unlockWrite(stamp);
+        }
+    }
+
+    private final StampedLock _lock = new StampedLock();
+    private T _reference;
+}
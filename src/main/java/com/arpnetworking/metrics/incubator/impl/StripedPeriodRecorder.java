@@ -0,0 +1,204 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.incubator.MetricKey;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link PeriodRecorder} that never blocks recording threads. Samples are
+ * accumulated in a {@link PeriodAccumulator} whose writers only touch their
+ * own striped in-flight counter. Rotation publishes a new accumulator, waits
+ * for writers still inside the old one to leave and then hands the old
+ * accumulator over to be drained into its {@link Metrics} instance.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class StripedPeriodRecorder implements PeriodRecorder {
+
+    /**
+     * Package private constructor.
+     *
+     * @param initialMetrics the {@link Metrics} instance for the first period
+     * @param metricsFactory the factory of the {@link Metrics} instances of dimensioned samples
+     * @param settings the accumulation settings
+     */
+    StripedPeriodRecorder(final Metrics initialMetrics, final MetricsFactory metricsFactory, final AccumulatorSettings settings) {
+        this(new AtomicReference<>(new PeriodAccumulator(initialMetrics, metricsFactory, settings)), metricsFactory, settings);
+    }
+
+    // NOTE: Package private for testing
+    /* package private */ StripedPeriodRecorder(
+            final AtomicReference<PeriodAccumulator> current,
+            final MetricsFactory metricsFactory,
+            final AccumulatorSettings settings) {
+        _current = current;
+        _metricsFactory = metricsFactory;
+        _settings = settings;
+    }
+
+    @Override
+    public void recordCounter(final String name, final long value) {
+        final int stripe = ThreadStripes.index();
+        final PeriodAccumulator accumulator = acquire(stripe);
+        try {
+            accumulator.recordCounter(name, value);
+        } finally {
+            accumulator.exit(stripe);
+        }
+    }
+
+    @Override
+    public void recordTimer(final String name, final long duration, @Nullable final TimeUnit unit) {
+        final int stripe = ThreadStripes.index();
+        final PeriodAccumulator accumulator = acquire(stripe);
+        try {
+            accumulator.recordTimer(name, duration, unit);
+        } finally {
+            accumulator.exit(stripe);
+        }
+    }
+
+    @Override
+    public void recordTimers(final String name, final long[] durations, @Nullable final TimeUnit unit) {
+        final int stripe = ThreadStripes.index();
+        final PeriodAccumulator accumulator = acquire(stripe);
+        try {
+            accumulator.recordTimers(name, durations, unit);
+        } finally {
+            accumulator.exit(stripe);
+        }
+    }
+
+    @Override
+    public void recordTimers(final MetricKey key, final long[] durations, @Nullable final TimeUnit unit) {
+        final int stripe = ThreadStripes.index();
+        final PeriodAccumulator accumulator = acquire(stripe);
+        try {
+            accumulator.dimension(key.getDimensions()).recordTimers(key.getName(), durations, unit);
+        } finally {
+            accumulator.exit(stripe);
+        }
+    }
+
+    @Override
+    public void record(final SampleBatch batch) {
+        final int stripe = ThreadStripes.index();
+        final PeriodAccumulator accumulator = acquire(stripe);
+        try {
+            batch.writeTo(accumulator);
+        } finally {
+            accumulator.exit(stripe);
+        }
+    }
+
+    @Override
+    public void recordGauge(final String name, final double value) {
+        final int stripe = ThreadStripes.index();
+        final PeriodAccumulator accumulator = acquire(stripe);
+        try {
+            accumulator.recordGauge(name, value);
+        } finally {
+            accumulator.exit(stripe);
+        }
+    }
+
+    @Override
+    public void recordGauge(final String name, final long value) {
+        final int stripe = ThreadStripes.index();
+        final PeriodAccumulator accumulator = acquire(stripe);
+        try {
+            accumulator.recordGauge(name, value);
+        } finally {
+            accumulator.exit(stripe);
+        }
+    }
+
+    @Override
+    public void recordCounter(final MetricKey key, final long value) {
+        final int stripe = ThreadStripes.index();
+        final PeriodAccumulator accumulator = acquire(stripe);
+        try {
+            accumulator.dimension(key.getDimensions()).recordCounter(key.getName(), value);
+        } finally {
+            accumulator.exit(stripe);
+        }
+    }
+
+    @Override
+    public void recordTimer(final MetricKey key, final long duration, @Nullable final TimeUnit unit) {
+        final int stripe = ThreadStripes.index();
+        final PeriodAccumulator accumulator = acquire(stripe);
+        try {
+            accumulator.dimension(key.getDimensions()).recordTimer(key.getName(), duration, unit);
+        } finally {
+            accumulator.exit(stripe);
+        }
+    }
+
+    @Override
+    public void recordGauge(final MetricKey key, final double value) {
+        final int stripe = ThreadStripes.index();
+        final PeriodAccumulator accumulator = acquire(stripe);
+        try {
+            accumulator.dimension(key.getDimensions()).recordGauge(key.getName(), value);
+        } finally {
+            accumulator.exit(stripe);
+        }
+    }
+
+    @Override
+    public void recordGauge(final MetricKey key, final long value) {
+        final int stripe = ThreadStripes.index();
+        final PeriodAccumulator accumulator = acquire(stripe);
+        try {
+            accumulator.dimension(key.getDimensions()).recordGauge(key.getName(), value);
+        } finally {
+            accumulator.exit(stripe);
+        }
+    }
+
+    @Override
+    public CompletedPeriod rotate(final Metrics next) {
+        final PeriodAccumulator completed = _current.getAndSet(new PeriodAccumulator(next, _metricsFactory, _settings));
+        completed.awaitQuiescence();
+        return completed;
+    }
+
+    private PeriodAccumulator acquire(final int stripe) {
+        PeriodAccumulator accumulator = _current.get();
+        accumulator.enter(stripe);
+        // NOTE: Entering and then re-reading the current accumulator guarantees that either this writer
+        // observes a rotation and moves on, or the rotating thread observes this writer as in flight.
+        PeriodAccumulator current = _current.get();
+        while (accumulator != current) {
+            accumulator.exit(stripe);
+            accumulator = current;
+            accumulator.enter(stripe);
+            current = _current.get();
+        }
+        return accumulator;
+    }
+
+    private final AtomicReference<PeriodAccumulator> _current;
+    private final MetricsFactory _metricsFactory;
+    private final AccumulatorSettings _settings;
+}
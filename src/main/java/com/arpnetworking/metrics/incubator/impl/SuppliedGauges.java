@@ -0,0 +1,231 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Registry of the gauges of a {@link TsdPeriodicMetrics} instance that are
+ * read from suppliers when the period is rotated. The gauges are held in a
+ * copy-on-write array so that reading them is a single loop over the array
+ * that does not allocate. Gauges read from an owner held by a weak reference
+ * are removed once the owner has been garbage collected. Monotonic counters
+ * are read the same way and keep their previous reading in primitive fields
+ * to record the delta and rate of each period.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class SuppliedGauges {
+
+    void register(final String name, final LongSupplier supplier) {
+        register(new LongGauge(name, supplier));
+    }
+
+    void register(final String name, final DoubleSupplier supplier) {
+        register(new DoubleGauge(name, supplier));
+    }
+
+    <T> void register(final String name, final T owner, final ToDoubleFunction<? super T> reader) {
+        register(new WeakDoubleGauge<>(name, owner, reader));
+    }
+
+    void registerMonotonic(final String name, final LongSupplier supplier) {
+        register(new MonotonicCounter(name, supplier));
+    }
+
+    /**
+     * Read every gauge into the completed period and remove the gauges whose
+     * owner has been garbage collected.
+     *
+     * @param period the completed period
+     */
+    void drainTo(final CompletedPeriod period) {
+        boolean collected = false;
+        for (final Gauge gauge : _gauges.get()) {
+            // CHECKSTYLE.OFF: IllegalCatch - A failing supplier must not prevent the period from being recorded
+            try {
+                collected |= !gauge.readInto(period);
+            } catch (final RuntimeException e) {
+                LOGGER.debug(String.format("Supplied gauge failed; name=%s", gauge.getName()), e);
+            }
+            // CHECKSTYLE.ON: IllegalCatch
+        }
+        if (collected) {
+            removeCollected();
+        }
+    }
+
+    int size() {
+        return _gauges.get().length;
+    }
+
+    private synchronized void register(final Gauge gauge) {
+        final Gauge[] gauges = _gauges.get();
+        for (int i = 0; i < gauges.length; ++i) {
+            if (gauges[i]._name.equals(gauge.getName())) {
+                // NOTE: Registering a name again replaces its gauge
+                final Gauge[] replaced = gauges.clone();
+                replaced[i] = gauge;
+                _gauges.set(replaced);
+                return;
+            }
+        }
+        final Gauge[] added = Arrays.copyOf(gauges, gauges.length + 1);
+        added[gauges.length] = gauge;
+        _gauges.set(added);
+    }
+
+    private synchronized void removeCollected() {
+        _gauges.set(Arrays.stream(_gauges.get()).filter(gauge -> !gauge.isCollected()).toArray(Gauge[]::new));
+    }
+
+    private final AtomicReference<Gauge[]> _gauges = new AtomicReference<>(new Gauge[0]);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SuppliedGauges.class);
+    private static final String RATE_SUFFIX = "/rate";
+
+    private abstract static class Gauge {
+        private Gauge(final String name) {
+            _name = name;
+        }
+
+        /**
+         * Read the gauge into the period.
+         *
+         * @param period the period
+         * @return false if the owner of the gauge has been garbage collected
+         */
+        abstract boolean readInto(CompletedPeriod period);
+
+        boolean isCollected() {
+            return false;
+        }
+
+        String getName() {
+            return _name;
+        }
+
+        private final String _name;
+    }
+
+    private static final class LongGauge extends Gauge {
+        private LongGauge(final String name, final LongSupplier supplier) {
+            super(name);
+            _supplier = supplier;
+        }
+
+        @Override
+        boolean readInto(final CompletedPeriod period) {
+            period.recordGauge(getName(), _supplier.getAsLong());
+            return true;
+        }
+
+        private final LongSupplier _supplier;
+    }
+
+    private static final class DoubleGauge extends Gauge {
+        private DoubleGauge(final String name, final DoubleSupplier supplier) {
+            super(name);
+            _supplier = supplier;
+        }
+
+        @Override
+        boolean readInto(final CompletedPeriod period) {
+            period.recordGauge(getName(), _supplier.getAsDouble());
+            return true;
+        }
+
+        private final DoubleSupplier _supplier;
+    }
+
+    private static final class WeakDoubleGauge<T> extends Gauge {
+        private WeakDoubleGauge(final String name, final T owner, final ToDoubleFunction<? super T> reader) {
+            super(name);
+            _owner = new WeakReference<>(owner);
+            _reader = reader;
+        }
+
+        @Override
+        boolean readInto(final CompletedPeriod period) {
+            final T owner = _owner.get();
+            if (owner == null) {
+                return false;
+            }
+            period.recordGauge(getName(), _reader.applyAsDouble(owner));
+            return true;
+        }
+
+        @Override
+        boolean isCollected() {
+            return _owner.get() == null;
+        }
+
+        private final WeakReference<T> _owner;
+        private final ToDoubleFunction<? super T> _reader;
+    }
+
+    private static final class MonotonicCounter extends Gauge {
+        private MonotonicCounter(final String name, final LongSupplier supplier) {
+            super(name);
+            _rateName = name + RATE_SUFFIX;
+            _supplier = supplier;
+        }
+
+        /**
+         * Record the change since the previous reading. Only called by the
+         * thread rotating the period. The first reading only establishes the
+         * baseline.
+         *
+         * @param period the period
+         * @return true
+         */
+        @Override
+        boolean readInto(final CompletedPeriod period) {
+            final long value = _supplier.getAsLong();
+            final long now = System.nanoTime();
+            if (_hasPrevious) {
+                long delta = value - _previous;
+                if (delta < 0) {
+                    // NOTE: The source was reset so it has counted up from zero since the previous reading
+                    delta = value;
+                }
+                period.recordCounter(getName(), delta);
+                period.recordGauge(_rateName, delta * NANOS_PER_SECOND / Math.max(now - _previousNanos, 1));
+            }
+            _previous = value;
+            _previousNanos = now;
+            _hasPrevious = true;
+            return true;
+        }
+
+        private final String _rateName;
+        private final LongSupplier _supplier;
+        private long _previous;
+        private long _previousNanos;
+        private boolean _hasPrevious;
+
+        private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+/**
+ * Maps the calling thread onto one of a fixed, power of two number of stripes.
+ * The stripe count scales with the number of available processors so that
+ * concurrent writers rarely share a stripe.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+final class ThreadStripes {
+
+    /**
+     * Returns the stripe for the calling thread. The same thread always maps
+     * to the same stripe.
+     *
+     * @return the stripe index in the range [0, COUNT)
+     */
+    static int index() {
+        int hash = System.identityHashCode(Thread.currentThread());
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash & MASK;
+    }
+
+    private ThreadStripes() { }
+
+    static final int COUNT = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+    static final int MASK = COUNT - 1;
+}
@@ -18,87 +18,516 @@ package com.arpnetworking.metrics.incubator.impl;
 import com.arpnetworking.metrics.Metrics;
 import com.arpnetworking.metrics.MetricsFactory;
 import com.arpnetworking.metrics.impl.TsdMetricsFactory;
+import com.arpnetworking.metrics.incubator.MetricKey;
+import com.arpnetworking.metrics.incubator.PeriodicBatch;
+import com.arpnetworking.metrics.incubator.PeriodicCounter;
+import com.arpnetworking.metrics.incubator.PeriodicGauge;
 import com.arpnetworking.metrics.incubator.PeriodicMetrics;
-import com.google.common.collect.Lists;
+import com.arpnetworking.metrics.incubator.PeriodicTimer;
+import com.arpnetworking.metrics.incubator.PolledMetricRegistration;
+import com.arpnetworking.metrics.incubator.PollingOptions;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+import java.util.function.ObjIntConsumer;
 import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import javax.annotation.Nullable;
 
 /**
  * Implementation of a {@link PeriodicMetrics} backed by a {@link TsdMetricsFactory}.
  *
- * NOTE: This class must be scheduled with an executor in order for metrics to be recorded.
+ * NOTE: Unless a period is set on the {@link Builder}, this class must be scheduled with an executor in
+ * order for metrics to be recorded. With a period set, the instance schedules itself on a daemon thread
+ * at wall-clock aligned period boundaries. In either case {@link #close()} records the open period.
+ *
+ * Samples recorded with a {@link MetricKey} that has dimensions are written to a separate {@link Metrics}
+ * instance per period and set of dimensions, created on first use and annotated with the dimensions, since
+ * annotations apply to every sample of a {@link Metrics} instance.
  *
  * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
  */
-public final class TsdPeriodicMetrics implements PeriodicMetrics, Runnable {
+public final class TsdPeriodicMetrics implements PeriodicMetrics, Runnable, AutoCloseable {
+    @Override
+    public PolledMetricRegistration registerPolledMetric(final Consumer<PeriodicMetrics> consumer) {
+        return _poller.register(consumer);
+    }
+
+    @Override
+    public PolledMetricRegistration registerPolledMetric(final Consumer<PeriodicMetrics> consumer, final PollingOptions options) {
+        return _poller.register(consumer, options);
+    }
+
+    @Override
+    public void registerGauge(final String name, final LongSupplier supplier) {
+        _suppliedGauges.register(name, supplier);
+    }
+
+    @Override
+    public void registerGauge(final String name, final DoubleSupplier supplier) {
+        _suppliedGauges.register(name, supplier);
+    }
+
+    @Override
+    public <T> void registerGauge(final String name, final T owner, final ToDoubleFunction<? super T> reader) {
+        _suppliedGauges.register(name, owner, reader);
+    }
+
+    @Override
+    public void registerMonotonicCounter(final String name, final LongSupplier supplier) {
+        _suppliedGauges.registerMonotonic(name, supplier);
+    }
+
     @Override
-    public void registerPolledMetric(final Consumer<PeriodicMetrics> consumer) {
-        _polledMetricsRegistrations.add(consumer);
+    public PeriodicCounter counter(final String name) {
+        return _handles.counter(name);
+    }
+
+    @Override
+    public PeriodicTimer timer(final String name) {
+        return _handles.timer(name);
+    }
+
+    @Override
+    public PeriodicGauge gauge(final String name) {
+        return _handles.gauge(name);
     }
 
     @Override
     public void recordCounter(final String name, final long value) {
-        _currentPeriodicMetrics.readLocked(m -> m.createCounter(name).increment(value));
+        _recorder.recordCounter(_admission.admit(name), value);
     }
 
     @Override
     public void recordTimer(final String name, final long duration, final Optional<TimeUnit> unit) {
-        _currentPeriodicMetrics.readLocked(m -> m.setTimer(name, duration, unit.orElse(null)));
+        final TimeUnit timeUnit = unit.orElse(null);
+        final Sampler sampler = sampler(name);
+        if (sampler == null || sampler.offerTimer(name, duration, timeUnit)) {
+            _admission.recordTimer(name, duration, timeUnit);
+        }
+    }
+
+    @Override
+    public void recordTimers(final String name, final long[] durations, final Optional<TimeUnit> unit) {
+        _recorder.recordTimers(_admission.admit(name, durations.length), durations, unit.orElse(null));
+    }
+
+    @Override
+    public PeriodicBatch batch() {
+        return new SampleBatch(_admission::record);
     }
 
     @Override
     public void recordGauge(final String name, final double value) {
-        _currentPeriodicMetrics.readLocked(m -> m.setGauge(name, value));
+        final Sampler sampler = sampler(name);
+        if (sampler == null || sampler.offerGauge(name, value)) {
+            _admission.recordGauge(name, value);
+        }
     }
 
     @Override
     public void recordGauge(final String name, final long value) {
-        _currentPeriodicMetrics.readLocked(m -> m.setGauge(name, value));
+        final Sampler sampler = sampler(name);
+        if (sampler == null || sampler.offerGauge(name, value)) {
+            _admission.recordGauge(name, value);
+        }
     }
 
+    @Override
+    public void recordCounter(final MetricKey key, final long value) {
+        _recorder.recordCounter(_admission.admit(key), value);
+    }
+
+    @Override
+    public void recordTimer(final MetricKey key, final long duration, final Optional<TimeUnit> unit) {
+        _recorder.recordTimer(_admission.admit(key), duration, unit.orElse(null));
+    }
+
+    @Override
+    public void recordGauge(final MetricKey key, final double value) {
+        _recorder.recordGauge(_admission.admit(key), value);
+    }
+
+    @Override
+    public void recordGauge(final MetricKey key, final long value) {
+        _recorder.recordGauge(_admission.admit(key), value);
+    }
+
+    @Override
+    public PeriodicCounter counter(final MetricKey key) {
+        return _handles.counter(key);
+    }
+
+    @Override
+    public PeriodicTimer timer(final MetricKey key) {
+        return _handles.timer(key);
+    }
+
+    @Override
+    public PeriodicGauge gauge(final MetricKey key) {
+        return _handles.gauge(key);
+    }
+
+    @Override
+    public void recordTimers(final MetricKey key, final long[] durations, final Optional<TimeUnit> unit) {
+        _recorder.recordTimers(_admission.admit(key, durations.length), durations, unit.orElse(null));
+    }
+
+    /**
+     * Rotate the open period. Has no effect once closed, since the flush and spool threads have stopped.
+     */
     @Override
     public void run() {
+        if (_closed.get()) {
+            return;
+        }
         cyclePeriodMetrics();
     }
 
+    /**
+     * Stop the built-in scheduler, if any, record the open period, flush every pending period and stop the
+     * polling threads, if any. Samples recorded after closing are not recorded and later calls to
+     * {@link #run()} or {@link #close()} have no effect.
+     */
+    @Override
+    public void close() {
+        if (_closed.compareAndSet(false, true)) {
+            if (_scheduler != null) {
+                _scheduler.close();
+            }
+            if (_periodMerger != null) {
+                _periodMerger.leave(this);
+            }
+            cyclePeriodMetrics();
+            _poller.close();
+            _pipeline.close(_handOff);
+            if (_flushStage != null) {
+                _flushStage.close();
+            }
+        }
+    }
+
+    /**
+     * Get the latest measurements of the cost of this instance. Requires
+     * self instrumentation to be enabled with {@link Builder#setSelfInstrumentation(Boolean)}.
+     *
+     * @return The latest measurements, if self instrumentation is enabled.
+     */
+    public Optional<PeriodicMetricsStats> getStats() {
+        if (_instrumentation == null) {
+            return Optional.empty();
+        }
+        return Optional.of(_instrumentation.getStats());
+    }
+
     private void cyclePeriodMetrics() {
-        recordPolledMetrics();
-        final Metrics metrics = _currentPeriodicMetrics.getAndSetReference(_metricsFactory.create());
-        metrics.close();
+        final long start = System.nanoTime();
+        // NOTE: The next instance is created ahead of polling so that the flip never waits on the factory
+        final Metrics next = _metricsFactory.create();
+        _poller.poll(this);
+        flipSamplers();
+        final CompletedPeriod completed = _recorder.rotate(next);
+        if (_cardinalityLimiter != null) {
+            _cardinalityLimiter.rotate(completed);
+        }
+        if (_instrumentation != null) {
+            _instrumentation.rotated(_recorder);
+        }
+        _handles.drainTo(completed);
+        _suppliedGauges.drainTo(completed);
+        _pipeline.rollUp(completed, _handOff);
+        _handOff.accept(completed, 1);
+        if (_instrumentation != null) {
+            _instrumentation.runCompleted(System.nanoTime() - start, _recorder);
+        }
+    }
+
+    private void flush(final CompletedPeriod completed) {
+        if (_instrumentation == null) {
+            completed.flush();
+            return;
+        }
+        final long start = System.nanoTime();
+        completed.flush();
+        _instrumentation.flushCompleted(System.nanoTime() - start, _recorder);
     }
 
-    private CompletableFuture<Void> recordPolledMetrics() {
-        final List<CompletableFuture<?>> futures = Lists.newArrayList();
-        for (Consumer<PeriodicMetrics> polledMetric : _polledMetricsRegistrations) {
-            futures.add(CompletableFuture.runAsync(() -> polledMetric.accept(this), _pollingExecutor));
+    private void flipSamplers() {
+        for (final Sampler sampler : _namedSamplers.values()) {
+            sampler.flip(_admission);
+        }
+        if (_sampler != null) {
+            _sampler.flip(_admission);
         }
-        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]));
+    }
+
+    @Nullable
+    private Sampler sampler(final String name) {
+        final Sampler sampler = _namedSamplers.get(name);
+        if (sampler != null) {
+            return sampler;
+        }
+        return _sampler;
+    }
+
+    @Nullable
+    private static Sampler createSampler(@Nullable final SamplingPolicy policy) {
+        if (policy == null) {
+            return null;
+        }
+        return policy.createSampler();
     }
 
     private TsdPeriodicMetrics(final Builder builder) {
         _metricsFactory = builder._metricsFactory;
-        _pollingExecutor = builder._pollingExecutor;
+        LongConsumer lockWait = null;
+        if (builder._selfInstrumentation) {
+            _instrumentation = new SelfInstrumentation();
+            lockWait = _instrumentation::lockWait;
+        } else {
+            _instrumentation = null;
+        }
+        if (builder._cardinalityLimit == null) {
+            _cardinalityLimiter = null;
+        } else {
+            _cardinalityLimiter = new CardinalityLimiter(builder._cardinalityLimit);
+        }
+        _sampler = createSampler(builder._samplingPolicy);
+        _namedSamplers = ImmutableMap.copyOf(Maps.transformValues(builder._samplingPolicies, SamplingPolicy::createSampler));
+        ExecutorService pollingPool = null;
+        if (builder._pollingParallelism != null) {
+            pollingPool = Executors.newFixedThreadPool(builder._pollingParallelism, POLLING_THREAD_FACTORY);
+        }
+        _poller = new Poller(builder._pollingExecutor, pollingPool, builder._pollingTimeout, builder._pollerTimeout);
+        if (builder._period == null) {
+            _scheduler = null;
+        } else {
+            _scheduler = new PeriodScheduler(
+                    this::run,
+                    builder._period,
+                    builder._clock,
+                    Executors.newSingleThreadScheduledExecutor(SCHEDULER_THREAD_FACTORY));
+        }
+
+        final Metrics initialMetrics = _metricsFactory.create();
+        SampleArena sampleArena = null;
+        if (builder._sampleStorage == SampleStorage.OFF_HEAP) {
+            sampleArena = new SampleArena(SampleArena.DEFAULT_RETAINED_BYTES_LIMIT);
+        }
+        final AccumulatorSettings settings = new AccumulatorSettings(
+                builder._histogramTimers,
+                builder._histogramGauges,
+                builder._histogramPrecision,
+                sampleArena);
+        final boolean striped = isStriped(builder, settings);
+        if (striped) {
+            _recorder = new StripedPeriodRecorder(initialMetrics, _metricsFactory, settings);
+        } else {
+            _recorder = new LockedPeriodRecorder(
+                    builder._lockingStrategy.create(new DimensionedMetrics(initialMetrics, _metricsFactory)),
+                    _metricsFactory,
+                    lockWait);
+        }
+        _admission = new Admission(_recorder, _cardinalityLimiter, _instrumentation);
+        _pipeline = new PeriodPipeline(
+                builder._rollups,
+                _metricsFactory,
+                settings,
+                builder._periodMerger,
+                createSpool(builder),
+                builder._snapshotListener,
+                this::flush);
+        _flushStage = createFlushStage(builder, striped);
+        _handOff = _pipeline.handOff(_flushStage);
+        _periodMerger = builder._periodMerger;
+    }
+
+    private static boolean isStriped(final Builder builder, final AccumulatorSettings settings) {
+        return builder._recordingMode == RecordingMode.STRIPED
+                || settings.getSampleArena() != null
+                || settings.isHistogramTimers()
+                || settings.isHistogramGauges()
+                || !builder._rollups.isEmpty()
+                || builder._spoolOptions != null || builder._snapshotListener != null || builder._periodMerger != null;
+    }
 
-        _currentPeriodicMetrics = new ReadWriteLockedReference<>(_metricsFactory.create());
+    @Nullable
+    private SpoolStage createSpool(final Builder builder) {
+        if (builder._spoolOptions == null) {
+            return null;
+        }
+        return new SpoolStage(
+                builder._spoolOptions,
+                _metricsFactory,
+                _handles.counter(SPOOL_OVERFLOWS_METRIC),
+                Executors.newSingleThreadExecutor(FLUSH_THREAD_FACTORY));
+    }
+
+    @Nullable
+    private FlushStage createFlushStage(final Builder builder, final boolean striped) {
+        if (builder._flushQueueCapacity == null || builder._spoolOptions != null || builder._periodMerger != null) {
+            return null;
+        }
+        FlushOverflowPolicy policy = builder._flushOverflowPolicy;
+        if (policy == FlushOverflowPolicy.MERGE && !striped) {
+            LOGGER.warn("Merging pending periods requires striped recording; using BLOCK flush overflow policy");
+            policy = FlushOverflowPolicy.BLOCK;
+        }
+        return new FlushStage(
+                builder._flushQueueCapacity,
+                policy,
+                _handles.counter(FLUSH_OVERFLOWS_METRIC),
+                _handles.counter(FLUSH_DROPS_METRIC),
+                _pipeline::deliver,
+                Executors.newSingleThreadExecutor(FLUSH_THREAD_FACTORY));
     }
 
     private final MetricsFactory _metricsFactory;
-    private final ReadWriteLockedReference<Metrics> _currentPeriodicMetrics;
-    private final Executor _pollingExecutor;
-    private final Set<Consumer<PeriodicMetrics>> _polledMetricsRegistrations = ConcurrentHashMap.newKeySet();
+    private final PeriodRecorder _recorder;
+    private final Admission _admission;
+    @Nullable
+    private final CardinalityLimiter _cardinalityLimiter;
+    @Nullable
+    private final SelfInstrumentation _instrumentation;
+    @Nullable
+    private final Sampler _sampler;
+    private final ImmutableMap<String, Sampler> _namedSamplers;
+    private final PeriodicHandles _handles = new PeriodicHandles();
+    private final SuppliedGauges _suppliedGauges = new SuppliedGauges();
+    private final Poller _poller;
+    @Nullable
+    private final PeriodScheduler _scheduler;
+    @Nullable
+    private final FlushStage _flushStage;
+    private final PeriodPipeline _pipeline;
+    private final ObjIntConsumer<CompletedPeriod> _handOff;
+    @Nullable
+    private final PeriodMerger _periodMerger;
+    private final AtomicBoolean _closed = new AtomicBoolean(false);
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TsdPeriodicMetrics.class);
+    private static final String FLUSH_OVERFLOWS_METRIC = "periodic_metrics/flush/overflows";
+    private static final String FLUSH_DROPS_METRIC = "periodic_metrics/flush/drops";
+    private static final String SPOOL_OVERFLOWS_METRIC = "periodic_metrics/spool/overflows";
+    private static final ThreadFactory SCHEDULER_THREAD_FACTORY =
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("periodic-metrics-%d").build();
+    private static final ThreadFactory FLUSH_THREAD_FACTORY =
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("periodic-metrics-flush-%d").build();
+    private static final ThreadFactory POLLING_THREAD_FACTORY =
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("periodic-metrics-poller-%d").build();
+
+    /**
+     * Strategies for recording samples into the open period.
+     */
+    public enum RecordingMode {
+        /**
+         * Samples are written directly into the {@link Metrics} instance of the open period while holding
+         * a shared read lock. Rotating the period waits for the exclusive write lock.
+         */
+        LOCKED,
+        /**
+         * Samples are accumulated into lock-free striped structures and written into the {@link Metrics}
+         * instance when the period is rotated. Recording threads never block and only touch memory striped
+         * by thread, so their cost does not grow with the number of cores. Counters are emitted as a single
+         * sample holding the sum for the period and timers with a unit are emitted in nanoseconds.
+         */
+        STRIPED
+    }
+
+    /**
+     * Storage for the raw timer and gauge samples of the open period in {@link RecordingMode#STRIPED}
+     * recording mode.
+     */
+    public enum SampleStorage {
+        /**
+         * Samples are stored in arrays on the heap, which are garbage once the period has been flushed.
+         */
+        HEAP,
+        /**
+         * Samples are stored in direct memory outside the heap. The memory is returned to a shared arena once
+         * the period has been flushed and reused by later periods, so that high sample rates do not churn the
+         * heap. Requires {@link RecordingMode#STRIPED}, which is selected when this is used.
+         */
+        OFF_HEAP
+    }
+
+    /**
+     * Strategies for guarding the {@link Metrics} instance of the open period in
+     * {@link RecordingMode#LOCKED} recording mode.
+     */
+    public enum LockingStrategy {
+        /**
+         * A {@link ReadWriteLockedReference}, backed by a {@link java.util.concurrent.locks.ReentrantReadWriteLock}.
+         */
+        READ_WRITE_LOCK {
+            @Override
+            <T> LockedReference<T> create(final T initialValue) {
+                return new ReadWriteLockedReference<>(initialValue);
+            }
+        },
+        /**
+         * A {@link StampedLockedReference}, backed by a {@link java.util.concurrent.locks.StampedLock}.
+         */
+        STAMPED_LOCK {
+            @Override
+            <T> LockedReference<T> create(final T initialValue) {
+                return new StampedLockedReference<>(initialValue);
+            }
+        },
+        /**
+         * An {@link EpochLockedReference}. Recording threads only touch memory striped by thread, which suits
+         * recording from many threads with rare rotations; rotating waits for in-flight recordings to finish.
+         */
+        EPOCH {
+            @Override
+            <T> LockedReference<T> create(final T initialValue) {
+                return new EpochLockedReference<>(initialValue);
+            }
+        };
+
+        abstract <T> LockedReference<T> create(T initialValue);
+    }
+
+    /**
+     * Policies for a completed period that finds the flush queue full.
+     */
+    public enum FlushOverflowPolicy {
+        /**
+         * The oldest pending period is discarded without being written to the sinks and counted as {@code periodic_metrics/flush/drops}.
+         */
+        DROP_OLDEST,
+        /**
+         * Recording the period waits until the flush thread makes space.
+         */
+        BLOCK,
+        /**
+         * The completed period is merged into the newest pending period, which is then written to the sinks
+         * as a single, longer period. Requires {@link RecordingMode#STRIPED}; otherwise {@link #BLOCK} is
+         * used instead.
+         */
+        MERGE
+    }
 
     /**
      * Implementation of the Builder pattern for the {@link TsdPeriodicMetrics} class.
@@ -140,26 +569,427 @@ public final class TsdPeriodicMetrics implements PeriodicMetrics, Runnable {
             return this;
         }
 
+        /**
+         * Sets how long recording a period waits for the polled metrics to complete. Pollers that have not
+         * completed by the deadline are cancelled; those that have not started never run for the period and
+         * those already running record into the next period. The time taken by polling is recorded as the
+         * timer {@code periodic_metrics/polling/duration} and the number of late pollers as the counter
+         * {@code periodic_metrics/polling/timeouts}. Optional. Cannot be negative. Defaults to null, in
+         * which case the period is recorded without waiting, which is only safe with a direct executor.
+         *
+         * @param value The polling timeout.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setPollingTimeout(@Nullable final Duration value) {
+            _pollingTimeout = value;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads of a pool owned by the instance that polled metrics are run on, so that
+         * polling takes about as long as the slowest poller instead of the sum of all pollers. Up to this
+         * many pollers run concurrently. The pool replaces any executor set with
+         * {@link #setPollingExecutor(Executor)} and recording a period always waits for its pollers. Pollers
+         * that time out are interrupted. Optional. Must be at least one. Defaults to null.
+         *
+         * @param value The number of polling threads.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setPollingParallelism(@Nullable final Integer value) {
+            _pollingParallelism = value;
+            return this;
+        }
+
+        /**
+         * Sets how long each polled metric may run for, measured from when it starts running. A poller that
+         * runs for longer is cancelled as if it missed the deadline set by {@link #setPollingTimeout(Duration)}.
+         * Recording a period waits for its pollers when this is set. Optional. Cannot be negative. Defaults
+         * to null.
+         *
+         * @param value The per-poller timeout.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setPollerTimeout(@Nullable final Duration value) {
+            _pollerTimeout = value;
+            return this;
+        }
+
+        /**
+         * Sets the number of completed periods that may wait to be flushed. When set, completed periods are
+         * written to the sinks and closed on a dedicated daemon thread instead of the thread recording the
+         * period, so that slow sinks do not delay the next period. The number of completed periods that found
+         * the queue full is recorded as the counter {@code periodic_metrics/flush/overflows}. Optional. Must
+         * be at least one. Defaults to null, in which case periods are flushed by the thread recording them.
+         *
+         * @param value The flush queue capacity.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setFlushQueueCapacity(@Nullable final Integer value) {
+            _flushQueueCapacity = value;
+            return this;
+        }
+
+        /**
+         * Sets what happens to a completed period that finds the flush queue full. Optional. Cannot be null.
+         * Defaults to {@link FlushOverflowPolicy#BLOCK}.
+         *
+         * @param value The flush overflow policy.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setFlushOverflowPolicy(final FlushOverflowPolicy value) {
+            _flushOverflowPolicy = value;
+            return this;
+        }
+
+        /**
+         * Sets the options for spooling completed periods to local disk. Each completed period is written to a
+         * memory mapped segment file and forwarded to the sinks on a dedicated thread, so slow sinks never delay
+         * the rotation and spooled periods survive a restart. Takes precedence over the flush queue. Requires
+         * {@link RecordingMode#STRIPED}, which is selected when this is set. Optional. Defaults to null, in which
+         * case completed periods are not spooled.
+         *
+         * @param value The spool options.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setSpoolOptions(@Nullable final SpoolOptions value) {
+            _spoolOptions = value;
+            return this;
+        }
+
+        /**
+         * Sets the listener of period snapshots. Each completed period, including rollup periods, is encoded
+         * into a compact binary {@link PeriodSnapshot} and passed to the listener before it is flushed or
+         * spooled. The snapshot is only valid during the call. Requires {@link RecordingMode#STRIPED}, which
+         * is selected when this is set. Optional. Defaults to null, in which case no snapshots are encoded.
+         *
+         * @param value The snapshot listener.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setSnapshotListener(@Nullable final Consumer<PeriodSnapshot> value) {
+            _snapshotListener = value;
+            return this;
+        }
+
+        /**
+         * Sets the merger of the completed periods of this and other instances. Completed periods, including
+         * rollup periods, are merged by the {@link PeriodMerger} instead of being flushed or spooled, and the
+         * merger rotates the periods of its members, so no period can be set. Requires
+         * {@link RecordingMode#STRIPED}, which is selected when this is set. Optional. Defaults to null, in
+         * which case completed periods are not merged.
+         *
+         * @param value The period merger.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setPeriodMerger(@Nullable final PeriodMerger value) {
+            _periodMerger = value;
+            return this;
+        }
+
+        /**
+         * Sets the period length. When set, the instance schedules itself on a daemon thread and records each
+         * period when the wall clock reaches a multiple of the period length since the epoch, so that
+         * instances on different hosts close their periods together. Optional. Must be at least one
+         * millisecond. Defaults to null, in which case the instance must be scheduled by the caller.
+         *
+         * @param value The period length.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setPeriod(@Nullable final Duration value) {
+            _period = value;
+            return this;
+        }
+
+        /**
+         * Sets the clock used to align periods. Optional. Cannot be null. Defaults to the system UTC clock.
+         *
+         * @param value The clock.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setClock(final Clock value) {
+            _clock = value;
+            return this;
+        }
+
+        /**
+         * Sets the recording mode. Optional. Cannot be null. Defaults to {@link RecordingMode#LOCKED}.
+         *
+         * @param value The recording mode.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setRecordingMode(final RecordingMode value) {
+            _recordingMode = value;
+            return this;
+        }
+
+        /**
+         * Sets how the {@link Metrics} instance of the open period is guarded in {@link RecordingMode#LOCKED}
+         * recording mode. Optional. Cannot be null. Defaults to {@link LockingStrategy#READ_WRITE_LOCK}.
+         *
+         * @param value The locking strategy.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setLockingStrategy(final LockingStrategy value) {
+            _lockingStrategy = value;
+            return this;
+        }
+
+        /**
+         * Sets whether timer samples are aggregated in-process into a log-linear histogram per metric
+         * instead of being recorded individually. Only the histogram buckets are recorded when the period
+         * is rotated, which bounds the memory held per period and the volume written to the sinks. Timers
+         * recorded without a unit are still recorded individually since the histograms hold seconds.
+         * Histograms require {@link RecordingMode#STRIPED}, which is selected when this is enabled.
+         * Optional. Cannot be null. Defaults to false.
+         *
+         * @param value Whether to aggregate timers into histograms.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setHistogramTimers(final Boolean value) {
+            _histogramTimers = value;
+            return this;
+        }
+
+        /**
+         * Sets whether gauge samples are aggregated in-process into a log-linear histogram per metric
+         * instead of being recorded individually. Histograms require {@link RecordingMode#STRIPED}, which
+         * is selected when this is enabled. Within a period a name holds either a timer or a gauge histogram
+         * and histogram samples of the kind recorded second are discarded. Optional. Cannot be null. Defaults
+         * to false.
+         *
+         * @param value Whether to aggregate gauges into histograms.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setHistogramGauges(final Boolean value) {
+            _histogramGauges = value;
+            return this;
+        }
+
+        /**
+         * Sets the number of mantissa bits kept for each histogram bucket; the relative error of a bucket
+         * is at most 2^-precision. Lower precision reduces the memory held per histogram. Optional. Cannot be
+         * null. Must be between 1 and 7. Defaults to 7.
+         *
+         * @param value The histogram precision.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setHistogramPrecision(final Integer value) {
+            _histogramPrecision = value;
+            return this;
+        }
+
+        /**
+         * Sets where the raw timer and gauge samples of the open period are stored. Samples aggregated into
+         * histograms are not affected. Optional. Cannot be null. Defaults to {@link SampleStorage#HEAP}.
+         *
+         * @param value The sample storage.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setSampleStorage(final SampleStorage value) {
+            _sampleStorage = value;
+            return this;
+        }
+
+        /**
+         * Sets whether the cost of the instance is measured. When enabled, the following are recorded into
+         * the period after the one measured and the latest are returned by {@link TsdPeriodicMetrics#getStats()}:
+         * the time taken to poll and record a period as the timer {@code periodic_metrics/self/run_duration},
+         * the time taken to write a completed period to the sinks and close it as the timer
+         * {@code periodic_metrics/self/flush_duration}, the number of samples recorded in a period as the
+         * counter {@code periodic_metrics/self/samples} and, with {@link RecordingMode#LOCKED} recording, the
+         * total and the longest time recording threads waited for shared access to a period as the timers
+         * {@code periodic_metrics/self/lock_wait} and {@code periodic_metrics/self/maximum_lock_wait}.
+         * Measuring adds a clock read to each locked recording and a striped increment to each sample.
+         * Optional. Cannot be null. Defaults to false.
+         *
+         * @param value Whether to measure the cost of the instance.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setSelfInstrumentation(final Boolean value) {
+            _selfInstrumentation = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of distinct metrics recorded in a period, counting each name and each
+         * {@link MetricKey} separately. Samples of further metrics are recorded under the overflow metric
+         * {@code periodic_metrics/cardinality/overflow} instead, bounding the memory used by a period and the
+         * time taken to flush it. The number of diverted samples is recorded as the counter
+         * {@code periodic_metrics/cardinality/dropped} and the estimated number of diverted metrics as the
+         * gauge {@code periodic_metrics/cardinality/dropped_metrics}. Optional. Must be at least one.
+         * Defaults to null, in which case the number of metrics is not limited.
+         *
+         * @param value The maximum number of distinct metrics per period.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setCardinalityLimit(@Nullable final Integer value) {
+            _cardinalityLimit = value;
+            return this;
+        }
+
+        /**
+         * Sets the policy for sampling the timer and gauge samples recorded by name, other than those of metrics
+         * with a policy set by {@link #setSamplingPolicies(Map)}. Samples recorded with a {@link MetricKey}, in
+         * a batch or through a handle are never sampled. Optional. Defaults to null, in which case every sample
+         * is recorded.
+         *
+         * @param value The sampling policy.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setSamplingPolicy(@Nullable final SamplingPolicy value) {
+            _samplingPolicy = value;
+            return this;
+        }
+
+        /**
+         * Sets the policies for sampling the timer and gauge samples recorded by name of specific metrics, keyed
+         * by metric name. Each policy samples its metric independently of every other. Optional. Cannot be
+         * null. Defaults to no policies.
+         *
+         * @param value The sampling policies by metric name.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setSamplingPolicies(final Map<String, SamplingPolicy> value) {
+            if (value == null) {
+                _samplingPolicies = null;
+            } else {
+                _samplingPolicies = ImmutableMap.copyOf(value);
+            }
+            return this;
+        }
+
+        /**
+         * Sets the coarser resolutions the metrics are also emitted at. Every {@link Rollup} is built by merging
+         * the completed base periods, so samples are recorded once regardless of the number of resolutions.
+         * Requires {@link RecordingMode#STRIPED}, which is selected when any rollup is set. Optional. Cannot be
+         * null. Defaults to no rollups.
+         *
+         * @param value The rollups.
+         * @return This instance of {@link Builder}.
+         */
+        public Builder setRollups(final List<Rollup> value) {
+            if (value == null) {
+                _rollups = null;
+            } else {
+                _rollups = ImmutableList.copyOf(value);
+            }
+            return this;
+        }
+
         @Override
         public TsdPeriodicMetrics build() {
             // Defaults
-            if (_metricsFactory == null) {
-                _metricsFactory = new TsdMetricsFactory.Builder().build();
-                _logger.warn(String.format("Defaulted null metrics factory; metricsFactory=%s", _metricsFactory));
-            }
+            _metricsFactory = defaulted(
+                    _metricsFactory,
+                    () -> new TsdMetricsFactory.Builder().build(),
+                    "metrics factory",
+                    "metricsFactory");
+            _pollingExecutor = defaulted(_pollingExecutor, DEFAULT_POLLING_EXECUTOR_SUPPLIER, "polling executor", "pollingExecutor");
+            _recordingMode = defaulted(_recordingMode, () -> DEFAULT_RECORDING_MODE, "recording mode", "recordingMode");
+            _lockingStrategy = defaulted(_lockingStrategy, () -> DEFAULT_LOCKING_STRATEGY, "locking strategy", "lockingStrategy");
+            _histogramTimers = defaulted(_histogramTimers, () -> Boolean.FALSE, "histogram timers", "histogramTimers");
+            _histogramGauges = defaulted(_histogramGauges, () -> Boolean.FALSE, "histogram gauges", "histogramGauges");
+            _selfInstrumentation = defaulted(_selfInstrumentation, () -> Boolean.FALSE, "self instrumentation", "selfInstrumentation");
+            _samplingPolicies = defaulted(_samplingPolicies, ImmutableMap::of, "sampling policies", "samplingPolicies");
+            _rollups = defaulted(_rollups, ImmutableList::of, "rollups", "rollups");
+            _sampleStorage = defaulted(_sampleStorage, () -> DEFAULT_SAMPLE_STORAGE, "sample storage", "sampleStorage");
+            _histogramPrecision = defaulted(
+                    _histogramPrecision,
+                    () -> LogLinearHistogram.DEFAULT_PRECISION,
+                    "histogram precision",
+                    "histogramPrecision");
+            _clock = defaulted(_clock, Clock::systemUTC, "clock", "clock");
+            _flushOverflowPolicy = defaulted(
+                    _flushOverflowPolicy,
+                    () -> DEFAULT_FLUSH_OVERFLOW_POLICY,
+                    "flush overflow policy",
+                    "flushOverflowPolicy");
+
+            // Validation
+            Preconditions.checkArgument(
+                    _histogramPrecision >= LogLinearHistogram.MINIMUM_PRECISION
+                            && _histogramPrecision <= LogLinearHistogram.MAXIMUM_PRECISION,
+                    "Histogram precision must be between %s and %s; histogramPrecision=%s",
+                    LogLinearHistogram.MINIMUM_PRECISION,
+                    LogLinearHistogram.MAXIMUM_PRECISION,
+                    _histogramPrecision);
+            Preconditions.checkArgument(
+                    _period == null || _period.toMillis() >= 1,
+                    "Period must be at least one millisecond; period=%s",
+                    _period);
+            Preconditions.checkArgument(
+                    _period == null || _periodMerger == null,
+                    "Period cannot be set with a period merger, which rotates the periods; period=%s",
+                    _period);
+            Preconditions.checkArgument(
+                    _pollingTimeout == null || !_pollingTimeout.isNegative(),
+                    "Polling timeout cannot be negative; pollingTimeout=%s",
+                    _pollingTimeout);
+            Preconditions.checkArgument(
+                    _pollerTimeout == null || !_pollerTimeout.isNegative(),
+                    "Poller timeout cannot be negative; pollerTimeout=%s",
+                    _pollerTimeout);
+            Preconditions.checkArgument(
+                    _pollingParallelism == null || _pollingParallelism >= 1,
+                    "Polling parallelism must be at least one; pollingParallelism=%s",
+                    _pollingParallelism);
+            Preconditions.checkArgument(
+                    _flushQueueCapacity == null || _flushQueueCapacity >= 1,
+                    "Flush queue capacity must be at least one; flushQueueCapacity=%s",
+                    _flushQueueCapacity);
+            Preconditions.checkArgument(
+                    _cardinalityLimit == null || _cardinalityLimit >= 1,
+                    "Cardinality limit must be at least one; cardinalityLimit=%s",
+                    _cardinalityLimit);
 
-            if (_pollingExecutor == null) {
-                _pollingExecutor = DEFAULT_POLLING_EXECUTOR_SUPPLIER.get();
-                _logger.warn(String.format("Defaulted null polling executor; pollingExecutor=%s", _pollingExecutor));
+            final TsdPeriodicMetrics periodicMetrics = new TsdPeriodicMetrics(this);
+            if (periodicMetrics._scheduler != null) {
+                periodicMetrics._scheduler.start();
             }
+            if (_periodMerger != null) {
+                _periodMerger.join(periodicMetrics);
+            }
+            return periodicMetrics;
+        }
 
-            return new TsdPeriodicMetrics(this);
+        private <T> T defaulted(@Nullable final T value, final Supplier<T> defaultValue, final String description, final String field) {
+            if (value != null) {
+                return value;
+            }
+            final T resolved = defaultValue.get();
+            _logger.warn(String.format("Defaulted null %s; %s=%s", description, field, resolved));
+            return resolved;
         }
+
         private MetricsFactory _metricsFactory;
         private Executor _pollingExecutor = DEFAULT_POLLING_EXECUTOR_SUPPLIER.get();
+        private RecordingMode _recordingMode = DEFAULT_RECORDING_MODE;
+        private LockingStrategy _lockingStrategy = DEFAULT_LOCKING_STRATEGY;
+        private Boolean _histogramTimers = false;
+        private Boolean _histogramGauges = false;
+        private Integer _histogramPrecision = LogLinearHistogram.DEFAULT_PRECISION;
+        private SampleStorage _sampleStorage = DEFAULT_SAMPLE_STORAGE;
+        private Duration _pollingTimeout;
+        private Duration _pollerTimeout;
+        private Integer _pollingParallelism;
+        private Duration _period;
+        private Integer _flushQueueCapacity;
+        private Integer _cardinalityLimit;
+        private Boolean _selfInstrumentation = false;
+        private SamplingPolicy _samplingPolicy;
+        private ImmutableMap<String, SamplingPolicy> _samplingPolicies = ImmutableMap.of();
+        private ImmutableList<Rollup> _rollups = ImmutableList.of();
+        private SpoolOptions _spoolOptions;
+        private Consumer<PeriodSnapshot> _snapshotListener;
+        private PeriodMerger _periodMerger;
+        private FlushOverflowPolicy _flushOverflowPolicy = DEFAULT_FLUSH_OVERFLOW_POLICY;
+        private Clock _clock = Clock.systemUTC();
 
         private final Logger _logger;
 
         private static final Supplier<Executor> DEFAULT_POLLING_EXECUTOR_SUPPLIER = MoreExecutors::directExecutor;
+        private static final RecordingMode DEFAULT_RECORDING_MODE = RecordingMode.LOCKED;
+        private static final LockingStrategy DEFAULT_LOCKING_STRATEGY = LockingStrategy.READ_WRITE_LOCK;
+        private static final FlushOverflowPolicy DEFAULT_FLUSH_OVERFLOW_POLICY = FlushOverflowPolicy.BLOCK;
+        private static final SampleStorage DEFAULT_SAMPLE_STORAGE = SampleStorage.HEAP;
     }
 }
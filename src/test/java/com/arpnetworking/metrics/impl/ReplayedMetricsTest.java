@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.net.UnknownHostException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for the {@link ReplayedMetrics} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class ReplayedMetricsTest {
+
+    @Test
+    public void testReportsPeriodTimes() {
+        final List<Event> events = new ArrayList<>();
+        final MetricsFactory factory = new TsdMetricsFactory.Builder()
+                .setServiceName("service")
+                .setClusterName("cluster")
+                .setHostName("host")
+                .setSinks(Collections.singletonList(events::add))
+                .build();
+
+        final Metrics metrics = ReplayedMetrics.create(factory, OPEN_TIME, CLOSE_TIME);
+        metrics.setGauge("gauge", 1L);
+        metrics.close();
+
+        Assert.assertEquals(OPEN_TIME, metrics.getOpenTime());
+        Assert.assertEquals(CLOSE_TIME, metrics.getCloseTime());
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals("2017-01-01T00:00:00.000Z", events.get(0).getAnnotations().get("_start"));
+        Assert.assertEquals("2017-01-01T00:01:00.000Z", events.get(0).getAnnotations().get("_end"));
+        Assert.assertEquals("host", events.get(0).getAnnotations().get("_host"));
+        Assert.assertEquals("service", events.get(0).getAnnotations().get("_service"));
+        Assert.assertEquals("cluster", events.get(0).getAnnotations().get("_cluster"));
+    }
+
+    @Test
+    public void testOtherFactoryCreatesInstance() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final MetricsFactory factory = Mockito.mock(MetricsFactory.class);
+        Mockito.when(factory.create()).thenReturn(metrics);
+        Assert.assertSame(metrics, ReplayedMetrics.create(factory, OPEN_TIME, CLOSE_TIME));
+    }
+
+    @Test
+    public void testFailingHostResolverDefersToFactory() {
+        final MetricsFactory factory = new TsdMetricsFactory.Builder(() -> {
+            throw new UnknownHostException();
+        })
+                .setServiceName("service")
+                .setClusterName("cluster")
+                .setSinks(Collections.emptyList())
+                .build();
+
+        final Metrics metrics = ReplayedMetrics.create(factory, OPEN_TIME, CLOSE_TIME);
+        Assert.assertTrue(metrics.isOpen());
+        Assert.assertNotEquals(OPEN_TIME, metrics.getOpenTime());
+    }
+
+    @Test
+    public void testReplayClock() {
+        final Clock clock = new ReplayedMetrics.ReplayClock(OPEN_TIME, CLOSE_TIME);
+        Assert.assertEquals(ZoneOffset.UTC, clock.getZone());
+        Assert.assertEquals(OPEN_TIME, clock.instant());
+        Assert.assertEquals(CLOSE_TIME, clock.instant());
+        Assert.assertEquals(CLOSE_TIME, clock.instant());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReplayClockWithZone() {
+        new ReplayedMetrics.ReplayClock(OPEN_TIME, CLOSE_TIME).withZone(ZoneOffset.UTC);
+    }
+
+    private static final Instant OPEN_TIME = Instant.parse("2017-01-01T00:00:00Z");
+    private static final Instant CLOSE_TIME = Instant.parse("2017-01-01T00:01:00Z");
+}
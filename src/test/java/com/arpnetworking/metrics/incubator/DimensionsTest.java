@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+/**
+ * Tests for the {@link Dimensions} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class DimensionsTest {
+
+    @Test
+    public void testInterned() {
+        final Map<String, String> tags = Maps.newHashMap();
+        tags.put("host", "a");
+        tags.put("region", "b");
+        final Dimensions dimensions = Dimensions.of(tags);
+        Assert.assertSame(dimensions, Dimensions.of(ImmutableMap.of("region", "b", "host", "a")));
+        Assert.assertEquals(tags, dimensions.getTags());
+        Assert.assertFalse(dimensions.isEmpty());
+        tags.put("host", "c");
+        Assert.assertEquals("a", dimensions.getTags().get("host"));
+        Assert.assertSame(Dimensions.none(), Dimensions.of(ImmutableMap.of()));
+        Assert.assertTrue(Dimensions.none().isEmpty());
+    }
+
+    @Test
+    @SuppressWarnings("EqualsWithItself")
+    public void testEquals() {
+        final Dimensions dimensions = Dimensions.of(ImmutableMap.of("host", "a"));
+        Assert.assertTrue(dimensions.equals(dimensions));
+        Assert.assertFalse(dimensions.equals(Dimensions.of(ImmutableMap.of("host", "b"))));
+        Assert.assertFalse(dimensions.equals(Dimensions.of(ImmutableMap.of("host", "a", "region", "b"))));
+        Assert.assertFalse(dimensions.equals("host"));
+        Assert.assertFalse(dimensions.equals(null));
+        Assert.assertEquals(ImmutableMap.of("host", "a").hashCode(), dimensions.hashCode());
+        Assert.assertEquals("Dimensions{Tags={host=a}}", dimensions.toString());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullTagValue() {
+        final Map<String, String> tags = Maps.newHashMap();
+        tags.put("host", null);
+        Dimensions.of(tags);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link MetricKey} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class MetricKeyTest {
+
+    @Test
+    public void testInterned() {
+        final MetricKey key = MetricKey.of("name", ImmutableMap.of("host", "a"));
+        Assert.assertSame(key, MetricKey.of("name", Dimensions.of(ImmutableMap.of("host", "a"))));
+        Assert.assertEquals("name", key.getName());
+        Assert.assertEquals(ImmutableMap.of("host", "a"), key.getDimensions().getTags());
+        Assert.assertSame(Dimensions.none(), MetricKey.of("name").getDimensions());
+        Assert.assertNotSame(key, MetricKey.of("name"));
+    }
+
+    @Test
+    public void testEquals() {
+        final MetricKey key = MetricKey.of("name", ImmutableMap.of("host", "a"));
+        Assert.assertTrue(key.equals(key));
+        Assert.assertFalse(key.equals(MetricKey.of("other", ImmutableMap.of("host", "a"))));
+        Assert.assertFalse(key.equals(MetricKey.of("name", ImmutableMap.of("host", "b"))));
+        Assert.assertFalse(key.equals(MetricKey.of("name")));
+        Assert.assertFalse(key.equals("name"));
+        Assert.assertFalse(key.equals(null));
+        Assert.assertEquals(key.hashCode(), MetricKey.of("name", ImmutableMap.of("host", "a")).hashCode());
+        Assert.assertEquals("MetricKey{Name=name, Dimensions=Dimensions{Tags={host=a}}}", key.toString());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullName() {
+        MetricKey.of(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullDimensions() {
+        MetricKey.of("name", (Dimensions) null);
+    }
+}
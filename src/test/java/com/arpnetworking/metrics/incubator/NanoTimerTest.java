@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the {@link NanoTimer} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class NanoTimerTest {
+
+    @Test
+    public void testRecordsDuration() {
+        final PeriodicMetrics metrics = Mockito.mock(PeriodicMetrics.class);
+        Mockito.when(metrics.timer("timer")).thenCallRealMethod();
+        final PeriodicTimer timer = metrics.timer("timer");
+
+        final long start = timer.start() - 1000;
+        final long duration = timer.stop(start);
+
+        Assert.assertTrue(duration >= 1000);
+        Mockito.verify(metrics).recordTimer("timer", duration, Optional.of(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testConcurrentMeasurements() {
+        final PeriodicMetrics metrics = Mockito.mock(PeriodicMetrics.class);
+        final PeriodicTimer timer = new NanoTimer(metrics, "timer");
+
+        final long outer = timer.start() - 2000;
+        final long inner = timer.start() - 1000;
+        final long innerDuration = timer.stop(inner);
+        final long outerDuration = timer.stop(outer);
+
+        Assert.assertTrue(outerDuration > innerDuration);
+        Mockito.verify(metrics).recordTimer("timer", innerDuration, Optional.of(TimeUnit.NANOSECONDS));
+        Mockito.verify(metrics).recordTimer("timer", outerDuration, Optional.of(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testScopedTimerIsPrefixed() {
+        final PeriodicMetrics parent = Mockito.mock(PeriodicMetrics.class);
+        Mockito.when(parent.timer("lib/timer")).thenCallRealMethod();
+        final PeriodicTimer timer = new ScopedPeriodicMetrics(parent, "lib/", Dimensions.none()).timer("timer");
+
+        final long duration = timer.stop(timer.start());
+
+        Mockito.verify(parent).recordTimer("lib/timer", duration, Optional.of(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testDimensionedScopedTimerRecordsWithKey() {
+        final PeriodicMetrics parent = Mockito.mock(PeriodicMetrics.class);
+        final MetricKey key = MetricKey.of("lib/timer", ImmutableMap.of("host", "a"));
+        Mockito.when(parent.timer(key)).thenCallRealMethod();
+        final PeriodicTimer timer = new ScopedPeriodicMetrics(parent, "lib/", key.getDimensions()).timer("timer");
+
+        final long duration = timer.stop(timer.start());
+
+        Mockito.verify(parent).recordTimer(key, duration, Optional.of(TimeUnit.NANOSECONDS));
+    }
+}
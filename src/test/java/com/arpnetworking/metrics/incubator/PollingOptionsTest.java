@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Tests for the {@link PollingOptions} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class PollingOptionsTest {
+    @Test
+    public void testDefaults() {
+        final PollingOptions options = new PollingOptions.Builder().setName("poller").build();
+        Assert.assertEquals("poller", options.getName());
+        Assert.assertEquals(1, options.getInterval());
+        Assert.assertEquals(Optional.empty(), options.getBudget());
+        Assert.assertEquals(32, options.getMaximumInterval());
+    }
+
+    @Test
+    public void testValues() {
+        final PollingOptions options = new PollingOptions.Builder()
+                .setName("poller")
+                .setInterval(5)
+                .setBudget(Duration.ofMillis(10))
+                .setMaximumInterval(20)
+                .build();
+        Assert.assertEquals(5, options.getInterval());
+        Assert.assertEquals(Optional.of(Duration.ofMillis(10)), options.getBudget());
+        Assert.assertEquals(20, options.getMaximumInterval());
+        Assert.assertEquals("PollingOptions{Name=poller, Interval=5, Budget=PT0.01S, MaximumInterval=20}", options.toString());
+    }
+
+    @Test
+    public void testDefaultMaximumIntervalSaturates() {
+        final PollingOptions options = new PollingOptions.Builder().setName("poller").setInterval(Integer.MAX_VALUE).build();
+        Assert.assertEquals(Integer.MAX_VALUE, options.getMaximumInterval());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsMissingName() {
+        new PollingOptions.Builder().build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsEmptyName() {
+        new PollingOptions.Builder().setName("").build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsZeroInterval() {
+        new PollingOptions.Builder().setName("poller").setInterval(0).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @SuppressFBWarnings("NP_NONNULL_PARAM_VIOLATION")
+    public void testRejectsNullInterval() {
+        new PollingOptions.Builder().setName("poller").setInterval(null).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNegativeBudget() {
+        new PollingOptions.Builder().setName("poller").setBudget(Duration.ofMillis(-1)).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsMaximumIntervalBelowInterval() {
+        new PollingOptions.Builder().setName("poller").setInterval(4).setMaximumInterval(2).build();
+    }
+}
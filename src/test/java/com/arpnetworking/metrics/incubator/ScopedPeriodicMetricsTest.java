@@ -0,0 +1,271 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Tests for the {@link ScopedPeriodicMetrics} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class ScopedPeriodicMetricsTest {
+
+    @Test
+    public void testPrefixesNames() {
+        final PeriodicMetrics parent = Mockito.mock(PeriodicMetrics.class);
+        final PeriodicCounter counter = Mockito.mock(PeriodicCounter.class);
+        final PeriodicGauge gauge = Mockito.mock(PeriodicGauge.class);
+        Mockito.when(parent.counter("lib/counter")).thenReturn(counter);
+        Mockito.when(parent.gauge("lib/gauge")).thenReturn(gauge);
+        final PeriodicMetrics scoped = new ScopedPeriodicMetrics(parent, "lib/", Dimensions.none());
+        final long[] durations = {1, 2};
+
+        scoped.recordCounter("counter", 1);
+        scoped.recordTimer("timer", 2, Optional.of(TimeUnit.SECONDS));
+        scoped.recordTimers("timer", durations, Optional.empty());
+        scoped.recordGauge("gauge", 3.5);
+        scoped.recordGauge("gauge", 4L);
+        Assert.assertSame(counter, scoped.counter("counter"));
+        Assert.assertSame(gauge, scoped.gauge("gauge"));
+
+        Mockito.verify(parent).recordCounter("lib/counter", 1);
+        Mockito.verify(parent).recordTimer("lib/timer", 2, Optional.of(TimeUnit.SECONDS));
+        Mockito.verify(parent).recordTimers("lib/timer", durations, Optional.empty());
+        Mockito.verify(parent).recordGauge("lib/gauge", 3.5);
+        Mockito.verify(parent).recordGauge("lib/gauge", 4L);
+    }
+
+    @Test
+    public void testResolvesNamesOnce() {
+        final PeriodicMetrics parent = Mockito.mock(PeriodicMetrics.class);
+        final PeriodicMetrics scoped = new ScopedPeriodicMetrics(parent, "lib/", Dimensions.none());
+
+        scoped.recordCounter("counter", 1);
+        scoped.recordCounter("counter", 2);
+        final ArgumentCaptor<String> names = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(parent, Mockito.times(2)).recordCounter(names.capture(), Mockito.anyLong());
+        Assert.assertSame(names.getAllValues().get(0), names.getAllValues().get(1));
+    }
+
+    @Test
+    public void testCachesBoundedNumberOfNames() {
+        final PeriodicMetrics parent = Mockito.mock(PeriodicMetrics.class);
+        final Dimensions dimensions = Dimensions.of(ImmutableMap.of("host", "a"));
+        final ScopedPeriodicMetrics scoped = new ScopedPeriodicMetrics(parent, "lib/", dimensions);
+        for (int i = 0; i < ScopedPeriodicMetrics.MAXIMUM_CACHED_NAMES; ++i) {
+            scoped.recordCounter("counter" + i, 1);
+            scoped.recordCounter(MetricKey.of("keyed" + i), 1);
+        }
+        Assert.assertEquals(2 * ScopedPeriodicMetrics.MAXIMUM_CACHED_NAMES, scoped.cachedNames());
+
+        // Names beyond the bound are still scoped but no longer cached
+        scoped.recordCounter("overflow", 2);
+        scoped.recordCounter(MetricKey.of("keyed"), 3);
+        scoped.recordCounter("counter0", 4);
+        Assert.assertEquals(2 * ScopedPeriodicMetrics.MAXIMUM_CACHED_NAMES, scoped.cachedNames());
+        Mockito.verify(parent).recordCounter(MetricKey.of("lib/overflow", dimensions), 2);
+        Mockito.verify(parent).recordCounter(MetricKey.of("lib/keyed", dimensions), 3);
+        Mockito.verify(parent).recordCounter(MetricKey.of("lib/counter0", dimensions), 4);
+
+        final ScopedPeriodicMetrics unscoped = new ScopedPeriodicMetrics(parent, "lib/", Dimensions.none());
+        for (int i = 0; i <= ScopedPeriodicMetrics.MAXIMUM_CACHED_NAMES; ++i) {
+            unscoped.recordGauge("gauge" + i, 1.5);
+        }
+        Assert.assertEquals(ScopedPeriodicMetrics.MAXIMUM_CACHED_NAMES, unscoped.cachedNames());
+        Mockito.verify(parent).recordGauge("lib/gauge" + ScopedPeriodicMetrics.MAXIMUM_CACHED_NAMES, 1.5);
+    }
+
+    @Test
+    public void testRegistrationsArePrefixed() {
+        final PeriodicMetrics parent = Mockito.mock(PeriodicMetrics.class);
+        final PeriodicMetrics scoped = new ScopedPeriodicMetrics(parent, "lib/", Dimensions.of(ImmutableMap.of("host", "a")));
+        final LongSupplier longSupplier = () -> 1L;
+        final DoubleSupplier doubleSupplier = () -> 1.0;
+        final ToDoubleFunction<Object> reader = owner -> 1.0;
+        final Object owner = new Object();
+
+        scoped.registerGauge("long", longSupplier);
+        scoped.registerGauge("double", doubleSupplier);
+        scoped.registerGauge("owned", owner, reader);
+        scoped.registerMonotonicCounter("monotonic", longSupplier);
+
+        Mockito.verify(parent).registerGauge("lib/long", longSupplier);
+        Mockito.verify(parent).registerGauge("lib/double", doubleSupplier);
+        Mockito.verify(parent).registerGauge("lib/owned", owner, reader);
+        Mockito.verify(parent).registerMonotonicCounter("lib/monotonic", longSupplier);
+    }
+
+    @Test
+    public void testDimensions() {
+        final PeriodicMetrics parent = Mockito.mock(PeriodicMetrics.class);
+        final Dimensions dimensions = Dimensions.of(ImmutableMap.of("host", "a"));
+        final PeriodicMetrics scoped = new ScopedPeriodicMetrics(parent, "lib/", dimensions);
+        final MetricKey counter = MetricKey.of("lib/counter", dimensions);
+        final MetricKey timer = MetricKey.of("lib/timer", dimensions);
+        final MetricKey gauge = MetricKey.of("lib/gauge", dimensions);
+        final PeriodicCounter counterHandle = Mockito.mock(PeriodicCounter.class);
+        final PeriodicTimer timerHandle = Mockito.mock(PeriodicTimer.class);
+        final PeriodicGauge gaugeHandle = Mockito.mock(PeriodicGauge.class);
+        Mockito.when(parent.counter(counter)).thenReturn(counterHandle);
+        Mockito.when(parent.timer(timer)).thenReturn(timerHandle);
+        Mockito.when(parent.gauge(gauge)).thenReturn(gaugeHandle);
+
+        scoped.recordCounter("counter", 1);
+        scoped.recordTimer("timer", 2, Optional.empty());
+        scoped.recordTimers("timer", new long[] {3, 4}, Optional.of(TimeUnit.SECONDS));
+        scoped.recordGauge("gauge", 5.5);
+        scoped.recordGauge("gauge", 6L);
+        Assert.assertSame(counterHandle, scoped.counter("counter"));
+        Assert.assertSame(timerHandle, scoped.timer("timer"));
+        Assert.assertSame(gaugeHandle, scoped.gauge("gauge"));
+
+        Mockito.verify(parent).recordCounter(counter, 1);
+        Mockito.verify(parent).recordTimer(timer, 2, Optional.empty());
+        Mockito.verify(parent).recordTimers(timer, new long[] {3, 4}, Optional.of(TimeUnit.SECONDS));
+        Mockito.verify(parent).recordGauge(gauge, 5.5);
+        Mockito.verify(parent).recordGauge(gauge, 6L);
+        Mockito.verify(parent, Mockito.never()).counter(Mockito.anyString());
+        Mockito.verify(parent, Mockito.never()).timer(Mockito.anyString());
+        Mockito.verify(parent, Mockito.never()).gauge(Mockito.anyString());
+    }
+
+    @Test
+    public void testMetricKeys() {
+        final PeriodicMetrics parent = Mockito.mock(PeriodicMetrics.class);
+        final PeriodicMetrics scoped = new ScopedPeriodicMetrics(parent, "lib/", Dimensions.of(ImmutableMap.of("host", "a", "pool", "x")));
+        final PeriodicMetrics unscoped = new ScopedPeriodicMetrics(parent, "other/", Dimensions.none());
+        final MetricKey key = MetricKey.of("metric", ImmutableMap.of("pool", "y"));
+        final MetricKey merged = MetricKey.of("lib/metric", ImmutableMap.of("host", "a", "pool", "y"));
+
+        scoped.recordCounter(key, 1);
+        scoped.recordTimer(key, 2, Optional.empty());
+        scoped.recordGauge(key, 3.5);
+        scoped.recordGauge(MetricKey.of("metric"), 4L);
+        unscoped.recordGauge(key, 5L);
+        scoped.recordTimers(key, new long[] {6}, Optional.empty());
+        scoped.counter(key);
+        scoped.timer(key);
+        scoped.gauge(key);
+
+        Mockito.verify(parent).recordTimers(merged, new long[] {6}, Optional.empty());
+        Mockito.verify(parent).counter(merged);
+        Mockito.verify(parent).timer(merged);
+        Mockito.verify(parent).gauge(merged);
+        Mockito.verify(parent).recordCounter(merged, 1);
+        Mockito.verify(parent).recordTimer(merged, 2, Optional.empty());
+        Mockito.verify(parent).recordGauge(merged, 3.5);
+        Mockito.verify(parent).recordGauge(MetricKey.of("lib/metric", ImmutableMap.of("host", "a", "pool", "x")), 4L);
+        Mockito.verify(parent).recordGauge(MetricKey.of("other/metric", ImmutableMap.of("pool", "y")), 5L);
+    }
+
+    @Test
+    public void testNestedScopes() {
+        final PeriodicMetrics parent = Mockito.mock(PeriodicMetrics.class, Mockito.CALLS_REAL_METHODS);
+        final PeriodicMetrics nested = parent
+                .scoped("lib/", Dimensions.of(ImmutableMap.of("host", "a")))
+                .scoped("component/", Dimensions.of(ImmutableMap.of("shard", "1")));
+
+        Mockito.doNothing().when(parent).recordCounter(Mockito.any(MetricKey.class), Mockito.anyLong());
+        nested.recordCounter("counter", 1);
+        Mockito.verify(parent).recordCounter(MetricKey.of("lib/component/counter", ImmutableMap.of("host", "a", "shard", "1")), 1);
+        Assert.assertTrue(nested.toString().contains("Prefix=lib/component/"));
+    }
+
+    @Test
+    public void testBatch() {
+        final PeriodicMetrics parent = Mockito.mock(PeriodicMetrics.class);
+        final PeriodicBatch parentBatch = Mockito.mock(PeriodicBatch.class);
+        Mockito.when(parent.batch()).thenReturn(parentBatch);
+        final PeriodicMetrics scoped = new ScopedPeriodicMetrics(parent, "lib/", Dimensions.none());
+
+        final PeriodicBatch batch = scoped.batch();
+        Assert.assertSame(batch, batch.counter("counter", 1).timer("timer", 2, Optional.empty()).gauge("gauge", 3.5).gauge("gauge", 4L));
+        batch.record();
+
+        Mockito.verify(parentBatch).counter("lib/counter", 1);
+        Mockito.verify(parentBatch).timer("lib/timer", 2, Optional.empty());
+        Mockito.verify(parentBatch).gauge("lib/gauge", 3.5);
+        Mockito.verify(parentBatch).gauge("lib/gauge", 4L);
+        Mockito.verify(parentBatch).record();
+    }
+
+    @Test
+    public void testDimensionedBatch() {
+        final PeriodicMetrics parent = Mockito.mock(PeriodicMetrics.class);
+        final PeriodicBatch parentBatch = Mockito.mock(PeriodicBatch.class);
+        Mockito.when(parent.batch()).thenReturn(parentBatch);
+        final Dimensions dimensions = Dimensions.of(ImmutableMap.of("host", "a"));
+        final PeriodicMetrics scoped = new ScopedPeriodicMetrics(parent, "lib/", dimensions);
+        final MetricKey key = MetricKey.of("metric", ImmutableMap.of("pool", "y"));
+        final MetricKey merged = MetricKey.of("lib/metric", ImmutableMap.of("host", "a", "pool", "y"));
+
+        final PeriodicBatch batch = scoped.batch();
+        Assert.assertSame(batch, batch.counter("counter", 1).timer("timer", 2, Optional.of(TimeUnit.SECONDS)));
+        Assert.assertSame(batch, batch.gauge("gauge", 3.5).gauge("gauge", 4L));
+        Assert.assertSame(batch, batch.counter(key, 5).timer(key, 6, Optional.empty()).gauge(key, 7.5).gauge(key, 8L));
+        batch.record();
+
+        Mockito.verify(parentBatch).counter(MetricKey.of("lib/counter", dimensions), 1);
+        Mockito.verify(parentBatch).timer(MetricKey.of("lib/timer", dimensions), 2, Optional.of(TimeUnit.SECONDS));
+        Mockito.verify(parentBatch).gauge(MetricKey.of("lib/gauge", dimensions), 3.5);
+        Mockito.verify(parentBatch).gauge(MetricKey.of("lib/gauge", dimensions), 4L);
+        Mockito.verify(parentBatch).counter(merged, 5);
+        Mockito.verify(parentBatch).timer(merged, 6, Optional.empty());
+        Mockito.verify(parentBatch).gauge(merged, 7.5);
+        Mockito.verify(parentBatch).gauge(merged, 8L);
+        Mockito.verify(parentBatch).record();
+        Mockito.verify(parentBatch, Mockito.never()).counter(Mockito.anyString(), Mockito.anyLong());
+    }
+
+    @Test
+    public void testPolledMetric() {
+        final PeriodicMetrics parent = Mockito.mock(PeriodicMetrics.class);
+        final PolledMetricRegistration registration = Mockito.mock(PolledMetricRegistration.class);
+        Mockito.when(parent.registerPolledMetric(Mockito.any())).thenReturn(registration);
+        Mockito.when(parent.registerPolledMetric(Mockito.any(), Mockito.any())).thenReturn(registration);
+        final PeriodicMetrics scoped = new ScopedPeriodicMetrics(parent, "lib/", Dimensions.none());
+        final Consumer<PeriodicMetrics> consumer = metrics -> metrics.recordCounter("polled", 1);
+        final PollingOptions options = new PollingOptions.Builder().setName("polled").setInterval(2).build();
+
+        final PolledMetricRegistration scopedRegistration = scoped.registerPolledMetric(consumer);
+        scoped.registerPolledMetric(consumer, options);
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<Consumer<PeriodicMetrics>> wrappers = ArgumentCaptor.forClass(Consumer.class);
+        Mockito.verify(parent).registerPolledMetric(wrappers.capture());
+        Mockito.verify(parent).registerPolledMetric(Mockito.same(wrappers.getValue()), Mockito.same(options));
+
+        wrappers.getValue().accept(parent);
+        Mockito.verify(parent).recordCounter("lib/polled", 1);
+
+        scopedRegistration.close();
+        Mockito.verify(registration).close();
+        scoped.registerPolledMetric(consumer);
+        Mockito.verify(parent, Mockito.times(2)).registerPolledMetric(wrappers.capture());
+        Assert.assertNotSame(wrappers.getAllValues().get(0), wrappers.getAllValues().get(2));
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.incubator.MetricKey;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the {@link Admission} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class AdmissionTest {
+
+    @Test
+    public void testAdmitsEverythingWhenUnlimited() {
+        final PeriodRecorder recorder = Mockito.mock(PeriodRecorder.class);
+        final Admission admission = new Admission(recorder, null, null);
+        final MetricKey key = MetricKey.of("key");
+
+        Assert.assertEquals("name", admission.admit("name"));
+        Assert.assertEquals("name", admission.admit("name", 3));
+        Assert.assertSame(key, admission.admit(key));
+        final SampleBatch batch = new SampleBatch(admission::record);
+        batch.counter("counter", 1).record();
+        Mockito.verify(recorder).record(Mockito.any(SampleBatch.class));
+    }
+
+    @Test
+    public void testLimitsAndCountsSamples() {
+        final PeriodRecorder recorder = Mockito.mock(PeriodRecorder.class);
+        final SelfInstrumentation instrumentation = new SelfInstrumentation();
+        final Admission admission = new Admission(recorder, new CardinalityLimiter(1), instrumentation);
+
+        admission.recordTimer("timer", 1, TimeUnit.SECONDS);
+        admission.recordGauge("double", 1.5);
+        admission.recordGauge("long", 2L);
+        Assert.assertEquals(CardinalityLimiter.OVERFLOW_METRIC, admission.admit("other", 2));
+        Assert.assertEquals(MetricKey.of(CardinalityLimiter.OVERFLOW_METRIC), admission.admit(MetricKey.of("key")));
+        final SampleBatch batch = new SampleBatch(admission::record);
+        batch.counter("counter", 1).record();
+
+        Mockito.verify(recorder).recordTimer("timer", 1, TimeUnit.SECONDS);
+        Mockito.verify(recorder).recordGauge(CardinalityLimiter.OVERFLOW_METRIC, 1.5);
+        Mockito.verify(recorder).recordGauge(CardinalityLimiter.OVERFLOW_METRIC, 2L);
+        instrumentation.rotated(recorder);
+        Assert.assertEquals(7, instrumentation.getStats().getSamples());
+    }
+}
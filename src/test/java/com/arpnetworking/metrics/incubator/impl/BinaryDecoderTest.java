@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import org.junit.Test;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Tests for the {@link BinaryDecoder} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class BinaryDecoderTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testVarLongTooLong() {
+        final byte[] bytes = new byte[11];
+        Arrays.fill(bytes, (byte) 0x80);
+        BinaryDecoder.getVarLong(ByteBuffer.wrap(bytes));
+    }
+
+    @Test(expected = BufferUnderflowException.class)
+    public void testVarLongTruncated() {
+        BinaryDecoder.getVarLong(ByteBuffer.wrap(new byte[] {(byte) 0x80}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testVarIntNegative() {
+        final BinaryEncoder encoder = new BinaryEncoder();
+        encoder.putVarLong(-1);
+        BinaryDecoder.getVarInt(encoder.view());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testVarIntTooLarge() {
+        final BinaryEncoder encoder = new BinaryEncoder();
+        encoder.putVarLong(1L + Integer.MAX_VALUE);
+        BinaryDecoder.getVarInt(encoder.view());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStringExceedsBuffer() {
+        final BinaryEncoder encoder = new BinaryEncoder();
+        encoder.putVarLong(2);
+        encoder.putByte('a');
+        BinaryDecoder.getString(encoder.view());
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+/**
+ * Tests for the {@link BinaryEncoder} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class BinaryEncoderTest {
+
+    @Test
+    public void testRoundTrip() {
+        final BinaryEncoder encoder = new BinaryEncoder(1);
+        encoder.putByte(0xfe);
+        encoder.putVarLong(0);
+        encoder.putVarLong(127);
+        encoder.putVarLong(128);
+        encoder.putVarLong(Long.MAX_VALUE);
+        encoder.putVarLong(-1);
+        encoder.putZigZag(-1);
+        encoder.putZigZag(Long.MIN_VALUE);
+        encoder.putZigZag(42);
+        encoder.putInt(0xcafebabe);
+        encoder.putLong(0x0102030405060708L);
+        encoder.putDouble(-2.5);
+        encoder.putString("héllo");
+        encoder.putString("");
+        encoder.putInstant(Instant.ofEpochSecond(-1, 999_999_999));
+
+        final ByteBuffer buffer = encoder.view();
+        Assert.assertEquals(encoder.size(), buffer.remaining());
+        Assert.assertEquals(0xfe, BinaryDecoder.getByte(buffer));
+        Assert.assertEquals(0, BinaryDecoder.getVarInt(buffer));
+        Assert.assertEquals(127, BinaryDecoder.getVarLong(buffer));
+        Assert.assertEquals(128, BinaryDecoder.getVarLong(buffer));
+        Assert.assertEquals(Long.MAX_VALUE, BinaryDecoder.getVarLong(buffer));
+        Assert.assertEquals(-1, BinaryDecoder.getVarLong(buffer));
+        Assert.assertEquals(-1, BinaryDecoder.getZigZag(buffer));
+        Assert.assertEquals(Long.MIN_VALUE, BinaryDecoder.getZigZag(buffer));
+        Assert.assertEquals(42, BinaryDecoder.getZigZag(buffer));
+        Assert.assertEquals(0xcafebabe, BinaryDecoder.getInt(buffer));
+        Assert.assertEquals(0x0102030405060708L, BinaryDecoder.getLong(buffer));
+        Assert.assertEquals(-2.5, BinaryDecoder.getDouble(buffer), 0.0);
+        Assert.assertEquals("héllo", BinaryDecoder.getString(buffer));
+        Assert.assertEquals("", BinaryDecoder.getString(buffer));
+        Assert.assertEquals(Instant.ofEpochSecond(-1, 999_999_999), BinaryDecoder.getInstant(buffer));
+        Assert.assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testAppend() {
+        final BinaryEncoder encoder = new BinaryEncoder(1);
+        final BinaryEncoder other = new BinaryEncoder();
+        encoder.putByte(1);
+        other.putString("appended");
+        encoder.append(other);
+
+        final ByteBuffer buffer = encoder.view();
+        Assert.assertEquals(1, BinaryDecoder.getByte(buffer));
+        Assert.assertEquals("appended", BinaryDecoder.getString(buffer));
+        Assert.assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testSmallValuesAreCompact() {
+        final BinaryEncoder encoder = new BinaryEncoder();
+        encoder.putZigZag(-64);
+        encoder.putVarLong(127);
+        Assert.assertEquals(2, encoder.size());
+    }
+
+    @Test
+    public void testReset() {
+        final BinaryEncoder encoder = new BinaryEncoder();
+        encoder.putLong(1);
+        encoder.reset();
+        Assert.assertEquals(0, encoder.size());
+        Assert.assertFalse(encoder.view().hasRemaining());
+    }
+}
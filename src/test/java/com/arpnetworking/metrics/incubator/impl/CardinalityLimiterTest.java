@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.incubator.MetricKey;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Tests for the {@link CardinalityLimiter} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class CardinalityLimiterTest {
+
+    @Test
+    public void testLimitsMetricsPerPeriod() {
+        final CardinalityLimiter limiter = new CardinalityLimiter(2);
+        final MetricKey key = MetricKey.of("key");
+
+        Assert.assertEquals("a", limiter.admit("a"));
+        Assert.assertSame(key, limiter.admit(key));
+        Assert.assertEquals("a", limiter.admit("a"));
+        Assert.assertSame(key, limiter.admit(key));
+        Assert.assertEquals(CardinalityLimiter.OVERFLOW_METRIC, limiter.admit("b"));
+        Assert.assertEquals(CardinalityLimiter.OVERFLOW_METRIC, limiter.admit("b"));
+        Assert.assertEquals(MetricKey.of(CardinalityLimiter.OVERFLOW_METRIC), limiter.admit(MetricKey.of("c")));
+
+        final CompletedPeriod completed = Mockito.mock(CompletedPeriod.class);
+        limiter.rotate(completed);
+        Mockito.verify(completed).recordCounter(CardinalityLimiter.DROPPED_METRIC, 3);
+        Mockito.verify(completed).recordGauge(CardinalityLimiter.DROPPED_METRICS_METRIC, 2.0);
+
+        Assert.assertEquals("b", limiter.admit("b"));
+        Assert.assertEquals("c", limiter.admit("c"));
+        final CompletedPeriod next = Mockito.mock(CompletedPeriod.class);
+        limiter.rotate(next);
+        Mockito.verify(next).recordCounter(CardinalityLimiter.DROPPED_METRIC, 0);
+        Mockito.verify(next).recordGauge(CardinalityLimiter.DROPPED_METRICS_METRIC, 0.0);
+    }
+}
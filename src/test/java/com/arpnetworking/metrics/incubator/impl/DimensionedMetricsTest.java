@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.incubator.Dimensions;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Tests for the {@link DimensionedMetrics} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class DimensionedMetricsTest {
+
+    @Test
+    public void testMetricsPerDimensions() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final Metrics first = Mockito.mock(Metrics.class);
+        final Metrics second = Mockito.mock(Metrics.class);
+        final MetricsFactory factory = Mockito.mock(MetricsFactory.class);
+        Mockito.when(factory.create()).thenReturn(first, second);
+        final Dimensions firstDimensions = Dimensions.of(ImmutableMap.of("host", "a"));
+        final Dimensions secondDimensions = Dimensions.of(ImmutableMap.of("host", "b"));
+        final DimensionedMetrics dimensionedMetrics = new DimensionedMetrics(metrics, factory);
+
+        Assert.assertSame(metrics, dimensionedMetrics.get());
+        Assert.assertSame(metrics, dimensionedMetrics.get(Dimensions.none()));
+        Assert.assertSame(first, dimensionedMetrics.get(firstDimensions));
+        Assert.assertSame(first, dimensionedMetrics.get(firstDimensions));
+        Assert.assertSame(second, dimensionedMetrics.get(secondDimensions));
+        Mockito.verify(first).addAnnotations(firstDimensions.getTags());
+        Mockito.verify(second).addAnnotations(secondDimensions.getTags());
+
+        dimensionedMetrics.close();
+        Mockito.verify(metrics).close();
+        Mockito.verify(first).close();
+        Mockito.verify(second).close();
+    }
+}
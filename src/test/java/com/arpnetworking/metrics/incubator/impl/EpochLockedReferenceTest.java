@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests for the {@link EpochLockedReference} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class EpochLockedReferenceTest {
+
+    @Test(timeout = 10000)
+    public void testMultipleReadersOk() throws InterruptedException {
+        final CountDownLatch bothInside = new CountDownLatch(2);
+        final EpochLockedReference<Object> reference = new EpochLockedReference<>(new Object());
+
+        final Runnable r = () -> reference.readLocked(object -> {
+            bothInside.countDown();
+            await(bothInside);
+        });
+        final Thread thread1 = new Thread(r);
+        final Thread thread2 = new Thread(r);
+        thread1.start();
+        thread2.start();
+        thread1.join();
+        thread2.join();
+    }
+
+    @Test
+    public void testMultipleWritersExcluded() throws InterruptedException {
+        final Semaphore done = new Semaphore(0);
+        final EpochLockedReference<Object> reference = new EpochLockedReference<>(new Object());
+
+        reference.writeLocked(object -> {
+            new Thread(() -> reference.writeLocked(o -> done.release())).start();
+            try {
+                Assert.assertFalse("Write lock was not exclusive", done.tryAcquire(200, TimeUnit.MILLISECONDS));
+            } catch (final InterruptedException interrupted) {
+                Assert.fail("Interrupted");
+            }
+        });
+        done.acquire();
+    }
+
+    @Test(timeout = 10000)
+    public void testWriterExcludesReaders() throws InterruptedException {
+        final Object value = new Object();
+        final EpochLockedReference<Object> reference = new EpochLockedReference<>(value);
+        final CountDownLatch read = new CountDownLatch(1);
+
+        reference.writeLocked(object -> {
+            Assert.assertSame(value, object);
+            new Thread(() -> reference.readLocked(o -> read.countDown())).start();
+            try {
+                Assert.assertFalse("Read during write", read.await(200, TimeUnit.MILLISECONDS));
+            } catch (final InterruptedException interrupted) {
+                Assert.fail("Interrupted");
+            }
+        });
+        read.await();
+        reference.readLocked(object -> Assert.assertSame(value, object));
+    }
+
+    @Test(timeout = 10000)
+    public void testReleasesOnThrow() {
+        final EpochLockedReference<Object> reference = new EpochLockedReference<>(new Object());
+        try {
+            reference.writeLocked(object -> {
+                throw new IllegalStateException();
+            });
+            Assert.fail("Expected exception");
+        } catch (final IllegalStateException expected) {
+            // Expected
+        }
+        try {
+            reference.readLocked(object -> {
+                throw new IllegalStateException();
+            });
+            Assert.fail("Expected exception");
+        } catch (final IllegalStateException expected) {
+            // Expected
+        }
+        reference.getAndSetReference(new Object());
+        reference.writeLocked(object -> { });
+    }
+
+    @Test(timeout = 10000)
+    public void testGetAndSetWaitsForReaders() throws InterruptedException {
+        final Object oldValue = new Object();
+        final Object newValue = new Object();
+        final EpochLockedReference<Object> reference = new EpochLockedReference<>(oldValue);
+        final CountDownLatch inside = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean readerDone = new AtomicBoolean(false);
+
+        final Thread reader = new Thread(() -> reference.readLocked(object -> {
+            inside.countDown();
+            await(release);
+            readerDone.set(true);
+        }));
+        reader.start();
+        inside.await();
+        final Thread releaser = new Thread(() -> {
+            sleep(200);
+            release.countDown();
+        });
+        releaser.start();
+
+        Assert.assertSame(oldValue, reference.getAndSetReference(newValue));
+        Assert.assertTrue(readerDone.get());
+        reference.readLocked(object -> Assert.assertSame(newValue, object));
+        reader.join();
+        releaser.join();
+    }
+
+    @Test(timeout = 10000)
+    public void testReaderRetriesAfterConcurrentSwap() {
+        final Object stale = new Object();
+        final Object fresh = new Object();
+        final EpochLockedReference.Epoch<Object> freshEpoch = new EpochLockedReference.Epoch<>(fresh, new InFlightCounter());
+        final InFlightCounter staleInFlight = Mockito.spy(new InFlightCounter());
+        final AtomicReference<EpochLockedReference.Epoch<Object>> current =
+                new AtomicReference<>(new EpochLockedReference.Epoch<>(stale, staleInFlight));
+        // Simulate a writer swapping the epoch between the reader's first read and its re-check
+        Mockito.doAnswer(invocation -> {
+            current.set(freshEpoch);
+            return invocation.callRealMethod();
+        }).when(staleInFlight).enter(Mockito.anyInt());
+        final EpochLockedReference<Object> reference = new EpochLockedReference<>(current);
+
+        reference.readLocked(object -> Assert.assertSame(fresh, object));
+        Assert.assertTrue(staleInFlight.isQuiescent());
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
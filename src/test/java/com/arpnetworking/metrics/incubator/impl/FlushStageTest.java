@@ -0,0 +1,293 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.incubator.PeriodicCounter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Tests for the {@link FlushStage} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class FlushStageTest {
+    @Before
+    public void setUp() {
+        _overflows = Mockito.mock(PeriodicCounter.class);
+        _drops = Mockito.mock(PeriodicCounter.class);
+        _executor = Mockito.mock(ExecutorService.class);
+        _first = Mockito.mock(CompletedPeriod.class);
+        _second = Mockito.mock(CompletedPeriod.class);
+    }
+
+    @Test
+    public void testFlushesOnExecutor() {
+        final FlushStage stage = new FlushStage(
+                2,
+                TsdPeriodicMetrics.FlushOverflowPolicy.BLOCK,
+                _overflows,
+                _drops,
+                FLUSH,
+                _executor);
+        stage.submit(_first, 1);
+        stage.submit(_second, 1);
+        Mockito.verifyNoInteractions(_first, _second, _overflows);
+
+        final List<Runnable> tasks = captureTasks(2);
+        tasks.get(0).run();
+        Mockito.verify(_first).flush();
+        Mockito.verifyNoInteractions(_second);
+        tasks.get(1).run();
+        Mockito.verify(_second).flush();
+        // Extra tasks find the queue empty
+        tasks.get(1).run();
+        Mockito.verifyNoMoreInteractions(_first, _second);
+    }
+
+    @Test
+    public void testDropOldest() {
+        final FlushStage stage = new FlushStage(
+                1,
+                TsdPeriodicMetrics.FlushOverflowPolicy.DROP_OLDEST,
+                _overflows,
+                _drops,
+                FLUSH,
+                _executor);
+        stage.submit(_first, 1);
+        stage.submit(_second, 1);
+        Mockito.verify(_overflows).add(1);
+
+        Mockito.verify(_first).discard();
+        Mockito.verify(_drops).add(1);
+
+        for (final Runnable task : captureTasks(2)) {
+            task.run();
+        }
+        Mockito.verify(_first, Mockito.never()).flush();
+        Mockito.verify(_second).flush();
+    }
+
+    @Test
+    public void testMerge() {
+        Mockito.when(_first.mergeFrom(_second)).thenReturn(true);
+        final FlushStage stage = new FlushStage(
+                1,
+                TsdPeriodicMetrics.FlushOverflowPolicy.MERGE,
+                _overflows,
+                _drops,
+                FLUSH,
+                _executor);
+        stage.submit(_first, 1);
+        stage.submit(_second, 1);
+        Mockito.verify(_overflows).add(1);
+
+        for (final Runnable task : captureTasks(2)) {
+            task.run();
+        }
+        Mockito.verify(_first).flush();
+        Mockito.verify(_second, Mockito.never()).flush();
+    }
+
+    @Test
+    public void testMergeKeepsResolutionsApart() throws InterruptedException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch taken = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> resolutions = Collections.synchronizedList(Lists.newArrayList());
+        final FlushStage stage = new FlushStage(
+                1,
+                TsdPeriodicMetrics.FlushOverflowPolicy.MERGE,
+                _overflows,
+                _drops,
+                (period, periods) -> {
+                    taken.countDown();
+                    await(release);
+                    resolutions.add(periods);
+                },
+                executor);
+        stage.submit(Mockito.mock(CompletedPeriod.class), 1);
+        Assert.assertTrue(taken.await(10, TimeUnit.SECONDS));
+        stage.submit(_second, 2);
+
+        // The base period is not merged into the pending rollup period and waits for space instead
+        final Thread submitter = new Thread(() -> stage.submit(_first, 1));
+        submitter.start();
+        Mockito.verify(_overflows, Mockito.timeout(10000)).add(1);
+        release.countDown();
+        submitter.join(10000);
+        stage.close();
+        Mockito.verify(_second, Mockito.never()).mergeFrom(Mockito.any());
+        Assert.assertEquals(ImmutableList.of(1, 2, 1), resolutions);
+    }
+
+    @Test
+    public void testMergeUnsupportedBlocks() throws InterruptedException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompletedPeriod blocking = Mockito.mock(CompletedPeriod.class);
+        Mockito.doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(blocking).flush();
+        final FlushStage stage = new FlushStage(
+                1,
+                TsdPeriodicMetrics.FlushOverflowPolicy.MERGE,
+                _overflows,
+                _drops,
+                FLUSH,
+                executor);
+        stage.submit(blocking, 1);
+        // Wait for the flush thread to take the blocking period
+        Mockito.verify(blocking, Mockito.timeout(10000)).flush();
+        stage.submit(_first, 1);
+
+        final Thread submitter = new Thread(() -> stage.submit(_second, 1));
+        submitter.start();
+        Mockito.verify(_first, Mockito.timeout(10000)).mergeFrom(_second);
+        Assert.assertTrue(submitter.isAlive());
+        release.countDown();
+        submitter.join(10000);
+        stage.close();
+        Mockito.verify(_first).flush();
+        Mockito.verify(_second).flush();
+        Mockito.verify(_overflows).add(1);
+    }
+
+    @Test
+    public void testMergeWithEmptyQueue() {
+        final BlockingDeque<FlushStage.Pending> queue = Mockito.spy(new LinkedBlockingDeque<>(1));
+        // Simulate the flush thread taking the pending period before the overflow is handled
+        Mockito.doReturn(false).when(queue).offerLast(Mockito.any());
+        final FlushStage stage = new FlushStage(
+                queue,
+                TsdPeriodicMetrics.FlushOverflowPolicy.MERGE,
+                _overflows,
+                _drops,
+                FLUSH,
+                _executor);
+        stage.submit(_second, 1);
+        Mockito.verify(_overflows).add(1);
+        captureTasks(1).get(0).run();
+        Mockito.verify(_second).flush();
+    }
+
+    @Test
+    public void testDropOldestWithEmptyQueue() {
+        final BlockingDeque<FlushStage.Pending> queue = Mockito.spy(new LinkedBlockingDeque<>(1));
+        // Simulate the flush thread taking the pending period before the overflow is handled
+        Mockito.doReturn(false).when(queue).offerLast(Mockito.any());
+        final FlushStage stage = new FlushStage(
+                queue,
+                TsdPeriodicMetrics.FlushOverflowPolicy.DROP_OLDEST,
+                _overflows,
+                _drops,
+                FLUSH,
+                _executor);
+        stage.submit(_second, 1);
+        Mockito.verifyNoInteractions(_drops);
+        captureTasks(1).get(0).run();
+        Mockito.verify(_second).flush();
+    }
+
+    @Test
+    public void testBlockInterruptedFlushesInline() {
+        final FlushStage stage = new FlushStage(
+                1,
+                TsdPeriodicMetrics.FlushOverflowPolicy.BLOCK,
+                _overflows,
+                _drops,
+                FLUSH,
+                _executor);
+        stage.submit(_first, 1);
+        Thread.currentThread().interrupt();
+        stage.submit(_second, 1);
+        Assert.assertTrue(Thread.interrupted());
+        Mockito.verify(_second).flush();
+        Mockito.verifyNoInteractions(_first);
+    }
+
+    @Test
+    public void testCloseFlushesPending() throws InterruptedException {
+        final FlushStage stage = new FlushStage(
+                2,
+                TsdPeriodicMetrics.FlushOverflowPolicy.BLOCK,
+                _overflows,
+                _drops,
+                FLUSH,
+                _executor);
+        stage.submit(_first, 1);
+        stage.submit(_second, 1);
+        stage.close();
+        Mockito.verify(_executor).shutdown();
+        Mockito.verify(_executor).awaitTermination(Mockito.anyLong(), Mockito.any());
+        Mockito.verify(_first).flush();
+        Mockito.verify(_second).flush();
+    }
+
+    @Test
+    public void testCloseInterrupted() throws InterruptedException {
+        Mockito.when(_executor.awaitTermination(Mockito.anyLong(), Mockito.any())).thenThrow(new InterruptedException());
+        final FlushStage stage = new FlushStage(
+                1,
+                TsdPeriodicMetrics.FlushOverflowPolicy.BLOCK,
+                _overflows,
+                _drops,
+                FLUSH,
+                _executor);
+        stage.submit(_first, 1);
+        stage.close();
+        Assert.assertTrue(Thread.interrupted());
+        Mockito.verify(_first).flush();
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<Runnable> captureTasks(final int count) {
+        final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(_executor, Mockito.times(count)).execute(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private PeriodicCounter _overflows;
+    private PeriodicCounter _drops;
+    private ExecutorService _executor;
+    private CompletedPeriod _first;
+    private CompletedPeriod _second;
+
+    private static final ObjIntConsumer<CompletedPeriod> FLUSH = (period, periods) -> period.flush();
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link HyperLogLog} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class HyperLogLogTest {
+
+    @Test
+    public void testEmpty() {
+        Assert.assertEquals(0, new HyperLogLog().estimate());
+    }
+
+    @Test
+    public void testDuplicatesCountedOnce() {
+        final HyperLogLog hyperLogLog = new HyperLogLog();
+        for (int i = 0; i < 1000; ++i) {
+            hyperLogLog.offer(("metric/" + (i % 10)).hashCode());
+        }
+        Assert.assertEquals(10, hyperLogLog.estimate());
+    }
+
+    @Test
+    public void testEstimateWithinError() {
+        for (final int distinct : new int[] {100, 1000, 10000, 1000000}) {
+            final HyperLogLog hyperLogLog = new HyperLogLog();
+            for (int i = 0; i < distinct; ++i) {
+                hyperLogLog.offer(("request/" + i).hashCode());
+            }
+            final long estimate = hyperLogLog.estimate();
+            Assert.assertTrue(
+                    "Estimate " + estimate + " of " + distinct,
+                    Math.abs(estimate - distinct) <= distinct * 0.1);
+        }
+    }
+
+    @Test
+    public void testEveryRegisterSetWithinSmallRange() {
+        // Offer one value of rank one per register so that no register is empty while the estimate is small
+        final HyperLogLog hyperLogLog = new HyperLogLog();
+        final boolean[] set = new boolean[HyperLogLog.REGISTERS];
+        int remaining = HyperLogLog.REGISTERS;
+        for (int hashCode = 0; remaining > 0; ++hashCode) {
+            final long hash = HyperLogLog.mix(hashCode);
+            final int register = (int) (hash >>> (Long.SIZE - HyperLogLog.PRECISION));
+            if (!set[register] && (hash << HyperLogLog.PRECISION) < 0) {
+                set[register] = true;
+                --remaining;
+                hyperLogLog.offer(hashCode);
+            }
+        }
+        final long estimate = hyperLogLog.estimate();
+        Assert.assertTrue("Estimate " + estimate, estimate > HyperLogLog.REGISTERS && estimate < 2 * HyperLogLog.REGISTERS);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link InFlightCounter} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class InFlightCounterTest {
+
+    @Test
+    public void testQuiescence() {
+        final InFlightCounter counter = new InFlightCounter();
+        Assert.assertTrue(counter.isQuiescent());
+        final int stripe = ThreadStripes.index();
+        counter.enter(stripe);
+        Assert.assertFalse(counter.isQuiescent());
+        counter.exit(stripe);
+        Assert.assertTrue(counter.isQuiescent());
+        counter.awaitQuiescence();
+    }
+
+    @Test
+    public void testStripeIsStablePerThread() {
+        final int stripe = ThreadStripes.index();
+        Assert.assertEquals(stripe, ThreadStripes.index());
+        Assert.assertTrue(stripe >= 0);
+        Assert.assertTrue(stripe < ThreadStripes.COUNT);
+    }
+
+    @Test(timeout = 10000)
+    public void testAwaitQuiescenceWaitsForWriters() throws InterruptedException {
+        final InFlightCounter counter = new InFlightCounter();
+        final int stripe = ThreadStripes.index();
+        counter.enter(stripe);
+        final Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (final InterruptedException ignored) {
+            }
+            counter.exit(stripe);
+        });
+        final long start = System.nanoTime();
+        releaser.start();
+        counter.awaitQuiescence();
+        Assert.assertTrue(System.nanoTime() - start >= 100_000_000L);
+        releaser.join();
+    }
+}
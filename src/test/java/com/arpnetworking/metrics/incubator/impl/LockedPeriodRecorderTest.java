@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.Counter;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.incubator.MetricKey;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Answers;
+import org.mockito.Mockito;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Tests for the {@link LockedPeriodRecorder} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class LockedPeriodRecorderTest {
+
+    @Test
+    public void testRecordsIntoCurrentMetrics() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final Counter counter = Mockito.mock(Counter.class);
+        Mockito.when(metrics.createCounter("counter")).thenReturn(counter);
+        final LockedPeriodRecorder recorder = new LockedPeriodRecorder(
+                new ReadWriteLockedReference<>(new DimensionedMetrics(metrics, METRICS_FACTORY)),
+                METRICS_FACTORY,
+                null);
+
+        recorder.recordCounter("counter", 2);
+        recorder.recordTimer("timer", 3, TimeUnit.SECONDS);
+        recorder.recordGauge("double", 1.5);
+        recorder.recordGauge("long", 4L);
+        Mockito.verify(counter).increment(2);
+        Mockito.verify(metrics).setTimer("timer", 3, TimeUnit.SECONDS);
+        Mockito.verify(metrics).setGauge("double", 1.5);
+        Mockito.verify(metrics).setGauge("long", 4L);
+    }
+
+    @Test
+    public void testRecordsBatchesIntoCurrentMetrics() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final LockedPeriodRecorder recorder = new LockedPeriodRecorder(
+                new ReadWriteLockedReference<>(new DimensionedMetrics(metrics, METRICS_FACTORY)),
+                METRICS_FACTORY,
+                null);
+
+        recorder.recordTimers("timer", new long[]{1, 2}, TimeUnit.SECONDS);
+        final SampleBatch batch = new SampleBatch(recorder::record);
+        batch.gauge("gauge", 3L).record();
+        Mockito.verify(metrics).setTimer("timer", 1, TimeUnit.SECONDS);
+        Mockito.verify(metrics).setTimer("timer", 2, TimeUnit.SECONDS);
+        Mockito.verify(metrics).setGauge("gauge", 3L);
+    }
+
+    @Test
+    public void testCompletedPeriod() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final Counter counter = Mockito.mock(Counter.class);
+        Mockito.when(metrics.createCounter("counter")).thenReturn(counter);
+        final Metrics next = Mockito.mock(Metrics.class);
+        final LockedPeriodRecorder recorder = new LockedPeriodRecorder(
+                new ReadWriteLockedReference<>(new DimensionedMetrics(metrics, METRICS_FACTORY)),
+                METRICS_FACTORY,
+                null);
+
+        final CompletedPeriod completed = recorder.rotate(next);
+        completed.recordCounter("counter", 5);
+        final SampleBuffer durations = new SampleBuffer();
+        durations.add(1);
+        durations.add(2);
+        completed.recordTimers("timer", durations, TimeUnit.SECONDS);
+        completed.recordGauge("gauge", 2.5);
+        Assert.assertFalse(completed.mergeFrom(recorder.rotate(Mockito.mock(Metrics.class))));
+        Mockito.verify(metrics, Mockito.never()).close();
+        // Discarding cannot close the instance without recording its samples
+        recorder.rotate(Mockito.mock(Metrics.class)).discard();
+        completed.flush();
+        Mockito.verify(counter).increment(5);
+        Mockito.verify(metrics).setTimer("timer", 1, TimeUnit.SECONDS);
+        Mockito.verify(metrics).setTimer("timer", 2, TimeUnit.SECONDS);
+        Mockito.verify(metrics).setGauge("gauge", 2.5);
+        Mockito.verify(metrics).close();
+        Mockito.verifyNoInteractions(next);
+    }
+
+    @Test
+    public void testRecordsDimensionsIntoTheirMetrics() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final Metrics dimensionMetrics = Mockito.mock(Metrics.class);
+        final Counter counter = Mockito.mock(Counter.class);
+        Mockito.when(dimensionMetrics.createCounter("counter")).thenReturn(counter);
+        final MetricsFactory factory = Mockito.mock(MetricsFactory.class);
+        Mockito.when(factory.create()).thenReturn(dimensionMetrics);
+        final Map<String, String> tags = ImmutableMap.of("host", "a");
+        final LockedPeriodRecorder recorder = new LockedPeriodRecorder(
+                new ReadWriteLockedReference<>(new DimensionedMetrics(metrics, factory)),
+                factory,
+                null);
+
+        recorder.recordCounter(MetricKey.of("counter", tags), 2);
+        recorder.recordTimer(MetricKey.of("timer", tags), 3, TimeUnit.SECONDS);
+        recorder.recordGauge(MetricKey.of("double", tags), 1.5);
+        recorder.recordGauge(MetricKey.of("long"), 4L);
+        Mockito.verify(factory).create();
+        Mockito.verify(dimensionMetrics).addAnnotations(tags);
+        Mockito.verify(counter).increment(2);
+        Mockito.verify(dimensionMetrics).setTimer("timer", 3, TimeUnit.SECONDS);
+        Mockito.verify(dimensionMetrics).setGauge("double", 1.5);
+        Mockito.verify(metrics).setGauge("long", 4L);
+
+        recorder.rotate(Mockito.mock(Metrics.class)).flush();
+        Mockito.verify(metrics).close();
+        Mockito.verify(dimensionMetrics).close();
+    }
+
+    @Test
+    public void testMeasuresLockWait() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final LongConsumer lockWait = Mockito.mock(LongConsumer.class);
+        final LockedPeriodRecorder recorder = new LockedPeriodRecorder(
+                new ReadWriteLockedReference<>(new DimensionedMetrics(metrics, METRICS_FACTORY)),
+                METRICS_FACTORY,
+                lockWait);
+
+        recorder.recordGauge("gauge", 1L);
+        Mockito.verify(lockWait).accept(Mockito.longThat(nanoseconds -> nanoseconds >= 0));
+        Mockito.verify(metrics).setGauge("gauge", 1L);
+    }
+
+    private static final MetricsFactory METRICS_FACTORY = Mockito.mock(MetricsFactory.class, Answers.RETURNS_MOCKS);
+}
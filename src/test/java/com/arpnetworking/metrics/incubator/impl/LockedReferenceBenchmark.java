@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the {@link LockedReference} implementations. The contended
+ * group pits three readers against one writer swapping the reference; the
+ * uncontended group measures readers alone.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LockedReferenceBenchmark {
+
+    /**
+     * Create the reference for the selected locking strategy.
+     */
+    @Setup
+    public void setUp() {
+        _reference = TsdPeriodicMetrics.LockingStrategy.valueOf(_lockingStrategy).create(_value);
+    }
+
+    /**
+     * Read the reference while another thread swaps it.
+     *
+     * @param blackhole consumes the reference
+     */
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public void contendedReadLocked(final Blackhole blackhole) {
+        _reference.readLocked(blackhole::consume);
+    }
+
+    /**
+     * Swap the reference while other threads read it.
+     *
+     * @return the previous reference
+     */
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public Object contendedGetAndSetReference() {
+        return _reference.getAndSetReference(_value);
+    }
+
+    /**
+     * Read the reference without a writer.
+     *
+     * @param blackhole consumes the reference
+     */
+    @Benchmark
+    @Group("uncontended")
+    public void uncontendedReadLocked(final Blackhole blackhole) {
+        _reference.readLocked(blackhole::consume);
+    }
+
+    private final Object _value = new Object();
+    private LockedReference<Object> _reference;
+
+    @Param({"READ_WRITE_LOCK", "STAMPED_LOCK", "EPOCH"})
+    private String _lockingStrategy;
+}
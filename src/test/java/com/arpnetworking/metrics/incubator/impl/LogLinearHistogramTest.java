@@ -0,0 +1,191 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.impl.AugmentedHistogram;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tests for the {@link LogLinearHistogram} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class LogLinearHistogramTest {
+
+    @Test
+    public void testTruncatesIntoBuckets() {
+        final LogLinearHistogram histogram = new LogLinearHistogram(1);
+        histogram.record(1.0);
+        histogram.record(1.4);
+        histogram.record(1.6);
+        histogram.record(3.0, 2);
+
+        final Map<Double, Long> buckets = buckets(histogram);
+        Assert.assertEquals(3, buckets.size());
+        Assert.assertEquals(Long.valueOf(2), buckets.get(1.0));
+        Assert.assertEquals(Long.valueOf(1), buckets.get(1.5));
+        Assert.assertEquals(Long.valueOf(2), buckets.get(3.0));
+        Assert.assertEquals(5, histogram.getCount());
+        Assert.assertEquals(10.0, histogram.getSum(), 0.0001);
+        Assert.assertEquals(1.0, histogram.getMin(), 0.0);
+        Assert.assertEquals(3.0, histogram.getMax(), 0.0);
+        Assert.assertEquals(0, histogram.getDropped());
+        Assert.assertEquals(1, histogram.getPrecision());
+    }
+
+    @Test
+    public void testNegativeAndCollidingGroups() {
+        final LogLinearHistogram histogram = new LogLinearHistogram(LogLinearHistogram.DEFAULT_PRECISION);
+        // 1.0 and 2^-128 share a home slot
+        histogram.record(1.0);
+        histogram.record(Math.scalb(1.0, -128));
+        histogram.record(-1.0);
+        histogram.record(1.0);
+
+        final Map<Double, Long> buckets = buckets(histogram);
+        Assert.assertEquals(Long.valueOf(2), buckets.get(1.0));
+        Assert.assertEquals(Long.valueOf(1), buckets.get(Math.scalb(1.0, -128)));
+        Assert.assertEquals(Long.valueOf(1), buckets.get(-1.0));
+        Assert.assertEquals(-1.0, histogram.getMin(), 0.0);
+        Assert.assertEquals(0, histogram.getDropped());
+    }
+
+    @Test
+    public void testBoundedGroups() {
+        final LogLinearHistogram histogram = new LogLinearHistogram(LogLinearHistogram.DEFAULT_PRECISION);
+        for (int exponent = 0; exponent <= LogLinearHistogram.MAXIMUM_GROUPS; ++exponent) {
+            histogram.record(Math.scalb(1.0, exponent));
+        }
+        Assert.assertEquals(LogLinearHistogram.MAXIMUM_GROUPS, histogram.getCount());
+        Assert.assertEquals(1, histogram.getDropped());
+        Assert.assertEquals(LogLinearHistogram.MAXIMUM_GROUPS, buckets(histogram).size());
+    }
+
+    @Test
+    public void testNaNIsDropped() {
+        final LogLinearHistogram histogram = new LogLinearHistogram(LogLinearHistogram.DEFAULT_PRECISION);
+        histogram.record(Double.NaN);
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(1, histogram.getDropped());
+        Assert.assertTrue(buckets(histogram).isEmpty());
+    }
+
+    @Test
+    public void testMerge() {
+        final LogLinearHistogram first = new LogLinearHistogram(3);
+        first.record(1.0);
+        first.record(2.0);
+        final LogLinearHistogram second = new LogLinearHistogram(3);
+        second.record(2.0);
+        second.record(-4.0);
+        second.record(Double.NaN);
+
+        first.merge(second);
+        final Map<Double, Long> buckets = buckets(first);
+        Assert.assertEquals(Long.valueOf(1), buckets.get(1.0));
+        Assert.assertEquals(Long.valueOf(2), buckets.get(2.0));
+        Assert.assertEquals(Long.valueOf(1), buckets.get(-4.0));
+        Assert.assertEquals(4, first.getCount());
+        Assert.assertEquals(1, first.getDropped());
+        Assert.assertEquals(1.0, first.getSum(), 0.0001);
+        Assert.assertEquals(-4.0, first.getMin(), 0.0);
+        Assert.assertEquals(2.0, first.getMax(), 0.0);
+    }
+
+    @Test
+    public void testMergeIntoFullHistogramDrops() {
+        final LogLinearHistogram full = new LogLinearHistogram(LogLinearHistogram.DEFAULT_PRECISION);
+        for (int exponent = 0; exponent < LogLinearHistogram.MAXIMUM_GROUPS; ++exponent) {
+            full.record(Math.scalb(1.0, exponent));
+        }
+        final LogLinearHistogram other = new LogLinearHistogram(LogLinearHistogram.DEFAULT_PRECISION);
+        other.record(1.0);
+        other.record(-1.0);
+
+        full.merge(other);
+        Assert.assertEquals(LogLinearHistogram.MAXIMUM_GROUPS + 1, full.getCount());
+        Assert.assertEquals(1, full.getDropped());
+    }
+
+    @Test
+    public void testRestore() {
+        final LogLinearHistogram original = new LogLinearHistogram(3);
+        original.record(1.1);
+        original.record(2.0);
+        original.record(-4.0);
+        original.record(Double.NaN);
+
+        final LogLinearHistogram restored = new LogLinearHistogram(3);
+        original.forEachBucket(restored::restoreBucket);
+        restored.restoreStatistics(original.getDropped(), original.getSum(), original.getMin(), original.getMax());
+        Assert.assertEquals(buckets(original), buckets(restored));
+        Assert.assertEquals(3, restored.getCount());
+        Assert.assertEquals(1, restored.getDropped());
+        Assert.assertEquals(original.getSum(), restored.getSum(), 0.0);
+        Assert.assertEquals(-4.0, restored.getMin(), 0.0);
+        Assert.assertEquals(2.0, restored.getMax(), 0.0);
+    }
+
+    @Test
+    public void testRestoreIntoFullHistogramDrops() {
+        final LogLinearHistogram full = new LogLinearHistogram(LogLinearHistogram.DEFAULT_PRECISION);
+        for (int exponent = 0; exponent < LogLinearHistogram.MAXIMUM_GROUPS; ++exponent) {
+            full.restoreBucket(Math.scalb(1.0, exponent), 1);
+        }
+        full.restoreBucket(-1.0, 2);
+        Assert.assertEquals(LogLinearHistogram.MAXIMUM_GROUPS, full.getCount());
+        Assert.assertEquals(2, full.getDropped());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeDifferentPrecision() {
+        new LogLinearHistogram(3).merge(new LogLinearHistogram(4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPrecisionTooSmall() {
+        new LogLinearHistogram(LogLinearHistogram.MINIMUM_PRECISION - 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPrecisionTooLarge() {
+        new LogLinearHistogram(LogLinearHistogram.MAXIMUM_PRECISION + 1);
+    }
+
+    @Test
+    public void testToAggregatedData() {
+        final LogLinearHistogram histogram = new LogLinearHistogram(2);
+        histogram.record(1.0);
+        histogram.record(5.0);
+
+        final AugmentedHistogram data = (AugmentedHistogram) histogram.toAggregatedData();
+        Assert.assertEquals(LogLinearHistogram.MAXIMUM_PRECISION, data.getPrecision());
+        Assert.assertEquals(1.0, data.getMin(), 0.0);
+        Assert.assertEquals(5.0, data.getMax(), 0.0);
+        Assert.assertEquals(6.0, data.getSum(), 0.0);
+        Assert.assertEquals(buckets(histogram), new TreeMap<>(data.getHistogram()));
+    }
+
+    private static Map<Double, Long> buckets(final LogLinearHistogram histogram) {
+        final Map<Double, Long> buckets = new TreeMap<>();
+        histogram.forEachBucket(buckets::put);
+        return buckets;
+    }
+}
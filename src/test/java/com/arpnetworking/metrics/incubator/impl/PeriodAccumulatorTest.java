@@ -0,0 +1,400 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.AggregatedData;
+import com.arpnetworking.metrics.Counter;
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.impl.AugmentedHistogram;
+import com.arpnetworking.metrics.impl.TsdMetrics;
+import com.arpnetworking.metrics.impl.TsdMetricsFactory;
+import com.arpnetworking.metrics.incubator.Dimensions;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the {@link PeriodAccumulator} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class PeriodAccumulatorTest {
+
+    @Test
+    public void testMergeFrom() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final Counter counter = Mockito.mock(Counter.class);
+        Mockito.when(metrics.createCounter("counter")).thenReturn(counter);
+        final Metrics laterMetrics = Mockito.mock(Metrics.class);
+        final PeriodAccumulator accumulator = new PeriodAccumulator(metrics, METRICS_FACTORY, AccumulatorSettings.DEFAULT);
+        final PeriodAccumulator later = new PeriodAccumulator(laterMetrics, METRICS_FACTORY, AccumulatorSettings.DEFAULT);
+
+        accumulator.recordCounter("counter", 1);
+        accumulator.recordTimer("timer", 2, TimeUnit.NANOSECONDS);
+        later.recordCounter("counter", 3);
+        later.recordTimer("timer", 4, TimeUnit.NANOSECONDS);
+        later.recordTimer("unitless", 5, null);
+        later.recordGauge("double", 6.5);
+        later.recordGauge("long", 7L);
+
+        Assert.assertTrue(accumulator.mergeFrom(later));
+        accumulator.flush();
+        Mockito.verify(counter).increment(4);
+        Mockito.verify(metrics).setTimer("timer", 2, TimeUnit.NANOSECONDS);
+        Mockito.verify(metrics).setTimer("timer", 4, TimeUnit.NANOSECONDS);
+        Mockito.verify(metrics).setTimer("unitless", 5, null);
+        Mockito.verify(metrics).setGauge("double", 6.5);
+        Mockito.verify(metrics).setGauge("long", 7L);
+        Mockito.verify(metrics).close();
+        Mockito.verifyNoInteractions(laterMetrics);
+    }
+
+    @Test
+    public void testMergeFromHistograms() {
+        final TsdMetrics metrics = Mockito.mock(TsdMetrics.class);
+        final AccumulatorSettings settings = new AccumulatorSettings(true, true, LogLinearHistogram.DEFAULT_PRECISION);
+        final PeriodAccumulator accumulator = new PeriodAccumulator(metrics, METRICS_FACTORY, settings);
+        final PeriodAccumulator later = new PeriodAccumulator(Mockito.mock(Metrics.class), METRICS_FACTORY, settings);
+
+        accumulator.recordGauge("gauge", 1L);
+        later.recordGauge("gauge", 3L);
+        Assert.assertTrue(accumulator.mergeFrom(later));
+        accumulator.flush();
+
+        final ArgumentCaptor<AggregatedData> captor = ArgumentCaptor.forClass(AggregatedData.class);
+        Mockito.verify(metrics).recordAggregatedData(Mockito.eq("gauge"), captor.capture());
+        Assert.assertEquals(4.0, ((AugmentedHistogram) captor.getValue()).getSum(), 0.0);
+    }
+
+    @Test
+    public void testHistogramsKeepKindsAndUnitsApart() {
+        final TsdMetrics metrics = Mockito.mock(TsdMetrics.class);
+        final AccumulatorSettings settings = new AccumulatorSettings(true, true, LogLinearHistogram.DEFAULT_PRECISION);
+        final PeriodAccumulator accumulator = new PeriodAccumulator(metrics, METRICS_FACTORY, settings);
+        final PeriodAccumulator later = new PeriodAccumulator(Mockito.mock(Metrics.class), METRICS_FACTORY, settings);
+
+        accumulator.recordTimer("latency", 2, TimeUnit.MILLISECONDS);
+        accumulator.recordTimer("latency", 5, null);
+        accumulator.recordGauge("latency", 1.5);
+        later.recordTimers("latency", new long[] {1}, TimeUnit.MILLISECONDS);
+        later.recordTimers("latency", new long[] {6}, null);
+        Assert.assertTrue(accumulator.mergeFrom(later));
+        accumulator.flush();
+
+        final ArgumentCaptor<AggregatedData> captor = ArgumentCaptor.forClass(AggregatedData.class);
+        Mockito.verify(metrics).recordAggregatedData(Mockito.eq("latency"), captor.capture());
+        Assert.assertEquals(0.003, ((AugmentedHistogram) captor.getValue()).getSum(), 1e-12);
+        Mockito.verify(metrics).setTimer("latency", 5, null);
+        Mockito.verify(metrics).setTimer("latency", 6, null);
+    }
+
+    @Test
+    public void testHistogramTimersReportedInSecondsLikeBufferedTimers() {
+        final List<Event> events = new ArrayList<>();
+        final MetricsFactory factory = createTsdMetricsFactory(events);
+        final PeriodAccumulator histograms = new PeriodAccumulator(
+                factory.create(),
+                factory,
+                new AccumulatorSettings(true, false, LogLinearHistogram.DEFAULT_PRECISION));
+        final PeriodAccumulator buffers = new PeriodAccumulator(factory.create(), factory, AccumulatorSettings.DEFAULT);
+
+        histograms.recordTimer("latency", 1500, TimeUnit.MILLISECONDS);
+        histograms.recordTimers("latency", new long[] {250000}, TimeUnit.MICROSECONDS);
+        buffers.recordTimer("latency", 1500, TimeUnit.MILLISECONDS);
+        histograms.flush();
+        buffers.flush();
+
+        Assert.assertEquals(2, events.size());
+        final AugmentedHistogram histogram = (AugmentedHistogram) events.get(0).getAggregatedData().get("latency");
+        Assert.assertEquals(0.25, histogram.getMin(), 0.0);
+        Assert.assertEquals(1.5, histogram.getMax(), 0.0);
+        Assert.assertEquals(1.75, histogram.getSum(), 0.0);
+        Assert.assertEquals(Long.valueOf(1), histogram.getHistogram().get(1.5));
+        Assert.assertEquals(1.5, events.get(1).getTimerSamples().get("latency").get(0).getValue().doubleValue(), 0.0);
+    }
+
+    @Test
+    public void testRecordTimersFromBuffer() {
+        final TsdMetrics metrics = Mockito.mock(TsdMetrics.class);
+        final PeriodAccumulator histograms = new PeriodAccumulator(
+                metrics,
+                METRICS_FACTORY,
+                new AccumulatorSettings(true, true, LogLinearHistogram.DEFAULT_PRECISION));
+        final Metrics bufferedMetrics = Mockito.mock(Metrics.class);
+        final PeriodAccumulator buffers = new PeriodAccumulator(bufferedMetrics, METRICS_FACTORY, AccumulatorSettings.DEFAULT);
+        final SampleBuffer durations = new SampleBuffer();
+
+        histograms.recordTimers("empty", durations, TimeUnit.SECONDS);
+        durations.add(2);
+        durations.add(3);
+        histograms.recordTimers("timer", durations, TimeUnit.SECONDS);
+        histograms.recordTimers("unitless", durations, null);
+        histograms.recordGauge("gauge", 1L);
+        histograms.recordTimers("gauge", durations, TimeUnit.SECONDS);
+        buffers.recordTimers("timer", durations, TimeUnit.MICROSECONDS);
+        histograms.flush();
+        buffers.flush();
+
+        final ArgumentCaptor<AggregatedData> captor = ArgumentCaptor.forClass(AggregatedData.class);
+        Mockito.verify(metrics).recordAggregatedData(Mockito.eq("timer"), captor.capture());
+        Assert.assertEquals(5.0, ((AugmentedHistogram) captor.getValue()).getSum(), 0.0);
+        Mockito.verify(metrics).recordAggregatedData(Mockito.eq("gauge"), captor.capture());
+        Assert.assertEquals(1.0, ((AugmentedHistogram) captor.getValue()).getSum(), 0.0);
+        Mockito.verify(metrics).setTimer("unitless", 2, null);
+        Mockito.verify(metrics).setTimer("unitless", 3, null);
+        Mockito.verify(metrics).close();
+        Mockito.verifyNoMoreInteractions(metrics);
+        Mockito.verify(bufferedMetrics).setTimer("timer", 2000, TimeUnit.NANOSECONDS);
+        Mockito.verify(bufferedMetrics).setTimer("timer", 3000, TimeUnit.NANOSECONDS);
+    }
+
+    @Test
+    public void testTimerAndGaugeHistogramsCannotShareName() {
+        final List<Event> events = new ArrayList<>();
+        final MetricsFactory factory = createTsdMetricsFactory(events);
+        final AccumulatorSettings settings = new AccumulatorSettings(true, true, LogLinearHistogram.DEFAULT_PRECISION);
+        final PeriodAccumulator accumulator = new PeriodAccumulator(factory.create(), factory, settings);
+        final PeriodAccumulator later = new PeriodAccumulator(factory.create(), factory, settings);
+
+        accumulator.recordGauge("shared", 4L);
+        accumulator.recordTimer("shared", 2, TimeUnit.SECONDS);
+        accumulator.recordTimers("shared", new long[] {3}, TimeUnit.SECONDS);
+        later.recordTimer("shared", 1, TimeUnit.SECONDS);
+        later.recordGauge("other", 5.0);
+        Assert.assertTrue(accumulator.mergeFrom(later));
+        accumulator.recordTimer("other", 6, TimeUnit.SECONDS);
+        accumulator.flush();
+
+        final Map<String, AggregatedData> aggregated = events.get(0).getAggregatedData();
+        Assert.assertEquals(2, aggregated.size());
+        Assert.assertEquals(4.0, ((AugmentedHistogram) aggregated.get("shared")).getSum(), 0.0);
+        Assert.assertEquals(5.0, ((AugmentedHistogram) aggregated.get("other")).getSum(), 0.0);
+
+        accumulator.removeMatching("shared"::equals);
+        accumulator.recordTimer("shared", 7, TimeUnit.SECONDS);
+        accumulator.recordGauge("shared", 8.0);
+        final PeriodAccumulator.Visitor visitor = Mockito.mock(PeriodAccumulator.Visitor.class);
+        accumulator.accept(visitor);
+        Mockito.verify(visitor).histogram(Mockito.eq("shared"), Mockito.argThat(histogram -> histogram.getSum() == 7.0));
+        Mockito.verify(visitor).histogram(Mockito.eq("other"), Mockito.any());
+        Mockito.verifyNoMoreInteractions(visitor);
+    }
+
+    @Test
+    public void testMergeFromOtherPeriodUnsupported() {
+        final PeriodAccumulator accumulator = new PeriodAccumulator(
+                Mockito.mock(Metrics.class),
+                METRICS_FACTORY,
+                AccumulatorSettings.DEFAULT);
+        Assert.assertFalse(accumulator.mergeFrom(Mockito.mock(CompletedPeriod.class)));
+    }
+
+    @Test
+    public void testDimensions() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final Metrics dimensionMetrics = Mockito.mock(Metrics.class);
+        final Metrics laterDimensionMetrics = Mockito.mock(Metrics.class);
+        final MetricsFactory factory = Mockito.mock(MetricsFactory.class);
+        Mockito.when(factory.create()).thenReturn(dimensionMetrics, laterDimensionMetrics);
+        final Dimensions dimensions = Dimensions.of(ImmutableMap.of("host", "a"));
+        final PeriodAccumulator accumulator = new PeriodAccumulator(metrics, factory, AccumulatorSettings.DEFAULT);
+        final PeriodAccumulator later = new PeriodAccumulator(Mockito.mock(Metrics.class), factory, AccumulatorSettings.DEFAULT);
+
+        Assert.assertSame(accumulator, accumulator.dimension(Dimensions.none()));
+        final PeriodAccumulator child = accumulator.dimension(dimensions);
+        Assert.assertSame(child, accumulator.dimension(dimensions));
+        Mockito.verify(dimensionMetrics).addAnnotations(dimensions.getTags());
+        child.recordGauge("gauge", 1L);
+        later.dimension(dimensions).recordGauge("gauge", 2L);
+        Assert.assertTrue(accumulator.mergeFrom(later));
+
+        accumulator.flush();
+        Mockito.verify(metrics).close();
+        Mockito.verify(dimensionMetrics).setGauge("gauge", 1L);
+        Mockito.verify(dimensionMetrics).setGauge("gauge", 2L);
+        Mockito.verify(dimensionMetrics).close();
+        Mockito.verify(laterDimensionMetrics, Mockito.never()).close();
+        Mockito.verify(metrics, Mockito.never()).setGauge(Mockito.anyString(), Mockito.anyLong());
+    }
+
+    @Test
+    public void testMergeReleasesOffHeapSamples() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final SampleArena arena = new SampleArena(SampleArena.DEFAULT_RETAINED_BYTES_LIMIT);
+        final AccumulatorSettings settings = new AccumulatorSettings(false, false, LogLinearHistogram.DEFAULT_PRECISION, arena);
+        final PeriodAccumulator accumulator = new PeriodAccumulator(metrics, METRICS_FACTORY, settings);
+        final PeriodAccumulator later = new PeriodAccumulator(Mockito.mock(Metrics.class), METRICS_FACTORY, settings);
+
+        accumulator.recordGauge("gauge", 1L);
+        later.recordGauge("gauge", 2L);
+        Assert.assertTrue(accumulator.mergeFrom(later));
+        Assert.assertEquals(SampleBuffer.INITIAL_CHUNK_SIZE * Long.BYTES, arena.getRetainedBytes());
+
+        accumulator.flush();
+        Mockito.verify(metrics).setGauge("gauge", 1L);
+        Mockito.verify(metrics).setGauge("gauge", 2L);
+        Assert.assertEquals(2L * SampleBuffer.INITIAL_CHUNK_SIZE * Long.BYTES, arena.getRetainedBytes());
+    }
+
+    @Test
+    public void testMergeMatchingAndRemoveMatching() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final Counter counter = Mockito.mock(Counter.class);
+        Mockito.when(metrics.createCounter("rolled/counter")).thenReturn(counter);
+        final Metrics completedMetrics = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        final Metrics dimensionMetrics = Mockito.mock(Metrics.class);
+        final MetricsFactory factory = Mockito.mock(MetricsFactory.class);
+        Mockito.when(factory.create()).thenReturn(Mockito.mock(Metrics.class), dimensionMetrics);
+        final Dimensions dimensions = Dimensions.of(ImmutableMap.of("host", "a"));
+        final PeriodAccumulator rollup = new PeriodAccumulator(metrics, factory, AccumulatorSettings.DEFAULT);
+        final PeriodAccumulator completed = new PeriodAccumulator(completedMetrics, factory, AccumulatorSettings.DEFAULT);
+
+        completed.recordCounter("rolled/counter", 3);
+        completed.recordTimer("rolled/timer", 4, TimeUnit.NANOSECONDS);
+        completed.recordTimer("rolled/unitless", 5, null);
+        completed.recordGauge("rolled/double", 6.5);
+        completed.recordGauge("rolled/long", 7L);
+        completed.dimension(dimensions).recordGauge("rolled/long", 8L);
+        completed.recordCounter("kept/counter", 1);
+        completed.recordTimer("kept/timer", 1, TimeUnit.NANOSECONDS);
+        completed.recordGauge("kept/long", 1L);
+
+        rollup.mergeMatching(completed, name -> name.startsWith("rolled/"));
+        completed.removeMatching(name -> name.startsWith("rolled/"));
+        completed.flush();
+        Mockito.verify(completedMetrics).createCounter("kept/counter");
+        Mockito.verify(completedMetrics).setTimer("kept/timer", 1, TimeUnit.NANOSECONDS);
+        Mockito.verify(completedMetrics).setGauge("kept/long", 1L);
+        Mockito.verify(completedMetrics).close();
+        Mockito.verifyNoMoreInteractions(completedMetrics);
+
+        rollup.flush();
+        Mockito.verify(counter).increment(3);
+        Mockito.verify(metrics).setTimer("rolled/timer", 4, TimeUnit.NANOSECONDS);
+        Mockito.verify(metrics).setTimer("rolled/unitless", 5, null);
+        Mockito.verify(metrics).setGauge("rolled/double", 6.5);
+        Mockito.verify(metrics).setGauge("rolled/long", 7L);
+        Mockito.verify(metrics).createCounter("rolled/counter");
+        Mockito.verify(metrics).close();
+        Mockito.verifyNoMoreInteractions(metrics);
+        Mockito.verify(dimensionMetrics).setGauge("rolled/long", 8L);
+        Mockito.verify(dimensionMetrics).close();
+    }
+
+    @Test
+    public void testMergeMatchingHistograms() {
+        final TsdMetrics metrics = Mockito.mock(TsdMetrics.class);
+        final TsdMetrics completedMetrics = Mockito.mock(TsdMetrics.class);
+        final AccumulatorSettings settings = new AccumulatorSettings(true, true, LogLinearHistogram.DEFAULT_PRECISION);
+        final PeriodAccumulator rollup = new PeriodAccumulator(metrics, METRICS_FACTORY, settings);
+        final PeriodAccumulator completed = new PeriodAccumulator(completedMetrics, METRICS_FACTORY, settings);
+
+        completed.recordGauge("rolled", 3L);
+        completed.recordGauge("kept", 1L);
+        rollup.mergeMatching(completed, "rolled"::equals);
+        completed.removeMatching("rolled"::equals);
+        rollup.flush();
+        completed.flush();
+
+        Mockito.verify(metrics).recordAggregatedData(Mockito.eq("rolled"), Mockito.any());
+        Mockito.verify(metrics, Mockito.never()).recordAggregatedData(Mockito.eq("kept"), Mockito.any());
+        Mockito.verify(completedMetrics).recordAggregatedData(Mockito.eq("kept"), Mockito.any());
+        Mockito.verify(completedMetrics, Mockito.never()).recordAggregatedData(Mockito.eq("rolled"), Mockito.any());
+    }
+
+    @Test
+    public void testReleaseReturnsOffHeapSamples() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final SampleArena arena = new SampleArena(SampleArena.DEFAULT_RETAINED_BYTES_LIMIT);
+        final AccumulatorSettings settings = new AccumulatorSettings(false, false, LogLinearHistogram.DEFAULT_PRECISION, arena);
+        final PeriodAccumulator accumulator = new PeriodAccumulator(metrics, METRICS_FACTORY, settings);
+
+        accumulator.recordGauge("gauge", 1L);
+        accumulator.dimension(Dimensions.of(ImmutableMap.of("host", "a"))).recordGauge("gauge", 2L);
+        accumulator.release();
+        Assert.assertEquals(2L * SampleBuffer.INITIAL_CHUNK_SIZE * Long.BYTES, arena.getRetainedBytes());
+        Mockito.verifyNoInteractions(metrics);
+    }
+
+    @Test
+    public void testDiscardReleasesSamplesAndClosesMetrics() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final Metrics dimensionMetrics = Mockito.mock(Metrics.class);
+        final MetricsFactory factory = Mockito.mock(MetricsFactory.class);
+        Mockito.when(factory.create()).thenReturn(dimensionMetrics);
+        final SampleArena arena = new SampleArena(SampleArena.DEFAULT_RETAINED_BYTES_LIMIT);
+        final AccumulatorSettings settings = new AccumulatorSettings(false, false, LogLinearHistogram.DEFAULT_PRECISION, arena);
+        final PeriodAccumulator accumulator = new PeriodAccumulator(metrics, factory, settings);
+
+        accumulator.recordGauge("gauge", 1L);
+        accumulator.dimension(Dimensions.of(ImmutableMap.of("host", "a"))).recordGauge("gauge", 2L);
+        accumulator.discard();
+        Assert.assertEquals(2L * SampleBuffer.INITIAL_CHUNK_SIZE * Long.BYTES, arena.getRetainedBytes());
+        Mockito.verify(metrics).close();
+        Mockito.verify(dimensionMetrics).close();
+        Mockito.verify(metrics, Mockito.never()).setGauge(Mockito.anyString(), Mockito.anyLong());
+        Mockito.verify(dimensionMetrics, Mockito.never()).setGauge(Mockito.anyString(), Mockito.anyLong());
+    }
+
+    @Test
+    public void testReduceGauges() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final Metrics dimensionMetrics = Mockito.mock(Metrics.class);
+        final MetricsFactory factory = Mockito.mock(MetricsFactory.class);
+        Mockito.when(factory.create()).thenReturn(dimensionMetrics);
+        final PeriodAccumulator accumulator = new PeriodAccumulator(metrics, factory, AccumulatorSettings.DEFAULT);
+
+        accumulator.recordGauge("long", 1L);
+        accumulator.recordGauge("long", 2L);
+        accumulator.recordGauge("long", 4L);
+        accumulator.recordGauge("double", 1.5);
+        accumulator.recordGauge("double", 2.0);
+        accumulator.recordGauge("single", 8L);
+        accumulator.dimension(Dimensions.of(ImmutableMap.of("host", "a"))).recordGauge("long", 3L);
+        accumulator.dimension(Dimensions.of(ImmutableMap.of("host", "a"))).recordGauge("long", 5L);
+        accumulator.reduceGauges(Long::sum, Double::sum);
+        accumulator.flush();
+
+        Mockito.verify(metrics).setGauge("long", 7L);
+        Mockito.verify(metrics).setGauge("double", 3.5);
+        Mockito.verify(metrics).setGauge("single", 8L);
+        Mockito.verify(metrics, Mockito.times(2)).setGauge(Mockito.anyString(), Mockito.anyLong());
+        Mockito.verify(metrics, Mockito.times(1)).setGauge(Mockito.anyString(), Mockito.anyDouble());
+        Mockito.verify(dimensionMetrics).setGauge("long", 8L);
+    }
+
+    private static MetricsFactory createTsdMetricsFactory(final List<Event> events) {
+        return new TsdMetricsFactory.Builder()
+                .setServiceName("service")
+                .setClusterName("cluster")
+                .setHostName("host")
+                .setSinks(Collections.singletonList(events::add))
+                .build();
+    }
+
+    private static final MetricsFactory METRICS_FACTORY = Mockito.mock(MetricsFactory.class, Answers.RETURNS_MOCKS);
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.Counter;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.Answers;
+import org.mockito.Mockito;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tests for the {@link PeriodMerger} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class PeriodMergerTest {
+
+    @After
+    public void tearDown() {
+        _pool.shutdown();
+    }
+
+    @Test
+    public void testMergesPeriodsInParallel() {
+        final PeriodMerger merger = new PeriodMerger.Builder().setForkJoinPool(_pool).build();
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final Counter counter = Mockito.mock(Counter.class);
+        Mockito.when(metrics.createCounter("counter")).thenReturn(counter);
+        merger.offer(period(metrics, "counter", 1L), 1);
+        final Metrics[] others = new Metrics[9];
+        for (int i = 0; i < others.length; ++i) {
+            others[i] = Mockito.mock(Metrics.class);
+            merger.offer(period(others[i], "counter", 1L), 1);
+        }
+
+        merger.run();
+        Mockito.verify(counter).increment(10);
+        Mockito.verify(metrics, Mockito.times(10)).setGauge("gauge", 1L);
+        Mockito.verify(metrics, Mockito.times(10)).setGauge("gauge", 1.5);
+        Mockito.verify(metrics).close();
+        for (final Metrics other : others) {
+            Mockito.verify(other).close();
+            Mockito.verifyNoMoreInteractions(other);
+        }
+    }
+
+    @Test
+    public void testMergesEachResolutionSeparately() {
+        final PeriodMerger merger = new PeriodMerger.Builder().setForkJoinPool(_pool).build();
+        final Metrics base = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        final Metrics rollup = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        final Metrics otherBase = Mockito.mock(Metrics.class);
+        final Metrics otherRollup = Mockito.mock(Metrics.class);
+        merger.offer(period(base, "counter", 1L), 1);
+        merger.offer(period(rollup, "counter", 3L), 2);
+        merger.offer(period(otherBase, "counter", 2L), 1);
+        merger.offer(period(otherRollup, "counter", 4L), 2);
+
+        merger.run();
+        Mockito.verify(base).setGauge("gauge", 1L);
+        Mockito.verify(base).setGauge("gauge", 2L);
+        Mockito.verify(base, Mockito.never()).setGauge("gauge", 3L);
+        Mockito.verify(base).close();
+        Mockito.verify(rollup).setGauge("gauge", 3L);
+        Mockito.verify(rollup).setGauge("gauge", 4L);
+        Mockito.verify(rollup, Mockito.never()).setGauge("gauge", 1L);
+        Mockito.verify(rollup).close();
+        Mockito.verify(otherBase).close();
+        Mockito.verify(otherRollup).close();
+        Mockito.verifyNoMoreInteractions(otherBase, otherRollup);
+
+        // Lanes emptied by the previous run are skipped
+        merger.run();
+        Mockito.verify(base).close();
+        Mockito.verify(rollup).close();
+    }
+
+    @Test
+    public void testRunRotatesMembers() {
+        final PeriodMerger merger = new PeriodMerger.Builder().build();
+        final Runnable member = Mockito.mock(Runnable.class);
+        merger.join(member);
+        merger.run();
+        Mockito.verify(member).run();
+
+        merger.leave(member);
+        merger.run();
+        Mockito.verify(member).run();
+    }
+
+    @Test
+    public void testGaugePolicySum() {
+        final Metrics metrics = merge(PeriodMerger.GaugePolicy.SUM);
+        Mockito.verify(metrics).setGauge("gauge", 3L);
+        Mockito.verify(metrics).setGauge("gauge", 4.5);
+    }
+
+    @Test
+    public void testGaugePolicyMin() {
+        final Metrics metrics = merge(PeriodMerger.GaugePolicy.MIN);
+        Mockito.verify(metrics).setGauge("gauge", 1L);
+        Mockito.verify(metrics).setGauge("gauge", 1.5);
+        Mockito.verify(metrics, Mockito.never()).setGauge("gauge", 3.0);
+    }
+
+    @Test
+    public void testGaugePolicyMax() {
+        final Metrics metrics = merge(PeriodMerger.GaugePolicy.MAX);
+        Mockito.verify(metrics).setGauge("gauge", 2L);
+        Mockito.verify(metrics).setGauge("gauge", 3.0);
+        Mockito.verify(metrics, Mockito.never()).setGauge("gauge", 1.5);
+    }
+
+    @Test
+    public void testGaugePolicyAll() {
+        final Metrics metrics = merge(PeriodMerger.GaugePolicy.ALL);
+        Mockito.verify(metrics).setGauge("gauge", 1L);
+        Mockito.verify(metrics).setGauge("gauge", 2L);
+        Mockito.verify(metrics).setGauge("gauge", 1.5);
+        Mockito.verify(metrics).setGauge("gauge", 3.0);
+    }
+
+    @Test
+    public void testGaugePolicySkipsRollupPeriods() {
+        final PeriodMerger merger = new PeriodMerger.Builder().setGaugePolicy(PeriodMerger.GaugePolicy.SUM).build();
+        final Metrics rollup = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        merger.offer(period(rollup, "counter", 1L), 2);
+        merger.offer(period(Mockito.mock(Metrics.class), "counter", 2L), 2);
+
+        merger.run();
+        Mockito.verify(rollup).setGauge("gauge", 1L);
+        Mockito.verify(rollup).setGauge("gauge", 2L);
+        Mockito.verify(rollup, Mockito.never()).setGauge("gauge", 3L);
+    }
+
+    @Test
+    public void testOfferAfterClose() {
+        final PeriodMerger merger = new PeriodMerger.Builder().build();
+        final Metrics pending = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        merger.offer(period(pending, "counter", 1L), 1);
+        merger.close();
+        Mockito.verify(pending).close();
+
+        final Metrics late = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        merger.offer(period(late, "counter", 1L), 1);
+        Mockito.verify(late).close();
+        merger.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @SuppressFBWarnings("NP_NONNULL_PARAM_VIOLATION")
+    public void testBuilderNullGaugePolicy() {
+        new PeriodMerger.Builder().setGaugePolicy(null).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @SuppressFBWarnings("NP_NONNULL_PARAM_VIOLATION")
+    public void testBuilderNullForkJoinPool() {
+        new PeriodMerger.Builder().setForkJoinPool(null).build();
+    }
+
+    private static Metrics merge(final PeriodMerger.GaugePolicy policy) {
+        final PeriodMerger merger = new PeriodMerger.Builder().setGaugePolicy(policy).build();
+        final Metrics metrics = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        merger.offer(period(metrics, "counter", 1L), 1);
+        merger.offer(period(Mockito.mock(Metrics.class), "counter", 2L), 1);
+        merger.run();
+        return metrics;
+    }
+
+    private static PeriodAccumulator period(final Metrics metrics, final String counter, final long gauge) {
+        final PeriodAccumulator period = new PeriodAccumulator(
+                metrics,
+                Mockito.mock(MetricsFactory.class),
+                AccumulatorSettings.DEFAULT);
+        period.recordCounter(counter, 1);
+        period.recordGauge("gauge", gauge);
+        period.recordGauge("gauge", 1.5 * gauge);
+        return period;
+    }
+
+    private final ForkJoinPool _pool = new ForkJoinPool(2);
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Tests for the {@link PeriodPipeline} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class PeriodPipelineTest {
+
+    @Test
+    public void testDeliverFlushes() {
+        final List<CompletedPeriod> flushed = Lists.newArrayList();
+        final PeriodPipeline pipeline = new PeriodPipeline(
+                ImmutableList.of(),
+                Mockito.mock(MetricsFactory.class),
+                AccumulatorSettings.DEFAULT,
+                null,
+                null,
+                null,
+                flushed::add);
+        final CompletedPeriod completed = Mockito.mock(CompletedPeriod.class);
+
+        pipeline.rollUp(completed, pipeline::deliver);
+        pipeline.deliver(completed);
+        pipeline.close(pipeline::deliver);
+        Assert.assertEquals(ImmutableList.of(completed), flushed);
+        Mockito.verifyNoInteractions(completed);
+    }
+
+    @Test
+    public void testRollups() {
+        final MetricsFactory factory = Mockito.mock(MetricsFactory.class);
+        final Metrics rolledUp = Mockito.mock(Metrics.class);
+        Mockito.when(factory.create()).thenReturn(rolledUp);
+        final List<CompletedPeriod> flushed = Lists.newArrayList();
+        final PeriodPipeline pipeline = new PeriodPipeline(
+                ImmutableList.of(Rollup.adding(2, Pattern.compile("gauge"))),
+                factory,
+                AccumulatorSettings.DEFAULT,
+                null,
+                null,
+                null,
+                flushed::add);
+        final PeriodAccumulator completed = new PeriodAccumulator(Mockito.mock(Metrics.class), factory, AccumulatorSettings.DEFAULT);
+        completed.recordGauge("gauge", 1L);
+
+        pipeline.rollUp(completed, pipeline::deliver);
+        Assert.assertTrue(flushed.isEmpty());
+        pipeline.close(pipeline::deliver);
+        Assert.assertEquals(1, flushed.size());
+        flushed.get(0).flush();
+        Mockito.verify(rolledUp).setGauge("gauge", 1L);
+    }
+
+    @Test
+    public void testMergerTakesPrecedence() {
+        final List<CompletedPeriod> flushed = Lists.newArrayList();
+        final PeriodMerger merger = new PeriodMerger.Builder().build();
+        final PeriodPipeline pipeline = new PeriodPipeline(
+                ImmutableList.of(),
+                Mockito.mock(MetricsFactory.class),
+                AccumulatorSettings.DEFAULT,
+                merger,
+                null,
+                null,
+                flushed::add);
+        final Metrics metrics = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        final PeriodAccumulator completed = new PeriodAccumulator(metrics, Mockito.mock(MetricsFactory.class), AccumulatorSettings.DEFAULT);
+        completed.recordCounter("counter", 1);
+
+        pipeline.deliver(completed);
+        Assert.assertTrue(flushed.isEmpty());
+        Mockito.verifyNoInteractions(metrics);
+        merger.run();
+        Mockito.verify(metrics).close();
+    }
+
+    @Test
+    public void testSnapshotListener() {
+        final List<CompletedPeriod> flushed = Lists.newArrayList();
+        final List<Integer> sizes = Lists.newArrayList();
+        final PeriodAccumulator completed = new PeriodAccumulator(
+                Mockito.mock(Metrics.class),
+                Mockito.mock(MetricsFactory.class),
+                AccumulatorSettings.DEFAULT);
+        completed.recordCounter("counter", 2);
+        final PeriodSnapshot.Visitor visitor = Mockito.mock(PeriodSnapshot.Visitor.class);
+        final PeriodPipeline pipeline = new PeriodPipeline(
+                ImmutableList.of(),
+                Mockito.mock(MetricsFactory.class),
+                AccumulatorSettings.DEFAULT,
+                null,
+                null,
+                snapshot -> {
+                    final ByteBuffer buffer = ByteBuffer.allocate(snapshot.size());
+                    snapshot.writeTo(buffer);
+                    buffer.flip();
+                    PeriodSnapshot.read(buffer, visitor);
+                    sizes.add(snapshot.size());
+                },
+                flushed::add);
+
+        pipeline.deliver(completed);
+        Assert.assertEquals(1, sizes.size());
+        Assert.assertEquals(ImmutableList.of(completed), flushed);
+        Mockito.verify(visitor).counter("counter", 2);
+    }
+
+    @Test
+    public void testSnapshotsHoldPeriodBoundsAndResolution() {
+        final Instant opened = Instant.ofEpochSecond(1_500_000_000L);
+        final MetricsFactory factory = Mockito.mock(MetricsFactory.class);
+        final Metrics rolledUp = Mockito.mock(Metrics.class);
+        Mockito.when(rolledUp.getOpenTime()).thenReturn(opened.minusSeconds(60));
+        Mockito.when(factory.create()).thenReturn(rolledUp);
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        Mockito.when(metrics.getOpenTime()).thenReturn(opened);
+        final PeriodSnapshot.Visitor visitor = Mockito.mock(PeriodSnapshot.Visitor.class);
+        final PeriodPipeline pipeline = new PeriodPipeline(
+                ImmutableList.of(Rollup.adding(2, Pattern.compile("gauge"))),
+                factory,
+                AccumulatorSettings.DEFAULT,
+                null,
+                null,
+                snapshot -> {
+                    final ByteBuffer buffer = ByteBuffer.allocate(snapshot.size());
+                    snapshot.writeTo(buffer);
+                    buffer.flip();
+                    PeriodSnapshot.read(buffer, visitor);
+                },
+                period -> { });
+        final PeriodAccumulator completed = new PeriodAccumulator(metrics, factory, AccumulatorSettings.DEFAULT);
+        completed.recordGauge("gauge", 1L);
+
+        final Instant before = Instant.now();
+        pipeline.rollUp(completed, pipeline::deliver);
+        pipeline.rollUp(completed, pipeline::deliver);
+        pipeline.deliver(completed);
+        final ArgumentCaptor<Instant> ends = ArgumentCaptor.forClass(Instant.class);
+        final InOrder inOrder = Mockito.inOrder(visitor);
+        inOrder.verify(visitor).period(Mockito.eq(opened.minusSeconds(60)), ends.capture(), Mockito.eq(2));
+        inOrder.verify(visitor).period(Mockito.eq(opened), ends.capture(), Mockito.eq(1));
+        for (final Instant end : ends.getAllValues()) {
+            Assert.assertFalse(end.isBefore(before));
+            Assert.assertFalse(end.isAfter(Instant.now()));
+        }
+    }
+
+    @Test
+    public void testFailingSnapshotListenerStillFlushes() {
+        final List<CompletedPeriod> flushed = Lists.newArrayList();
+        final Consumer<PeriodSnapshot> listener = snapshot -> {
+            throw new IllegalStateException("Failed");
+        };
+        final PeriodPipeline pipeline = new PeriodPipeline(
+                ImmutableList.of(),
+                Mockito.mock(MetricsFactory.class),
+                AccumulatorSettings.DEFAULT,
+                null,
+                null,
+                listener,
+                flushed::add);
+        final PeriodAccumulator completed = new PeriodAccumulator(
+                Mockito.mock(Metrics.class),
+                Mockito.mock(MetricsFactory.class),
+                AccumulatorSettings.DEFAULT);
+
+        pipeline.deliver(completed);
+        Assert.assertEquals(ImmutableList.of(completed), flushed);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the latency of {@link TsdPeriodicMetrics#run()} with many
+ * polled metric registrations.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(1)
+public class PeriodRotationBenchmark {
+
+    /**
+     * Create the periodic metrics instance and register the polled metrics.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        _periodicMetrics = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(TsdPeriodicMetricsBenchmark.createMetricsFactory())
+                .setRecordingMode(TsdPeriodicMetrics.RecordingMode.valueOf(_recordingMode))
+                .build();
+        for (int i = 0; i < _registrations; ++i) {
+            final String name = "polled/" + i;
+            _periodicMetrics.registerPolledMetric(metrics -> metrics.recordGauge(name, 1L));
+        }
+    }
+
+    /**
+     * Rotate the period, polling every registration.
+     */
+    @Benchmark
+    public void run() {
+        _periodicMetrics.run();
+    }
+
+    @Param({"1000", "10000"})
+    private int _registrations;
+
+    @Param({"LOCKED", "STRIPED"})
+    private String _recordingMode;
+
+    private TsdPeriodicMetrics _periodicMetrics;
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the {@link PeriodScheduler} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class PeriodSchedulerTest {
+    @Before
+    public void setUp() {
+        _task = Mockito.mock(Runnable.class);
+        _clock = Mockito.mock(Clock.class);
+        _executor = Mockito.mock(ScheduledExecutorService.class);
+        _future = Mockito.mock(ScheduledFuture.class);
+        Mockito.doReturn(_future).when(_executor).schedule(Mockito.any(Runnable.class), Mockito.anyLong(), Mockito.any());
+        _scheduler = new PeriodScheduler(_task, Duration.ofSeconds(1), _clock, _executor);
+    }
+
+    @Test
+    public void testStartAlignsToNextBoundary() {
+        Mockito.when(_clock.millis()).thenReturn(1500L);
+        _scheduler.start();
+        Mockito.verify(_executor).schedule(Mockito.any(Runnable.class), Mockito.eq(500L), Mockito.eq(TimeUnit.MILLISECONDS));
+        Mockito.verifyNoInteractions(_task);
+    }
+
+    @Test
+    public void testTickRunsTaskAndSchedulesNextBoundary() {
+        Mockito.when(_clock.millis()).thenReturn(1500L, 2010L);
+        _scheduler.start();
+        captureTick().run();
+        Mockito.verify(_task).run();
+        Mockito.verify(_executor).schedule(Mockito.any(Runnable.class), Mockito.eq(990L), Mockito.eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testEarlyTickDoesNotRepeatBoundary() {
+        Mockito.when(_clock.millis()).thenReturn(1500L, 1999L);
+        _scheduler.start();
+        captureTick().run();
+        Mockito.verify(_executor).schedule(Mockito.any(Runnable.class), Mockito.eq(1001L), Mockito.eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testOverrunSkipsMissedBoundaries() {
+        Mockito.when(_clock.millis()).thenReturn(1500L, 4200L);
+        _scheduler.start();
+        captureTick().run();
+        Mockito.verify(_executor).schedule(Mockito.any(Runnable.class), Mockito.eq(800L), Mockito.eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testFailedTaskIsRescheduled() {
+        Mockito.when(_clock.millis()).thenReturn(1500L, 2000L);
+        Mockito.doThrow(new IllegalStateException()).when(_task).run();
+        _scheduler.start();
+        captureTick().run();
+        Mockito.verify(_executor).schedule(Mockito.any(Runnable.class), Mockito.eq(1000L), Mockito.eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testCloseStopsScheduling() throws InterruptedException {
+        Mockito.when(_clock.millis()).thenReturn(1500L, 2000L);
+        Mockito.when(_executor.awaitTermination(Mockito.anyLong(), Mockito.any())).thenReturn(true);
+        _scheduler.start();
+        final Runnable tick = captureTick();
+        _scheduler.close();
+        Mockito.verify(_future).cancel(false);
+        Mockito.verify(_executor).shutdown();
+        Mockito.verify(_executor).awaitTermination(1000L, TimeUnit.MILLISECONDS);
+
+        tick.run();
+        Mockito.verify(_task).run();
+        Mockito.verify(_executor, Mockito.never()).schedule(Mockito.any(Runnable.class), Mockito.anyLong(), Mockito.any());
+    }
+
+    @Test
+    public void testCloseWaitsForRunningTask() throws InterruptedException {
+        Mockito.when(_executor.awaitTermination(Mockito.anyLong(), Mockito.any())).thenReturn(false, true);
+        _scheduler.close();
+        Mockito.verify(_executor, Mockito.times(2)).awaitTermination(1000L, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testCloseBeforeStart() throws InterruptedException {
+        Mockito.when(_executor.awaitTermination(Mockito.anyLong(), Mockito.any())).thenReturn(true);
+        _scheduler.close();
+        Mockito.verify(_executor).shutdown();
+        Mockito.verifyNoInteractions(_future);
+    }
+
+    @Test
+    public void testCloseInterrupted() throws InterruptedException {
+        Mockito.when(_executor.awaitTermination(Mockito.anyLong(), Mockito.any())).thenThrow(new InterruptedException()).thenReturn(true);
+        _scheduler.close();
+        Assert.assertTrue(Thread.interrupted());
+        Mockito.verify(_executor, Mockito.times(2)).awaitTermination(1000L, TimeUnit.MILLISECONDS);
+    }
+
+    private Runnable captureTick() {
+        final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(_executor).schedule(captor.capture(), Mockito.anyLong(), Mockito.any());
+        Mockito.clearInvocations(_executor);
+        return captor.getValue();
+    }
+
+    private Runnable _task;
+    private Clock _clock;
+    private ScheduledExecutorService _executor;
+    private ScheduledFuture<?> _future;
+    private PeriodScheduler _scheduler;
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.incubator.Dimensions;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Answers;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the {@link PeriodSnapshot} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class PeriodSnapshotTest {
+
+    @Test
+    public void testRoundTrip() {
+        final MetricsFactory factory = Mockito.mock(MetricsFactory.class, Answers.RETURNS_MOCKS);
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        Mockito.when(metrics.getOpenTime()).thenReturn(START);
+        final PeriodAccumulator period = new PeriodAccumulator(metrics, factory, AccumulatorSettings.DEFAULT);
+        final Dimensions dimensions = Dimensions.of(ImmutableMap.of("host", "a"));
+        period.recordCounter("counter", -3);
+        period.recordTimer("timer", 2, TimeUnit.MICROSECONDS);
+        period.recordTimer("unitless", 5, null);
+        period.recordGauge("double", 6.5);
+        period.recordGauge("long", 7L);
+        period.recordGauge("long", -8L);
+        period.dimension(dimensions).recordGauge("long", 9L);
+
+        final PeriodSnapshot snapshot = new PeriodSnapshot();
+        snapshot.encode(period, 3, END);
+        final ByteBuffer buffer = ByteBuffer.allocate(snapshot.size());
+        snapshot.writeTo(buffer);
+        buffer.flip();
+        final PeriodSnapshot.Visitor visitor = Mockito.mock(PeriodSnapshot.Visitor.class);
+        PeriodSnapshot.read(buffer, visitor);
+
+        Assert.assertFalse(buffer.hasRemaining());
+        final InOrder inOrder = Mockito.inOrder(visitor);
+        inOrder.verify(visitor).period(START, END, 3);
+        inOrder.verify(visitor).dimensions(Dimensions.none());
+        inOrder.verify(visitor).counter("counter", -3);
+        inOrder.verify(visitor).timer("timer", 2000, TimeUnit.NANOSECONDS);
+        inOrder.verify(visitor).timer("unitless", 5, null);
+        inOrder.verify(visitor).gauge("double", 6.5);
+        inOrder.verify(visitor).gauge("long", 7L);
+        inOrder.verify(visitor).gauge("long", -8L);
+        inOrder.verify(visitor).dimensions(dimensions);
+        inOrder.verify(visitor).gauge("long", 9L);
+        Mockito.verifyNoMoreInteractions(visitor);
+    }
+
+    @Test
+    public void testHistogramRoundTrip() {
+        final AccumulatorSettings settings = new AccumulatorSettings(true, true, 3);
+        final PeriodAccumulator period = new PeriodAccumulator(Mockito.mock(Metrics.class), Mockito.mock(MetricsFactory.class), settings);
+        period.recordGauge("gauge", 1.5);
+        period.recordGauge("gauge", 1.5);
+        period.recordGauge("gauge", -3.0);
+
+        final PeriodSnapshot snapshot = new PeriodSnapshot();
+        snapshot.encode(period, 1, END);
+        final ByteBuffer buffer = ByteBuffer.allocate(snapshot.size());
+        snapshot.writeTo(buffer);
+        buffer.flip();
+        final PeriodSnapshot.Visitor visitor = Mockito.mock(PeriodSnapshot.Visitor.class);
+        PeriodSnapshot.read(buffer, visitor);
+
+        Mockito.verify(visitor).histogram("gauge", 0, 0.0, -3.0, 1.5);
+        Mockito.verify(visitor).bucket("gauge", 1.5, 2);
+        Mockito.verify(visitor).bucket("gauge", -3.0, 1);
+    }
+
+    @Test
+    public void testPeriodWithoutOpenTimeStartsAtEnd() {
+        final PeriodAccumulator period = new PeriodAccumulator(
+                Mockito.mock(Metrics.class),
+                Mockito.mock(MetricsFactory.class),
+                AccumulatorSettings.DEFAULT);
+        final PeriodSnapshot snapshot = new PeriodSnapshot();
+        snapshot.encode(period, 1, END);
+        final ByteBuffer buffer = ByteBuffer.allocate(snapshot.size());
+        snapshot.writeTo(buffer);
+        buffer.flip();
+        final PeriodSnapshot.Visitor visitor = Mockito.mock(PeriodSnapshot.Visitor.class);
+        PeriodSnapshot.read(buffer, visitor);
+
+        Mockito.verify(visitor).period(END, END, 1);
+        Mockito.verify(visitor).dimensions(Dimensions.none());
+        Mockito.verifyNoMoreInteractions(visitor);
+    }
+
+    @Test
+    public void testNamesAreInterned() {
+        final PeriodAccumulator period = new PeriodAccumulator(
+                Mockito.mock(Metrics.class),
+                Mockito.mock(MetricsFactory.class, Answers.RETURNS_MOCKS),
+                AccumulatorSettings.DEFAULT);
+        final PeriodSnapshot snapshot = new PeriodSnapshot();
+        period.recordCounter("a_long_metric_name", 1);
+        snapshot.encode(period, 1, END);
+        final int single = snapshot.size();
+
+        period.dimension(Dimensions.of(ImmutableMap.of("a_long_metric_name", "a_long_metric_name"))).recordCounter("a_long_metric_name", 1);
+        snapshot.encode(period, 1, END);
+        Assert.assertTrue(snapshot.size() - single < "a_long_metric_name".length());
+    }
+
+    @Test
+    public void testWriteToChannel() throws IOException {
+        final PeriodAccumulator period = new PeriodAccumulator(
+                Mockito.mock(Metrics.class),
+                Mockito.mock(MetricsFactory.class),
+                AccumulatorSettings.DEFAULT);
+        period.recordCounter("counter", 1);
+        final PeriodSnapshot snapshot = new PeriodSnapshot();
+        snapshot.encode(period, 1, END);
+
+        final Path file = _folder.newFile().toPath();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            snapshot.writeTo(channel);
+            snapshot.writeTo(channel);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final PeriodSnapshot.Visitor visitor = Mockito.mock(PeriodSnapshot.Visitor.class);
+            PeriodSnapshot.read(buffer, visitor);
+            PeriodSnapshot.read(buffer, visitor);
+            Assert.assertFalse(buffer.hasRemaining());
+            Mockito.verify(visitor, Mockito.times(2)).counter("counter", 1);
+        }
+    }
+
+    @Test
+    public void testWriteToSlowChannel() throws IOException {
+        final PeriodAccumulator period = new PeriodAccumulator(
+                Mockito.mock(Metrics.class),
+                Mockito.mock(MetricsFactory.class),
+                AccumulatorSettings.DEFAULT);
+        final PeriodSnapshot snapshot = new PeriodSnapshot();
+        snapshot.encode(period, 1, END);
+        final WritableByteChannel channel = Mockito.mock(WritableByteChannel.class);
+        Mockito.when(channel.write(Mockito.any())).thenAnswer(invocation -> {
+            final ByteBuffer buffer = invocation.getArgument(0);
+            buffer.get();
+            return 1;
+        });
+
+        snapshot.writeTo(channel);
+        Mockito.verify(channel, Mockito.times(snapshot.size())).write(Mockito.any());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadMagic() {
+        final BinaryEncoder encoder = new BinaryEncoder();
+        encoder.putInt(0);
+        encoder.putByte(1);
+        PeriodSnapshot.read(encoder.view(), Mockito.mock(PeriodSnapshot.Visitor.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadVersion() {
+        final PeriodSnapshot snapshot = new PeriodSnapshot();
+        snapshot.encode(new PeriodAccumulator(
+                Mockito.mock(Metrics.class),
+                Mockito.mock(MetricsFactory.class),
+                AccumulatorSettings.DEFAULT),
+                1,
+                END);
+        final ByteBuffer buffer = ByteBuffer.allocate(snapshot.size());
+        snapshot.writeTo(buffer);
+        buffer.put(Integer.BYTES, (byte) 1);
+        buffer.flip();
+        PeriodSnapshot.read(buffer, Mockito.mock(PeriodSnapshot.Visitor.class));
+    }
+
+    @Rule
+    public final TemporaryFolder _folder = new TemporaryFolder();
+
+    private static final Instant START = Instant.ofEpochSecond(1_500_000_000L, 250_000_000);
+    private static final Instant END = START.plusSeconds(60);
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.incubator.Dimensions;
+import com.arpnetworking.metrics.incubator.MetricKey;
+import com.arpnetworking.metrics.incubator.PeriodicCounter;
+import com.arpnetworking.metrics.incubator.PeriodicGauge;
+import com.arpnetworking.metrics.incubator.PeriodicTimer;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the {@link PeriodicHandles} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class PeriodicHandlesTest {
+
+    @Test
+    public void testSameNameSameHandle() {
+        final PeriodicHandles handles = new PeriodicHandles();
+        Assert.assertSame(handles.counter("foo"), handles.counter("foo"));
+        Assert.assertNotSame(handles.counter("foo"), handles.counter("bar"));
+        Assert.assertSame(handles.gauge("foo"), handles.gauge("foo"));
+        Assert.assertSame(handles.timer("foo"), handles.timer("foo"));
+    }
+
+    @Test
+    public void testTimerDrainsDurationsOnce() {
+        final PeriodicHandles handles = new PeriodicHandles();
+        final PeriodicTimer timer = handles.timer("foo");
+        final long first = timer.stop(timer.start() - 1000);
+        final long second = timer.stop(timer.start() - 2000);
+
+        final List<Long> durations = new ArrayList<>();
+        final CompletedPeriod period = recordingPeriod("foo", durations);
+        handles.drainTo(period);
+        Assert.assertEquals(List.of(first, second), durations);
+
+        final CompletedPeriod nextPeriod = Mockito.mock(CompletedPeriod.class);
+        handles.drainTo(nextPeriod);
+        Mockito.verifyNoInteractions(nextPeriod);
+
+        // The buffer of the first epoch is reused once drained
+        durations.clear();
+        final long third = timer.stop(timer.start());
+        handles.drainTo(recordingPeriod("foo", durations));
+        Assert.assertEquals(List.of(third), durations);
+
+        final CompletedPeriod emptyPeriod = Mockito.mock(CompletedPeriod.class);
+        handles.drainTo(emptyPeriod);
+        handles.drainTo(emptyPeriod);
+        Mockito.verifyNoInteractions(emptyPeriod);
+    }
+
+    @Test
+    public void testDimensionedHandlesDrainIntoTheirDimensions() {
+        final PeriodicHandles handles = new PeriodicHandles();
+        final Dimensions dimensions = Dimensions.of(ImmutableMap.of("host", "a"));
+        final MetricKey key = MetricKey.of("foo", dimensions);
+        Assert.assertSame(handles.counter("foo"), handles.counter(MetricKey.of("foo")));
+        Assert.assertNotSame(handles.counter("foo"), handles.counter(key));
+        handles.counter(key).add(2);
+        handles.gauge(key).set(1.5);
+        final PeriodicTimer timer = handles.timer(key);
+        final long duration = timer.stop(timer.start());
+        // Idle handles do not resolve the period of their dimensions
+        handles.counter(MetricKey.of("idle", dimensions));
+
+        final List<Long> durations = new ArrayList<>();
+        final CompletedPeriod period = Mockito.mock(CompletedPeriod.class);
+        final CompletedPeriod dimension = recordingPeriod("foo", durations);
+        Mockito.when(period.dimension(dimensions)).thenReturn(dimension);
+        handles.drainTo(period);
+        Mockito.verify(period, Mockito.times(3)).dimension(dimensions);
+        Mockito.verifyNoMoreInteractions(period);
+        Mockito.verify(dimension).recordCounter("foo", 2);
+        Mockito.verify(dimension).recordGauge("foo", 1.5);
+        Mockito.verify(dimension).recordTimers(Mockito.eq("foo"), Mockito.any(), Mockito.eq(TimeUnit.NANOSECONDS));
+        Mockito.verifyNoMoreInteractions(dimension);
+        Assert.assertEquals(List.of(duration), durations);
+    }
+
+    @Test
+    public void testTimerRetriesWhenDrainedWhileEntering() {
+        final AtomicInteger epoch = Mockito.spy(new AtomicInteger(1));
+        // Simulate a drain between reading the epoch and entering it
+        Mockito.doReturn(0).doCallRealMethod().when(epoch).get();
+        final PeriodicHandles handles = new PeriodicHandles(epoch);
+        final PeriodicTimer timer = handles.timer("foo");
+        final long duration = timer.stop(timer.start());
+
+        final List<Long> durations = new ArrayList<>();
+        handles.drainTo(recordingPeriod("foo", durations));
+        Assert.assertEquals(List.of(duration), durations);
+    }
+
+    @Test
+    public void testCounterDrainsSumAndResets() {
+        final PeriodicHandles handles = new PeriodicHandles();
+        final PeriodicCounter counter = handles.counter("foo");
+        counter.add(2);
+        counter.add(3);
+
+        final CompletedPeriod period = Mockito.mock(CompletedPeriod.class);
+        handles.drainTo(period);
+        Mockito.verify(period).recordCounter("foo", 5);
+
+        final CompletedPeriod nextPeriod = Mockito.mock(CompletedPeriod.class);
+        handles.drainTo(nextPeriod);
+        Mockito.verifyNoInteractions(nextPeriod);
+    }
+
+    @Test
+    public void testCounterDrainsZeroSumWhenAddedTo() {
+        final PeriodicHandles handles = new PeriodicHandles();
+        final PeriodicCounter counter = handles.counter("foo");
+        counter.add(2);
+        counter.add(-2);
+
+        final CompletedPeriod period = Mockito.mock(CompletedPeriod.class);
+        handles.drainTo(period);
+        Mockito.verify(period).recordCounter("foo", 0);
+    }
+
+    @Test
+    public void testGaugeDrainsLatestReadingOnlyWhenSet() {
+        final PeriodicHandles handles = new PeriodicHandles();
+        final PeriodicGauge gauge = handles.gauge("foo");
+        gauge.set(1.5);
+        gauge.set(2.5);
+
+        final CompletedPeriod period = Mockito.mock(CompletedPeriod.class);
+        handles.drainTo(period);
+        Mockito.verify(period).recordGauge("foo", 2.5);
+
+        final CompletedPeriod nextPeriod = Mockito.mock(CompletedPeriod.class);
+        handles.drainTo(nextPeriod);
+        Mockito.verifyNoInteractions(nextPeriod);
+
+        gauge.set(Double.NaN);
+        handles.drainTo(nextPeriod);
+        Mockito.verify(nextPeriod).recordGauge("foo", Double.NaN);
+    }
+
+    private static CompletedPeriod recordingPeriod(final String name, final List<Long> durations) {
+        // NOTE: The samples are copied when recorded since the buffer is reset after the drain
+        final CompletedPeriod period = Mockito.mock(CompletedPeriod.class);
+        Mockito.doAnswer(invocation -> {
+            invocation.<SampleBuffer>getArgument(1).forEach(durations::add);
+            return null;
+        }).when(period).recordTimers(Mockito.eq(name), Mockito.any(), Mockito.eq(TimeUnit.NANOSECONDS));
+        return period;
+    }
+}
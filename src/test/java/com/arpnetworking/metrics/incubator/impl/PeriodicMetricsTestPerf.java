@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import org.junit.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the JMH benchmarks of the periodic metrics hot paths. Execute with:
+ *
+ *     ./mvnw -P performanceTest test
+ *
+ * Results, including the GC allocation rate per operation, are written as
+ * JSON to target/perf.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class PeriodicMetricsTestPerf {
+
+    @Test
+    public void testRecordingThroughput() throws RunnerException {
+        for (final int threads : threadCounts()) {
+            new Runner(options(TsdPeriodicMetricsBenchmark.class, "recording-" + threads)
+                    .threads(threads)
+                    .build())
+                    .run();
+        }
+    }
+
+    @Test
+    public void testReadWriteLockedReferenceContention() throws RunnerException {
+        new Runner(options(LockedReferenceBenchmark.class, "locked-reference").build()).run();
+    }
+
+    @Test
+    public void testRotationLatency() throws RunnerException {
+        new Runner(options(PeriodRotationBenchmark.class, "rotation").build()).run();
+    }
+
+    private static ChainedOptionsBuilder options(final Class<?> benchmark, final String name) {
+        final File directory = new File("target/perf");
+        if (!directory.mkdirs() && !directory.isDirectory()) {
+            throw new IllegalStateException("Unable to create " + directory);
+        }
+        return new OptionsBuilder()
+                .include(benchmark.getName())
+                .forks(1)
+                .warmupIterations(3)
+                .warmupTime(TimeValue.seconds(2))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(2))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(new File(directory, name + ".json").getPath());
+    }
+
+    private static List<Integer> threadCounts() {
+        final List<Integer> threadCounts = new ArrayList<>();
+        final int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads < processors; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(processors);
+        return threadCounts;
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.incubator.PeriodicMetrics;
+import com.arpnetworking.metrics.incubator.PolledMetricRegistration;
+import com.arpnetworking.metrics.incubator.PollingOptions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Tests for the {@link Poller} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class PollerTest {
+    @Before
+    public void setUp() {
+        _target = Mockito.mock(PeriodicMetrics.class);
+    }
+
+    @Test
+    public void testDirectDoesNotRecordSelfMetrics() {
+        final Poller poller = new Poller(MoreExecutors.directExecutor(), null, null, null);
+        poller.register(metrics -> metrics.recordCounter("polled", 1));
+        poller.poll(_target);
+        Mockito.verify(_target).recordCounter("polled", 1);
+        Mockito.verifyNoMoreInteractions(_target);
+        poller.close();
+    }
+
+    @Test
+    public void testParallelPollersRunConcurrently() throws InterruptedException {
+        final int pollers = 4;
+        final Poller poller = new Poller(MoreExecutors.directExecutor(), Executors.newFixedThreadPool(pollers), null, null);
+        final CountDownLatch running = new CountDownLatch(pollers);
+        for (int i = 0; i < pollers; ++i) {
+            poller.register(metrics -> {
+                running.countDown();
+                // Only completes if every poller is running at the same time
+                await(running);
+                metrics.recordCounter("polled", 1);
+            });
+        }
+        poller.poll(_target);
+        Mockito.verify(_target, Mockito.times(pollers)).recordCounter("polled", 1);
+        Mockito.verify(_target).recordCounter("periodic_metrics/polling/timeouts", 0);
+        Mockito.verify(_target).recordTimer(
+                Mockito.eq("periodic_metrics/polling/duration"),
+                Mockito.anyLong(),
+                Mockito.eq(Optional.of(TimeUnit.NANOSECONDS)));
+        poller.close();
+    }
+
+    @Test
+    public void testPollerTimeoutInterruptsRunningPoller() throws InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool(1);
+        final Poller poller = new Poller(MoreExecutors.directExecutor(), pool, Duration.ofMinutes(1), Duration.ofMillis(20));
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final CountDownLatch queuedRan = new CountDownLatch(1);
+        final CountDownLatch first = new CountDownLatch(1);
+        final Consumer<PeriodicMetrics> registration = metrics -> {
+            if (first.getCount() > 0) {
+                first.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (final InterruptedException e) {
+                    interrupted.countDown();
+                }
+            } else {
+                queuedRan.countDown();
+            }
+        };
+        // The first poller to run hangs until it is interrupted and the queued one then runs
+        poller.register(registration);
+        poller.register(registration::accept);
+        poller.poll(_target);
+        Assert.assertTrue(interrupted.await(1, TimeUnit.MINUTES));
+        // The queued poller runs on the pool thread freed by the interrupt, possibly after the poll returned
+        Assert.assertTrue(queuedRan.await(1, TimeUnit.MINUTES));
+        Mockito.verify(_target).recordCounter("periodic_metrics/polling/timeouts", 1);
+        poller.close();
+        Assert.assertTrue(pool.isShutdown());
+    }
+
+    @Test
+    public void testPollerTimeoutWithoutPollingTimeout() {
+        final Poller poller = new Poller(MoreExecutors.directExecutor(), null, null, Duration.ofMinutes(1));
+        poller.register(metrics -> metrics.recordCounter("polled", 1));
+        poller.poll(_target);
+        Mockito.verify(_target).recordCounter("polled", 1);
+        Mockito.verify(_target).recordCounter("periodic_metrics/polling/timeouts", 0);
+    }
+
+    @Test
+    public void testQueuedPollerTimesOutAtPollingDeadline() {
+        final Poller poller = new Poller(command -> { }, null, Duration.ofMillis(20), Duration.ofMillis(5));
+        poller.register(metrics -> metrics.recordCounter("polled", 1));
+        poller.poll(_target);
+        Mockito.verify(_target, Mockito.never()).recordCounter("polled", 1);
+        Mockito.verify(_target).recordCounter("periodic_metrics/polling/timeouts", 1);
+    }
+
+    @Test
+    public void testIntervalSkipsPeriods() {
+        final Poller poller = new Poller(MoreExecutors.directExecutor(), null, null, null);
+        poller.register(
+                metrics -> metrics.recordCounter("polled", 1),
+                new PollingOptions.Builder().setName("slow").setInterval(3).build());
+        for (int i = 0; i < 6; ++i) {
+            poller.poll(_target);
+        }
+        Mockito.verify(_target, Mockito.times(2)).recordCounter("polled", 1);
+        Mockito.verify(_target, Mockito.times(2)).recordTimer(
+                Mockito.eq("periodic_metrics/poller/slow/duration"),
+                Mockito.anyLong(),
+                Mockito.eq(Optional.of(TimeUnit.NANOSECONDS)));
+        Mockito.verify(_target, Mockito.times(2)).recordGauge("periodic_metrics/poller/slow/interval", 3L);
+    }
+
+    @Test
+    public void testBackoffOverBudget() {
+        final Poller poller = new Poller(MoreExecutors.directExecutor(), null, null, null);
+        poller.register(
+                metrics -> metrics.recordCounter("polled", 1),
+                new PollingOptions.Builder()
+                        .setName("expensive")
+                        .setBudget(Duration.ZERO)
+                        .setMaximumInterval(4)
+                        .build());
+        final InOrder inOrder = Mockito.inOrder(_target);
+        for (int i = 1; i <= 7; ++i) {
+            poller.poll(_target);
+            if (i == 1 || i == 3 || i == 7) {
+                inOrder.verify(_target).recordCounter("polled", 1);
+            }
+        }
+        Mockito.verify(_target, Mockito.times(3)).recordCounter("polled", 1);
+        Mockito.verify(_target).recordGauge("periodic_metrics/poller/expensive/interval", 2L);
+        Mockito.verify(_target, Mockito.times(2)).recordGauge("periodic_metrics/poller/expensive/interval", 4L);
+    }
+
+    @Test
+    public void testBackoffRecovers() {
+        final Poller.Registration registration = new Poller.Registration(
+                metrics -> { },
+                new PollingOptions.Builder()
+                        .setName("recovering")
+                        .setInterval(2)
+                        .setBudget(Duration.ofMillis(1))
+                        .setMaximumInterval(6)
+                        .build());
+        final long overBudget = TimeUnit.MILLISECONDS.toNanos(2);
+        final long underBudget = TimeUnit.MICROSECONDS.toNanos(1);
+        Assert.assertEquals(2, registration.getInterval());
+        registration.completed(_target, overBudget);
+        Assert.assertEquals(4, registration.getInterval());
+        registration.completed(_target, overBudget);
+        Assert.assertEquals(6, registration.getInterval());
+        registration.completed(_target, underBudget);
+        Assert.assertEquals(3, registration.getInterval());
+        registration.completed(_target, underBudget);
+        Assert.assertEquals(2, registration.getInterval());
+        registration.completed(_target, underBudget);
+        Assert.assertEquals(2, registration.getInterval());
+    }
+
+    @Test
+    public void testRegisterReplacesOptions() {
+        final Poller poller = new Poller(MoreExecutors.directExecutor(), null, null, null);
+        final Consumer<PeriodicMetrics> consumer = metrics -> metrics.recordCounter("polled", 1);
+        poller.register(consumer);
+        poller.register(consumer, new PollingOptions.Builder().setName("replaced").build());
+        poller.poll(_target);
+        Mockito.verify(_target).recordCounter("polled", 1);
+        Mockito.verify(_target).recordGauge("periodic_metrics/poller/replaced/interval", 1L);
+    }
+
+    @Test
+    public void testCloseStopsPolling() {
+        final Poller poller = new Poller(MoreExecutors.directExecutor(), null, null, null);
+        final PolledMetricRegistration closed = poller.register(metrics -> metrics.recordCounter("closed", 1));
+        poller.register(metrics -> metrics.recordCounter("open", 1));
+        poller.poll(_target);
+        closed.close();
+        closed.close();
+        Assert.assertEquals(1, poller.size());
+        poller.poll(_target);
+        Mockito.verify(_target, Mockito.times(1)).recordCounter("closed", 1);
+        Mockito.verify(_target, Mockito.times(2)).recordCounter("open", 1);
+    }
+
+    @Test
+    public void testCloseBeforeFirstPoll() {
+        final Poller poller = new Poller(MoreExecutors.directExecutor(), null, null, null);
+        poller.register(metrics -> metrics.recordCounter("polled", 1)).close();
+        Assert.assertEquals(0, poller.size());
+        poller.poll(_target);
+        Mockito.verifyNoMoreInteractions(_target);
+    }
+
+    @Test
+    public void testCloseReplacedRegistration() {
+        final Poller poller = new Poller(MoreExecutors.directExecutor(), null, null, null);
+        final Consumer<PeriodicMetrics> consumer = metrics -> metrics.recordCounter("polled", 1);
+        final PolledMetricRegistration replaced = poller.register(consumer);
+        poller.poll(_target);
+        poller.register(consumer, new PollingOptions.Builder().setName("replacement").build());
+        replaced.close();
+        Assert.assertEquals(1, poller.size());
+        poller.poll(_target);
+        Mockito.verify(_target, Mockito.times(2)).recordCounter("polled", 1);
+        Mockito.verify(_target).recordGauge("periodic_metrics/poller/replacement/interval", 1L);
+    }
+
+    @Test
+    public void testManyRegistrationsClosed() {
+        final Poller poller = new Poller(MoreExecutors.directExecutor(), null, null, null);
+        final List<PolledMetricRegistration> registrations = Lists.newArrayList();
+        for (int i = 0; i < 1000; ++i) {
+            final String name = "polled/" + i;
+            registrations.add(poller.register(metrics -> metrics.recordCounter(name, 1)));
+        }
+        poller.poll(_target);
+        registrations.subList(1, registrations.size()).forEach(PolledMetricRegistration::close);
+        poller.poll(_target);
+        Assert.assertEquals(1, poller.size());
+        Mockito.verify(_target, Mockito.times(2)).recordCounter("polled/0", 1);
+        Mockito.verify(_target).recordCounter("polled/999", 1);
+    }
+
+    @Test
+    public void testFailingPollerDoesNotAffectOthers() {
+        final Poller poller = new Poller(MoreExecutors.directExecutor(), null, null, null);
+        poller.register(metrics -> {
+            throw new IllegalStateException("failed");
+        });
+        poller.register(metrics -> metrics.recordCounter("polled", 1));
+        poller.poll(_target);
+        Mockito.verify(_target).recordCounter("polled", 1);
+    }
+
+    @Test
+    public void testParallelPollerErrorAndInterval() {
+        final Poller poller = new Poller(MoreExecutors.directExecutor(), Executors.newSingleThreadExecutor(), null, null);
+        poller.register(
+                metrics -> {
+                    throw new AssertionError("failed");
+                },
+                new PollingOptions.Builder().setName("failing").setInterval(2).build());
+        poller.poll(_target);
+        poller.poll(_target);
+        Mockito.verify(_target, Mockito.times(2)).recordCounter("periodic_metrics/polling/timeouts", 0);
+        Mockito.verify(_target).recordGauge("periodic_metrics/poller/failing/interval", 2L);
+        poller.close();
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private PeriodicMetrics _target;
+}
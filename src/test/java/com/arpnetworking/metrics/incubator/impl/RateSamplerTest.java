@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the {@link RateSampler} class and its subclasses.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class RateSamplerTest {
+
+    @Test
+    public void testKeepsEverySampleAtFullRate() {
+        final RateSampler sampler = new FixedRateSampler(1.0);
+        Assert.assertTrue(sampler.offerTimer("timer", 1, TimeUnit.SECONDS));
+        Assert.assertTrue(sampler.offerGauge("double", 1.5));
+        Assert.assertTrue(sampler.offerGauge("long", 2L));
+        Assert.assertTrue(sampler.offerGauge("long", 3L));
+
+        final SampleSink recorder = Mockito.mock(SampleSink.class);
+        sampler.flip(recorder);
+        Mockito.verify(recorder).recordGauge("timer/sampling_weight", 1.0);
+        Mockito.verify(recorder).recordGauge("double/sampling_weight", 1.0);
+        Mockito.verify(recorder).recordGauge("long/sampling_weight", 1.0);
+        Mockito.verifyNoMoreInteractions(recorder);
+        Assert.assertEquals(1.0, sampler.getRate(), 0.0);
+
+        // Metrics without kept samples in a period have no weight
+        final SampleSink next = Mockito.mock(SampleSink.class);
+        sampler.offerGauge("long", 4L);
+        sampler.flip(next);
+        Mockito.verify(next).recordGauge("long/sampling_weight", 1.0);
+        Mockito.verifyNoMoreInteractions(next);
+    }
+
+    @Test
+    public void testRejectsAtNegligibleRate() {
+        final RateSampler sampler = new FixedRateSampler(Double.MIN_VALUE);
+        for (int i = 0; i < 1000; ++i) {
+            Assert.assertFalse(sampler.offerGauge("gauge", 1L));
+        }
+        final SampleSink recorder = Mockito.mock(SampleSink.class);
+        sampler.flip(recorder);
+        Mockito.verifyNoInteractions(recorder);
+        Assert.assertEquals(Double.MIN_VALUE, sampler.getRate(), 0.0);
+    }
+
+    @Test
+    public void testAdaptiveRateTargetsSamples() {
+        final RateSampler sampler = new AdaptiveRateSampler(10);
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertTrue(sampler.offerGauge("gauge", 1L));
+        }
+        sampler.flip(Mockito.mock(SampleSink.class));
+        Assert.assertEquals(0.1, sampler.getRate(), 1e-9);
+
+        final SampleSink recorder = Mockito.mock(SampleSink.class);
+        final RateSampler adapted = new AdaptiveRateSampler(10);
+        adapted.offerGauge("gauge", 1L);
+        adapted.flip(recorder);
+        Mockito.verify(recorder).recordGauge("gauge/sampling_weight", 1.0);
+        // A single sample kept at full rate cannot raise the rate any further
+        Assert.assertEquals(1.0, adapted.getRate(), 0.0);
+    }
+
+    @Test
+    public void testAdaptiveRateRecoversWithoutSamples() {
+        final RateSampler sampler = new AdaptiveRateSampler(1);
+        for (int i = 0; i < 8; ++i) {
+            sampler.offerGauge("gauge", 1L);
+        }
+        sampler.flip(Mockito.mock(SampleSink.class));
+        Assert.assertEquals(0.125, sampler.getRate(), 0.0);
+        sampler.flip(Mockito.mock(SampleSink.class));
+        Assert.assertEquals(0.25, sampler.getRate(), 0.0);
+        sampler.flip(Mockito.mock(SampleSink.class));
+        sampler.flip(Mockito.mock(SampleSink.class));
+        sampler.flip(Mockito.mock(SampleSink.class));
+        Assert.assertEquals(1.0, sampler.getRate(), 0.0);
+    }
+}
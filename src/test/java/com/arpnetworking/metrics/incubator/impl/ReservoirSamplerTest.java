@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests for the {@link ReservoirSampler} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class ReservoirSamplerTest {
+
+    @Test
+    public void testKeepsSamplesUntilFull() {
+        final ReservoirSampler sampler = new ReservoirSampler(4);
+        Assert.assertFalse(sampler.offerTimer("timer", 1, TimeUnit.SECONDS));
+        Assert.assertFalse(sampler.offerGauge("double", 1.5));
+        Assert.assertFalse(sampler.offerGauge("long", 2L));
+
+        final SampleSink recorder = Mockito.mock(SampleSink.class);
+        sampler.flip(recorder);
+        Mockito.verify(recorder).recordTimer("timer", 1, TimeUnit.SECONDS);
+        Mockito.verify(recorder).recordGauge("double", 1.5);
+        Mockito.verify(recorder).recordGauge("long", 2L);
+        Mockito.verify(recorder).recordGauge("timer/sampling_weight", 1.0);
+        Mockito.verify(recorder).recordGauge("double/sampling_weight", 1.0);
+        Mockito.verify(recorder).recordGauge("long/sampling_weight", 1.0);
+        Mockito.verifyNoMoreInteractions(recorder);
+
+        final SampleSink next = Mockito.mock(SampleSink.class);
+        sampler.flip(next);
+        Mockito.verifyNoInteractions(next);
+    }
+
+    @Test
+    public void testBoundsSamplesPerPeriod() {
+        final ReservoirSampler sampler = new ReservoirSampler(10);
+        for (int i = 0; i < 1000; ++i) {
+            sampler.offerGauge("gauge", (long) i);
+        }
+        final SampleSink recorder = Mockito.mock(SampleSink.class);
+        sampler.flip(recorder);
+        Mockito.verify(recorder, Mockito.times(10)).recordGauge(Mockito.eq("gauge"), Mockito.anyLong());
+        Mockito.verify(recorder).recordGauge("gauge/sampling_weight", 100.0);
+        Mockito.verifyNoMoreInteractions(recorder);
+    }
+
+    @Test
+    public void testCombinesStripes() {
+        final AtomicInteger offers = new AtomicInteger();
+        final ReservoirSampler sampler = new ReservoirSampler(
+                10,
+                () -> (offers.getAndIncrement() % 2) * ThreadStripes.MASK,
+                AtomicLong::new);
+        for (int i = 0; i < 10; ++i) {
+            sampler.offerGauge("gauge", (long) i);
+        }
+        final SampleSink sink = Mockito.mock(SampleSink.class);
+        sampler.flip(sink);
+        for (int i = 0; i < 10; ++i) {
+            Mockito.verify(sink).recordGauge("gauge", (long) i);
+        }
+        Mockito.verify(sink).recordGauge("gauge/sampling_weight", 1.0);
+        Mockito.verifyNoMoreInteractions(sink);
+    }
+
+    @Test
+    public void testBoundsSamplesAcrossStripes() {
+        final AtomicInteger offers = new AtomicInteger();
+        final ReservoirSampler sampler = new ReservoirSampler(
+                10,
+                () -> (offers.getAndIncrement() % 2) * ThreadStripes.MASK,
+                AtomicLong::new);
+        for (int i = 0; i < 1000; ++i) {
+            sampler.offerTimer("timer", i, TimeUnit.SECONDS);
+        }
+        final SampleSink sink = Mockito.mock(SampleSink.class);
+        sampler.flip(sink);
+        Mockito.verify(sink, Mockito.times(10)).recordTimer(Mockito.eq("timer"), Mockito.anyLong(), Mockito.eq(TimeUnit.SECONDS));
+        Mockito.verify(sink).recordGauge("timer/sampling_weight", 100.0);
+        Mockito.verifyNoMoreInteractions(sink);
+    }
+
+    @Test
+    public void testRejectsWithoutLockOnceFull() {
+        final AtomicLong count = Mockito.spy(new AtomicLong());
+        final ReservoirSampler sampler = new ReservoirSampler(2, () -> 0, () -> count);
+        for (int i = 0; i < 100; ++i) {
+            sampler.offerGauge("gauge", (long) i);
+        }
+        // Only the samples filling the reservoir advance the count under the lock
+        Mockito.verify(count, Mockito.times(2)).incrementAndGet();
+        Mockito.verify(count, Mockito.times(100)).getAndUpdate(Mockito.any());
+
+        final SampleSink sink = Mockito.mock(SampleSink.class);
+        sampler.flip(sink);
+        Mockito.verify(sink, Mockito.times(2)).recordGauge(Mockito.eq("gauge"), Mockito.anyLong());
+        Mockito.verify(sink).recordGauge("gauge/sampling_weight", 50.0);
+    }
+
+    @Test
+    public void testFillsAfterFoundNotFull() {
+        final AtomicLong count = Mockito.spy(new AtomicLong());
+        // Simulate another thread of the stripe filling the reservoir after it was found not full
+        Mockito.doCallRealMethod().doReturn(0L).doCallRealMethod().when(count).getAndUpdate(Mockito.any());
+        final ReservoirSampler sampler = new ReservoirSampler(1, () -> 0, () -> count);
+        sampler.offerGauge("gauge", 1L);
+        sampler.offerGauge("gauge", 2L);
+        Assert.assertEquals(2, count.get());
+
+        final SampleSink sink = Mockito.mock(SampleSink.class);
+        sampler.flip(sink);
+        Mockito.verify(sink).recordGauge(Mockito.eq("gauge"), Mockito.longThat(value -> value == 1L || value == 2L));
+        Mockito.verify(sink).recordGauge("gauge/sampling_weight", 2.0);
+        Mockito.verifyNoMoreInteractions(sink);
+    }
+
+    @Test
+    public void testSkipsStripesWithoutSamples() {
+        final ReservoirSampler sampler = new ReservoirSampler(4, () -> ThreadStripes.MASK, AtomicLong::new);
+        sampler.offerGauge("gauge", 1.5);
+        final SampleSink sink = Mockito.mock(SampleSink.class);
+        sampler.flip(sink);
+        Mockito.verify(sink).recordGauge("gauge", 1.5);
+        Mockito.verify(sink).recordGauge("gauge/sampling_weight", 1.0);
+        Mockito.verifyNoMoreInteractions(sink);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+/**
+ * Tests for the {@link Rollup} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class RollupTest {
+
+    @Test
+    public void testReplacing() {
+        final Rollup rollup = Rollup.replacing(60, Pattern.compile("jvm/.*"));
+        Assert.assertEquals(60, rollup.getPeriods());
+        Assert.assertFalse(rollup.isRetainingBasePeriod());
+        Assert.assertTrue(rollup.matches("jvm/heap"));
+        Assert.assertFalse(rollup.matches("app/jvm/heap"));
+        Assert.assertEquals("Rollup{Periods=60, Names=jvm/.*, RetainingBasePeriod=false}", rollup.toString());
+    }
+
+    @Test
+    public void testAdding() {
+        final Rollup rollup = Rollup.adding(2, Pattern.compile("requests"));
+        Assert.assertEquals(2, rollup.getPeriods());
+        Assert.assertTrue(rollup.isRetainingBasePeriod());
+        Assert.assertTrue(rollup.matches("requests"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSinglePeriodRejected() {
+        Rollup.adding(1, Pattern.compile(".*"));
+    }
+}
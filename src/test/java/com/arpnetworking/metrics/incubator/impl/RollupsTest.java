@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * Tests for the {@link Rollups} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class RollupsTest {
+
+    @Test
+    public void testRollsUpEveryPeriods() {
+        final MetricsFactory factory = Mockito.mock(MetricsFactory.class);
+        final Metrics first = Mockito.mock(Metrics.class);
+        final Metrics second = Mockito.mock(Metrics.class);
+        Mockito.when(factory.create()).thenReturn(first, second);
+        final List<CompletedPeriod> flushed = Lists.newArrayList();
+        final Rollups rollups = new Rollups(
+                ImmutableList.of(Rollup.adding(2, Pattern.compile("gauge"))),
+                factory,
+                AccumulatorSettings.DEFAULT);
+        final ObjIntConsumer<CompletedPeriod> handOff = (period, periods) -> flushed.add(period);
+
+        rollups.rollUp(completed("gauge", 1L), handOff);
+        Assert.assertTrue(flushed.isEmpty());
+        rollups.rollUp(completed("gauge", 2L), handOff);
+        Assert.assertEquals(1, flushed.size());
+        flushed.get(0).flush();
+        Mockito.verify(first).setGauge("gauge", 1L);
+        Mockito.verify(first).setGauge("gauge", 2L);
+        Mockito.verify(first).close();
+
+        rollups.rollUp(completed("gauge", 3L), handOff);
+        rollups.close(handOff);
+        Assert.assertEquals(2, flushed.size());
+        flushed.get(1).flush();
+        Mockito.verify(second).setGauge("gauge", 3L);
+        Mockito.verify(second).close();
+    }
+
+    @Test
+    public void testReplacingRemovesFromBasePeriod() {
+        final MetricsFactory factory = Mockito.mock(MetricsFactory.class);
+        final Metrics rollupMetrics = Mockito.mock(Metrics.class);
+        final Metrics otherMetrics = Mockito.mock(Metrics.class);
+        Mockito.when(factory.create()).thenReturn(rollupMetrics, otherMetrics);
+        final List<CompletedPeriod> flushed = Lists.newArrayList();
+        final Rollups rollups = new Rollups(
+                ImmutableList.of(
+                        Rollup.adding(2, Pattern.compile("added")),
+                        Rollup.replacing(3, Pattern.compile("replaced"))),
+                factory,
+                AccumulatorSettings.DEFAULT);
+        final ObjIntConsumer<CompletedPeriod> handOff = (period, periods) -> flushed.add(period);
+        final Metrics baseMetrics = Mockito.mock(Metrics.class);
+        final PeriodAccumulator completed = new PeriodAccumulator(baseMetrics, factory, AccumulatorSettings.DEFAULT);
+        completed.recordGauge("added", 1L);
+        completed.recordGauge("replaced", 2L);
+        completed.recordGauge("base", 3L);
+
+        rollups.rollUp(completed, handOff);
+        completed.flush();
+        Mockito.verify(baseMetrics).setGauge("added", 1L);
+        Mockito.verify(baseMetrics).setGauge("base", 3L);
+        Mockito.verify(baseMetrics, Mockito.never()).setGauge("replaced", 2L);
+
+        rollups.close(handOff);
+        flushed.forEach(CompletedPeriod::flush);
+        Mockito.verify(rollupMetrics).setGauge("added", 1L);
+        Mockito.verify(otherMetrics).setGauge("replaced", 2L);
+        Mockito.verify(rollupMetrics, Mockito.never()).setGauge("base", 3L);
+        Mockito.verify(otherMetrics, Mockito.never()).setGauge("base", 3L);
+    }
+
+    @Test
+    public void testCloseDiscardsPeriodsWithoutBasePeriods() {
+        final MetricsFactory factory = Mockito.mock(MetricsFactory.class);
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        Mockito.when(factory.create()).thenReturn(metrics);
+        final Rollups rollups = new Rollups(
+                ImmutableList.of(Rollup.adding(2, Pattern.compile("gauge"))),
+                factory,
+                AccumulatorSettings.DEFAULT);
+        @SuppressWarnings("unchecked")
+        final ObjIntConsumer<CompletedPeriod> handOff = Mockito.mock(ObjIntConsumer.class);
+
+        rollups.close(handOff);
+        Mockito.verifyNoInteractions(handOff);
+        Mockito.verify(metrics).close();
+        Mockito.verifyNoMoreInteractions(metrics);
+    }
+
+    private static PeriodAccumulator completed(final String name, final long value) {
+        final PeriodAccumulator completed = new PeriodAccumulator(
+                Mockito.mock(Metrics.class),
+                Mockito.mock(MetricsFactory.class),
+                AccumulatorSettings.DEFAULT);
+        completed.recordGauge(name, value);
+        return completed;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Tests for the {@link SampleArena} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class SampleArenaTest {
+
+    @Test
+    public void testReleasedMemoryIsReused() {
+        final SampleArena arena = new SampleArena(SampleArena.DEFAULT_RETAINED_BYTES_LIMIT);
+        final ByteBuffer small = arena.acquire(SampleBuffer.INITIAL_CHUNK_SIZE);
+        final ByteBuffer large = arena.acquire(SampleBuffer.MAXIMUM_CHUNK_SIZE);
+        Assert.assertTrue(small.isDirect());
+        Assert.assertEquals(ByteOrder.nativeOrder(), small.order());
+        Assert.assertEquals(SampleBuffer.INITIAL_CHUNK_SIZE * Long.BYTES, small.capacity());
+        Assert.assertEquals(SampleBuffer.MAXIMUM_CHUNK_SIZE * Long.BYTES, large.capacity());
+
+        arena.release(small);
+        arena.release(large);
+        Assert.assertEquals(small.capacity() + large.capacity(), arena.getRetainedBytes());
+        Assert.assertSame(large, arena.acquire(SampleBuffer.MAXIMUM_CHUNK_SIZE));
+        Assert.assertSame(small, arena.acquire(SampleBuffer.INITIAL_CHUNK_SIZE));
+        Assert.assertEquals(0, arena.getRetainedBytes());
+    }
+
+    @Test
+    public void testRetainedMemoryIsLimited() {
+        final SampleArena arena = new SampleArena(SampleBuffer.INITIAL_CHUNK_SIZE * Long.BYTES);
+        final ByteBuffer first = arena.acquire(SampleBuffer.INITIAL_CHUNK_SIZE);
+        final ByteBuffer second = arena.acquire(SampleBuffer.INITIAL_CHUNK_SIZE);
+        arena.release(first);
+        arena.release(second);
+        Assert.assertEquals(first.capacity(), arena.getRetainedBytes());
+        Assert.assertSame(first, arena.acquire(SampleBuffer.INITIAL_CHUNK_SIZE));
+        Assert.assertNotSame(second, arena.acquire(SampleBuffer.INITIAL_CHUNK_SIZE));
+    }
+}
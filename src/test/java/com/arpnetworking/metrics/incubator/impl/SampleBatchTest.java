@@ -0,0 +1,187 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.Counter;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.incubator.MetricKey;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Answers;
+import org.mockito.Mockito;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Tests for the {@link SampleBatch} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class SampleBatchTest {
+
+    @Test
+    public void testWritesToMetrics() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final Counter counter = Mockito.mock(Counter.class);
+        Mockito.when(metrics.createCounter("counter")).thenReturn(counter);
+        final SampleBatch batch = new SampleBatch(b -> b.writeTo(new DimensionedMetrics(metrics, METRICS_FACTORY)));
+
+        batch.counter("counter", 2)
+                .timer("timer", 3, Optional.of(TimeUnit.SECONDS))
+                .timer("unitless", 4, Optional.empty())
+                .gauge("double", 1.5)
+                .gauge("long", 5L)
+                .record();
+        Mockito.verify(counter).increment(2);
+        Mockito.verify(metrics).setTimer("timer", 3, TimeUnit.SECONDS);
+        Mockito.verify(metrics).setTimer("unitless", 4, null);
+        Mockito.verify(metrics).setGauge("double", 1.5);
+        Mockito.verify(metrics).setGauge("long", 5L);
+    }
+
+    @Test
+    public void testWritesToAccumulator() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final Counter counter = Mockito.mock(Counter.class);
+        Mockito.when(metrics.createCounter("counter")).thenReturn(counter);
+        final PeriodAccumulator accumulator = new PeriodAccumulator(metrics, METRICS_FACTORY, AccumulatorSettings.DEFAULT);
+        final SampleBatch batch = new SampleBatch(b -> b.writeTo(accumulator));
+
+        batch.counter("counter", 2)
+                .timer("timer", 3, Optional.of(TimeUnit.SECONDS))
+                .timer("unitless", 4, Optional.empty())
+                .gauge("double", 1.5)
+                .gauge("long", 5L)
+                .record();
+        accumulator.drain();
+        Mockito.verify(counter).increment(2);
+        Mockito.verify(metrics).setTimer("timer", TimeUnit.SECONDS.toNanos(3), TimeUnit.NANOSECONDS);
+        Mockito.verify(metrics).setTimer("unitless", 4, null);
+        Mockito.verify(metrics).setGauge("double", 1.5);
+        Mockito.verify(metrics).setGauge("long", 5L);
+    }
+
+    @Test
+    public void testGrowsAndIsReusable() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final AtomicInteger recorded = new AtomicInteger();
+        final DimensionedMetrics dimensionedMetrics = new DimensionedMetrics(metrics, METRICS_FACTORY);
+        final SampleBatch batch = new SampleBatch(b -> {
+            recorded.addAndGet(b.size());
+            b.writeTo(dimensionedMetrics);
+        });
+        final int count = SampleBatch.INITIAL_CAPACITY * 3;
+        for (int i = 0; i < count; ++i) {
+            batch.gauge("gauge", (long) i);
+        }
+        Assert.assertEquals(count, batch.size());
+        batch.record();
+        Assert.assertEquals(0, batch.size());
+        Assert.assertEquals(count, recorded.get());
+        Mockito.verify(metrics).setGauge("gauge", count - 1L);
+
+        batch.gauge("gauge", -1L).record();
+        Assert.assertEquals(count + 1, recorded.get());
+        Mockito.verify(metrics).setGauge("gauge", -1L);
+    }
+
+    @Test
+    public void testEmptyBatchIsNotRecorded() {
+        @SuppressWarnings("unchecked")
+        final Consumer<SampleBatch> recorder = Mockito.mock(Consumer.class);
+        new SampleBatch(recorder).record();
+        Mockito.verifyNoInteractions(recorder);
+    }
+
+    @Test
+    public void testEmptiedWhenRecordingFails() {
+        final SampleBatch batch = new SampleBatch(b -> {
+            throw new IllegalStateException();
+        });
+        batch.counter("counter", 1);
+        try {
+            batch.record();
+            Assert.fail("Expected exception");
+        } catch (final IllegalStateException expected) {
+            Assert.assertEquals(0, batch.size());
+        }
+    }
+
+    @Test
+    public void testWritesKeysToMetrics() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final Metrics dimensionMetrics = Mockito.mock(Metrics.class);
+        final Counter counter = Mockito.mock(Counter.class);
+        Mockito.when(dimensionMetrics.createCounter("counter")).thenReturn(counter);
+        final MetricsFactory factory = Mockito.mock(MetricsFactory.class);
+        Mockito.when(factory.create()).thenReturn(dimensionMetrics);
+        final Map<String, String> tags = ImmutableMap.of("host", "a");
+        final SampleBatch batch = new SampleBatch(b -> b.writeTo(new DimensionedMetrics(metrics, factory)));
+
+        batch.counter(MetricKey.of("counter", tags), 2)
+                .timer(MetricKey.of("timer", tags), 3, Optional.of(TimeUnit.SECONDS))
+                .gauge(MetricKey.of("double", tags), 1.5)
+                .gauge(MetricKey.of("long"), 5L)
+                .gauge("name", 6L)
+                .record();
+        Mockito.verify(factory).create();
+        Mockito.verify(counter).increment(2);
+        Mockito.verify(dimensionMetrics).setTimer("timer", 3, TimeUnit.SECONDS);
+        Mockito.verify(dimensionMetrics).setGauge("double", 1.5);
+        Mockito.verify(metrics).setGauge("long", 5L);
+        Mockito.verify(metrics).setGauge("name", 6L);
+    }
+
+    @Test
+    public void testWritesKeysToAccumulator() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final Metrics dimensionMetrics = Mockito.mock(Metrics.class);
+        final MetricsFactory factory = Mockito.mock(MetricsFactory.class);
+        Mockito.when(factory.create()).thenReturn(dimensionMetrics);
+        final Map<String, String> tags = ImmutableMap.of("host", "a");
+        final PeriodAccumulator accumulator = new PeriodAccumulator(metrics, factory, AccumulatorSettings.DEFAULT);
+        final SampleBatch batch = new SampleBatch(b -> b.writeTo(accumulator));
+
+        batch.timer(MetricKey.of("timer", tags), 3, Optional.of(TimeUnit.SECONDS))
+                .gauge(MetricKey.of("long", tags), 5L)
+                .gauge("name", 6L)
+                .record();
+        accumulator.flush();
+        Mockito.verify(dimensionMetrics).setTimer("timer", TimeUnit.SECONDS.toNanos(3), TimeUnit.NANOSECONDS);
+        Mockito.verify(dimensionMetrics).setGauge("long", 5L);
+        Mockito.verify(metrics).setGauge("name", 6L);
+    }
+
+    @Test
+    public void testRename() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final SampleBatch batch = new SampleBatch(b -> {
+            b.rename(name -> "renamed/" + name, key -> MetricKey.of("renamed/" + key.getName()));
+            b.writeTo(new DimensionedMetrics(metrics, METRICS_FACTORY));
+        });
+        batch.gauge("gauge", 1.0).gauge(MetricKey.of("key", ImmutableMap.of("host", "a")), 2L).record();
+        Mockito.verify(metrics).setGauge("renamed/gauge", 1.0);
+        Mockito.verify(metrics).setGauge("renamed/key", 2L);
+    }
+
+    private static final MetricsFactory METRICS_FACTORY = Mockito.mock(MetricsFactory.class, Answers.RETURNS_MOCKS);
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tests for the {@link SampleBuffer} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class SampleBufferTest {
+
+    @Test
+    public void testEmpty() {
+        final SampleBuffer buffer = new SampleBuffer();
+        Assert.assertEquals(0, buffer.size());
+        buffer.forEach(value -> Assert.fail("Unexpected sample"));
+    }
+
+    @Test
+    public void testGrowsAcrossChunks() {
+        final SampleBuffer buffer = new SampleBuffer();
+        final int count = SampleBuffer.INITIAL_CHUNK_SIZE + SampleBuffer.MAXIMUM_CHUNK_SIZE * 3;
+        for (int i = 0; i < count; ++i) {
+            buffer.add(i);
+        }
+        Assert.assertEquals(count, buffer.size());
+        final List<Long> values = new ArrayList<>();
+        buffer.forEach(values::add);
+        Assert.assertEquals(count, values.size());
+        for (int i = 0; i < count; ++i) {
+            Assert.assertEquals(i, values.get(i).longValue());
+        }
+    }
+
+    @Test
+    public void testResetKeepsChunks() {
+        final SampleArena arena = Mockito.spy(new SampleArena(SampleArena.DEFAULT_RETAINED_BYTES_LIMIT));
+        final SampleBuffer buffer = new SampleBuffer(arena);
+        buffer.reset();
+        final int count = SampleBuffer.INITIAL_CHUNK_SIZE * 3;
+        for (int i = 0; i < count; ++i) {
+            buffer.add(i);
+        }
+        Mockito.verify(arena, Mockito.atLeastOnce()).acquire(Mockito.anyInt());
+        Mockito.clearInvocations(arena);
+
+        buffer.reset();
+        Assert.assertEquals(0, buffer.size());
+        for (int i = 0; i < count; ++i) {
+            buffer.add(-i);
+        }
+        Mockito.verifyNoInteractions(arena);
+        final List<Long> values = new ArrayList<>();
+        buffer.forEach(values::add);
+        Assert.assertEquals(count, values.size());
+        for (int i = 0; i < count; ++i) {
+            Assert.assertEquals(-i, values.get(i).longValue());
+        }
+    }
+
+    @Test
+    public void testConcurrentWriters() throws InterruptedException {
+        final SampleBuffer buffer = new SampleBuffer();
+        final int threads = 8;
+        final int perThread = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; ++t) {
+            final Thread writer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (final InterruptedException ignored) {
+                }
+                for (int i = 0; i < perThread; ++i) {
+                    buffer.add(1);
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        start.countDown();
+        for (final Thread writer : writers) {
+            writer.join();
+        }
+        Assert.assertEquals(threads * perThread, buffer.size());
+        final long[] sum = new long[1];
+        buffer.forEach(value -> sum[0] += value);
+        Assert.assertEquals(threads * perThread, sum[0]);
+    }
+
+    @Test
+    public void testDirectMemory() {
+        final SampleArena arena = Mockito.spy(new SampleArena(SampleArena.DEFAULT_RETAINED_BYTES_LIMIT));
+        final SampleBuffer buffer = new SampleBuffer(arena);
+        final int count = SampleBuffer.INITIAL_CHUNK_SIZE + SampleBuffer.MAXIMUM_CHUNK_SIZE * 3;
+        for (int i = 0; i < count; ++i) {
+            buffer.add(-i);
+        }
+        Assert.assertEquals(count, buffer.size());
+        final List<Long> values = new ArrayList<>();
+        buffer.forEach(values::add);
+        for (int i = 0; i < count; ++i) {
+            Assert.assertEquals(-i, values.get(i).longValue());
+        }
+        Assert.assertEquals(0, arena.getRetainedBytes());
+
+        buffer.release();
+        // The chunks double from the initial size up to the maximum and the remainder fills two maximum chunks
+        final long chunked = SampleBuffer.MAXIMUM_CHUNK_SIZE * 2 - SampleBuffer.INITIAL_CHUNK_SIZE + SampleBuffer.MAXIMUM_CHUNK_SIZE * 2;
+        Assert.assertEquals(chunked * Long.BYTES, arena.getRetainedBytes());
+        Assert.assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testHeapReleaseClears() {
+        final SampleBuffer buffer = new SampleBuffer();
+        buffer.add(1);
+        buffer.release();
+        Assert.assertEquals(0, buffer.size());
+        buffer.forEach(value -> Assert.fail("Unexpected sample"));
+    }
+
+    @Test
+    public void testChunkLosingRaceIsReleased() {
+        final SampleBuffer.Chunk racing = Mockito.mock(SampleBuffer.Chunk.class);
+        final SampleBuffer.Chunk chunk = new RacingChunk(racing);
+        final SampleBuffer.Chunk next = chunk.next();
+        Assert.assertNotSame(racing, next);
+        Mockito.verify(racing).release();
+    }
+
+    @Test
+    public void testStripeLosingRaceIsReleased() {
+        final SampleArena arena = Mockito.spy(new SampleArena(SampleArena.DEFAULT_RETAINED_BYTES_LIMIT));
+        final SampleBuffer buffer = new SampleBuffer(arena);
+        final AtomicBoolean raced = new AtomicBoolean();
+        Mockito.doAnswer(invocation -> {
+            if (raced.compareAndSet(false, true)) {
+                // Simulate another writer on the same stripe creating it first
+                buffer.add(1);
+            }
+            return invocation.callRealMethod();
+        }).when(arena).acquire(Mockito.anyInt());
+
+        buffer.add(2);
+        Assert.assertEquals(2, buffer.size());
+        Mockito.verify(arena).release(Mockito.any());
+        Assert.assertEquals(SampleBuffer.INITIAL_CHUNK_SIZE * Long.BYTES, arena.getRetainedBytes());
+    }
+
+    @Test
+    public void testChunkNextIsShared() {
+        final SampleBuffer.Chunk chunk = new SampleBuffer.HeapChunk(1);
+        Assert.assertTrue(chunk.tryAdd(1));
+        Assert.assertFalse(chunk.tryAdd(2));
+        Assert.assertEquals(1, chunk.size());
+        final SampleBuffer.Chunk next = chunk.next();
+        Assert.assertSame(next, chunk.next());
+    }
+
+    private static final class RacingChunk extends SampleBuffer.Chunk {
+        private RacingChunk(final SampleBuffer.Chunk racing) {
+            super(1);
+            _racing = racing;
+        }
+
+        @Override
+        long get(final int index) {
+            return 0;
+        }
+
+        @Override
+        void set(final int index, final long value) {
+        }
+
+        @Override
+        SampleBuffer.Chunk create(final int capacity) {
+            if (!_raced) {
+                // Simulate another writer linking its chunk first
+                _raced = true;
+                next();
+                return _racing;
+            }
+            return new SampleBuffer.HeapChunk(capacity);
+        }
+
+        @Override
+        void release() {
+        }
+
+        private final SampleBuffer.Chunk _racing;
+        private boolean _raced;
+    }
+}
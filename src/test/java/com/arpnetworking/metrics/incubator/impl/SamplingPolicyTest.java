@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link SamplingPolicy} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class SamplingPolicyTest {
+
+    @Test
+    public void testFixedRate() {
+        final SamplingPolicy policy = SamplingPolicy.fixedRate(0.5);
+        Assert.assertEquals("FixedRate{rate=0.5}", policy.toString());
+        final Sampler sampler = policy.createSampler();
+        Assert.assertEquals(FixedRateSampler.class, sampler.getClass());
+        Assert.assertEquals(0.5, ((FixedRateSampler) sampler).getRate(), 0.0);
+        Assert.assertNotSame(sampler, policy.createSampler());
+    }
+
+    @Test
+    public void testReservoir() {
+        final SamplingPolicy policy = SamplingPolicy.reservoir(10);
+        Assert.assertEquals("Reservoir{size=10}", policy.toString());
+        Assert.assertEquals(ReservoirSampler.class, policy.createSampler().getClass());
+    }
+
+    @Test
+    public void testAdaptive() {
+        final SamplingPolicy policy = SamplingPolicy.adaptive(100);
+        Assert.assertEquals("Adaptive{targetSamples=100}", policy.toString());
+        final Sampler sampler = policy.createSampler();
+        Assert.assertEquals(AdaptiveRateSampler.class, sampler.getClass());
+        Assert.assertEquals(1.0, ((AdaptiveRateSampler) sampler).getRate(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsZeroRate() {
+        SamplingPolicy.fixedRate(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsRateAboveOne() {
+        SamplingPolicy.fixedRate(1.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsReservoirTooSmall() {
+        SamplingPolicy.reservoir(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsTargetSamplesTooSmall() {
+        SamplingPolicy.adaptive(0);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the {@link SelfInstrumentation} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class SelfInstrumentationTest {
+
+    @Test
+    public void testMeasurementsRecordedAndKept() {
+        final SelfInstrumentation instrumentation = new SelfInstrumentation();
+        final PeriodRecorder recorder = Mockito.mock(PeriodRecorder.class);
+        final PeriodicMetricsStats initial = instrumentation.getStats();
+        Assert.assertEquals(Duration.ZERO, initial.getRunDuration());
+        Assert.assertEquals(Duration.ZERO, initial.getFlushDuration());
+        Assert.assertEquals(0, initial.getSamples());
+
+        instrumentation.sample(1);
+        instrumentation.sample(1);
+        instrumentation.lockWait(5);
+        instrumentation.lockWait(3);
+        instrumentation.rotated(recorder);
+        instrumentation.runCompleted(7, recorder);
+        instrumentation.flushCompleted(11, recorder);
+        Mockito.verify(recorder).recordCounter(SelfInstrumentation.SAMPLES_METRIC, 2);
+        Mockito.verify(recorder).recordTimer(SelfInstrumentation.LOCK_WAIT_METRIC, 8, TimeUnit.NANOSECONDS);
+        Mockito.verify(recorder).recordTimer(SelfInstrumentation.MAXIMUM_LOCK_WAIT_METRIC, 5, TimeUnit.NANOSECONDS);
+        Mockito.verify(recorder).recordTimer(SelfInstrumentation.RUN_DURATION_METRIC, 7, TimeUnit.NANOSECONDS);
+        Mockito.verify(recorder).recordTimer(SelfInstrumentation.FLUSH_DURATION_METRIC, 11, TimeUnit.NANOSECONDS);
+
+        final PeriodicMetricsStats stats = instrumentation.getStats();
+        Assert.assertEquals(Duration.ofNanos(7), stats.getRunDuration());
+        Assert.assertEquals(Duration.ofNanos(11), stats.getFlushDuration());
+        Assert.assertEquals(Duration.ofNanos(8), stats.getLockWait());
+        Assert.assertEquals(Duration.ofNanos(5), stats.getMaximumLockWait());
+        Assert.assertEquals(2, stats.getSamples());
+        Assert.assertEquals(
+                "PeriodicMetricsStats{RunDuration=PT0.000000007S, FlushDuration=PT0.000000011S, LockWait=PT0.000000008S, "
+                        + "MaximumLockWait=PT0.000000005S, Samples=2}",
+                stats.toString());
+
+        instrumentation.rotated(recorder);
+        Assert.assertEquals(0, instrumentation.getStats().getSamples());
+        Assert.assertEquals(Duration.ZERO, instrumentation.getStats().getMaximumLockWait());
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.AggregatedData;
+import com.arpnetworking.metrics.Counter;
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.impl.AugmentedHistogram;
+import com.arpnetworking.metrics.impl.TsdMetrics;
+import com.arpnetworking.metrics.impl.TsdMetricsFactory;
+import com.arpnetworking.metrics.incubator.Dimensions;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the {@link SpoolCodec} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class SpoolCodecTest {
+
+    @Test
+    public void testRoundTrip() {
+        final MetricsFactory factory = Mockito.mock(MetricsFactory.class, Answers.RETURNS_MOCKS);
+        final PeriodAccumulator period = new PeriodAccumulator(Mockito.mock(Metrics.class), factory, AccumulatorSettings.DEFAULT);
+        final Dimensions dimensions = Dimensions.of(ImmutableMap.of("host", "a"));
+        period.recordCounter("counter", -3);
+        period.recordTimer("timer", 2, TimeUnit.MICROSECONDS);
+        period.recordTimer("unitless", 5, null);
+        period.recordGauge("double", 6.5);
+        period.recordGauge("long", 7L);
+        period.recordGauge("long", -8L);
+        period.dimension(dimensions).recordGauge("dimensioned", 9L);
+
+        final BinaryEncoder encoder = new BinaryEncoder();
+        SpoolCodec.encode(period, CLOSE_TIME, encoder);
+
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final Metrics dimensionMetrics = Mockito.mock(Metrics.class);
+        final Counter counter = Mockito.mock(Counter.class);
+        Mockito.when(metrics.createCounter("counter")).thenReturn(counter);
+        final MetricsFactory target = Mockito.mock(MetricsFactory.class);
+        Mockito.when(target.create()).thenReturn(metrics, dimensionMetrics);
+        SpoolCodec.decode(encoder.view(), target);
+
+        Mockito.verify(counter).increment(-3);
+        Mockito.verify(metrics).setTimer("timer", 2000, TimeUnit.NANOSECONDS);
+        Mockito.verify(metrics).setTimer("unitless", 5, null);
+        Mockito.verify(metrics).setGauge("double", 6.5);
+        Mockito.verify(metrics).setGauge("long", 7L);
+        Mockito.verify(metrics).setGauge("long", -8L);
+        Mockito.verify(metrics).close();
+        Mockito.verify(dimensionMetrics).addAnnotations(dimensions.getTags());
+        Mockito.verify(dimensionMetrics).setGauge("dimensioned", 9L);
+        Mockito.verify(dimensionMetrics).close();
+        Mockito.verify(metrics, Mockito.never()).addAnnotations(Mockito.any());
+    }
+
+    @Test
+    public void testHistogramRoundTrip() {
+        final AccumulatorSettings settings = new AccumulatorSettings(true, true, LogLinearHistogram.DEFAULT_PRECISION);
+        final PeriodAccumulator period = new PeriodAccumulator(Mockito.mock(Metrics.class), Mockito.mock(MetricsFactory.class), settings);
+        period.recordGauge("gauge", 1.5);
+        period.recordGauge("gauge", 3.0);
+
+        final BinaryEncoder encoder = new BinaryEncoder();
+        SpoolCodec.encode(period, CLOSE_TIME, encoder);
+        final TsdMetrics metrics = Mockito.mock(TsdMetrics.class);
+        final MetricsFactory target = Mockito.mock(MetricsFactory.class);
+        Mockito.when(target.create()).thenReturn(metrics);
+        SpoolCodec.decode(encoder.view(), target);
+
+        final ArgumentCaptor<AggregatedData> captor = ArgumentCaptor.forClass(AggregatedData.class);
+        Mockito.verify(metrics).recordAggregatedData(Mockito.eq("gauge"), captor.capture());
+        final AugmentedHistogram histogram = (AugmentedHistogram) captor.getValue();
+        Assert.assertEquals(4.5, histogram.getSum(), 0.0);
+        Assert.assertEquals(1.5, histogram.getMin(), 0.0);
+        Assert.assertEquals(3.0, histogram.getMax(), 0.0);
+    }
+
+    @Test
+    public void testForwardsPeriodTimes() {
+        final List<Event> events = new ArrayList<>();
+        final MetricsFactory target = new TsdMetricsFactory.Builder()
+                .setServiceName("service")
+                .setClusterName("cluster")
+                .setHostName("host")
+                .setSinks(Collections.singletonList(events::add))
+                .build();
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        Mockito.when(metrics.getOpenTime()).thenReturn(OPEN_TIME);
+        final PeriodAccumulator period = new PeriodAccumulator(metrics, target, AccumulatorSettings.DEFAULT);
+        period.recordGauge("gauge", 1L);
+        period.dimension(Dimensions.of(ImmutableMap.of("host", "a"))).recordGauge("gauge", 2L);
+
+        final BinaryEncoder encoder = new BinaryEncoder();
+        SpoolCodec.encode(period, CLOSE_TIME, encoder);
+        SpoolCodec.decode(encoder.view(), target);
+
+        Assert.assertEquals(2, events.size());
+        for (final Event event : events) {
+            Assert.assertEquals("2017-01-01T00:00:00.000Z", event.getAnnotations().get("_start"));
+            Assert.assertEquals("2017-01-01T00:01:00.000Z", event.getAnnotations().get("_end"));
+        }
+    }
+
+    @Test
+    public void testPeriodWithoutOpenTimeOpensAtClose() {
+        final PeriodAccumulator period = new PeriodAccumulator(
+                Mockito.mock(Metrics.class),
+                Mockito.mock(MetricsFactory.class),
+                AccumulatorSettings.DEFAULT);
+        final BinaryEncoder encoder = new BinaryEncoder();
+        SpoolCodec.encode(period, CLOSE_TIME, encoder);
+
+        final ByteBuffer record = encoder.view();
+        Assert.assertEquals(CLOSE_TIME.getEpochSecond(), BinaryDecoder.getZigZag(record));
+        Assert.assertEquals(0, BinaryDecoder.getVarLong(record));
+        Assert.assertEquals(CLOSE_TIME.getEpochSecond(), BinaryDecoder.getZigZag(record));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownKind() {
+        final BinaryEncoder encoder = new BinaryEncoder();
+        encoder.putZigZag(OPEN_TIME.getEpochSecond());
+        encoder.putVarLong(0);
+        encoder.putZigZag(CLOSE_TIME.getEpochSecond());
+        encoder.putVarLong(0);
+        encoder.putVarLong(0);
+        encoder.putByte(99);
+        encoder.putString("name");
+        SpoolCodec.decode(encoder.view(), Mockito.mock(MetricsFactory.class, Answers.RETURNS_MOCKS));
+    }
+
+    @Test
+    public void testEmptyRecord() {
+        final MetricsFactory target = Mockito.mock(MetricsFactory.class);
+        SpoolCodec.decode(ByteBuffer.allocate(0), target);
+        Mockito.verifyNoInteractions(target);
+    }
+
+    private static final Instant OPEN_TIME = Instant.parse("2017-01-01T00:00:00Z");
+    private static final Instant CLOSE_TIME = Instant.parse("2017-01-01T00:01:00Z");
+}
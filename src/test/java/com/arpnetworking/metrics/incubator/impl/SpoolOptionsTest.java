@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Tests for the {@link SpoolOptions} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class SpoolOptionsTest {
+    @Test
+    public void testDefaults() {
+        final SpoolOptions options = new SpoolOptions.Builder().setDirectory(DIRECTORY).build();
+        Assert.assertEquals(DIRECTORY, options.getDirectory());
+        Assert.assertEquals(16 * 1024 * 1024, options.getSegmentSize());
+        Assert.assertEquals(64, options.getMaximumSegments());
+    }
+
+    @Test
+    public void testValues() {
+        final SpoolOptions options = new SpoolOptions.Builder()
+                .setDirectory(DIRECTORY)
+                .setSegmentSize(4096)
+                .setMaximumSegments(2)
+                .build();
+        Assert.assertEquals(4096, options.getSegmentSize());
+        Assert.assertEquals(2, options.getMaximumSegments());
+        Assert.assertEquals("SpoolOptions{Directory=" + DIRECTORY + ", SegmentSize=4096, MaximumSegments=2}", options.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsMissingDirectory() {
+        new SpoolOptions.Builder().build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @SuppressFBWarnings("NP_NONNULL_PARAM_VIOLATION")
+    public void testRejectsNullSegmentSize() {
+        new SpoolOptions.Builder().setDirectory(DIRECTORY).setSegmentSize(null).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsSmallSegmentSize() {
+        new SpoolOptions.Builder().setDirectory(DIRECTORY).setSegmentSize(4095).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @SuppressFBWarnings("NP_NONNULL_PARAM_VIOLATION")
+    public void testRejectsNullMaximumSegments() {
+        new SpoolOptions.Builder().setDirectory(DIRECTORY).setMaximumSegments(null).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsSingleSegment() {
+        new SpoolOptions.Builder().setDirectory(DIRECTORY).setMaximumSegments(1).build();
+    }
+
+    private static final Path DIRECTORY = Paths.get("spool");
+}
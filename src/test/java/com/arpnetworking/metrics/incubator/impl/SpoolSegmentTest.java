@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Tests for the {@link SpoolSegment} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class SpoolSegmentTest {
+
+    @Test
+    public void testAppendAndRead() throws IOException {
+        final int capacity = SpoolSegment.capacityFor(5 + SpoolSegment.RECORD_HEADER_BYTES + 5);
+        final SpoolSegment segment = SpoolSegment.create(file(), capacity);
+        Assert.assertEquals(SpoolSegment.HEADER_BYTES, segment.getPublished());
+        Assert.assertEquals(SpoolSegment.HEADER_BYTES, segment.getReadOffset());
+        Assert.assertTrue(segment.append(record("first")));
+        Assert.assertTrue(segment.append(record("12345")));
+        Assert.assertFalse(segment.append(record("x")));
+        Assert.assertEquals(capacity - SpoolSegment.RECORD_HEADER_BYTES, segment.getPublished());
+
+        final int offset = SpoolSegment.HEADER_BYTES;
+        Assert.assertEquals("first", string(segment.read(offset)));
+        Assert.assertEquals("12345", string(segment.read(offset + SpoolSegment.RECORD_HEADER_BYTES + 5)));
+        Assert.assertFalse(segment.isSealed());
+        segment.seal();
+        Assert.assertTrue(segment.isSealed());
+    }
+
+    @Test
+    public void testOpenRecoversRecordsAndProgress() throws IOException {
+        final Path file = file();
+        final SpoolSegment segment = SpoolSegment.create(file, 4096);
+        segment.append(record("first"));
+        segment.append(record("second"));
+        final int second = SpoolSegment.HEADER_BYTES + SpoolSegment.RECORD_HEADER_BYTES + 5;
+        segment.commit(second);
+
+        final SpoolSegment reopened = SpoolSegment.open(file);
+        Assert.assertTrue(reopened.isSealed());
+        Assert.assertEquals(second, reopened.getReadOffset());
+        Assert.assertEquals(segment.getPublished(), reopened.getPublished());
+        Assert.assertEquals("second", string(reopened.read(second)));
+
+        final SpoolSegment sealed = SpoolSegment.open(file);
+        Assert.assertEquals(segment.getPublished(), sealed.getPublished());
+        Assert.assertEquals(file, sealed.getFile());
+        sealed.delete();
+        Assert.assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void testOpenDiscardsTornRecord() throws IOException {
+        final Path file = file();
+        final SpoolSegment segment = SpoolSegment.create(file, 4096);
+        segment.append(record("first"));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            // NOTE: A length running past the end of the segment is a torn record
+            final ByteBuffer length = ByteBuffer.allocate(Integer.BYTES).putInt(0, 1 << 20);
+            channel.write(length, segment.getPublished());
+        }
+        final SpoolSegment reopened = SpoolSegment.open(file);
+        Assert.assertEquals(segment.getPublished(), reopened.getPublished());
+    }
+
+    @Test
+    public void testOpenClampsReadOffset() throws IOException {
+        final Path file = file();
+        final SpoolSegment segment = SpoolSegment.create(file, 4096);
+        segment.commit(1000);
+        Assert.assertEquals(SpoolSegment.HEADER_BYTES, SpoolSegment.open(file).getReadOffset());
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenTooSmall() throws IOException {
+        final Path file = file();
+        Files.write(file, new byte[4]);
+        SpoolSegment.open(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenTooLarge() throws IOException {
+        final Path file = file();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(1), 1L + Integer.MAX_VALUE);
+        }
+        SpoolSegment.open(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenBadMagic() throws IOException {
+        final Path file = file();
+        Files.write(file, new byte[64]);
+        SpoolSegment.open(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenBadVersion() throws IOException {
+        header(1, 64);
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenBadReadOffset() throws IOException {
+        header(2, 0);
+    }
+
+    private void header(final int corruptInt, final int value) throws IOException {
+        final Path file = file();
+        SpoolSegment.create(file, 64);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, value), (long) corruptInt * Integer.BYTES);
+        }
+        SpoolSegment.open(file);
+    }
+
+    private Path file() throws IOException {
+        return _folder.getRoot().toPath().resolve("segment-" + ++_files + ".spool");
+    }
+
+    private static ByteBuffer record(final String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String string(final ByteBuffer buffer) {
+        return StandardCharsets.UTF_8.decode(buffer).toString();
+    }
+
+    @Rule
+    public final TemporaryFolder _folder = new TemporaryFolder();
+    private int _files;
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.incubator.PeriodicCounter;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Tests for the {@link SpoolStage} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class SpoolStageTest {
+
+    @Before
+    public void setUp() throws IOException {
+        _directory = _folder.getRoot().toPath().resolve("spool");
+        _factory = Mockito.mock(MetricsFactory.class);
+        _metrics = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(_metrics);
+        _overflows = Mockito.mock(PeriodicCounter.class);
+        _executor = Mockito.mock(ExecutorService.class);
+    }
+
+    @Test
+    public void testForwardsSubmittedPeriods() {
+        final SpoolStage stage = stage(4096, 2);
+        stage.submit(period("gauge", 1L, 1));
+        Mockito.verifyNoInteractions(_metrics);
+
+        stage.submit(period("gauge", 2L, 1));
+        forward().run();
+        Mockito.verify(_metrics).setGauge("gauge", 1L);
+        Mockito.verify(_metrics).setGauge("gauge", 2L);
+        Mockito.verify(_metrics, Mockito.times(2)).close();
+        Assert.assertEquals(1, stage.getSegmentCount());
+
+        forward().run();
+        Mockito.verify(_metrics, Mockito.times(2)).close();
+        Mockito.verifyNoInteractions(_overflows);
+    }
+
+    @Test
+    public void testForwardsSpooledPeriodsAfterRestart() throws IOException {
+        final SpoolStage stage = stage(4096, 4);
+        stage.submit(period("gauge", 1L, 1));
+        stage.submit(period("large", Long.MAX_VALUE, 500));
+        stage.close();
+        Assert.assertEquals(2, stage.getSegmentCount());
+
+        final ExecutorService executor = Mockito.mock(ExecutorService.class);
+        final SpoolStage restarted = new SpoolStage(options(4096, 4), _factory, _overflows, executor);
+        final ArgumentCaptor<Runnable> forward = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(executor).execute(forward.capture());
+        forward.getValue().run();
+        Mockito.verify(_metrics).setGauge("gauge", 1L);
+        Mockito.verify(_metrics, Mockito.times(500)).setGauge("large", Long.MAX_VALUE);
+        Assert.assertEquals(0, restarted.getSegmentCount());
+        try (Stream<Path> files = Files.list(_directory)) {
+            Assert.assertEquals(0, files.count());
+        }
+
+        restarted.submit(period("gauge", 3L, 1));
+        Assert.assertTrue(Files.exists(_directory.resolve(String.format("%020d.spool", 3))));
+    }
+
+    @Test
+    public void testDiscardsWhenFull() {
+        final SpoolStage stage = stage(4096, 2);
+        stage.submit(period("large", Long.MAX_VALUE, 500));
+        stage.submit(period("large", Long.MAX_VALUE, 500));
+        Mockito.verifyNoInteractions(_overflows);
+        stage.submit(period("large", Long.MAX_VALUE, 500));
+        Mockito.verify(_overflows).add(1);
+        Assert.assertEquals(2, stage.getSegmentCount());
+
+        forward().run();
+        Assert.assertEquals(0, stage.getSegmentCount());
+        stage.submit(period("gauge", 1L, 1));
+        Mockito.verify(_overflows).add(1);
+    }
+
+    @Test
+    public void testSkipsMalformedAndUnreadableSegments() throws IOException {
+        Files.createDirectories(_directory);
+        final SpoolSegment malformed = SpoolSegment.create(_directory.resolve(String.format("%020d.spool", 7)), 4096);
+        malformed.append(ByteBuffer.wrap(new byte[] {0, 99, 0}));
+        Files.write(_directory.resolve(String.format("%020d.spool", 9)), new byte[64]);
+        Files.write(_directory.resolve("other.spool"), new byte[64]);
+
+        final ExecutorService executor = Mockito.mock(ExecutorService.class);
+        final SpoolStage stage = new SpoolStage(options(4096, 4), _factory, _overflows, executor);
+        Assert.assertEquals(1, stage.getSegmentCount());
+        final ArgumentCaptor<Runnable> forward = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(executor).execute(forward.capture());
+        forward.getValue().run();
+        Assert.assertEquals(0, stage.getSegmentCount());
+        Assert.assertFalse(Files.exists(malformed.getFile()));
+
+        stage.submit(period("gauge", 1L, 1));
+        Assert.assertTrue(Files.exists(_directory.resolve(String.format("%020d.spool", 10))));
+    }
+
+    @Test
+    public void testSegmentCannotBeCreated() throws IOException {
+        final SpoolStage stage = stage(4096, 2);
+        Files.delete(_directory);
+        stage.submit(period("gauge", 1L, 1));
+        Mockito.verify(_overflows).add(1);
+        Assert.assertEquals(0, stage.getSegmentCount());
+    }
+
+    @Test
+    public void testSegmentCannotBeDeleted() throws IOException {
+        final SpoolStage stage = stage(4096, 4);
+        stage.submit(period("gauge", 1L, 1));
+        final Path first = _directory.resolve(String.format("%020d.spool", 1));
+        Files.delete(first);
+        Files.createDirectories(first.resolve("blocked"));
+        stage.submit(period("large", Long.MAX_VALUE, 500));
+
+        forward().run();
+        Mockito.verify(_metrics).setGauge("gauge", 1L);
+        Assert.assertEquals(1, stage.getSegmentCount());
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void testDirectoryCannotBeCreated() throws IOException {
+        Files.write(_directory, new byte[1]);
+        stage(4096, 2);
+    }
+
+    @Test
+    public void testCloseInterrupted() throws InterruptedException {
+        final SpoolStage stage = stage(4096, 2);
+        Mockito.when(_executor.awaitTermination(Mockito.anyLong(), Mockito.any())).thenThrow(new InterruptedException());
+        stage.close();
+        Assert.assertTrue(Thread.interrupted());
+        Mockito.verify(_executor).shutdown();
+        Mockito.verify(_executor).awaitTermination(60, TimeUnit.SECONDS);
+    }
+
+    private SpoolStage stage(final int segmentSize, final int maximumSegments) {
+        return new SpoolStage(options(segmentSize, maximumSegments), _factory, _overflows, _executor);
+    }
+
+    private SpoolOptions options(final int segmentSize, final int maximumSegments) {
+        return new SpoolOptions.Builder()
+                .setDirectory(_directory)
+                .setSegmentSize(segmentSize)
+                .setMaximumSegments(maximumSegments)
+                .build();
+    }
+
+    private Runnable forward() {
+        final ArgumentCaptor<Runnable> forward = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(_executor, Mockito.atLeastOnce()).execute(forward.capture());
+        return forward.getValue();
+    }
+
+    private static PeriodAccumulator period(final String name, final long value, final int samples) {
+        final PeriodAccumulator period = new PeriodAccumulator(
+                Mockito.mock(Metrics.class),
+                Mockito.mock(MetricsFactory.class),
+                AccumulatorSettings.DEFAULT);
+        for (int i = 0; i < samples; ++i) {
+            period.recordGauge(name, value);
+        }
+        return period;
+    }
+
+    @Rule
+    public final TemporaryFolder _folder = new TemporaryFolder();
+    private Path _directory;
+    private MetricsFactory _factory;
+    private Metrics _metrics;
+    private PeriodicCounter _overflows;
+    private ExecutorService _executor;
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.AggregatedData;
+import com.arpnetworking.metrics.Counter;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.impl.AugmentedHistogram;
+import com.arpnetworking.metrics.impl.TsdMetrics;
+import com.arpnetworking.metrics.incubator.MetricKey;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests for the {@link StripedPeriodRecorder} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class StripedPeriodRecorderTest {
+
+    @Test
+    public void testRecordsAreDrainedOnRotate() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final Counter counter = Mockito.mock(Counter.class);
+        Mockito.when(metrics.createCounter("counter")).thenReturn(counter);
+        final Metrics next = Mockito.mock(Metrics.class);
+        final StripedPeriodRecorder recorder = new StripedPeriodRecorder(metrics, METRICS_FACTORY, AccumulatorSettings.DEFAULT);
+
+        recorder.recordCounter("counter", 2);
+        recorder.recordCounter("counter", 3);
+        recorder.recordTimer("timer", 5, TimeUnit.MILLISECONDS);
+        recorder.recordTimer("unitless", 7, null);
+        recorder.recordGauge("double", 1.5);
+        recorder.recordGauge("long", 9L);
+        Mockito.verifyNoInteractions(metrics);
+
+        recorder.rotate(next).flush();
+        Mockito.verify(metrics).createCounter("counter");
+        Mockito.verify(counter).increment(5);
+        Mockito.verify(metrics).setTimer("timer", TimeUnit.MILLISECONDS.toNanos(5), TimeUnit.NANOSECONDS);
+        Mockito.verify(metrics).setTimer("unitless", 7, null);
+        Mockito.verify(metrics).setGauge("double", 1.5);
+        Mockito.verify(metrics).setGauge("long", 9L);
+        Mockito.verify(metrics).close();
+        Mockito.verifyNoMoreInteractions(metrics);
+
+        final CompletedPeriod completed = recorder.rotate(Mockito.mock(Metrics.class));
+        Mockito.verifyNoInteractions(next);
+        completed.flush();
+        Mockito.verify(next).close();
+        Mockito.verifyNoMoreInteractions(next);
+    }
+
+    @Test(timeout = 10000)
+    public void testWriterRetriesAfterConcurrentRotation() {
+        final Metrics stale = Mockito.mock(Metrics.class);
+        final Metrics fresh = Mockito.mock(Metrics.class);
+        final PeriodAccumulator freshAccumulator = new PeriodAccumulator(fresh, METRICS_FACTORY, AccumulatorSettings.DEFAULT);
+        final PeriodAccumulator staleAccumulator = Mockito.spy(
+                new PeriodAccumulator(stale, METRICS_FACTORY, AccumulatorSettings.DEFAULT));
+        final AtomicReference<PeriodAccumulator> current = new AtomicReference<>(staleAccumulator);
+        // Simulate a rotation racing with the writer between its first read and its re-check
+        Mockito.doAnswer(invocation -> {
+            current.set(freshAccumulator);
+            return invocation.callRealMethod();
+        }).when(staleAccumulator).enter(Mockito.anyInt());
+        final StripedPeriodRecorder recorder = new StripedPeriodRecorder(current, METRICS_FACTORY, AccumulatorSettings.DEFAULT);
+        recorder.recordGauge("gauge", 1L);
+
+        staleAccumulator.awaitQuiescence();
+        freshAccumulator.awaitQuiescence();
+        staleAccumulator.drain();
+        Mockito.verifyNoInteractions(stale);
+        freshAccumulator.drain();
+        Mockito.verify(fresh).setGauge("gauge", 1L);
+    }
+
+    @Test
+    public void testNoSamplesLostAcrossConcurrentRotations() throws InterruptedException {
+        final AtomicLong total = new AtomicLong();
+        final StripedPeriodRecorder recorder = new StripedPeriodRecorder(
+                createSummingMetrics(total),
+                METRICS_FACTORY,
+                AccumulatorSettings.DEFAULT);
+        final int threads = 4;
+        final int perThread = 20000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; ++t) {
+            final Thread writer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (final InterruptedException ignored) {
+                }
+                for (int i = 0; i < perThread; ++i) {
+                    recorder.recordCounter("counter", 1);
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        start.countDown();
+        boolean running = true;
+        while (running) {
+            recorder.rotate(createSummingMetrics(total)).flush();
+            running = false;
+            for (final Thread writer : writers) {
+                running |= writer.isAlive();
+            }
+        }
+        recorder.rotate(createSummingMetrics(total)).flush();
+        Assert.assertEquals(threads * perThread, total.get());
+    }
+
+    @Test
+    public void testBatchesAreDrainedOnRotate() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final StripedPeriodRecorder recorder = new StripedPeriodRecorder(metrics, METRICS_FACTORY, AccumulatorSettings.DEFAULT);
+
+        recorder.recordTimers("timer", new long[]{1, 2}, TimeUnit.MICROSECONDS);
+        recorder.recordTimers("unitless", new long[]{3}, null);
+        recorder.recordTimers("empty", new long[0], null);
+        final SampleBatch batch = new SampleBatch(recorder::record);
+        batch.gauge("gauge", 4L).record();
+        Mockito.verifyNoInteractions(metrics);
+
+        recorder.rotate(Mockito.mock(Metrics.class)).flush();
+        Mockito.verify(metrics).setTimer("timer", 1000, TimeUnit.NANOSECONDS);
+        Mockito.verify(metrics).setTimer("timer", 2000, TimeUnit.NANOSECONDS);
+        Mockito.verify(metrics).setTimer("unitless", 3, null);
+        Mockito.verify(metrics).setGauge("gauge", 4L);
+        Mockito.verify(metrics).close();
+        Mockito.verifyNoMoreInteractions(metrics);
+    }
+
+    @Test
+    public void testHistogramsRecordedAsAggregatedData() {
+        final TsdMetrics metrics = Mockito.mock(TsdMetrics.class);
+        final StripedPeriodRecorder recorder = new StripedPeriodRecorder(
+                metrics,
+                METRICS_FACTORY,
+                new AccumulatorSettings(true, true, LogLinearHistogram.DEFAULT_PRECISION));
+
+        recorder.recordTimer("timer", 1000, TimeUnit.MILLISECONDS);
+        recorder.recordTimers("timer", new long[]{3}, TimeUnit.SECONDS);
+        recorder.recordTimers("unitless", new long[]{5}, null);
+        recorder.recordGauge("double", 1.5);
+        recorder.recordGauge("long", 2L);
+        recorder.rotate(Mockito.mock(Metrics.class)).flush();
+
+        final ArgumentCaptor<AggregatedData> captor = ArgumentCaptor.forClass(AggregatedData.class);
+        Mockito.verify(metrics).recordAggregatedData(Mockito.eq("timer"), captor.capture());
+        final AugmentedHistogram timer = (AugmentedHistogram) captor.getValue();
+        Assert.assertEquals(1.0, timer.getMin(), 0.0);
+        Assert.assertEquals(3.0, timer.getMax(), 0.0);
+        Assert.assertEquals(4.0, timer.getSum(), 0.0);
+        Mockito.verify(metrics).setTimer("unitless", 5, null);
+        Mockito.verify(metrics).recordAggregatedData(Mockito.eq("double"), Mockito.any());
+        Mockito.verify(metrics).recordAggregatedData(Mockito.eq("long"), Mockito.any());
+        Mockito.verify(metrics).close();
+        Mockito.verifyNoMoreInteractions(metrics);
+    }
+
+    @Test
+    public void testHistogramsRecordedAsStatisticsWithoutAggregatedDataSupport() {
+        final Metrics metrics = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        final Counter counter = Mockito.mock(Counter.class);
+        Mockito.when(metrics.createCounter("timer/count")).thenReturn(counter);
+        final StripedPeriodRecorder recorder = new StripedPeriodRecorder(
+                metrics,
+                METRICS_FACTORY,
+                new AccumulatorSettings(true, false, LogLinearHistogram.DEFAULT_PRECISION));
+
+        recorder.recordTimer("timer", 2, TimeUnit.SECONDS);
+        recorder.recordTimer("timer", 6, TimeUnit.SECONDS);
+        recorder.recordTimer("dropped", 1, TimeUnit.NANOSECONDS);
+        recorder.recordGauge("gauge", 1.5);
+        recorder.rotate(Mockito.mock(Metrics.class)).flush();
+
+        Mockito.verify(counter).increment(2);
+        Mockito.verify(metrics).setGauge("timer/min", 2.0);
+        Mockito.verify(metrics).setGauge("timer/max", 6.0);
+        Mockito.verify(metrics).setGauge("timer/sum", 8.0);
+        Mockito.verify(metrics).setGauge("gauge", 1.5);
+    }
+
+    @Test
+    public void testEmptyHistogramIsNotRecorded() {
+        final TsdMetrics metrics = Mockito.mock(TsdMetrics.class);
+        final StripedPeriodRecorder recorder = new StripedPeriodRecorder(
+                metrics,
+                METRICS_FACTORY,
+                new AccumulatorSettings(false, true, LogLinearHistogram.DEFAULT_PRECISION));
+
+        recorder.recordGauge("gauge", Double.NaN);
+        recorder.rotate(Mockito.mock(Metrics.class)).flush();
+        Mockito.verify(metrics).close();
+        Mockito.verifyNoMoreInteractions(metrics);
+    }
+
+    @Test
+    public void testDimensionsAreDrainedIntoTheirMetrics() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final Metrics dimensionMetrics = Mockito.mock(Metrics.class);
+        final Counter counter = Mockito.mock(Counter.class);
+        Mockito.when(dimensionMetrics.createCounter("counter")).thenReturn(counter);
+        final MetricsFactory factory = Mockito.mock(MetricsFactory.class);
+        Mockito.when(factory.create()).thenReturn(dimensionMetrics);
+        final Map<String, String> tags = ImmutableMap.of("host", "a");
+        final StripedPeriodRecorder recorder = new StripedPeriodRecorder(metrics, factory, AccumulatorSettings.DEFAULT);
+
+        recorder.recordCounter(MetricKey.of("counter", tags), 2);
+        recorder.recordTimer(MetricKey.of("timer", tags), 3, TimeUnit.NANOSECONDS);
+        recorder.recordGauge(MetricKey.of("double", tags), 1.5);
+        recorder.recordGauge(MetricKey.of("long"), 4L);
+        Mockito.verify(dimensionMetrics).addAnnotations(tags);
+        Mockito.verifyNoMoreInteractions(dimensionMetrics);
+
+        recorder.rotate(Mockito.mock(Metrics.class)).flush();
+        Mockito.verify(factory).create();
+        Mockito.verify(counter).increment(2);
+        Mockito.verify(dimensionMetrics).setTimer("timer", 3, TimeUnit.NANOSECONDS);
+        Mockito.verify(dimensionMetrics).setGauge("double", 1.5);
+        Mockito.verify(dimensionMetrics).close();
+        Mockito.verify(metrics).setGauge("long", 4L);
+        Mockito.verify(metrics).close();
+    }
+
+    @Test
+    public void testOffHeapSamplesAreReleasedOnFlush() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final SampleArena arena = new SampleArena(SampleArena.DEFAULT_RETAINED_BYTES_LIMIT);
+        final StripedPeriodRecorder recorder = new StripedPeriodRecorder(
+                metrics,
+                METRICS_FACTORY,
+                new AccumulatorSettings(false, false, LogLinearHistogram.DEFAULT_PRECISION, arena));
+
+        recorder.recordTimer("timer", 3, TimeUnit.NANOSECONDS);
+        recorder.recordTimer("unitless", 5, null);
+        recorder.recordGauge("double", 1.5);
+        recorder.recordGauge("long", 2L);
+        Assert.assertEquals(0, arena.getRetainedBytes());
+        recorder.rotate(Mockito.mock(Metrics.class)).flush();
+
+        Mockito.verify(metrics).setTimer("timer", 3, TimeUnit.NANOSECONDS);
+        Mockito.verify(metrics).setTimer("unitless", 5, null);
+        Mockito.verify(metrics).setGauge("double", 1.5);
+        Mockito.verify(metrics).setGauge("long", 2L);
+        Assert.assertEquals(4L * SampleBuffer.INITIAL_CHUNK_SIZE * Long.BYTES, arena.getRetainedBytes());
+    }
+
+    private static Metrics createSummingMetrics(final AtomicLong total) {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final Counter counter = Mockito.mock(Counter.class);
+        Mockito.doAnswer(invocation -> total.addAndGet(invocation.getArgument(0))).when(counter).increment(Mockito.anyLong());
+        Mockito.when(metrics.createCounter(Mockito.anyString())).thenReturn(counter);
+        return metrics;
+    }
+
+    private static final MetricsFactory METRICS_FACTORY = Mockito.mock(MetricsFactory.class, Answers.RETURNS_MOCKS);
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Tests for the {@link SuppliedGauges} class.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+public class SuppliedGaugesTest {
+
+    @Test
+    public void testReadsEveryGauge() {
+        final SuppliedGauges gauges = new SuppliedGauges();
+        final AtomicLong owner = new AtomicLong(3);
+        gauges.register("long", () -> 1L);
+        gauges.register("double", () -> 1.5);
+        gauges.register("weak_long", owner, AtomicLong::get);
+        gauges.register("weak_double", owner, AtomicLong::doubleValue);
+
+        final CompletedPeriod period = Mockito.mock(CompletedPeriod.class);
+        gauges.drainTo(period);
+        Mockito.verify(period).recordGauge("long", 1L);
+        Mockito.verify(period).recordGauge("double", 1.5);
+        Mockito.verify(period).recordGauge("weak_long", 3.0);
+        Mockito.verify(period).recordGauge("weak_double", 3.0);
+        Mockito.verifyNoMoreInteractions(period);
+        Assert.assertEquals(4, gauges.size());
+    }
+
+    @Test
+    public void testRegisteringAgainReplaces() {
+        final SuppliedGauges gauges = new SuppliedGauges();
+        gauges.register("gauge", () -> 1L);
+        gauges.register("other", () -> 2L);
+        gauges.register("gauge", () -> 3L);
+        Assert.assertEquals(2, gauges.size());
+
+        final CompletedPeriod period = Mockito.mock(CompletedPeriod.class);
+        gauges.drainTo(period);
+        Mockito.verify(period).recordGauge("gauge", 3L);
+        Mockito.verify(period).recordGauge("other", 2L);
+        Mockito.verifyNoMoreInteractions(period);
+    }
+
+    @Test
+    public void testFailingSupplierDoesNotStopReading() {
+        final SuppliedGauges gauges = new SuppliedGauges();
+        gauges.register("failing", (LongSupplier) () -> {
+            throw new IllegalStateException();
+        });
+        gauges.register("gauge", () -> 1L);
+
+        final CompletedPeriod period = Mockito.mock(CompletedPeriod.class);
+        gauges.drainTo(period);
+        Mockito.verify(period).recordGauge("gauge", 1L);
+        Mockito.verifyNoMoreInteractions(period);
+        Assert.assertEquals(2, gauges.size());
+    }
+
+    @Test
+    public void testMonotonicCounterRecordsDeltas() {
+        final SuppliedGauges gauges = new SuppliedGauges();
+        final AtomicLong total = new AtomicLong(100);
+        gauges.registerMonotonic("total", total::get);
+
+        final CompletedPeriod first = Mockito.mock(CompletedPeriod.class);
+        gauges.drainTo(first);
+        Mockito.verifyNoInteractions(first);
+
+        total.addAndGet(25);
+        final CompletedPeriod second = Mockito.mock(CompletedPeriod.class);
+        gauges.drainTo(second);
+        Mockito.verify(second).recordCounter("total", 25);
+        final ArgumentCaptor<Double> rate = ArgumentCaptor.forClass(Double.class);
+        Mockito.verify(second).recordGauge(Mockito.eq("total/rate"), rate.capture());
+        Assert.assertTrue(rate.getValue() > 0);
+
+        final CompletedPeriod third = Mockito.mock(CompletedPeriod.class);
+        gauges.drainTo(third);
+        Mockito.verify(third).recordCounter("total", 0);
+        Mockito.verify(third).recordGauge("total/rate", 0.0);
+    }
+
+    @Test
+    public void testMonotonicCounterReset() {
+        final SuppliedGauges gauges = new SuppliedGauges();
+        final AtomicLong total = new AtomicLong(100);
+        gauges.registerMonotonic("total", total::get);
+        gauges.drainTo(Mockito.mock(CompletedPeriod.class));
+
+        total.set(7);
+        final CompletedPeriod period = Mockito.mock(CompletedPeriod.class);
+        gauges.drainTo(period);
+        Mockito.verify(period).recordCounter("total", 7);
+    }
+
+    @Test
+    public void testMonotonicCounterRegisteringAgainResetsBaseline() {
+        final SuppliedGauges gauges = new SuppliedGauges();
+        gauges.registerMonotonic("total", () -> 100L);
+        gauges.drainTo(Mockito.mock(CompletedPeriod.class));
+        gauges.registerMonotonic("total", () -> 150L);
+        Assert.assertEquals(1, gauges.size());
+
+        final CompletedPeriod period = Mockito.mock(CompletedPeriod.class);
+        gauges.drainTo(period);
+        Mockito.verifyNoInteractions(period);
+    }
+
+    @Test(timeout = 30000)
+    public void testCollectedOwnersAreRemoved() {
+        final SuppliedGauges gauges = new SuppliedGauges();
+        final List<Object> live = new CopyOnWriteArrayList<>();
+        gauges.register("live", live, List::size);
+        gauges.register("strong", () -> 1L);
+        final List<WeakReference<Object>> owners = register(gauges);
+        while (owners.stream().anyMatch(owner -> owner.get() != null)) {
+            System.gc();
+        }
+
+        final CompletedPeriod period = Mockito.mock(CompletedPeriod.class);
+        gauges.drainTo(period);
+        Mockito.verify(period).recordGauge("live", 0.0);
+        Mockito.verify(period).recordGauge("strong", 1L);
+        Mockito.verifyNoMoreInteractions(period);
+        Assert.assertEquals(2, gauges.size());
+    }
+
+    private static List<WeakReference<Object>> register(final SuppliedGauges gauges) {
+        final AtomicLong longOwner = new AtomicLong(1);
+        final AtomicLong doubleOwner = new AtomicLong(2);
+        gauges.register("long", longOwner, AtomicLong::get);
+        gauges.register("double", doubleOwner, AtomicLong::doubleValue);
+        Assert.assertEquals(4, gauges.size());
+        return Lists.newArrayList(new WeakReference<>(longOwner), new WeakReference<>(doubleOwner));
+    }
+}
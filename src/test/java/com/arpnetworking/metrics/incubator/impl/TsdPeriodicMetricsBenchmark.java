@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017 Inscope Metrics, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.incubator.impl;
+
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.Sink;
+import com.arpnetworking.metrics.impl.TsdMetricsFactory;
+import com.arpnetworking.metrics.incubator.PeriodicCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the recording methods of {@link TsdPeriodicMetrics}. The
+ * period is rotated in the background so that the benchmarks include the
+ * interference of rotation with recording. Each {@link Configuration} is
+ * benchmarked as built, so that no configuration silently falls back to
+ * another recording mode.
+ *
+ * @author Brandon Arp (brandon dot arp at inscopemetrics dot io)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TsdPeriodicMetricsBenchmark {
+
+    /**
+     * Create the periodic metrics instance and start rotating periods.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        _periodicMetrics = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(createMetricsFactory())
+                .setRecordingMode(_configuration._recordingMode)
+                .setHistogramTimers(_configuration._histograms)
+                .setHistogramGauges(_configuration._histograms)
+                .build();
+        _counter = _periodicMetrics.counter("handle");
+        _rotator = Executors.newSingleThreadScheduledExecutor();
+        _rotator.scheduleAtFixedRate(_periodicMetrics, ROTATION_MILLIS, ROTATION_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop rotating periods and flush the open period.
+     *
+     * @throws InterruptedException if interrupted while waiting for rotation to stop
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        _rotator.shutdown();
+        _rotator.awaitTermination(1, TimeUnit.MINUTES);
+        _periodicMetrics.run();
+    }
+
+    /**
+     * Record a counter sample.
+     */
+    @Benchmark
+    public void recordCounter() {
+        _periodicMetrics.recordCounter("counter", 1);
+    }
+
+    /**
+     * Record a timer sample.
+     */
+    @Benchmark
+    public void recordTimer() {
+        _periodicMetrics.recordTimer("timer", 123, TIMER_UNIT);
+    }
+
+    /**
+     * Record a gauge sample.
+     */
+    @Benchmark
+    public void recordGauge() {
+        _periodicMetrics.recordGauge("gauge", 1.5);
+    }
+
+    /**
+     * Add to a counter through its handle.
+     */
+    @Benchmark
+    public void counterHandle() {
+        _counter.add(1);
+    }
+
+    static MetricsFactory createMetricsFactory() {
+        return new TsdMetricsFactory.Builder()
+                .setServiceName("benchmark")
+                .setClusterName("benchmark")
+                .setHostName("localhost")
+                .setSinks(Collections.singletonList(NO_OP_SINK))
+                .build();
+    }
+
+    @Param
+    private Configuration _configuration;
+
+    private TsdPeriodicMetrics _periodicMetrics;
+    private PeriodicCounter _counter;
+    private ScheduledExecutorService _rotator;
+
+    private static final long ROTATION_MILLIS = 100;
+    private static final Optional<TimeUnit> TIMER_UNIT = Optional.of(TimeUnit.MICROSECONDS);
+    private static final Sink NO_OP_SINK = event -> { };
+
+    /**
+     * The configurations benchmarked. Histograms select striped recording,
+     * so there is no locked configuration with histograms.
+     */
+    public enum Configuration {
+        /**
+         * Locked recording of raw samples.
+         */
+        LOCKED(TsdPeriodicMetrics.RecordingMode.LOCKED, false),
+        /**
+         * Striped recording of raw samples.
+         */
+        STRIPED(TsdPeriodicMetrics.RecordingMode.STRIPED, false),
+        /**
+         * Striped recording of timers and gauges into histograms.
+         */
+        STRIPED_HISTOGRAMS(TsdPeriodicMetrics.RecordingMode.STRIPED, true);
+
+        Configuration(final TsdPeriodicMetrics.RecordingMode recordingMode, final boolean histograms) {
+            _recordingMode = recordingMode;
+            _histograms = histograms;
+        }
+
+        private final TsdPeriodicMetrics.RecordingMode _recordingMode;
+        private final boolean _histograms;
+    }
+}
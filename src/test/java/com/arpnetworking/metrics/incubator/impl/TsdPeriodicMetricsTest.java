@@ -15,21 +15,53 @@
  */
 package com.arpnetworking.metrics.incubator.impl;
 
+import com.arpnetworking.metrics.AggregatedData;
 import com.arpnetworking.metrics.Counter;
 import com.arpnetworking.metrics.Metrics;
 import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.impl.AugmentedHistogram;
+import com.arpnetworking.metrics.impl.TsdMetrics;
+import com.arpnetworking.metrics.incubator.MetricKey;
+import com.arpnetworking.metrics.incubator.PeriodicBatch;
+import com.arpnetworking.metrics.incubator.PeriodicCounter;
+import com.arpnetworking.metrics.incubator.PeriodicGauge;
+import com.arpnetworking.metrics.incubator.PeriodicTimer;
+import com.arpnetworking.metrics.incubator.PolledMetricRegistration;
+import com.arpnetworking.metrics.incubator.PollingOptions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.slf4j.Logger;
 
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 /**
  * Tests for the {@link TsdPeriodicMetrics} class.
@@ -68,6 +100,943 @@ public class TsdPeriodicMetricsTest {
         Mockito.verify(logger).warn(Mockito.anyString());
     }
 
+    @Test
+    @SuppressFBWarnings("NP_NONNULL_PARAM_VIOLATION")
+    public void testWarnsOnNullRecordingMode() throws Exception {
+        final Logger logger = Mockito.mock(Logger.class);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder(logger)
+                .setMetricsFactory(_factory)
+                .setRecordingMode(null)
+                .build();
+        Mockito.verify(logger).warn(Mockito.anyString());
+    }
+
+    @Test
+    @SuppressFBWarnings("NP_NONNULL_PARAM_VIOLATION")
+    public void testWarnsOnNullLockingStrategy() throws Exception {
+        final Logger logger = Mockito.mock(Logger.class);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder(logger)
+                .setMetricsFactory(_factory)
+                .setLockingStrategy(null)
+                .build();
+        Mockito.verify(logger).warn(Mockito.anyString());
+    }
+
+    @Test
+    public void testLockingStrategies() throws Exception {
+        for (final TsdPeriodicMetrics.LockingStrategy strategy : TsdPeriodicMetrics.LockingStrategy.values()) {
+            final Metrics metricsMock = Mockito.mock(Metrics.class);
+            final MetricsFactory factoryMock = Mockito.mock(MetricsFactory.class, Answers.RETURNS_MOCKS);
+            Mockito.when(factoryMock.create()).thenReturn(metricsMock);
+            final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                    .setMetricsFactory(factoryMock)
+                    .setLockingStrategy(strategy)
+                    .build();
+
+            factory.recordGauge("gauge", 1L);
+            Mockito.verify(metricsMock).setGauge("gauge", 1L);
+            factory.run();
+            Mockito.verify(metricsMock).close();
+        }
+    }
+
+    @Test
+    public void testRecordsDimensions() throws Exception {
+        final Map<String, String> tags = ImmutableMap.of("host", "a");
+        for (final TsdPeriodicMetrics.RecordingMode mode : TsdPeriodicMetrics.RecordingMode.values()) {
+            final Metrics metricsMock = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+            final Metrics dimensionMock = Mockito.mock(Metrics.class);
+            final Counter counterMock = Mockito.mock(Counter.class);
+            Mockito.when(dimensionMock.createCounter("counter")).thenReturn(counterMock);
+            final Counter handleMock = Mockito.mock(Counter.class);
+            Mockito.when(dimensionMock.createCounter("handle")).thenReturn(handleMock);
+            final MetricsFactory factoryMock = Mockito.mock(MetricsFactory.class, Answers.RETURNS_MOCKS);
+            Mockito.when(factoryMock.create()).thenReturn(metricsMock, dimensionMock, Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS));
+            final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                    .setMetricsFactory(factoryMock)
+                    .setRecordingMode(mode)
+                    .build();
+
+            factory.recordCounter(MetricKey.of("counter", tags), 1);
+            factory.recordTimer(MetricKey.of("timer", tags), 2, Optional.of(TimeUnit.NANOSECONDS));
+            factory.recordGauge(MetricKey.of("double", tags), 3.5);
+            factory.recordGauge(MetricKey.of("long", tags), 4L);
+            factory.recordTimers(MetricKey.of("timers", tags), new long[] {5, 6}, Optional.of(TimeUnit.NANOSECONDS));
+            factory.batch().gauge(MetricKey.of("batched", tags), 7L).record();
+            factory.counter(MetricKey.of("handle", tags)).add(8);
+            factory.gauge(MetricKey.of("handle", tags)).set(9.5);
+            final PeriodicTimer timer = factory.timer(MetricKey.of("handle", tags));
+            final long duration = timer.stop(timer.start());
+            factory.run();
+            Mockito.verify(dimensionMock).addAnnotations(tags);
+            Mockito.verify(counterMock).increment(1);
+            Mockito.verify(handleMock).increment(8);
+            Mockito.verify(dimensionMock).setTimer("timer", 2, TimeUnit.NANOSECONDS);
+            Mockito.verify(dimensionMock).setTimer("timers", 5, TimeUnit.NANOSECONDS);
+            Mockito.verify(dimensionMock).setTimer("timers", 6, TimeUnit.NANOSECONDS);
+            Mockito.verify(dimensionMock).setTimer("handle", duration, TimeUnit.NANOSECONDS);
+            Mockito.verify(dimensionMock).setGauge("double", 3.5);
+            Mockito.verify(dimensionMock).setGauge("long", 4L);
+            Mockito.verify(dimensionMock).setGauge("batched", 7L);
+            Mockito.verify(dimensionMock).setGauge("handle", 9.5);
+            Mockito.verify(dimensionMock).close();
+            Mockito.verify(metricsMock).close();
+        }
+    }
+
+    @Test
+    public void testKeysWithoutDimensionsShareHandlesOfNames() throws Exception {
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .build();
+        Assert.assertSame(factory.counter("metric"), factory.counter(MetricKey.of("metric")));
+        Assert.assertSame(factory.timer("metric"), factory.timer(MetricKey.of("metric")));
+        Assert.assertSame(factory.gauge("metric"), factory.gauge(MetricKey.of("metric")));
+        final Map<String, String> tags = ImmutableMap.of("host", "a");
+        Assert.assertSame(factory.counter(MetricKey.of("metric", tags)), factory.counter(MetricKey.of("metric", tags)));
+        Assert.assertNotSame(factory.counter("metric"), factory.counter(MetricKey.of("metric", tags)));
+    }
+
+    @Test
+    @SuppressFBWarnings("NP_NONNULL_PARAM_VIOLATION")
+    public void testWarnsOnNullHistogramSettings() throws Exception {
+        final Logger logger = Mockito.mock(Logger.class);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder(logger)
+                .setMetricsFactory(_factory)
+                .setHistogramTimers(null)
+                .setHistogramGauges(null)
+                .setHistogramPrecision(null)
+                .build();
+        Mockito.verify(logger, Mockito.times(3)).warn(Mockito.anyString());
+    }
+
+    @Test
+    @SuppressFBWarnings("NP_NONNULL_PARAM_VIOLATION")
+    public void testWarnsOnNullClock() throws Exception {
+        final Logger logger = Mockito.mock(Logger.class);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder(logger)
+                .setMetricsFactory(_factory)
+                .setClock(null)
+                .build();
+        Mockito.verify(logger).warn(Mockito.anyString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsPeriodTooShort() throws Exception {
+        new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofNanos(1))
+                .build();
+    }
+
+    @Test
+    public void testCloseRecordsOpenPeriod() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class);
+        final Metrics newMetricsMock = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(metricsMock, newMetricsMock);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .build();
+
+        factory.recordGauge("gauge", 1L);
+        factory.close();
+        Mockito.verify(metricsMock).setGauge("gauge", 1L);
+        Mockito.verify(metricsMock).close();
+        factory.close();
+        Mockito.verifyNoInteractions(newMetricsMock);
+    }
+
+    @Test
+    public void testRunAfterCloseHasNoEffect() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(metricsMock);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setFlushQueueCapacity(1)
+                .build();
+
+        factory.close();
+        Mockito.verify(_factory, Mockito.times(2)).create();
+        factory.run();
+        Mockito.verify(_factory, Mockito.times(2)).create();
+        Mockito.verify(metricsMock).close();
+    }
+
+    @Test
+    public void testPeriodSchedulesRuns() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class);
+        final Metrics newMetricsMock = Mockito.mock(Metrics.class);
+        final Metrics lastMetricsMock = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(metricsMock, newMetricsMock, lastMetricsMock);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofMillis(10))
+                .setClock(Clock.systemUTC())
+                .build();
+
+        Mockito.verify(metricsMock, Mockito.timeout(5000)).close();
+        factory.close();
+        Mockito.verify(newMetricsMock).close();
+    }
+
+    @Test
+    public void testSelfInstrumentationDisabledByDefault() throws Exception {
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .build();
+        Assert.assertFalse(factory.getStats().isPresent());
+    }
+
+    @Test
+    @SuppressFBWarnings("NP_NONNULL_PARAM_VIOLATION")
+    public void testWarnsOnNullSelfInstrumentation() throws Exception {
+        final Logger logger = Mockito.mock(Logger.class);
+        new TsdPeriodicMetrics.Builder(logger)
+                .setMetricsFactory(_factory)
+                .setSelfInstrumentation(null)
+                .build();
+        Mockito.verify(logger).warn(Mockito.anyString());
+    }
+
+    @Test
+    public void testSelfInstrumentation() throws Exception {
+        for (final TsdPeriodicMetrics.RecordingMode mode : TsdPeriodicMetrics.RecordingMode.values()) {
+            final Metrics firstMock = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+            final Metrics secondMock = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+            final Counter samplesMock = Mockito.mock(Counter.class);
+            Mockito.when(secondMock.createCounter("periodic_metrics/self/samples")).thenReturn(samplesMock);
+            final MetricsFactory factoryMock = Mockito.mock(MetricsFactory.class);
+            Mockito.when(factoryMock.create()).thenReturn(firstMock, secondMock, Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS));
+            final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                    .setMetricsFactory(factoryMock)
+                    .setRecordingMode(mode)
+                    .setSelfInstrumentation(true)
+                    .build();
+
+            factory.recordGauge("gauge", 1L);
+            factory.recordCounter(MetricKey.of("counter"), 2);
+            factory.run();
+            final PeriodicMetricsStats stats = factory.getStats().get();
+            Assert.assertEquals(2, stats.getSamples());
+            Assert.assertFalse(stats.getRunDuration().isNegative());
+            Assert.assertFalse(stats.getFlushDuration().isNegative());
+            Mockito.verify(firstMock).close();
+            factory.run();
+            Mockito.verify(samplesMock).increment(2);
+            Mockito.verify(secondMock).setTimer(
+                    Mockito.eq("periodic_metrics/self/run_duration"),
+                    Mockito.anyLong(),
+                    Mockito.eq(TimeUnit.NANOSECONDS));
+            Mockito.verify(secondMock).setTimer(
+                    Mockito.eq("periodic_metrics/self/flush_duration"),
+                    Mockito.anyLong(),
+                    Mockito.eq(TimeUnit.NANOSECONDS));
+            Mockito.verify(secondMock).setTimer(
+                    Mockito.eq("periodic_metrics/self/maximum_lock_wait"),
+                    Mockito.anyLong(),
+                    Mockito.eq(TimeUnit.NANOSECONDS));
+        }
+    }
+
+    @Test
+    public void testSelfInstrumentationMeasuresPipelinedFlush() throws Exception {
+        final Metrics firstMock = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        final CountDownLatch closed = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            closed.countDown();
+            return null;
+        }).when(firstMock).close();
+        Mockito.when(_factory.create()).thenReturn(firstMock, Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS));
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setFlushQueueCapacity(1)
+                .setSelfInstrumentation(true)
+                .build();
+
+        factory.run();
+        Assert.assertTrue(closed.await(10, TimeUnit.SECONDS));
+        factory.close();
+        Assert.assertTrue(factory.getStats().isPresent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsCardinalityLimitTooSmall() throws Exception {
+        new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setCardinalityLimit(0)
+                .build();
+    }
+
+    @Test
+    public void testCardinalityLimit() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        final Counter droppedMock = Mockito.mock(Counter.class);
+        Mockito.when(metricsMock.createCounter("periodic_metrics/cardinality/dropped")).thenReturn(droppedMock);
+        Mockito.when(_factory.create()).thenReturn(metricsMock, Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS));
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setCardinalityLimit(2)
+                .build();
+
+        factory.recordGauge("a", 1L);
+        factory.recordGauge("b", 2.0);
+        factory.recordTimer("request/1", 3, Optional.of(TimeUnit.SECONDS));
+        factory.recordCounter("request/2", 4);
+        factory.recordGauge(MetricKey.of("request/3"), 5L);
+        factory.recordGauge(MetricKey.of("request/4"), 6.0);
+        factory.recordTimer(MetricKey.of("request/5"), 7, Optional.empty());
+        factory.recordCounter(MetricKey.of("request/6"), 8);
+        factory.recordGauge("a", 9L);
+        factory.run();
+
+        Mockito.verify(metricsMock).setGauge("a", 1L);
+        Mockito.verify(metricsMock).setGauge("b", 2.0);
+        Mockito.verify(metricsMock).setGauge("a", 9L);
+        Mockito.verify(metricsMock).setTimer("periodic_metrics/cardinality/overflow", 3, TimeUnit.SECONDS);
+        Mockito.verify(metricsMock).setGauge("periodic_metrics/cardinality/overflow", 5L);
+        Mockito.verify(metricsMock).setGauge("periodic_metrics/cardinality/overflow", 6.0);
+        Mockito.verify(metricsMock).setTimer("periodic_metrics/cardinality/overflow", 7, null);
+        Mockito.verify(metricsMock, Mockito.times(2)).createCounter("periodic_metrics/cardinality/overflow");
+        Mockito.verify(droppedMock).increment(6);
+        Mockito.verify(metricsMock).setGauge("periodic_metrics/cardinality/dropped_metrics", 6.0);
+        Mockito.verify(metricsMock, Mockito.never()).setGauge(Mockito.startsWith("request/"), Mockito.anyDouble());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNegativePollingTimeout() throws Exception {
+        new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setPollingTimeout(Duration.ofMillis(-1))
+                .build();
+    }
+
+    @Test
+    public void testPollingTimeoutWaitsForPollers() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class);
+        final Counter counterMock = Mockito.mock(Counter.class);
+        final Counter timeoutsMock = Mockito.mock(Counter.class);
+        Mockito.when(_factory.create()).thenReturn(metricsMock);
+        Mockito.when(metricsMock.createCounter("polled")).thenReturn(counterMock);
+        Mockito.when(metricsMock.createCounter("periodic_metrics/polling/timeouts")).thenReturn(timeoutsMock);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                    .setMetricsFactory(_factory)
+                    .setPollingExecutor(executor)
+                    .setPollingTimeout(Duration.ofMinutes(1))
+                    .build();
+            factory.registerPolledMetric(metrics -> {
+                sleep(20);
+                metrics.recordCounter("polled", 1);
+            });
+
+            factory.run();
+            final InOrder inOrder = Mockito.inOrder(counterMock, timeoutsMock, metricsMock);
+            inOrder.verify(counterMock).increment(1);
+            inOrder.verify(metricsMock).setTimer(
+                    Mockito.eq("periodic_metrics/polling/duration"),
+                    Mockito.longThat(duration -> duration >= TimeUnit.MILLISECONDS.toNanos(20)),
+                    Mockito.eq(TimeUnit.NANOSECONDS));
+            inOrder.verify(timeoutsMock).increment(0);
+            inOrder.verify(metricsMock).close();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPollingTimeoutCancelsLatePollers() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class);
+        final Counter timeoutsMock = Mockito.mock(Counter.class);
+        Mockito.when(_factory.create()).thenReturn(metricsMock);
+        Mockito.when(metricsMock.createCounter("periodic_metrics/polling/timeouts")).thenReturn(timeoutsMock);
+        final List<Runnable> queued = Lists.newArrayList();
+        final AtomicBoolean polled = new AtomicBoolean(false);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setPollingExecutor(queued::add)
+                .setPollingTimeout(Duration.ofMillis(10))
+                .build();
+        factory.registerPolledMetric(metrics -> polled.set(true));
+
+        factory.run();
+        Mockito.verify(timeoutsMock).increment(1);
+        Mockito.verify(metricsMock).close();
+        Assert.assertEquals(1, queued.size());
+        queued.get(0).run();
+        Assert.assertFalse(polled.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNegativePollerTimeout() throws Exception {
+        new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setPollerTimeout(Duration.ofMillis(-1))
+                .build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsPollingParallelismTooSmall() throws Exception {
+        new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setPollingParallelism(0)
+                .build();
+    }
+
+    @Test
+    public void testPollingParallelism() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class);
+        final Counter counterMock = Mockito.mock(Counter.class);
+        final Counter timeoutsMock = Mockito.mock(Counter.class);
+        Mockito.when(_factory.create()).thenReturn(metricsMock);
+        Mockito.when(metricsMock.createCounter("polled")).thenReturn(counterMock);
+        Mockito.when(metricsMock.createCounter("periodic_metrics/polling/timeouts")).thenReturn(timeoutsMock);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setPollingParallelism(2)
+                .setPollerTimeout(Duration.ofMinutes(1))
+                .build();
+        final Set<String> threads = Sets.newConcurrentHashSet();
+        factory.registerPolledMetric(metrics -> {
+            threads.add(Thread.currentThread().getName());
+            metrics.recordCounter("polled", 1);
+        });
+
+        factory.close();
+        Mockito.verify(counterMock).increment(1);
+        Mockito.verify(timeoutsMock).increment(0);
+        Mockito.verify(metricsMock).close();
+        Assert.assertTrue(threads.iterator().next().startsWith("periodic-metrics-poller-"));
+    }
+
+    @Test
+    public void testPollingTimeoutFailedPoller() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class);
+        final Counter timeoutsMock = Mockito.mock(Counter.class);
+        Mockito.when(_factory.create()).thenReturn(metricsMock);
+        Mockito.when(metricsMock.createCounter("periodic_metrics/polling/timeouts")).thenReturn(timeoutsMock);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setPollingTimeout(Duration.ofMinutes(1))
+                .build();
+        factory.registerPolledMetric(metrics -> {
+            throw new IllegalStateException();
+        });
+
+        factory.run();
+        Mockito.verify(timeoutsMock).increment(0);
+        Mockito.verify(metricsMock).close();
+    }
+
+    @Test
+    public void testPollingTimeoutInterrupted() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class);
+        final Counter timeoutsMock = Mockito.mock(Counter.class);
+        Mockito.when(_factory.create()).thenReturn(metricsMock);
+        Mockito.when(metricsMock.createCounter("periodic_metrics/polling/timeouts")).thenReturn(timeoutsMock);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                    .setMetricsFactory(_factory)
+                    .setPollingExecutor(executor)
+                    .setPollingTimeout(Duration.ofMinutes(1))
+                    .build();
+            factory.registerPolledMetric(metrics -> await(release));
+
+            Thread.currentThread().interrupt();
+            factory.run();
+            Assert.assertTrue(Thread.interrupted());
+            Mockito.verify(timeoutsMock).increment(1);
+            Mockito.verify(metricsMock).close();
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsFlushQueueCapacityTooSmall() throws Exception {
+        new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setFlushQueueCapacity(0)
+                .build();
+    }
+
+    @Test
+    @SuppressFBWarnings("NP_NONNULL_PARAM_VIOLATION")
+    public void testWarnsOnNullFlushOverflowPolicy() throws Exception {
+        final Logger logger = Mockito.mock(Logger.class);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder(logger)
+                .setMetricsFactory(_factory)
+                .setFlushOverflowPolicy(null)
+                .build();
+        Mockito.verify(logger).warn(Mockito.anyString());
+    }
+
+    @Test
+    public void testPipelinedFlush() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class);
+        final Metrics newMetricsMock = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        final Metrics lastMetricsMock = Mockito.mock(Metrics.class);
+        final Counter counterMock = Mockito.mock(Counter.class);
+        Mockito.when(_factory.create()).thenReturn(metricsMock, newMetricsMock, lastMetricsMock);
+        Mockito.when(metricsMock.createCounter(Mockito.anyString())).thenReturn(counterMock);
+        final Set<String> threads = Sets.newConcurrentHashSet();
+        final CountDownLatch closed = new CountDownLatch(1);
+        // NOTE: The invocation is visible to verification before the answer runs, so the answer signals completion
+        Mockito.doAnswer(invocation -> {
+            threads.add(Thread.currentThread().getName());
+            closed.countDown();
+            return null;
+        }).when(metricsMock).close();
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setRecordingMode(TsdPeriodicMetrics.RecordingMode.STRIPED)
+                .setFlushQueueCapacity(1)
+                .setFlushOverflowPolicy(TsdPeriodicMetrics.FlushOverflowPolicy.MERGE)
+                .build();
+
+        factory.recordGauge("gauge", 1L);
+        factory.run();
+        await(closed);
+        Mockito.verify(metricsMock).close();
+        Mockito.verify(metricsMock).setGauge("gauge", 1L);
+        Mockito.verifyNoInteractions(counterMock);
+        Assert.assertTrue(threads.iterator().next().startsWith("periodic-metrics-flush-"));
+
+        factory.close();
+        Mockito.verify(newMetricsMock).close();
+    }
+
+    @Test
+    public void testPipelinedFlushDropOldest() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        Mockito.when(_factory.create()).thenReturn(metricsMock);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setFlushQueueCapacity(1)
+                .setFlushOverflowPolicy(TsdPeriodicMetrics.FlushOverflowPolicy.DROP_OLDEST)
+                .build();
+        factory.close();
+        Mockito.verify(metricsMock).close();
+    }
+
+    @Test
+    public void testMergeRequiresStripedRecording() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        Mockito.when(_factory.create()).thenReturn(metricsMock);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setFlushQueueCapacity(1)
+                .setFlushOverflowPolicy(TsdPeriodicMetrics.FlushOverflowPolicy.MERGE)
+                .build();
+        factory.close();
+        Mockito.verify(metricsMock).close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsHistogramPrecisionTooSmall() throws Exception {
+        new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setHistogramPrecision(0)
+                .build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsHistogramPrecisionTooLarge() throws Exception {
+        new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setHistogramPrecision(8)
+                .build();
+    }
+
+    @Test
+    public void testHistogramTimersSelectStripedRecording() throws Exception {
+        final TsdMetrics metricsMock = Mockito.mock(TsdMetrics.class);
+        Mockito.when(_factory.create()).thenReturn(metricsMock);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setHistogramTimers(true)
+                .setHistogramPrecision(4)
+                .build();
+
+        factory.recordTimer("timer", 1500, Optional.of(TimeUnit.MILLISECONDS));
+        Mockito.verifyNoInteractions(metricsMock);
+        factory.run();
+        final ArgumentCaptor<AggregatedData> captor = ArgumentCaptor.forClass(AggregatedData.class);
+        Mockito.verify(metricsMock).recordAggregatedData(Mockito.eq("timer"), captor.capture());
+        // Timer histograms hold seconds, and one and a half is exact at four mantissa bits
+        Assert.assertEquals(Long.valueOf(1), ((AugmentedHistogram) captor.getValue()).getHistogram().get(1.5));
+    }
+
+    @Test
+    public void testHistogramGaugesSelectStripedRecording() throws Exception {
+        final TsdMetrics metricsMock = Mockito.mock(TsdMetrics.class);
+        Mockito.when(_factory.create()).thenReturn(metricsMock);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setHistogramGauges(true)
+                .build();
+
+        factory.recordGauge("gauge", 1L);
+        Mockito.verifyNoInteractions(metricsMock);
+        factory.run();
+        Mockito.verify(metricsMock).recordAggregatedData(Mockito.eq("gauge"), Mockito.any());
+    }
+
+    @Test
+    public void testOffHeapSampleStorageSelectsStripedRecording() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(metricsMock);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setSampleStorage(TsdPeriodicMetrics.SampleStorage.OFF_HEAP)
+                .build();
+
+        factory.recordTimer("timer", 2, Optional.of(TimeUnit.MILLISECONDS));
+        factory.recordGauge("gauge", 1.5);
+        Mockito.verifyNoInteractions(metricsMock);
+        factory.run();
+        Mockito.verify(metricsMock).setTimer("timer", TimeUnit.MILLISECONDS.toNanos(2), TimeUnit.NANOSECONDS);
+        Mockito.verify(metricsMock).setGauge("gauge", 1.5);
+    }
+
+    @Test
+    @SuppressFBWarnings("NP_NONNULL_PARAM_VIOLATION")
+    public void testWarnsOnNullSampleStorage() throws Exception {
+        final Logger logger = Mockito.mock(Logger.class);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder(logger)
+                .setMetricsFactory(_factory)
+                .setSampleStorage(null)
+                .build();
+        Mockito.verify(logger).warn(Mockito.anyString());
+    }
+
+    @Test
+    public void testSampling() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(metricsMock, Mockito.mock(Metrics.class));
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setSamplingPolicy(SamplingPolicy.fixedRate(1.0))
+                .setSamplingPolicies(ImmutableMap.of("reservoir", SamplingPolicy.reservoir(1)))
+                .build();
+
+        factory.recordTimer("timer", 1, Optional.of(TimeUnit.SECONDS));
+        factory.recordGauge("double", 1.5);
+        factory.recordGauge("long", 2L);
+        factory.recordGauge("reservoir", 3L);
+        factory.recordGauge("reservoir", 4.0);
+        factory.recordTimer("reservoir", 5, Optional.empty());
+        Mockito.verify(metricsMock).setTimer("timer", 1, TimeUnit.SECONDS);
+        Mockito.verify(metricsMock).setGauge("double", 1.5);
+        Mockito.verify(metricsMock).setGauge("long", 2L);
+        Mockito.verifyNoMoreInteractions(metricsMock);
+
+        factory.run();
+        Mockito.verify(metricsMock).setGauge("timer/sampling_weight", 1.0);
+        Mockito.verify(metricsMock).setGauge("double/sampling_weight", 1.0);
+        Mockito.verify(metricsMock).setGauge("long/sampling_weight", 1.0);
+        Mockito.verify(metricsMock).setGauge("reservoir/sampling_weight", 3.0);
+    }
+
+    @Test
+    public void testSampledSamplesAreAdmitted() {
+        final Metrics metricsMock = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        Mockito.when(_factory.create()).thenReturn(metricsMock, Mockito.mock(Metrics.class));
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setSamplingPolicy(SamplingPolicy.reservoir(1))
+                .setCardinalityLimit(1)
+                .build();
+
+        factory.recordCounter("counter", 1);
+        factory.recordGauge("gauge", 1L);
+        factory.run();
+        Mockito.verify(metricsMock).setGauge(CardinalityLimiter.OVERFLOW_METRIC, 1L);
+        Mockito.verify(metricsMock, Mockito.never()).setGauge(Mockito.eq("gauge"), Mockito.anyLong());
+    }
+
+    @Test
+    public void testUnsampledByDefault() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(metricsMock, Mockito.mock(Metrics.class));
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setSamplingPolicies(ImmutableMap.of("sampled", SamplingPolicy.fixedRate(Double.MIN_VALUE)))
+                .build();
+
+        factory.recordGauge("gauge", 1L);
+        factory.recordGauge("sampled", 1L);
+        factory.run();
+        Mockito.verify(metricsMock).setGauge("gauge", 1L);
+        Mockito.verify(metricsMock).close();
+        Mockito.verifyNoMoreInteractions(metricsMock);
+    }
+
+    @Test
+    @SuppressFBWarnings("NP_NONNULL_PARAM_VIOLATION")
+    public void testWarnsOnNullSamplingPolicies() throws Exception {
+        final Logger logger = Mockito.mock(Logger.class);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder(logger)
+                .setMetricsFactory(_factory)
+                .setSamplingPolicies(null)
+                .build();
+        Mockito.verify(logger).warn(Mockito.anyString());
+    }
+
+    @Test
+    public void testSpool() throws Exception {
+        final Metrics spooled = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        // NOTE: The spooled period is forwarded into an instance created after those of the open periods
+        Mockito.when(_factory.create()).thenReturn(Mockito.mock(Metrics.class), Mockito.mock(Metrics.class), spooled);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setFlushQueueCapacity(1)
+                .setSpoolOptions(new SpoolOptions.Builder().setDirectory(_folder.getRoot().toPath()).build())
+                .build();
+
+        factory.recordGauge("gauge", 1L);
+        factory.close();
+        Mockito.verify(spooled).setGauge("gauge", 1L);
+        Mockito.verify(spooled).close();
+    }
+
+    @Test
+    public void testSpoolRollups() throws Exception {
+        final Metrics spooled = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        final Metrics rolledUp = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        final Metrics unused = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(unused, unused, unused, spooled, rolledUp);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setRollups(ImmutableList.of(Rollup.adding(2, Pattern.compile("gauge"))))
+                .setSpoolOptions(new SpoolOptions.Builder().setDirectory(_folder.getRoot().toPath()).build())
+                .build();
+
+        factory.recordGauge("gauge", 1L);
+        factory.close();
+        Mockito.verify(spooled).setGauge("gauge", 1L);
+        Mockito.verify(rolledUp).setGauge("gauge", 1L);
+        Mockito.verify(rolledUp).close();
+    }
+
+    @Test
+    public void testPeriodMerger() throws Exception {
+        final Metrics merged = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        final Metrics other = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        // NOTE: The periods are merged into the period of the first member
+        Mockito.when(_factory.create()).thenReturn(merged, other, Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS));
+        final PeriodMerger merger = new PeriodMerger.Builder().build();
+        final TsdPeriodicMetrics first = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setFlushQueueCapacity(1)
+                .setPeriodMerger(merger)
+                .build();
+        final TsdPeriodicMetrics second = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriodMerger(merger)
+                .build();
+
+        first.recordGauge("gauge", 1L);
+        second.recordGauge("gauge", 2L);
+        merger.run();
+        Mockito.verify(merged).setGauge("gauge", 1L);
+        Mockito.verify(merged).setGauge("gauge", 2L);
+        Mockito.verify(merged).close();
+        Mockito.verify(other).close();
+        Mockito.verifyNoMoreInteractions(other);
+
+        first.close();
+        second.close();
+        merger.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsPeriodWithPeriodMerger() throws Exception {
+        new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofSeconds(1))
+                .setPeriodMerger(new PeriodMerger.Builder().build())
+                .build();
+    }
+
+    @Test
+    public void testPeriodMergerWithRollups() throws Exception {
+        final Metrics firstBase = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        final Metrics firstRollup = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        final Metrics secondBase = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        final Metrics secondRollup = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        final Metrics later = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        Mockito.when(_factory.create()).thenReturn(firstBase, firstRollup, secondBase, secondRollup, later);
+        final PeriodMerger merger = new PeriodMerger.Builder().build();
+        final TsdPeriodicMetrics first = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setRollups(ImmutableList.of(Rollup.replacing(2, Pattern.compile("coarse/.*"))))
+                .setPeriodMerger(merger)
+                .build();
+        final TsdPeriodicMetrics second = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setRollups(ImmutableList.of(Rollup.replacing(2, Pattern.compile("coarse/.*"))))
+                .setPeriodMerger(merger)
+                .build();
+
+        first.recordGauge("coarse/gauge", 1L);
+        first.recordGauge("fine", 1L);
+        second.recordGauge("coarse/gauge", 2L);
+        second.recordGauge("fine", 2L);
+        merger.run();
+        Mockito.verify(firstBase).setGauge("fine", 1L);
+        Mockito.verify(firstBase).setGauge("fine", 2L);
+        Mockito.verify(firstBase).close();
+        Mockito.verify(secondBase).close();
+        Mockito.verifyNoMoreInteractions(secondBase);
+        Mockito.verifyNoInteractions(firstRollup, secondRollup);
+
+        // NOTE: The rollup periods are merged with each other, not into a base period
+        merger.run();
+        Mockito.verify(firstRollup).setGauge("coarse/gauge", 1L);
+        Mockito.verify(firstRollup).setGauge("coarse/gauge", 2L);
+        Mockito.verify(firstRollup).close();
+        Mockito.verify(secondRollup).close();
+        Mockito.verifyNoMoreInteractions(secondRollup);
+        Mockito.verify(later, Mockito.never()).setGauge(Mockito.eq("coarse/gauge"), Mockito.anyLong());
+
+        first.close();
+        second.close();
+        merger.close();
+    }
+
+    @Test
+    public void testSnapshotListener() throws Exception {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(metrics, Mockito.mock(Metrics.class));
+        final PeriodSnapshot.Visitor visitor = Mockito.mock(PeriodSnapshot.Visitor.class);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setSnapshotListener(snapshot -> {
+                    final ByteBuffer buffer = ByteBuffer.allocateDirect(snapshot.size());
+                    snapshot.writeTo(buffer);
+                    buffer.flip();
+                    PeriodSnapshot.read(buffer, visitor);
+                })
+                .build();
+
+        factory.recordGauge("gauge", 1L);
+        factory.run();
+        Mockito.verify(visitor).gauge("gauge", 1L);
+        Mockito.verify(metrics).setGauge("gauge", 1L);
+        Mockito.verify(metrics).close();
+    }
+
+    @Test
+    @SuppressFBWarnings("NP_NONNULL_PARAM_VIOLATION")
+    public void testWarnsOnNullRollups() throws Exception {
+        final Logger logger = Mockito.mock(Logger.class);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder(logger)
+                .setMetricsFactory(_factory)
+                .setRollups(null)
+                .build();
+        Mockito.verify(logger).warn(Mockito.anyString());
+    }
+
+    @Test
+    public void testRollups() throws Exception {
+        final Metrics first = Mockito.mock(Metrics.class);
+        final Metrics rollup = Mockito.mock(Metrics.class);
+        final Metrics second = Mockito.mock(Metrics.class);
+        final Metrics third = Mockito.mock(Metrics.class);
+        final Metrics nextRollup = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(first, rollup, second, third, nextRollup, Mockito.mock(Metrics.class));
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setRollups(ImmutableList.of(Rollup.replacing(2, Pattern.compile("coarse/.*"))))
+                .build();
+
+        factory.recordGauge("coarse/gauge", 1L);
+        factory.recordGauge("fine", 2L);
+        factory.run();
+        Mockito.verify(first).setGauge("fine", 2L);
+        Mockito.verify(first, Mockito.never()).setGauge("coarse/gauge", 1L);
+        Mockito.verifyNoInteractions(rollup);
+
+        factory.recordGauge("coarse/gauge", 3L);
+        factory.run();
+        Mockito.verify(rollup).setGauge("coarse/gauge", 1L);
+        Mockito.verify(rollup).setGauge("coarse/gauge", 3L);
+        Mockito.verify(rollup).close();
+        Mockito.verify(second).close();
+
+        factory.recordGauge("coarse/gauge", 4L);
+        factory.close();
+        Mockito.verify(nextRollup).setGauge("coarse/gauge", 4L);
+        Mockito.verify(nextRollup).close();
+    }
+
+    @Test
+    public void testRollupsFlushOnFlushThread() throws Exception {
+        final Metrics rollup = Mockito.mock(Metrics.class);
+        final Metrics fallback = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(Mockito.mock(Metrics.class), rollup, fallback);
+        final CompletableFuture<String> flushThread = new CompletableFuture<>();
+        Mockito.doAnswer(invocation -> flushThread.complete(Thread.currentThread().getName())).when(rollup).close();
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setFlushQueueCapacity(2)
+                .setRollups(ImmutableList.of(Rollup.replacing(2, Pattern.compile("coarse/.*"))))
+                .build();
+
+        factory.recordGauge("coarse/gauge", 1L);
+        factory.run();
+        factory.run();
+        Assert.assertTrue(flushThread.get(10, TimeUnit.SECONDS).startsWith("periodic-metrics-flush-"));
+        Mockito.verify(rollup).setGauge("coarse/gauge", 1L);
+        factory.close();
+    }
+
+    @Test
+    public void testRegisteredGauges() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(metricsMock, Mockito.mock(Metrics.class));
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .build();
+        final AtomicLong owner = new AtomicLong(3);
+
+        factory.registerGauge("long", () -> 1L);
+        factory.registerGauge("double", () -> 1.5);
+        factory.registerGauge("weak_long", owner, AtomicLong::get);
+        factory.registerGauge("weak_double", owner, AtomicLong::doubleValue);
+        Mockito.verifyNoInteractions(metricsMock);
+        factory.run();
+        Mockito.verify(metricsMock).setGauge("long", 1L);
+        Mockito.verify(metricsMock).setGauge("double", 1.5);
+        Mockito.verify(metricsMock).setGauge("weak_long", 3.0);
+        Mockito.verify(metricsMock).setGauge("weak_double", 3.0);
+    }
+
+    @Test
+    public void testRegisteredMonotonicCounter() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class);
+        final Metrics newMetricsMock = Mockito.mock(Metrics.class);
+        final Counter counterMock = Mockito.mock(Counter.class);
+        Mockito.when(_factory.create()).thenReturn(metricsMock, newMetricsMock, Mockito.mock(Metrics.class));
+        Mockito.when(newMetricsMock.createCounter("total")).thenReturn(counterMock);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .build();
+        final AtomicLong total = new AtomicLong(10);
+
+        factory.registerMonotonicCounter("total", total::get);
+        factory.run();
+        Mockito.verify(metricsMock, Mockito.never()).createCounter("total");
+        total.addAndGet(5);
+        factory.run();
+        Mockito.verify(counterMock).increment(5);
+        Mockito.verify(newMetricsMock).setGauge(Mockito.eq("total/rate"), Mockito.anyDouble());
+    }
+
     @Test
     public void testCallsFactoryCreateForInitialMetricInstance() throws Exception {
         final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
@@ -94,6 +1063,52 @@ public class TsdPeriodicMetricsTest {
         Mockito.verify(counterMock).increment(value);
     }
 
+    @Test
+    public void testRecordTimersAndBatches() throws Exception {
+        for (final TsdPeriodicMetrics.RecordingMode mode : TsdPeriodicMetrics.RecordingMode.values()) {
+            final Metrics metricsMock = Mockito.mock(Metrics.class);
+            final MetricsFactory factoryMock = Mockito.mock(MetricsFactory.class, Answers.RETURNS_MOCKS);
+            Mockito.when(factoryMock.create()).thenReturn(metricsMock, Mockito.mock(Metrics.class));
+            final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                    .setMetricsFactory(factoryMock)
+                    .setRecordingMode(mode)
+                    .build();
+
+            factory.recordTimers("timer", new long[]{1, 2}, Optional.empty());
+            factory.batch().timer("timer", 3, Optional.empty()).record();
+            factory.run();
+            Mockito.verify(metricsMock).setTimer("timer", 1, null);
+            Mockito.verify(metricsMock).setTimer("timer", 2, null);
+            Mockito.verify(metricsMock).setTimer("timer", 3, null);
+        }
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        final Counter samplesMock = Mockito.mock(Counter.class);
+        final Metrics nextMock = Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS);
+        Mockito.when(nextMock.createCounter("periodic_metrics/self/samples")).thenReturn(samplesMock);
+        Mockito.when(_factory.create()).thenReturn(metricsMock, nextMock, Mockito.mock(Metrics.class, Answers.RETURNS_MOCKS));
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setCardinalityLimit(2)
+                .setSelfInstrumentation(true)
+                .build();
+
+        final PeriodicBatch batch = factory.batch();
+        batch.gauge("a", 1L).gauge("b", 2.0).gauge("c", 3L).record();
+        factory.recordTimers("d", new long[]{4, 5}, Optional.of(TimeUnit.SECONDS));
+        Mockito.verify(metricsMock).setGauge("a", 1L);
+        Mockito.verify(metricsMock).setGauge("b", 2.0);
+        Mockito.verify(metricsMock).setGauge("periodic_metrics/cardinality/overflow", 3L);
+        Mockito.verify(metricsMock).setTimer("periodic_metrics/cardinality/overflow", 4, TimeUnit.SECONDS);
+        Mockito.verify(metricsMock).setTimer("periodic_metrics/cardinality/overflow", 5, TimeUnit.SECONDS);
+        factory.run();
+        factory.run();
+        Mockito.verify(samplesMock).increment(5);
+    }
+
     @Test
     public void testRecordTimerUnit() throws Exception {
         final Metrics metricsMock = Mockito.mock(Metrics.class);
@@ -159,6 +1174,46 @@ public class TsdPeriodicMetricsTest {
         Mockito.verify(newMetricsMock).close();
     }
 
+    @Test
+    public void testClosePolledMetric() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class);
+        final Metrics newMetricsMock = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(metricsMock, newMetricsMock);
+        Mockito.when(metricsMock.createCounter(Mockito.anyString())).thenAnswer(Answers.RETURNS_MOCKS);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .build();
+
+        final PolledMetricRegistration registration = factory.registerPolledMetric(metrics -> metrics.recordCounter("bar", 1));
+        factory.run();
+        Mockito.verify(metricsMock).createCounter("bar");
+        registration.close();
+        factory.run();
+        Mockito.verify(newMetricsMock, Mockito.never()).createCounter("bar");
+        Mockito.verify(newMetricsMock).close();
+    }
+
+    @Test
+    public void testRegisterPolledMetricWithOptions() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(metricsMock);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setRecordingMode(TsdPeriodicMetrics.RecordingMode.STRIPED)
+                .build();
+
+        factory.registerPolledMetric(
+                metrics -> metrics.recordGauge("polled", 1L),
+                new PollingOptions.Builder().setName("poller").setInterval(2).build());
+        factory.run();
+        Mockito.verify(metricsMock).setGauge("polled", 1L);
+        Mockito.verify(metricsMock).setTimer(
+                Mockito.eq("periodic_metrics/poller/poller/duration"),
+                Mockito.anyLong(),
+                Mockito.eq(TimeUnit.NANOSECONDS));
+        Mockito.verify(metricsMock).setGauge("periodic_metrics/poller/poller/interval", 2L);
+    }
+
     @Test
     public void testRegisterManyCallbacks() throws Exception {
         final Metrics metricsMock = Mockito.mock(Metrics.class);
@@ -175,8 +1230,100 @@ public class TsdPeriodicMetricsTest {
 
     }
 
+    @Test
+    public void testStripedRecordsOnRun() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class);
+        final Metrics newMetricsMock = Mockito.mock(Metrics.class);
+        final Counter counterMock = Mockito.mock(Counter.class);
+        Mockito.when(_factory.create()).thenReturn(metricsMock, newMetricsMock);
+        Mockito.when(metricsMock.createCounter(Mockito.anyString())).thenReturn(counterMock);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .setRecordingMode(TsdPeriodicMetrics.RecordingMode.STRIPED)
+                .build();
+
+        factory.registerPolledMetric(metrics -> metrics.recordGauge("polled", 3L));
+        factory.recordCounter("counter", 1);
+        factory.recordCounter("counter", 2);
+        factory.recordTimer("timer", 4, Optional.of(TimeUnit.MICROSECONDS));
+        factory.recordTimer("unitless", 5, Optional.empty());
+        factory.recordGauge("gauge", 6.5);
+        Mockito.verifyNoInteractions(metricsMock);
+
+        factory.run();
+        Mockito.verify(metricsMock).createCounter("counter");
+        Mockito.verify(counterMock).increment(3);
+        Mockito.verify(metricsMock).setTimer("timer", 4000, TimeUnit.NANOSECONDS);
+        Mockito.verify(metricsMock).setTimer("unitless", 5, null);
+        Mockito.verify(metricsMock).setGauge("gauge", 6.5);
+        Mockito.verify(metricsMock).setGauge("polled", 3L);
+        Mockito.verify(metricsMock).close();
+        Mockito.verifyNoInteractions(newMetricsMock);
+    }
+
+    @Test
+    public void testHandlesRecordedOnRun() throws Exception {
+        final Metrics metricsMock = Mockito.mock(Metrics.class);
+        final Counter counterMock = Mockito.mock(Counter.class);
+        Mockito.when(_factory.create()).thenReturn(metricsMock);
+        Mockito.when(metricsMock.createCounter("counter")).thenReturn(counterMock);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .build();
+
+        final PeriodicCounter counter = factory.counter("counter");
+        final PeriodicGauge gauge = factory.gauge("gauge");
+        counter.add(4);
+        counter.add(5);
+        gauge.set(7);
+        Mockito.verifyNoInteractions(metricsMock);
+
+        factory.run();
+        Mockito.verify(counterMock).increment(9);
+        Mockito.verify(metricsMock).setGauge("gauge", 7.0);
+        Mockito.verify(metricsMock).close();
+    }
+
+    @Test
+    public void testTimerRecordedInPeriodOpenAtStop() {
+        final Metrics firstMock = Mockito.mock(Metrics.class);
+        final Metrics secondMock = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(firstMock, secondMock);
+        final TsdPeriodicMetrics factory = new TsdPeriodicMetrics.Builder()
+                .setMetricsFactory(_factory)
+                .build();
+
+        final PeriodicTimer timer = factory.timer("timer");
+        final long start = timer.start();
+        factory.run();
+        final long duration = timer.stop(start);
+        Assert.assertSame(timer, factory.timer("timer"));
+        factory.run();
+
+        Mockito.verify(firstMock, Mockito.never()).setTimer(Mockito.anyString(), Mockito.anyLong(), Mockito.any());
+        Mockito.verify(secondMock).setTimer("timer", duration, TimeUnit.NANOSECONDS);
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     @Mock(answer = Answers.RETURNS_MOCKS)
     private MetricsFactory _factory;
 
     private AutoCloseable _mocks;
+    @Rule
+    public final TemporaryFolder _folder = new TemporaryFolder();
 }